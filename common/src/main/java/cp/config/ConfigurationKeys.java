@@ -27,6 +27,7 @@ public final class ConfigurationKeys {
     public static final String CASSANDRA_RETRY_PERIOD_IN_MS_KEY   = "cassandra.retry_period_in_ms";
     public static final String CASSANDRA_SCALE_IN_MS_KEY          = "cassandra.scale_in_ms";
     public static final String CASSANDRA_UPDATE_RATE_IN_S_KEY     = "cassandra.update_rate_in_s";
+    public static final String CASSANDRA_TOKEN_AWARE_KEY          = "cassandra.token_aware";
 
     // Cassandra socket options
     public static final String CASSANDRA_READ_TIMEOUT_IN_MS_KEY   = "cassandra.read_timeout_in_s";
@@ -87,10 +88,59 @@ public final class ConfigurationKeys {
     // Command line loader related
     public final static String LOADER_BATCH_SIZE_KEY = "loader.batchSize";
     public final static String LOADER_CACHE_SIZE_KEY = "loader.cacheSize";
+    public final static String LOADER_MAX_IN_FLIGHT_KEY = "loader.maxInFlight";
     public static final String LOADER_TABLE_NAME_KEY = "loader.tableName";
     public static final String LOADER_INPUT_FILE_KEY = "loader.inputFile";
     public static final String LOADER_MAPPING_FILE_KEY = "loader.mappingFile";
     public static final String LOADER_USE_STRICT_MAPPING_KEY = "loader.useStrictMapping";
+    public static final String LOADER_THREADS_KEY = "loader.threads";
+    public static final String LOADER_QUEUE_DEPTH_KEY = "loader.queueDepth";
+    public static final String LOADER_CHUNK_LINES_KEY = "loader.chunkLines";
+    public static final String LOADER_CHUNK_BYTES_KEY = "loader.chunkBytes";
+    public static final String LOADER_BATCH_MODE_KEY = "loader.batchMode";
+    public static final String LOADER_BATCH_ROWS_KEY = "loader.batchRows";
+    public static final String LOADER_BATCH_DELAY_MS_KEY = "loader.batchDelayMs";
+    public static final String LOADER_BATCH_GROUPS_KEY = "loader.batchGroups";
+    public static final String LOADER_CHECKPOINT_FILE_KEY = "loader.checkpointFile";
+    public static final String LOADER_CHECKPOINT_INTERVAL_MS_KEY = "loader.checkpointIntervalMs";
+    public static final String LOADER_RESUME_KEY = "loader.resume";
+    public static final String LOADER_COUNT_IN_BACKGROUND_KEY = "loader.countInBackground";
+    public static final String LOADER_ADAPTIVE_CONCURRENCY_KEY = "loader.adaptiveConcurrency";
+    public static final String LOADER_MIN_IN_FLIGHT_KEY = "loader.minInFlight";
+    public static final String LOADER_TARGET_P99_MS_KEY = "loader.targetP99Ms";
+    public static final String LOADER_TARGET_ERROR_RATE_KEY = "loader.targetErrorRate";
+    public static final String LOADER_WRITE_RETRIES_KEY = "loader.writeRetries";
+    public static final String LOADER_CONCURRENT_FILES_KEY = "loader.concurrentFiles";
+    public static final String LOADER_TOTAL_IN_FLIGHT_KEY = "loader.totalInFlight";
+    public static final String LOADER_METRICS_INTERVAL_S_KEY = "loader.metricsIntervalSeconds";
+    public static final String LOADER_METRICS_FILE_KEY = "loader.metricsFile";
+    public static final String LOADER_PROFILE_KEY = "loader.profile";
+    public static final String LOADER_PROFILE_FILE_KEY = "loader.profileFile";
+    public static final String LOADER_PROFILE_TOP_K_KEY = "loader.profileTopK";
+    public static final String LOADER_MAX_REJECTS_KEY = "loader.maxRejects";
+    public static final String LOADER_REJECT_FILE_KEY = "loader.rejectFile";
+    public static final String LOADER_DRY_RUN_KEY = "loader.dryRun";
+    public static final String LOADER_DRY_RUN_SCHEMA_KEY = "loader.dryRunSchema";
+    public static final String LOADER_DRY_RUN_PARTITION_KEY_KEY = "loader.dryRunPartitionKey";
+    public static final String LOADER_DRY_RUN_LATENCY_MS_KEY = "loader.dryRunLatencyMs";
+    public static final String LOADER_DEDUP_KEY = "loader.dedup";
+    public static final String LOADER_DEDUP_POLICY_KEY = "loader.dedupPolicy";
+    public static final String LOADER_DEDUP_COLUMNS_KEY = "loader.dedupColumns";
+    public static final String LOADER_DEDUP_MAX_MEMORY_MB_KEY = "loader.dedupMaxMemoryMb";
+    public static final String LOADER_DEDUP_FALSE_POSITIVE_RATE_KEY = "loader.dedupFalsePositiveRate";
+    public static final String LOADER_DELTA_KEY = "loader.delta";
+    public static final String LOADER_DELTA_INDEX_KEY = "loader.deltaIndex";
+    public static final String LOADER_DELTA_DELETES_KEY = "loader.deltaDeletes";
+    public static final String LOADER_DICTIONARY_KEY = "loader.dictionary";
+    public static final String LOADER_DICTIONARY_SAMPLE_LINES_KEY = "loader.dictionarySampleLines";
+    public static final String LOADER_DICTIONARY_MAX_DISTINCT_KEY = "loader.dictionaryMaxDistinct";
+    public static final String LOADER_SCHEMA_CACHE_DIR_KEY = "loader.schemaCacheDir";
+    public static final String LOADER_WARMUP_LINES_KEY = "loader.warmupLines";
+    public static final String LOADER_SSTABLE_DIR_KEY = "loader.sstableDir";
+    public static final String LOADER_SSTABLE_SCHEMA_KEY = "loader.sstableSchema";
+    public static final String LOADER_SSTABLE_BUFFER_MB_KEY = "loader.sstableBufferMb";
+    public static final String LOADER_SSTABLE_MAX_SHAPES_KEY = "loader.sstableMaxShapes";
+    public static final String LOADER_SSTABLE_PARTITIONER_KEY = "loader.sstablePartitioner";
 
     public static final String SPARK_JANITOR_BATCH_DURATION_IN_SECONDS_KEY = "janitor.spark.batch_duration_in_s";
     public static final String SPARK_JANITOR_PARTITION_COUNT_KEY = "janitor.spark.partition_count";
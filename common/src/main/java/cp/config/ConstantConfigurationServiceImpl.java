@@ -51,6 +51,7 @@ public class ConstantConfigurationServiceImpl extends AbstractConfigurationServi
         VALUE_MAP.put(CASSANDRA_RETRY_PERIOD_IN_MS_KEY  , "10000");
         VALUE_MAP.put(CASSANDRA_SCALE_IN_MS_KEY         , "100");
         VALUE_MAP.put(CASSANDRA_UPDATE_RATE_IN_S_KEY    , "10");
+        VALUE_MAP.put(CASSANDRA_TOKEN_AWARE_KEY         , "false");
         VALUE_MAP.put(CASSANDRA_READ_TIMEOUT_IN_MS_KEY  , "60000");
 
         VALUE_MAP.put(VERTICA_HOSTNAME_KEY , "vclu1srvr1");
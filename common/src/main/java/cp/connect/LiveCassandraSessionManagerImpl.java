@@ -7,6 +7,7 @@ import com.datastax.driver.core.*;
 import com.datastax.driver.core.policies.LatencyAwarePolicy;
 import com.datastax.driver.core.policies.LoadBalancingPolicy;
 import com.datastax.driver.core.policies.RoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.google.common.base.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +53,11 @@ public class LiveCassandraSessionManagerImpl implements CassandraSessionManager
            .withScale(configService.getIntegerValue(CASSANDRA_SCALE_IN_MS_KEY), TimeUnit.MILLISECONDS) //older values of latency measurement are weighted, this tunes the weight given higher values means less weight
            .withUpdateRate(configService.getIntegerValue(CASSANDRA_UPDATE_RATE_IN_S_KEY), TimeUnit.SECONDS) //recalculate latency at this interval
            .build();
+        if (configService.getBooleanValue(CASSANDRA_TOKEN_AWARE_KEY, Boolean.FALSE)) {
+            // send statements that carry a routing key straight to a replica, falling back to the policy above
+            loadBalancingPolicy = new TokenAwarePolicy(loadBalancingPolicy);
+        }
+        log.info("  token aware routing:         {}", configService.getValue(CASSANDRA_TOKEN_AWARE_KEY));
 
         // Create session to hosts
         log.debug("Building cluster");
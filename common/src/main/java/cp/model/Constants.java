@@ -12,6 +12,7 @@ public class Constants {
     public final static String PERSON_JANITOR_STATUS = "person_janitor_status";
     public final static String ADDRESS_JANITOR_STATUS = "address_janitor_status";
     public final static String LOADER_STATUS_TABLE = "loader_status";
+    public final static String LOADER_STATUS_CHUNK_TABLE = "loader_status_chunks";
     public final static String CASS_UNAME = "cassandra";
     public final static String CASS_PWD = "cassandra";
     public final static String PERSON_DERIVED_FIELDS = "person_derived_fields";
@@ -92,6 +93,7 @@ public class Constants {
     public final static int JANITOR_DEFAULT_BATCH = 1000;
     public final static int LOAD_PUBLISH_DEFAULT_MAX = 1000000;
     public final static int LOAD_PUBLISH_DEFAULT_BATCH = 1000;
+    public final static int LOAD_STATUS_DEFAULT_CHUNK_ROWS = 4096;
 
     public static final int TIME_INTERVAL_TYPE_RESERVED = 000;
     public static final int TIME_INTERVAL_TYPE_KNOWN = 101;
@@ -144,6 +146,46 @@ public class Constants {
     public final static String HDFS_USERNAME = "mdrwf";
 
     public final static int PREPAREDSTATEMENT_CACHE_SIZE = 100;
+    public final static int LOADER_DEFAULT_CHUNK_LINES = 1000;
+    public final static int LOADER_DEFAULT_QUEUE_DEPTH_PER_THREAD = 4;
+    public final static int LOADER_DEFAULT_CHUNK_BYTES = 0;
+    public final static int LOADER_LINE_INDEX_CHUNK_BYTES = 8 * 1024 * 1024;
+    public final static int LOADER_DEFAULT_BATCH_ROWS = 20;
+    public final static int LOADER_DEFAULT_BATCH_DELAY_MS = 500;
+    public final static int LOADER_DEFAULT_BATCH_GROUPS = 1000;
+    public final static int LOADER_DEFAULT_CHECKPOINT_INTERVAL_MS = 0;
+    public final static String LOADER_CHECKPOINT_SUFFIX = ".checkpoint";
+    public final static int LOADER_DEFAULT_MIN_IN_FLIGHT = 4;
+    public final static int LOADER_DEFAULT_ADAPTIVE_MAX_IN_FLIGHT = 512;
+    public final static int LOADER_DEFAULT_TARGET_P99_MS = 100;
+    public final static double LOADER_DEFAULT_TARGET_ERROR_RATE = 0.01;
+    public final static double LOADER_ADAPTIVE_BACKOFF = 0.5;
+    public final static int LOADER_ADAPTIVE_INTERVAL_MS = 1000;
+    public final static int LOADER_DEFAULT_WRITE_RETRIES = 3;
+    public final static int LOADER_RETRY_BACKOFF_MS = 100;
+    public final static int LOADER_MAX_RETRY_BACKOFF_MS = 2000;
+    public final static int LOADER_DEFAULT_CONCURRENT_FILES = 4;
+    public final static int LOADER_DEFAULT_METRICS_INTERVAL_S = 10;
+    public final static String LOADER_PROFILE_SUFFIX = ".profile.json";
+    public final static int LOADER_DEFAULT_PROFILE_TOP_K = 10;
+    public final static String LOADER_REJECTS_SUFFIX = ".rejects.tsv";
+    public final static int LOADER_DEFAULT_MAX_REJECTS = 0;
+    public final static int LOADER_DECOMPRESS_BLOCK_BYTES = 1024 * 1024;
+    public final static int LOADER_DECOMPRESS_BLOCKS = 16;
+    public final static double LOADER_DEFAULT_DRY_RUN_LATENCY_MS = 1.0;
+    public final static int LOADER_DRY_RUN_SAMPLE_INTERVAL_MS = 100;
+    public final static String LOADER_DEFAULT_DEDUP = "none";
+    public final static String LOADER_DEFAULT_DEDUP_POLICY = "first";
+    public final static int LOADER_DEFAULT_DEDUP_MAX_MEMORY_MB = 256;
+    public final static double LOADER_DEFAULT_DEDUP_FALSE_POSITIVE_RATE = 0.001;
+    public final static String LOADER_DELTA_INDEX_SUFFIX = ".delta.idx";
+    public final static int LOADER_DEFAULT_DICTIONARY_SAMPLE_LINES = 10000;
+    public final static int LOADER_DEFAULT_DICTIONARY_MAX_DISTINCT = 4096;
+    public final static String LOADER_DEFAULT_SCHEMA_CACHE_DIR = "none";
+    public final static int LOADER_DEFAULT_WARMUP_LINES = 0;
+    public final static int LOADER_DEFAULT_SSTABLE_BUFFER_MB = 32;
+    public final static int LOADER_DEFAULT_SSTABLE_MAX_SHAPES = 16;
+    public final static String LOADER_DEFAULT_SSTABLE_PARTITIONER = "Murmur3Partitioner";
 
     public static final String PERSON_OBSERVED_QUEUE_KEY = "mdr.queue.janitor.person_observed.";
     public static final String ADDRESS_OBSERVED_QUEUE_KEY = "mdr.queue.janitor.address_observed.";
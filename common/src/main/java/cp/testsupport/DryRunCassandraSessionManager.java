@@ -0,0 +1,55 @@
+package cp.testsupport;
+
+import com.datastax.driver.core.Session;
+import cp.connect.CassandraSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CassandraSessionManager of a {@link StandInSession}, for running a load through the whole client without a
+ * cluster, to see how fast the client alone can go.
+ */
+public class DryRunCassandraSessionManager implements CassandraSessionManager {
+    private static final Logger log = LoggerFactory.getLogger(DryRunCassandraSessionManager.class);
+
+    private final StandInSession session;
+    private boolean active;
+
+    /**
+     * @param latency time from a write to its acknowledgement
+     */
+    public DryRunCassandraSessionManager(StandInTable table, long latency, TimeUnit unit) {
+        this.session = new StandInSession(table, latency, unit);
+        this.active = false;
+    }
+
+    public StandInSession getStandInSession() {
+        return session;
+    }
+
+    @Override
+    public void startCassandraClient() {
+        log.debug("Starting dry run Cassandra Session Manager for {}.{}", session.getTable().getKeyspace(),
+           session.getTable().getTable());
+        active = true;
+    }
+
+    @Override
+    public void stopCassandraClient() {
+        log.debug("Stopping dry run Cassandra Session Manager");
+        session.close();
+        active = false;
+    }
+
+    @Override
+    public Session getSession() {
+        return session;
+    }
+
+    @Override
+    public boolean isSessionActive() {
+        return active;
+    }
+}
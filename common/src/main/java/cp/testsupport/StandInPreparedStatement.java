@@ -0,0 +1,244 @@
+package cp.testsupport;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ColumnDefinitions.Definition;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedId;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An insert, or a delete by key, prepared against a {@link StandInTable}, without a cluster.
+ * <p/>
+ * The statement carries real bind variable metadata, so {@link #bind(Object...)} gives a driver
+ * {@link BoundStatement} that checks and serializes its values, and that has the routing key of its partition,
+ * just as it would against a live session. The driver keeps the constructors of that metadata to itself, so they
+ * are reached by reflection.
+ */
+public class StandInPreparedStatement implements PreparedStatement {
+    private static final Pattern INSERT = Pattern.compile("^\\s*INSERT\\s+INTO\\s+\\S+?\\s*\\((.*?)\\)\\s*VALUES",
+       Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern DELETE = Pattern.compile("^\\s*DELETE\\s+FROM\\s+\\S+\\s+WHERE\\s+(.*?)\\s*;?\\s*$",
+       Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern KEY_EQUALS = Pattern.compile("^(.+?)\\s*=\\s*\\?$");
+    // the protocol version of Cassandra 2.1, which the driver serializes bound values for
+    private static final ProtocolVersion PROTOCOL_VERSION = ProtocolVersion.V3;
+
+    private static final Constructor<Definition> DEFINITION;
+    private static final Constructor<ColumnDefinitions> DEFINITIONS;
+    private static final Constructor<PreparedId> PREPARED_ID;
+    private static final Method DIGEST;
+
+    static {
+        try {
+            DEFINITION = Definition.class.getDeclaredConstructor(String.class, String.class, String.class, DataType.class);
+            DEFINITION.setAccessible(true);
+            DEFINITIONS = ColumnDefinitions.class.getDeclaredConstructor(Definition[].class);
+            DEFINITIONS.setAccessible(true);
+            Class<?> digest = Class.forName("com.datastax.driver.core.MD5Digest");
+            DIGEST = digest.getDeclaredMethod("wrap", byte[].class);
+            DIGEST.setAccessible(true);
+            PREPARED_ID = PreparedId.class.getDeclaredConstructor(digest, ColumnDefinitions.class,
+               ColumnDefinitions.class, int[].class, ProtocolVersion.class);
+            PREPARED_ID.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String query;
+    private final String keyspace;
+    private final ColumnDefinitions variables;
+    private final PreparedId preparedId;
+    private volatile ByteBuffer routingKey;
+    private volatile ConsistencyLevel consistencyLevel;
+    private volatile ConsistencyLevel serialConsistencyLevel;
+    private volatile boolean tracing;
+    private volatile RetryPolicy retryPolicy;
+
+    private StandInPreparedStatement(String query, String keyspace, ColumnDefinitions variables, PreparedId preparedId) {
+        this.query = query;
+        this.keyspace = keyspace;
+        this.variables = variables;
+        this.preparedId = preparedId;
+    }
+
+    /**
+     * Prepare an insert into {@code table}, or a delete from it with a bind marker for every column it names.
+     *
+     * @throws InvalidQueryException if the query is neither, or names columns the table does not have
+     */
+    public static StandInPreparedStatement prepare(StandInTable table, String query) {
+        List<String> columns = new ArrayList<>();
+        Matcher insert = INSERT.matcher(query);
+        Matcher delete = DELETE.matcher(query);
+        if (insert.find()) {
+            for (String column : Splitter.on(',').trimResults().omitEmptyStrings().split(insert.group(1))) {
+                columns.add(column(table, column));
+            }
+        } else if (delete.find()) {
+            for (String condition : Splitter.onPattern("(?i)\\s+AND\\s+").trimResults().split(delete.group(1))) {
+                Matcher equals = KEY_EQUALS.matcher(condition);
+                if (!equals.find()) {
+                    throw new InvalidQueryException("Only deletes by bound key values can be prepared without a cluster: " +
+                       query);
+                }
+                columns.add(column(table, equals.group(1)));
+            }
+        } else {
+            throw new InvalidQueryException("Only inserts and deletes can be prepared without a cluster: " + query);
+        }
+        try {
+            Definition[] definitions = new Definition[columns.size()];
+            for (int i = 0; i < definitions.length; i++) {
+                definitions[i] = DEFINITION.newInstance(table.getKeyspace(), table.getTable(), columns.get(i),
+                   table.getColumns().get(columns.get(i)));
+            }
+            ColumnDefinitions variables = DEFINITIONS.newInstance((Object) definitions);
+            PreparedId id = PREPARED_ID.newInstance(
+               DIGEST.invoke(null, (Object) Hashing.md5().hashString(query, StandardCharsets.UTF_8).asBytes()),
+               variables, DEFINITIONS.newInstance((Object) new Definition[0]), routingKeyIndexes(table, columns),
+               PROTOCOL_VERSION);
+            return new StandInPreparedStatement(query, table.getKeyspace(), variables, id);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to build the metadata of " + query, e);
+        }
+    }
+
+    private static String column(StandInTable table, String column) {
+        // quoted identifiers keep their case, as in CQL
+        String name = column.startsWith("\"") ? column.substring(1, column.length() - 1).replace("\"\"", "\"") :
+           column.toLowerCase();
+        if (!table.getColumns().containsKey(name)) {
+            throw new InvalidQueryException("Undefined column name " + name + " in table " + table.getKeyspace() +
+               "." + table.getTable());
+        }
+        return name;
+    }
+
+    /**
+     * @return the position of every partition key column among the bind variables, or null if the statement does
+     * not name the whole partition key
+     */
+    private static int[] routingKeyIndexes(StandInTable table, List<String> columns) {
+        int[] indexes = new int[table.getPartitionKey().size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = columns.indexOf(table.getPartitionKey().get(i));
+            if (indexes[i] < 0) {
+                return null;
+            }
+        }
+        return indexes;
+    }
+
+    @Override
+    public ColumnDefinitions getVariables() {
+        return variables;
+    }
+
+    @Override
+    public BoundStatement bind(Object... values) {
+        return new BoundStatement(this).bind(values);
+    }
+
+    @Override
+    public BoundStatement bind() {
+        return new BoundStatement(this);
+    }
+
+    @Override
+    public PreparedStatement setRoutingKey(ByteBuffer routingKey) {
+        this.routingKey = routingKey;
+        return this;
+    }
+
+    @Override
+    public PreparedStatement setRoutingKey(ByteBuffer... routingKeyComponents) {
+        throw new UnsupportedOperationException("Composite routing keys come from the partition key of the table");
+    }
+
+    @Override
+    public ByteBuffer getRoutingKey() {
+        return routingKey;
+    }
+
+    @Override
+    public PreparedStatement setConsistencyLevel(ConsistencyLevel consistency) {
+        this.consistencyLevel = consistency;
+        return this;
+    }
+
+    @Override
+    public ConsistencyLevel getConsistencyLevel() {
+        return consistencyLevel;
+    }
+
+    @Override
+    public PreparedStatement setSerialConsistencyLevel(ConsistencyLevel serialConsistency) {
+        this.serialConsistencyLevel = serialConsistency;
+        return this;
+    }
+
+    @Override
+    public ConsistencyLevel getSerialConsistencyLevel() {
+        return serialConsistencyLevel;
+    }
+
+    @Override
+    public String getQueryString() {
+        return query;
+    }
+
+    @Override
+    public String getQueryKeyspace() {
+        return keyspace;
+    }
+
+    @Override
+    public PreparedStatement enableTracing() {
+        this.tracing = true;
+        return this;
+    }
+
+    @Override
+    public PreparedStatement disableTracing() {
+        this.tracing = false;
+        return this;
+    }
+
+    @Override
+    public boolean isTracing() {
+        return tracing;
+    }
+
+    @Override
+    public PreparedStatement setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+        return this;
+    }
+
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    @Override
+    public PreparedId getPreparedId() {
+        return preparedId;
+    }
+}
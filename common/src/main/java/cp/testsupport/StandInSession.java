@@ -0,0 +1,374 @@
+package cp.testsupport;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A session without a cluster behind it, that acknowledges every write after a fixed synthetic latency.
+ * <p/>
+ * It knows one {@link StandInTable}: it answers the schema queries of a loader about that table, and prepares
+ * inserts into it as {@link StandInPreparedStatement}s, so mapping, conversion and binding run as they would
+ * against a cluster. Writes are acknowledged from a thread of its own, as the driver does from its I/O threads.
+ * Only the schema answers and the cluster metadata are Mockito mocks; the write path is plain code, so that it
+ * costs about as little as the driver does and does not skew a measurement of the client.
+ * <p/>
+ * The cluster metadata has no ring, so grouping writes by replica puts them all in one group.
+ */
+public class StandInSession implements Session {
+    private final StandInTable table;
+    private final long latencyNanos;
+    private final ScheduledExecutorService acks;
+    private final Cluster cluster;
+    private final ResultSet acknowledged;
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder schemaQueries = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+    private volatile boolean closed = false;
+
+    /**
+     * @param latency time from a write to its acknowledgement
+     */
+    public StandInSession(StandInTable table, long latency, TimeUnit unit) {
+        this.table = table;
+        this.latencyNanos = unit.toNanos(latency);
+        this.acks = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+           .setNameFormat("stand-in-ack-%d")
+           .setDaemon(true)
+           .build());
+        this.cluster = mock(Cluster.class);
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getClusterName()).thenReturn("stand-in");
+        when(cluster.getMetadata()).thenReturn(metadata);
+        this.acknowledged = mock(ResultSet.class);
+        when(acknowledged.wasApplied()).thenReturn(true);
+        when(acknowledged.isExhausted()).thenReturn(true);
+        when(acknowledged.isFullyFetched()).thenReturn(true);
+    }
+
+    public StandInTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return writes acknowledged so far, a batch counting once
+     */
+    public long getWritesAcknowledged() {
+        return writes.sum();
+    }
+
+    /**
+     * @return rows acknowledged so far, every statement of a batch counting once
+     */
+    public long getRowsAcknowledged() {
+        return rows.sum();
+    }
+
+    /**
+     * @return the most writes that were waiting for their acknowledgement at once
+     */
+    public long getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * @return queries answered on the schema tables or on the table itself, which a loader makes to learn the
+     * schema
+     */
+    public long getSchemaQueries() {
+        return schemaQueries.sum();
+    }
+
+    @Override
+    public String getLoggedKeyspace() {
+        return null;
+    }
+
+    @Override
+    public Session init() {
+        return this;
+    }
+
+    @Override
+    public ResultSet execute(String query) {
+        return execute(new SimpleStatement(query));
+    }
+
+    @Override
+    public ResultSet execute(String query, Object... values) {
+        return execute(new SimpleStatement(query, values));
+    }
+
+    @Override
+    public ResultSet execute(Statement statement) {
+        if (statement instanceof RegularStatement) {
+            // built statements only inline their values in their string form
+            String query = statement.toString();
+            if (query.trim().toUpperCase().startsWith("SELECT")) {
+                return select(query);
+            }
+        }
+        return executeAsync(statement).getUninterruptibly();
+    }
+
+    /**
+     * Answer the schema queries about the table: whether it exists, its columns, and the types of its columns
+     * from a select on it, and the schema version, which stays the same for as long as the table does. A select on
+     * any other table fails, as on a cluster that does not have it.
+     */
+    private ResultSet select(String query) {
+        String lower = query.toLowerCase();
+        boolean aboutTable = lower.contains("'" + table.getKeyspace().toLowerCase() + "'") &&
+           lower.contains("'" + table.getTable().toLowerCase() + "'");
+        List<Row> found = new ArrayList<>();
+        ColumnDefinitions definitions = null;
+        if (lower.contains("system.local")) {
+            Row row = mock(Row.class);
+            when(row.getUUID("schema_version")).thenReturn(UUID.nameUUIDFromBytes((table.getKeyspace() + "." +
+               table.getTable() + table.getColumns() + table.getPartitionKey() + table.getClusteringKey()).getBytes(StandardCharsets.UTF_8)));
+            found.add(row);
+        } else if (lower.contains("system.schema_columnfamilies")) {
+            schemaQueries.increment();
+            if (aboutTable) {
+                found.add(mock(Row.class));
+            }
+        } else if (lower.contains("system.schema_columns")) {
+            schemaQueries.increment();
+            if (aboutTable) {
+                for (String column : table.getColumns().keySet()) {
+                    Row row = mock(Row.class);
+                    int component = table.getPartitionKey().indexOf(column);
+                    String kind = component >= 0 ? "partition_key" : "regular";
+                    if (component < 0 && (component = table.getClusteringKey().indexOf(column)) >= 0) {
+                        kind = "clustering_key";
+                    }
+                    when(row.getString("column_name")).thenReturn(column);
+                    when(row.getString("type")).thenReturn(kind);
+                    when(row.getInt("component_index")).thenReturn(Math.max(component, 0));
+                    when(row.isNull("component_index")).thenReturn(component < 0);
+                    found.add(row);
+                }
+            }
+        } else if (lower.matches("(?s).*\\sfrom\\s+\"?" + Pattern.quote(table.getKeyspace().toLowerCase()) +
+           "\"?\\.\"?" + Pattern.quote(table.getTable().toLowerCase()) + "\"?[\\s;].*")) {
+            schemaQueries.increment();
+            definitions = StandInPreparedStatement.prepare(table, insertOfAllColumns()).getVariables();
+        } else {
+            throw new InvalidQueryException("unconfigured table; only " + table.getKeyspace() + "." +
+               table.getTable() + " is known without a cluster: " + query);
+        }
+        ResultSet result = mock(ResultSet.class);
+        when(result.one()).thenReturn(found.isEmpty() ? null : found.get(0));
+        when(result.all()).thenReturn(found);
+        when(result.iterator()).thenAnswer(invocation -> found.iterator());
+        when(result.isExhausted()).thenReturn(found.isEmpty());
+        when(result.getColumnDefinitions()).thenReturn(definitions);
+        return result;
+    }
+
+    private String insertOfAllColumns() {
+        List<String> columns = new ArrayList<>();
+        for (String column : table.getColumns().keySet()) {
+            columns.add('"' + column + '"');
+        }
+        return "INSERT INTO " + table.getKeyspace() + "." + table.getTable() + "(" + String.join(",", columns) +
+           ") VALUES (" + String.join(",", Collections.nCopies(columns.size(), "?")) + ")";
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(String query) {
+        return executeAsync(new SimpleStatement(query));
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(String query, Object... values) {
+        return executeAsync(new SimpleStatement(query, values));
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(Statement statement) {
+        Ack ack = new Ack();
+        if (closed) {
+            ack.setException(new IllegalStateException("Could not send request, session is closed"));
+            return ack;
+        }
+        int statementRows = statement instanceof BatchStatement ? ((BatchStatement) statement).size() : 1;
+        maxInFlight.accumulate(inFlight.incrementAndGet());
+        Runnable acknowledge = () -> {
+            inFlight.decrementAndGet();
+            writes.increment();
+            rows.add(statementRows);
+            ack.set(acknowledged);
+        };
+        if (latencyNanos > 0) {
+            acks.schedule(acknowledge, latencyNanos, TimeUnit.NANOSECONDS);
+        } else {
+            acks.execute(acknowledge);
+        }
+        return ack;
+    }
+
+    @Override
+    public PreparedStatement prepare(String query) {
+        return StandInPreparedStatement.prepare(table, query);
+    }
+
+    @Override
+    public PreparedStatement prepare(RegularStatement statement) {
+        return prepare(statement.getQueryString());
+    }
+
+    @Override
+    public ListenableFuture<PreparedStatement> prepareAsync(String query) {
+        try {
+            return Futures.immediateFuture(prepare(query));
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<PreparedStatement> prepareAsync(RegularStatement statement) {
+        return prepareAsync(statement.getQueryString());
+    }
+
+    /**
+     * Close at once, as there is nothing to wait for.
+     *
+     * @return a future that is already done
+     */
+    @Override
+    public CloseFuture closeAsync() {
+        close();
+        // the driver keeps the constructor of CloseFuture to itself
+        CloseFuture done = mock(CloseFuture.class);
+        when(done.isDone()).thenReturn(true);
+        when(done.force()).thenReturn(done);
+        doAnswer(invocation -> {
+            ((Executor) invocation.getArguments()[1]).execute((Runnable) invocation.getArguments()[0]);
+            return null;
+        }).when(done).addListener(any(Runnable.class), any(Executor.class));
+        return done;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        acks.shutdown();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * @return the state of a session without hosts, connections or queries
+     */
+    @Override
+    public State getState() {
+        return new State() {
+            @Override
+            public Session getSession() {
+                return StandInSession.this;
+            }
+
+            @Override
+            public Collection<Host> getConnectedHosts() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public int getOpenConnections(Host host) {
+                return 0;
+            }
+
+            @Override
+            public int getTrashedConnections(Host host) {
+                return 0;
+            }
+
+            @Override
+            public int getInFlightQueries(Host host) {
+                return 0;
+            }
+        };
+    }
+
+    private static final class Ack extends AbstractFuture<ResultSet> implements ResultSetFuture {
+        @Override
+        protected boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) throws TimeoutException {
+            try {
+                return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package cp.testsupport;
+
+import com.datastax.driver.core.DataType;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one table a {@link StandInSession} knows about: its columns with their types, and its primary key.
+ * <p/>
+ * The columns are given as a comma separated list of {@code column:type}, with types as in CQL, for instance
+ * {@code id:uuid,name:text,tags:set<text>,scores:map<text,int>}.
+ */
+public class StandInTable {
+    private final String keyspace;
+    private final String table;
+    private final Map<String, DataType> columns;
+    private final List<String> partitionKey;
+    private final List<String> clusteringKey;
+
+    public StandInTable(String keyspace, String table, Map<String, DataType> columns, List<String> partitionKey) {
+        this(keyspace, table, columns, partitionKey, Collections.emptyList());
+    }
+
+    /**
+     * @param clusteringKey the clustering columns in key order
+     */
+    public StandInTable(String keyspace, String table, Map<String, DataType> columns, List<String> partitionKey,
+                        List<String> clusteringKey) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Table " + keyspace + "." + table + " needs at least one column");
+        }
+        for (String column : partitionKey) {
+            if (!columns.containsKey(column)) {
+                throw new IllegalArgumentException("Partition key column " + column + " is not a column of " +
+                   keyspace + "." + table);
+            }
+        }
+        for (String column : clusteringKey) {
+            if (!columns.containsKey(column) || partitionKey.contains(column)) {
+                throw new IllegalArgumentException("Clustering column " + column + " is not a column of " + keyspace +
+                   "." + table + " outside its partition key");
+            }
+        }
+        this.keyspace = keyspace;
+        this.table = table;
+        this.columns = Collections.unmodifiableMap(new LinkedHashMap<>(columns));
+        this.partitionKey = ImmutableList.copyOf(partitionKey);
+        this.clusteringKey = ImmutableList.copyOf(clusteringKey);
+    }
+
+    /**
+     * @param columns      comma separated {@code column:type} list
+     * @param partitionKey comma separated partition key columns; the first column if null or empty
+     */
+    public static StandInTable parse(String keyspace, String table, String columns, String partitionKey) {
+        if (Strings.isNullOrEmpty(columns)) {
+            throw new IllegalArgumentException("No columns given for " + keyspace + "." + table);
+        }
+        Map<String, DataType> columnTypes = new LinkedHashMap<>();
+        for (String column : splitTopLevel(columns)) {
+            int colon = column.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Column " + column + " is not of the form column:type");
+            }
+            columnTypes.put(column.substring(0, colon).trim().toLowerCase(), parseType(column.substring(colon + 1)));
+        }
+        List<String> key = new ArrayList<>();
+        if (Strings.isNullOrEmpty(partitionKey)) {
+            key.add(columnTypes.keySet().iterator().next());
+        } else {
+            for (String column : Splitter.on(',').trimResults().omitEmptyStrings().split(partitionKey)) {
+                key.add(column.toLowerCase());
+            }
+        }
+        return new StandInTable(keyspace, table, columnTypes, key);
+    }
+
+    /**
+     * @return the type of a CQL type name, collections included
+     */
+    public static DataType parseType(String type) {
+        String name = type.trim().toLowerCase();
+        int open = name.indexOf('<');
+        if (open < 0) {
+            for (DataType primitive : DataType.allPrimitiveTypes()) {
+                if (primitive.getName().toString().equals(name)) {
+                    return primitive;
+                }
+            }
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+        if (!name.endsWith(">")) {
+            throw new IllegalArgumentException("Unbalanced type " + type);
+        }
+        String outer = name.substring(0, open).trim();
+        String inner = name.substring(open + 1, name.length() - 1);
+        switch (outer) {
+            case "frozen":
+                DataType frozen = parseType(inner);
+                List<DataType> arguments = frozen.getTypeArguments();
+                switch (frozen.getName()) {
+                    case LIST:
+                        return DataType.frozenList(arguments.get(0));
+                    case SET:
+                        return DataType.frozenSet(arguments.get(0));
+                    case MAP:
+                        return DataType.frozenMap(arguments.get(0), arguments.get(1));
+                    default:
+                        return frozen;
+                }
+            case "list":
+                return DataType.list(parseType(inner));
+            case "set":
+                return DataType.set(parseType(inner));
+            case "map":
+                List<String> keyAndValue = splitTopLevel(inner);
+                if (keyAndValue.size() != 2) {
+                    throw new IllegalArgumentException("A map needs a key and a value type: " + type);
+                }
+                return DataType.map(parseType(keyAndValue.get(0)), parseType(keyAndValue.get(1)));
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+    }
+
+    /**
+     * Split on the commas that are not within the angle brackets of a collection type.
+     */
+    private static List<String> splitTopLevel(String list) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < list.length(); i++) {
+            char c = list.charAt(i);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(list.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        parts.add(list.substring(start).trim());
+        parts.removeIf(String::isEmpty);
+        return parts;
+    }
+
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the type of every column, in the order given
+     */
+    public Map<String, DataType> getColumns() {
+        return columns;
+    }
+
+    public List<String> getPartitionKey() {
+        return partitionKey;
+    }
+
+    public List<String> getClusteringKey() {
+        return clusteringKey;
+    }
+}
@@ -0,0 +1,260 @@
+package cp.util;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits lines into delimited fields in place: a field is a pair of offsets into its line, so splitting a line
+ * creates no strings and no arrays, and the text of a field only becomes a string when it is asked for.
+ * <p/>
+ * A tokenizer is reused from line to line, and its offsets grow to the line with the most fields. Without
+ * quoting, as in the TSV files of the loader and the exporter, every delimiter ends a field. With quoting, as in
+ * CSV, a field that starts with a double quote runs to its closing quote, delimiters within it included, and two
+ * double quotes within it stand for one, the way {@link DelimitedUtil#csvEscape} writes them. The offsets of a
+ * quoted field are those of the text within its quotes.
+ * <p/>
+ * Not thread safe: every thread tokenizes with a tokenizer of its own.
+ */
+public final class FieldTokenizer {
+    private static final char DOUBLE_QUOTE = '"';
+    private static final int INITIAL_FIELDS = 16;
+    private static final byte QUOTED = 1;
+    // the text of the field holds doubled quotes, or text after its closing quote, so it is not a plain range
+    private static final byte ESCAPED = 2;
+
+    private final char delimiter;
+    private final boolean quoting;
+
+    private CharSequence line;
+    private int count;
+    private int[] starts = new int[INITIAL_FIELDS];
+    private int[] ends = new int[INITIAL_FIELDS];
+    private byte[] flags = new byte[INITIAL_FIELDS];
+
+    /**
+     * @param quoting whether a double quote at the start of a field quotes it
+     */
+    public FieldTokenizer(char delimiter, boolean quoting) {
+        this.delimiter = delimiter;
+        this.quoting = quoting;
+    }
+
+    /**
+     * @return a tokenizer of tab separated fields, without quoting
+     */
+    public static FieldTokenizer tabs() {
+        return new FieldTokenizer('\t', false);
+    }
+
+    /**
+     * @return a tokenizer of comma separated fields, with quoting
+     */
+    public static FieldTokenizer csv() {
+        return new FieldTokenizer(',', true);
+    }
+
+    /**
+     * Split a line into its fields, which can be read until the next line is split.
+     *
+     * @param line the line without its terminator; a reused buffer is not to change while its fields are read
+     * @return the number of fields; an empty line has a single empty field, like a line that ends with a
+     * delimiter has an empty last field
+     */
+    public int tokenize(CharSequence line) {
+        this.line = line;
+        count = 0;
+        int length = line.length();
+        int position = 0;
+        while (true) {
+            if (quoting && position < length && line.charAt(position) == DOUBLE_QUOTE) {
+                position = quoted(position, length);
+            } else {
+                int end = nextDelimiter(position, length);
+                add(position, end, (byte) 0);
+                position = end;
+            }
+            if (position >= length) {
+                return count;
+            }
+            // past the delimiter
+            position++;
+        }
+    }
+
+    /**
+     * Add the quoted field that opens at {@code open}.
+     *
+     * @return the position of the delimiter after the field, or the length of the line
+     */
+    private int quoted(int open, int length) {
+        byte fieldFlags = QUOTED;
+        int i = open + 1;
+        while (i < length) {
+            if (line.charAt(i) == DOUBLE_QUOTE) {
+                if (i + 1 < length && line.charAt(i + 1) == DOUBLE_QUOTE) {
+                    fieldFlags |= ESCAPED;
+                    i += 2;
+                    continue;
+                }
+                break;
+            }
+            i++;
+        }
+        if (i >= length) {
+            // never closed: the field runs to the end of the line
+            add(open + 1, length, fieldFlags);
+            return length;
+        }
+        int end = nextDelimiter(i + 1, length);
+        if (end == i + 1) {
+            add(open + 1, i, fieldFlags);
+        } else {
+            // text after the closing quote belongs to the field too
+            add(open + 1, end, (byte) (fieldFlags | ESCAPED));
+        }
+        return end;
+    }
+
+    private int nextDelimiter(int from, int length) {
+        if (line instanceof String) {
+            int found = ((String) line).indexOf(delimiter, from);
+            return found < 0 ? length : found;
+        }
+        for (int i = from; i < length; i++) {
+            if (line.charAt(i) == delimiter) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private void add(int start, int end, byte fieldFlags) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            flags = Arrays.copyOf(flags, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        flags[count] = fieldFlags;
+        count++;
+    }
+
+    /**
+     * @return the fields of the last line
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the line the fields are in
+     */
+    public CharSequence line() {
+        return line;
+    }
+
+    /**
+     * @return the offset in the line of the first character of the field
+     */
+    public int start(int field) {
+        check(field);
+        return starts[field];
+    }
+
+    /**
+     * @return the offset in the line after the last character of the field
+     */
+    public int end(int field) {
+        check(field);
+        return ends[field];
+    }
+
+    public boolean isEmpty(int field) {
+        check(field);
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * @return whether the field was within double quotes
+     */
+    public boolean isQuoted(int field) {
+        check(field);
+        return (flags[field] & QUOTED) != 0;
+    }
+
+    /**
+     * @return whether the text of the field is the range {@code [start, end)} of the line as it is; otherwise it
+     * holds quotes to take out, and reading it creates a string
+     */
+    public boolean isPlain(int field) {
+        check(field);
+        return (flags[field] & ESCAPED) == 0;
+    }
+
+    /**
+     * @return the text of the field, as a view of the line when it is plain
+     */
+    public CharSequence view(int field) {
+        return isPlain(field) ? CharBuffer.wrap(line, starts[field], ends[field]) : unescape(field);
+    }
+
+    /**
+     * @return the text of the field as a new string
+     */
+    public String string(int field) {
+        if (!isPlain(field)) {
+            return unescape(field);
+        }
+        if (line instanceof String) {
+            return ((String) line).substring(starts[field], ends[field]);
+        }
+        return line.subSequence(starts[field], ends[field]).toString();
+    }
+
+    /**
+     * @return the canonical instance of the text of the field in the dictionary, created without a string of
+     * its own when the field is plain
+     */
+    public String intern(int field, StringDictionary dictionary) {
+        return isPlain(field) ? dictionary.intern(line, starts[field], ends[field]) : dictionary.intern(unescape(field));
+    }
+
+    /**
+     * @return the text of every field, as new strings
+     */
+    public List<String> toList() {
+        List<String> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fields.add(string(i));
+        }
+        return fields;
+    }
+
+    /**
+     * Two double quotes stand for one; any other double quote, such as the closing one of a field with text
+     * after it, is left out.
+     */
+    private String unescape(int field) {
+        int end = ends[field];
+        StringBuilder text = new StringBuilder(end - starts[field]);
+        for (int i = starts[field]; i < end; i++) {
+            char c = line.charAt(i);
+            if (c != DOUBLE_QUOTE) {
+                text.append(c);
+            } else if (i + 1 < end && line.charAt(i + 1) == DOUBLE_QUOTE) {
+                text.append(DOUBLE_QUOTE);
+                i++;
+            }
+        }
+        return text.toString();
+    }
+
+    private void check(int field) {
+        if (field < 0 || field >= count) {
+            throw new IndexOutOfBoundsException("Field " + field + " of a line of " + count + " fields");
+        }
+    }
+}
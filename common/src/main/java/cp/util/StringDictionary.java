@@ -0,0 +1,204 @@
+package cp.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Canonical instances of a bounded set of strings, looked up straight from a range of characters.
+ * <p/>
+ * Meant for values that repeat a great deal, such as the states or cities of a column: a value already in the
+ * dictionary is found without creating a string for it, so a cell of such a column costs no allocation at all.
+ * The strings are spread over shards by hash, each an open-addressing table. Lookups read the table of their
+ * shard without a lock; only adding a value takes the lock of its shard. Once the dictionary holds its maximum
+ * number of values it stops growing, and new values are returned as new strings, which are counted as overflow.
+ */
+public class StringDictionary {
+    private static final int SHARDS = 16;
+    private static final int INITIAL_SLOTS = 64;
+
+    private final int maxShardSize;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param maxSize values the dictionary holds at most
+     */
+    public StringDictionary(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("A dictionary must hold at least one value, was " + maxSize);
+        }
+        this.maxShardSize = (int) (((long) maxSize + SHARDS - 1) / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * @return the canonical instance of {@code value}, or null for null
+     */
+    public String intern(String value) {
+        return value == null ? null : intern(value, 0, value.length());
+    }
+
+    /**
+     * @return the canonical instance of the characters {@code [start, end)} of {@code chars}
+     */
+    public String intern(CharSequence chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        Shard shard = shards[(hash >>> 28) & (SHARDS - 1)];
+        String found = shard.find(chars, start, end, hash);
+        if (found != null) {
+            hits.increment();
+            return found;
+        }
+        return shard.add(chars, start, end, hash);
+    }
+
+    /**
+     * @return lookups that found their value in the dictionary
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return lookups that added their value to the dictionary
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return lookups whose value found no room in the dictionary
+     */
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    /**
+     * @return share of lookups that found their value in the dictionary
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses() + getOverflows();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return values in the dictionary
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        // spread the bits, since the top ones pick the shard and the bottom ones the slot
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static boolean matches(String value, CharSequence chars, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        // replaced as a whole when the table grows; a reader sees either table, and strings are safely published
+        private volatile Table table = new Table(INITIAL_SLOTS);
+        private int size;
+
+        private String find(CharSequence chars, int start, int end, int hash) {
+            Table table = this.table;
+            int mask = table.values.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                String value = table.values[slot];
+                if (value == null) {
+                    return null;
+                }
+                if (table.hashes[slot] == hash && matches(value, chars, start, end)) {
+                    return value;
+                }
+            }
+        }
+
+        private String add(CharSequence chars, int start, int end, int hash) {
+            lock.lock();
+            try {
+                // another thread may have added it since the lookup
+                String value = find(chars, start, end, hash);
+                if (value != null) {
+                    hits.increment();
+                    return value;
+                }
+                value = chars.subSequence(start, end).toString();
+                if (size >= maxShardSize) {
+                    overflows.increment();
+                    return value;
+                }
+                Table table = this.table;
+                if ((size + 1) * 2 > table.values.length) {
+                    table = table.grow();
+                }
+                table.put(value, hash);
+                // publishing the table after the put makes the new value visible to lock-free readers
+                this.table = table;
+                size++;
+                misses.increment();
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Table {
+        private final String[] values;
+        private final int[] hashes;
+
+        private Table(int slots) {
+            values = new String[slots];
+            hashes = new int[slots];
+        }
+
+        private void put(String value, int hash) {
+            int mask = values.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            // a reader racing with the put may miss the value, and then finds it under the lock
+            hashes[slot] = hash;
+            values[slot] = value;
+        }
+
+        private Table grow() {
+            Table grown = new Table(values.length * 2);
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null) {
+                    grown.put(values[slot], hashes[slot]);
+                }
+            }
+            return grown;
+        }
+    }
+}
@@ -17,22 +17,22 @@ public class ValueCache {
     }
 
     /**
-     * TODO: Evaluate discarding String or potentially all of these interners when upgrading to Java 8
-     * (See https://code.google.com/p/guava-libraries/issues/detail?id=399 for more information
-     * about context of doing it this way and which specific jvm platform versions the below
-     * addresses)
+     * Strings go through {@link StringDictionary}s, which find a value already interned without a lock. The
+     * dictionary behind {@link #intern(String)} is bounded, in place of the weak references that let the values
+     * of a weak interner go: past the bound, values are no longer interned.
      */
+    private static final int MAX_INTERNED_STRINGS = 1 << 16;
 
-    private static final Interner<String> weakStringCache = Interners.newWeakInterner();
+    private static final StringDictionary stringCache = new StringDictionary(MAX_INTERNED_STRINGS);
 
     public static String intern(@Nullable String src) {
         if (src == null)
             return null;
 
-        return weakStringCache.intern(src);
+        return stringCache.intern(src);
     }
 
-    private static final Interner<String> strongStringCache = Interners.newStrongInterner();
+    private static final StringDictionary strongStringCache = new StringDictionary(Integer.MAX_VALUE);
 
     public static String internStrong(@Nullable String src) {
         if (src == null)
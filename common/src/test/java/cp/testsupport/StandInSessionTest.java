@@ -0,0 +1,161 @@
+package cp.testsupport;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.base.Stopwatch;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StandInSessionTest {
+
+    private static StandInTable people() {
+        return StandInTable.parse("ks", "people", "id:uuid, name:text, age:int, tags:set<text>, scores:map<text,int>",
+           null);
+    }
+
+    @Test
+    public void testParsesColumnsAndTypes() {
+        StandInTable table = people();
+
+        assertThat(table.getColumns().keySet()).containsExactly("id", "name", "age", "tags", "scores");
+        assertThat(table.getColumns().get("age")).isEqualTo(DataType.cint());
+        assertThat(table.getColumns().get("tags")).isEqualTo(DataType.set(DataType.text()));
+        assertThat(table.getColumns().get("scores")).isEqualTo(DataType.map(DataType.text(), DataType.cint()));
+        assertThat(table.getPartitionKey()).containsExactly("id");
+        assertThat(StandInTable.parseType("frozen<list<bigint>>")).isEqualTo(DataType.frozenList(DataType.bigint()));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsUnknownTypes() {
+        StandInTable.parse("ks", "people", "id:uuid,name:string", null);
+    }
+
+    @Test
+    public void testAnswersSchemaQueries() {
+        StandInSession session = new StandInSession(people(), 0, TimeUnit.MILLISECONDS);
+
+        assertThat(session.execute(QueryBuilder.select("keyspace_name", "columnfamily_name")
+           .from("system", "schema_columnfamilies")
+           .where(QueryBuilder.eq("keyspace_name", "ks"))
+           .and(QueryBuilder.eq("columnfamily_name", "people"))).one()).isNotNull();
+        assertThat(session.execute(QueryBuilder.select("keyspace_name", "columnfamily_name")
+           .from("system", "schema_columnfamilies")
+           .where(QueryBuilder.eq("keyspace_name", "ks"))
+           .and(QueryBuilder.eq("columnfamily_name", "places"))).one()).isNull();
+
+        List<String> columns = new ArrayList<>();
+        for (Row row : session.execute(QueryBuilder.select("keyspace_name", "columnfamily_name", "column_name", "type")
+           .from("system", "schema_columns")
+           .where(QueryBuilder.eq("keyspace_name", "ks"))
+           .and(QueryBuilder.eq("columnfamily_name", "people"))).all()) {
+            columns.add(row.getString("column_name"));
+        }
+        assertThat(columns).containsExactly("id", "name", "age", "tags", "scores");
+
+        ColumnDefinitions definitions = session.execute(QueryBuilder.select("name", "age").from("ks", "people").limit(1))
+           .getColumnDefinitions();
+        assertThat(definitions.getType("age")).isEqualTo(DataType.cint());
+        session.close();
+    }
+
+    @Test(expectedExceptions = InvalidQueryException.class)
+    public void testSelectOnAnotherTableFails() {
+        new StandInSession(people(), 0, TimeUnit.MILLISECONDS).execute("SELECT a FROM ks.places LIMIT 1");
+    }
+
+    @Test
+    public void testBindsInsertsWithTheirRoutingKey() {
+        StandInSession session = new StandInSession(people(), 0, TimeUnit.MILLISECONDS);
+        PreparedStatement insert = session.prepare("INSERT INTO \"ks\".\"people\"(id,\"name\",age) VALUES (?,?,?);");
+        UUID id = UUID.randomUUID();
+
+        BoundStatement bound = insert.bind(id, "Alice", 42);
+
+        assertThat(bound.getUUID("id")).isEqualTo(id);
+        assertThat(bound.getInt("age")).isEqualTo(42);
+        assertThat(bound.getRoutingKey()).isEqualTo(DataType.uuid().serialize(id, ProtocolVersion.V3));
+        assertThat(session.prepare("INSERT INTO ks.people(name) VALUES (?)").bind("Bob").getRoutingKey()).isNull();
+        session.close();
+    }
+
+    @Test
+    public void testPreparesDeletesByKey() {
+        StandInSession session = new StandInSession(people(), 0, TimeUnit.MILLISECONDS);
+        UUID id = UUID.randomUUID();
+
+        BoundStatement bound = session.prepare(QueryBuilder.delete().from("ks", "people")
+           .where(QueryBuilder.eq("id", QueryBuilder.bindMarker())).getQueryString()).bind(id);
+
+        assertThat(bound.getRoutingKey()).isEqualTo(DataType.uuid().serialize(id, ProtocolVersion.V3));
+        session.execute(bound);
+        assertThat(session.getRowsAcknowledged()).isEqualTo(1);
+        session.close();
+    }
+
+    @Test(expectedExceptions = InvalidTypeException.class)
+    public void testBindingChecksTypes() {
+        new StandInSession(people(), 0, TimeUnit.MILLISECONDS)
+           .prepare("INSERT INTO ks.people(id,age) VALUES (?,?)")
+           .bind(UUID.randomUUID(), "forty-two");
+    }
+
+    @Test(expectedExceptions = InvalidQueryException.class)
+    public void testPreparingAnUnknownColumnFails() {
+        new StandInSession(people(), 0, TimeUnit.MILLISECONDS).prepare("INSERT INTO ks.people(id,height) VALUES (?,?)");
+    }
+
+    @Test
+    public void testAcknowledgesWritesAfterTheLatency() throws Exception {
+        StandInSession session = new StandInSession(people(), 20, TimeUnit.MILLISECONDS);
+        PreparedStatement insert = session.prepare("INSERT INTO ks.people(id,name) VALUES (?,?)");
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        batch.add(insert.bind(UUID.randomUUID(), "Alice"));
+        batch.add(insert.bind(UUID.randomUUID(), "Bob"));
+
+        Stopwatch timer = Stopwatch.createStarted();
+        ResultSetFuture single = session.executeAsync(insert.bind(UUID.randomUUID(), "Carol"));
+        ResultSetFuture batched = session.executeAsync(batch);
+        assertThat(single.isDone()).isFalse();
+        single.getUninterruptibly();
+        batched.getUninterruptibly();
+
+        assertThat(timer.elapsed(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(20);
+        assertThat(session.getWritesAcknowledged()).isEqualTo(2);
+        assertThat(session.getRowsAcknowledged()).isEqualTo(3);
+
+        session.close();
+        assertThat(session.executeAsync(batch).isDone()).isTrue();
+        assertThat(session.getRowsAcknowledged()).isEqualTo(3);
+    }
+
+    @Test
+    public void testClosesAsynchronouslyAtOnce() throws Exception {
+        StandInSession session = new StandInSession(people(), 0, TimeUnit.NANOSECONDS);
+
+        assertThat(session.getState().getConnectedHosts()).isEmpty();
+        assertThat(session.getState().getSession()).isSameAs(session);
+        CloseFuture closed = session.closeAsync();
+        assertThat(closed.isDone()).isTrue();
+        assertThat(closed.force().get()).isNull();
+        assertThat(session.isClosed()).isTrue();
+        List<String> listened = new ArrayList<>();
+        closed.addListener(() -> listened.add("closed"), Runnable::run);
+        assertThat(listened).containsExactly("closed");
+    }
+}
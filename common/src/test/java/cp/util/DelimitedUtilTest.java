@@ -0,0 +1,44 @@
+package cp.util;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DelimitedUtilTest {
+
+    @Test
+    public void testSplitsTrimsAndClearsFields() {
+        assertThat(DelimitedUtil.splitLine(',', "a,b,c")).containsExactly("a", "b", "c");
+        assertThat(DelimitedUtil.splitLine(',', " a , b ")).containsExactly("a", "b");
+        assertThat(DelimitedUtil.splitLine(',', "café,d")).containsExactly("caf", "d");
+        assertThat(DelimitedUtil.splitLine(',', "")).isEmpty();
+    }
+
+    @Test
+    public void testAnEmptyFieldIsNull() {
+        assertThat(DelimitedUtil.splitLine(',', "a,,c")).containsExactly("a", null, "c");
+        assertThat(DelimitedUtil.splitLine(',', ",a")).containsExactly(null, "a");
+    }
+
+    @Test
+    public void testKeepsATrailingDelimiterInTheLastField() {
+        assertThat(DelimitedUtil.splitLine(',', "a,b,")).containsExactly("a", "b,");
+    }
+
+    @Test
+    public void testSplitsWithinQuotesAndUnescapesEachField() {
+        assertThat(DelimitedUtil.splitLine(',', "\"x,y\",z")).containsExactly("x", "y\"", "z");
+        assertThat(DelimitedUtil.splitLine('\t', "\"a \"\"b\"\" c\"\td")).containsExactly("a \"b\" c", "d");
+    }
+
+    @Test
+    public void testFillsTheFieldsOfAnArray() {
+        String[] data = new String[4];
+        DelimitedUtil.splitLine(',', "a,b", data);
+        assertThat(data).containsExactly("a", "b", null, null);
+
+        data = new String[2];
+        DelimitedUtil.splitLine(',', "a,b,c", data);
+        assertThat(data).containsExactly("a", "b");
+    }
+}
@@ -0,0 +1,96 @@
+package cp.util;
+
+import org.testng.annotations.Test;
+
+import java.nio.CharBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FieldTokenizerTest {
+
+    @Test
+    public void testSplitsTabsInPlace() {
+        FieldTokenizer fields = FieldTokenizer.tabs();
+        String line = "Alice\t\tVA\t";
+
+        assertThat(fields.tokenize(line)).isEqualTo(4);
+        assertThat(fields.toList()).containsExactly("Alice", "", "VA", "");
+        assertThat(fields.start(2)).isEqualTo(7);
+        assertThat(fields.end(2)).isEqualTo(9);
+        assertThat(fields.isEmpty(1)).isTrue();
+        assertThat(fields.isEmpty(3)).isTrue();
+        // no quoting in a tab separated line
+        assertThat(fields.tokenize("\"a\tb\"")).isEqualTo(2);
+        assertThat(fields.toList()).containsExactly("\"a", "b\"");
+    }
+
+    @Test
+    public void testAnEmptyLineHasOneEmptyField() {
+        FieldTokenizer fields = FieldTokenizer.csv();
+
+        assertThat(fields.tokenize("")).isEqualTo(1);
+        assertThat(fields.isEmpty(0)).isTrue();
+        assertThat(fields.isQuoted(0)).isFalse();
+    }
+
+    @Test
+    public void testReadsQuotedFields() {
+        FieldTokenizer fields = FieldTokenizer.csv();
+
+        assertThat(fields.tokenize("\"a,b\",\"say \"\"hi\"\"\",\"\",c")).isEqualTo(4);
+        assertThat(fields.toList()).containsExactly("a,b", "say \"hi\"", "", "c");
+        assertThat(fields.isQuoted(0)).isTrue();
+        assertThat(fields.isPlain(0)).isTrue();
+        assertThat(fields.isPlain(1)).isFalse();
+        assertThat(fields.isQuoted(2)).isTrue();
+        assertThat(fields.isEmpty(2)).isTrue();
+        assertThat(fields.isQuoted(3)).isFalse();
+    }
+
+    @Test
+    public void testKeepsTextAfterAClosingQuoteAndRunsAnOpenQuoteToTheEnd() {
+        FieldTokenizer fields = FieldTokenizer.csv();
+
+        assertThat(fields.tokenize("\"ab\"cd,e")).isEqualTo(2);
+        assertThat(fields.toList()).containsExactly("abcd", "e");
+        assertThat(fields.isPlain(0)).isFalse();
+
+        assertThat(fields.tokenize("a,\"b,c")).isEqualTo(2);
+        assertThat(fields.toList()).containsExactly("a", "b,c");
+    }
+
+    @Test
+    public void testGrowsToTheLineWithTheMostFields() {
+        FieldTokenizer fields = FieldTokenizer.tabs();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            line.append(i == 0 ? "" : "\t").append(i);
+        }
+
+        assertThat(fields.tokenize(line)).isEqualTo(40);
+        assertThat(fields.string(39)).isEqualTo("39");
+        assertThat(fields.tokenize("x\ty")).isEqualTo(2);
+        assertThat(fields.toList()).containsExactly("x", "y");
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testRejectsAFieldPastTheLastOne() {
+        FieldTokenizer fields = FieldTokenizer.tabs();
+        fields.tokenize("a\tb");
+        fields.start(2);
+    }
+
+    @Test
+    public void testReadsFieldsOfABufferWithoutStrings() {
+        FieldTokenizer fields = FieldTokenizer.csv();
+        StringDictionary dictionary = new StringDictionary(100);
+        CharBuffer line = CharBuffer.wrap("VA,\"VA\",\"V\"\"A\"");
+
+        assertThat(fields.tokenize(line)).isEqualTo(3);
+        assertThat(fields.view(0).toString()).isEqualTo("VA");
+        assertThat(fields.view(2).toString()).isEqualTo("V\"A");
+        String interned = fields.intern(0, dictionary);
+        assertThat(fields.intern(1, dictionary)).isSameAs(interned);
+        assertThat(fields.intern(2, dictionary)).isEqualTo("V\"A");
+    }
+}
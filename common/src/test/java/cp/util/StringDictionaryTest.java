@@ -0,0 +1,70 @@
+package cp.util;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringDictionaryTest {
+
+    @Test
+    public void testInternsRangesOfCharacters() {
+        StringDictionary dictionary = new StringDictionary(100);
+        String line = "Alice\tVA\tRichmond\tVA";
+
+        String first = dictionary.intern(line, 6, 8);
+        String second = dictionary.intern(line, 18, 20);
+
+        assertThat(first).isEqualTo("VA");
+        assertThat(second).isSameAs(first);
+        assertThat(dictionary.intern(new String("VA"))).isSameAs(first);
+        assertThat(dictionary.intern(line, 9, 17)).isEqualTo("Richmond");
+        assertThat(dictionary.intern(line, 0, 0)).isEmpty();
+        assertThat(dictionary.intern(null)).isNull();
+        assertThat(dictionary.size()).isEqualTo(3);
+        assertThat(dictionary.getHits()).isEqualTo(2);
+        assertThat(dictionary.getMisses()).isEqualTo(3);
+        assertThat(dictionary.getHitRate()).isEqualTo(0.4);
+    }
+
+    @Test
+    public void testStopsGrowingAtItsBound() {
+        StringDictionary dictionary = new StringDictionary(16);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(dictionary.intern("value" + i)).isEqualTo("value" + i);
+        }
+
+        assertThat(dictionary.size()).isLessThanOrEqualTo(16);
+        assertThat(dictionary.getMisses() + dictionary.getOverflows()).isEqualTo(1000);
+    }
+
+    @Test
+    public void testThreadsShareOneInstancePerValue() throws Exception {
+        StringDictionary dictionary = new StringDictionary(10000);
+        String[][] seen = new String[4][];
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            int t = thread;
+            pool.execute(() -> {
+                seen[t] = new String[5000];
+                for (int i = 0; i < 5000; i++) {
+                    seen[t][i] = dictionary.intern("city" + i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 0; i < 5000; i++) {
+            for (int t = 1; t < 4; t++) {
+                assertThat(seen[t][i]).isSameAs(seen[0][i]);
+            }
+        }
+        assertThat(dictionary.size()).isEqualTo(5000);
+        assertThat(dictionary.getMisses()).isEqualTo(5000);
+        assertThat(dictionary.getHits()).isEqualTo(15000);
+    }
+}
@@ -1,6 +1,7 @@
 package export.source.file;
 
 import com.google.common.base.Joiner;
+import cp.util.FieldTokenizer;
 import export.model.ExportSpecification;
 import export.model.ExpressionContext;
 import export.model.generic.MapExpressionContext;
@@ -28,6 +29,7 @@ public class TSVFileContextSource implements ContextSource {
 
     private LineNumberReader reader;
     private List<String> headers;
+    private final FieldTokenizer fields = FieldTokenizer.tabs();
 
     public TSVFileContextSource(Reader in) {
         if (in instanceof LineNumberReader) {
@@ -82,15 +84,15 @@ public class TSVFileContextSource implements ContextSource {
                     }
                 }
 
-                List<String> lineValues = TSVUtil.parseTSVLine(line);
-                if (lineValues.size() != headers.size()) {
+                // an empty line has no entries, rather than a single empty one
+                int entries = line.isEmpty() ? 0 : fields.tokenize(line);
+                if (entries != headers.size()) {
                     throw new ContextSourceException(String.format("Line has %d entries, differs from header with %d entries",
-                            lineValues.size(), headers.size()));
+                            entries, headers.size()));
                 }
                 Map<String, String> map = new HashMap<>(headers.size());
-                Iterator<String> valueIter = lineValues.iterator();
-                for (String header : headers) {
-                    map.put(header, valueIter.next());
+                for (int i = 0; i < entries; i++) {
+                    map.put(headers.get(i), fields.string(i));
                 }
                 line = null;
                 return new MapExpressionContext(map);
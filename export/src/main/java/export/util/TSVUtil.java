@@ -2,9 +2,9 @@ package export.util;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import cp.util.FieldTokenizer;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,11 +18,9 @@ public class TSVUtil {
         if (Strings.isNullOrEmpty(line)) {
             return new ArrayList<>(1);
         }
-        int tabCount = (int)line.chars().filter(value -> value == TAB).count();
-        List<String> parsedHeaders = new ArrayList<>(tabCount + 1);
-        final String[] splitLine = line.split(TAB_STRING, -1000);
-        Collections.addAll(parsedHeaders, splitLine);
-        return parsedHeaders;
+        FieldTokenizer fields = FieldTokenizer.tabs();
+        fields.tokenize(line);
+        return fields.toList();
     }
 
     public static String joinTSVLine(List<String> cellList) {
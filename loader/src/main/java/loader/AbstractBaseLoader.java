@@ -1,27 +1,43 @@
 package loader;
 
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.google.common.base.Strings;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import cp.config.*;
 import cp.connect.CassandraSessionManager;
 import cp.connect.LiveCassandraSessionManagerImpl;
 import cp.exceptions.DataAccessException;
 import cp.model.Constants;
+import cp.util.FieldTokenizer;
+import loader.io.Compression;
+import loader.util.InFlightWindow;
+import loader.util.StatusChunkRecorder;
+import loader.util.StatusChunks;
+import loader.util.WriteBudget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
 
 import static cp.config.ConfigurationKeys.CASSANDRA_SEEDS_KEY;
+import static cp.config.ConfigurationKeys.LOADER_CONCURRENT_FILES_KEY;
+import static cp.config.ConfigurationKeys.LOADER_TOTAL_IN_FLIGHT_KEY;
 
 //import us.catalist.mdr.janitors.metadata.dao.MetadataDao;
 
@@ -34,10 +50,19 @@ public abstract class AbstractBaseLoader implements Loader {
 
    // protected MetadataDao metadataDao;
     protected CassandraSessionManager sessionManager;
+    protected ConfigurationService configService;
 
     public AbstractBaseLoader(CassandraSessionManager sessionManager) {
+        this(sessionManager, new ConstantConfigurationServiceImpl());
+    }
+
+    /**
+     * @param configService settings of the load, such as the files loaded at once
+     */
+    public AbstractBaseLoader(CassandraSessionManager sessionManager, ConfigurationService configService) {
         logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
         this.sessionManager = sessionManager;
+        this.configService = configService;
     }
 
 //    //TODO: instantiate the dao differently
@@ -86,9 +111,8 @@ public abstract class AbstractBaseLoader implements Loader {
 
     @Override
     public boolean canLoad(String file) {
-        // if we can't read the first line of the file, then we can't load
-        try {
-            LineNumberReader in = new LineNumberReader(new FileReader(file));
+        // if we can't read the first line of the file, then we can't load; compressed files are decompressed
+        try (LineNumberReader in = new LineNumberReader(Compression.openReader(file))) {
             String line = in.readLine();
             if (line == null) {
                 logger.error("Could not read first line in file");
@@ -101,15 +125,60 @@ public abstract class AbstractBaseLoader implements Loader {
         return true;
     }
 
+    /**
+     * Load the files concurrently over the session of this loader, with one budget of writes in flight shared by
+     * all of them. Every file is attempted; the files that failed are reported together at the end.
+     */
     @Override
     public void load(String... files) {
-        for(String file : files) {
-            load(file);
+        if (files.length == 1) {
+            load(files[0]);
+            return;
+        }
+        StatusChunks.createTable(sessionManager.getSession(), keyspace);
+        WriteBudget budget = new WriteBudget(
+           configService.getIntegerValue(LOADER_TOTAL_IN_FLIGHT_KEY, Constants.LOAD_PUBLISH_DEFAULT_BATCH));
+        int concurrentFiles = Math.max(1, Math.min(files.length,
+           configService.getIntegerValue(LOADER_CONCURRENT_FILES_KEY, Constants.LOADER_DEFAULT_CONCURRENT_FILES)));
+        ExecutorService pool = Executors.newFixedThreadPool(concurrentFiles, new ThreadFactoryBuilder()
+           .setNameFormat("base-loader-file-%d")
+           .build());
+        List<Future<?>> loads = new ArrayList<>(files.length);
+        for (String file : files) {
+            loads.add(pool.submit(() -> load(file, budget)));
+        }
+        pool.shutdown();
+
+        List<String> failedFiles = new ArrayList<>();
+        Throwable firstFailure = null;
+        for (int i = 0; i < files.length; i++) {
+            try {
+                Futures.getUnchecked(loads.get(i));
+            } catch (UncheckedExecutionException e) {
+                logger.error("Unable to load file {}", files[i], e.getCause());
+                failedFiles.add(files[i]);
+                firstFailure = firstFailure == null ? e.getCause() : firstFailure;
+            }
+        }
+        if (!failedFiles.isEmpty()) {
+            throw new DataAccessException("Unable to load " + failedFiles.size() + " of " + files.length + " files: " +
+               failedFiles, firstFailure);
         }
     }
 
     @Override
     public void load(String filename) {
+        StatusChunks.createTable(sessionManager.getSession(), keyspace);
+        load(filename, null);
+    }
+
+    /**
+     * Load one file; the session stays open for the other files of the load, {@link #down()} closes it. The status
+     * of a row is recorded once its write completes, and the status table is expected to exist.
+     *
+     * @param budget writes in flight shared with the other files loading at the same time, or null
+     */
+    protected void load(String filename, WriteBudget budget) {
         LineNumberReader in = null;
         String line;
         int linesSeen = 0;
@@ -117,10 +186,18 @@ public abstract class AbstractBaseLoader implements Loader {
         long runId = getRunId();
 
         PreparedStatement ps = sessionManager.getSession().prepare(loaderInsertStatement());
-        List<ResultSetFuture> futures = new ArrayList<>();
+        InFlightWindow window = new InFlightWindow(Constants.LOAD_PUBLISH_DEFAULT_BATCH);
+        window.setBudget(budget);
+        StatusChunkRecorder status = new StatusChunkRecorder(keyspace, runId, this.getClass().getCanonicalName(),
+           filename, Constants.LOAD_STATUS_DEFAULT_CHUNK_ROWS, statement -> window.execute(sessionManager.getSession(), statement));
+
+        // the writes whose status is not recorded yet, which the window may already count as completed
+        Phaser unrecorded = new Phaser(1);
+
+        FieldTokenizer csv = FieldTokenizer.csv();
 
         try {
-            in = new LineNumberReader(new FileReader(filename));
+            in = new LineNumberReader(Compression.openReader(filename));
             do {
                 line = in.readLine();
 
@@ -131,42 +208,32 @@ public abstract class AbstractBaseLoader implements Loader {
 
                 logger.debug("Line {} is '{}'", linesSeen, line);
 
-                // basic case when we have a CSV file
-                String[] columns = line.split(",");
+                // basic case when we have a CSV file; the values are the second to fourth fields
+                int fields = csv.tokenize(line);
 
                 String rowNumber = String.valueOf(linesSeen);
-                String value1 = columns[1];
-                String value2 = columns[2];
-                String value3 = columns[3];
+                String value1 = fields > 1 && !csv.isEmpty(1) ? csv.string(1) : null;
+                String value2 = fields > 2 && !csv.isEmpty(2) ? csv.string(2) : null;
+                String value3 = fields > 3 && !csv.isEmpty(3) ? csv.string(3) : null;
 
                 if(!Strings.isNullOrEmpty(value1) && !Strings.isNullOrEmpty(value2) && !Strings.isNullOrEmpty(value3)) {
                     logger.debug("Inserting {}, {}, {}", value1, value2, value3);
-                    ResultSetFuture rsfRawDataInsert = sessionManager.getSession().executeAsync(ps.bind(runId, rowNumber, value1, value2, value3));
-                    futures.add(rsfRawDataInsert);
-                    ResultSetFuture rsfStatusInsert = sessionManager.getSession().executeAsync(writeStatus(runId, rowNumber, this.getClass().getCanonicalName(), "TRUE"));
-                    futures.add(rsfStatusInsert);
+                    ResultSetFuture write = window.execute(sessionManager.getSession(),
+                       ps.bind(runId, rowNumber, value1, value2, value3));
+                    recordWhenDone(write, linesSeen, status, unrecorded);
 
                     linesInserted++;
                 } else {
                     logger.debug("Failed to insert");
-                    ResultSetFuture rsfStatusInsert = sessionManager.getSession().executeAsync(writeStatus(runId, rowNumber, this.getClass().getCanonicalName(), "FALSE"));
-                    futures.add(rsfStatusInsert);
-                }
-
-                if (futures.size() >= Constants.LOAD_PUBLISH_DEFAULT_BATCH) {
-                    for (ResultSetFuture future: futures) {
-                        future.getUninterruptibly();
-                    }
-                    futures.clear();
+                    status.record(linesSeen, false);
                 }
+                status.writeCompleted();
             } while (line != null && linesSeen < Constants.LOAD_PUBLISH_DEFAULT_MAX);
 
-            if (futures.size() > 0) {
-                for (ResultSetFuture future: futures) {
-                    future.getUninterruptibly();
-                }
-                futures.clear();
-            }
+            window.drain();
+            unrecorded.arriveAndAwaitAdvance();
+            status.flush();
+            window.drain();
         } catch (FileNotFoundException e) {
             throw new DataAccessException("Unable to find file " + filename, e);
         } catch (IOException e) {
@@ -175,15 +242,38 @@ public abstract class AbstractBaseLoader implements Loader {
             throw new DataAccessException("Error while trying to load file " + filename, e);
         } finally {
             Closeables.closeQuietly(in);
-            sessionManager.stopCassandraClient();
         }
 
-        logger.info("Lines seen: {}, lines inserted: {}", linesSeen, linesInserted);
+        logger.info("File {}: lines seen: {}, lines inserted: {}, status chunks written: {}", filename, linesSeen,
+           linesInserted, status.getChunksWritten());
+    }
+
+    private static void recordWhenDone(ResultSetFuture write, long rowNumber, StatusChunkRecorder status,
+                                       Phaser unrecorded) {
+        unrecorded.register();
+        Futures.addCallback(write, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                status.record(rowNumber, true);
+                unrecorded.arriveAndDeregister();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                status.record(rowNumber, false);
+                unrecorded.arriveAndDeregister();
+            }
+        });
     }
 
+    /**
+     * @deprecated a status write per row doubles the writes of a load; record rows with a
+     * {@link StatusChunkRecorder}, and read them back with {@link loader.util.StatusChunks}
+     */
     // this method can be used by all the loaders since they are writing to the same table
     // the flags can be expanded upon, for now these are basically just placeholders
     // loadId + rowId is unique across all loaders
+    @Deprecated
     protected Statement writeStatus(long loadId, String rowNumber, String loaderName, String loaderStatus) {
         return QueryBuilder.insertInto(keyspace, Constants.LOADER_STATUS_TABLE)
                 .value("runid", loadId)
@@ -1,11 +1,25 @@
 package loader.cli;
 
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
 import com.datastax.driver.core.querybuilder.Select.Where;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.io.CountingInputStream;
 import cp.config.ConfigurationService;
 import cp.connect.CassandraSessionManager;
+import cp.model.Constants;
+import cp.util.DurationUtil;
 import cp.util.ObjectUtil;
+import loader.io.ChunkedFile;
+import loader.io.Compression;
+import loader.io.LineIndex;
 import loader.util.CloseablesWrapper;
 import org.joda.time.Duration;
 import org.joda.time.Period;
@@ -17,8 +31,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import static cp.config.ConfigurationKeys.*;
 
@@ -29,6 +50,8 @@ public abstract class AbstractLoader {
     private static final Logger staticLog = LoggerFactory.getLogger(AbstractLoader.class);
 
     private static final int LINE_COUNT_FOR_ESTIMATE = 1000;
+    // compressed input is read in buffers, so the sample must span a good number of them
+    private static final long COMPRESSED_BYTES_FOR_ESTIMATE = 1024 * 1024;
 
 
 
@@ -64,7 +87,7 @@ public abstract class AbstractLoader {
         return ELAPSED_TIME_FORMATTER.print(period);
     }
 
-    protected static long estimateRemainingTime(int linesProcessed, long totalLines, long elapsed) {
+    protected static long estimateRemainingTime(long linesProcessed, long totalLines, long elapsed) {
         return linesProcessed == 0 ? -1 : (totalLines - linesProcessed) * elapsed / linesProcessed;
     }
 
@@ -100,6 +123,7 @@ public abstract class AbstractLoader {
     protected ConfigurationService configService;
     protected String inputFilename;
     protected CassandraSessionManager sessionManager;
+    private TableSchema tableSchema;
 
     public AbstractLoader(CassandraSessionManager sessionManager,
                           ConfigurationService configService,
@@ -113,43 +137,170 @@ public abstract class AbstractLoader {
 
     protected boolean determineIfTableExists() {
         instanceLog.debug("Determining if table {}.{} exists", configService.getValue(MAIN_KEYSPACE_KEY), mappingConfig.getTable());
+        return getTableSchema() != null;
+    }
+
+    protected List<String> getTableColumns() {
+        instanceLog.debug("Getting columns for table {}.{}", configService.getValue(MAIN_KEYSPACE_KEY), mappingConfig.getTable());
+        return requireTableSchema().getColumns();
+    }
+
+    /**
+     * @return the primary key columns of the table: the partition key columns, then the clustering columns, each
+     * in key order
+     */
+    protected List<String> getPrimaryKeyColumns() {
+        return requireTableSchema().getPrimaryKey();
+    }
+
+    /**
+     * @return the types of the given columns, by lower case column name
+     */
+    protected Map<String, DataType> getTableColumnTypes(List<String> columns) {
+        Map<String, DataType> types = requireTableSchema().getTypes();
+        Map<String, DataType> columnTypeMap = new TreeMap<>();
+        for (String column : columns) {
+            DataType type = types.containsKey(column) ? types.get(column) : types.get(column.toLowerCase());
+            if (type == null) {
+                throw new CLILoaderRuntimeException("Column " + column + " is not a column of table " +
+                   configService.getValue(MAIN_KEYSPACE_KEY) + "." + mappingConfig.getTable());
+            }
+            columnTypeMap.put(column.toLowerCase(), type);
+        }
+        return columnTypeMap;
+    }
 
-        Where query = QueryBuilder.select("keyspace_name", "columnfamily_name").from("system", "schema_columnfamilies")
-           .where(QueryBuilder.eq("keyspace_name", configService.getValue(MAIN_KEYSPACE_KEY)))
-           .and(QueryBuilder.eq("columnfamily_name", mappingConfig.getTable()));
+    private TableSchema requireTableSchema() {
+        TableSchema schema = getTableSchema();
+        if (schema == null) {
+            throw new CLILoaderRuntimeException("Target table " + configService.getValue(MAIN_KEYSPACE_KEY) + "." +
+               mappingConfig.getTable() + " does not exist");
+        }
+        return schema;
+    }
+
+    /**
+     * The schema of the target table, read once per loader. The schema metadata the driver reads when it connects
+     * has it without a query. Without it, the schema kept on disk by an earlier load is used if the cluster is
+     * still at the same schema version, and only then is it read from the system tables, and kept for the loads
+     * to come.
+     *
+     * @return the schema, or null if the table does not exist
+     */
+    protected TableSchema getTableSchema() {
+        if (tableSchema != null) {
+            return tableSchema;
+        }
+        String keyspace = configService.getValue(MAIN_KEYSPACE_KEY);
+        String table = mappingConfig.getTable();
+        Session session = sessionManager.getSession();
+        Metadata metadata = session.getCluster().getMetadata();
+        TableSchema schema = TableSchema.fromMetadata(metadata, keyspace, table);
+        if (schema != null) {
+            instanceLog.debug("Schema of {}.{} taken from the driver metadata", keyspace, table);
+            return tableSchema = schema;
+        }
 
-        instanceLog.debug("CQL: {}", query.getQueryString());
+        String cacheDir = configService.getValue(LOADER_SCHEMA_CACHE_DIR_KEY, Constants.LOADER_DEFAULT_SCHEMA_CACHE_DIR);
+        SchemaCache cache = Strings.isNullOrEmpty(cacheDir) || "none".equalsIgnoreCase(cacheDir) ? null :
+           new SchemaCache(Paths.get(cacheDir));
+        String cluster = metadata == null ? null : metadata.getClusterName();
+        String version = cache == null ? null : readSchemaVersion(session);
+        if (version != null) {
+            schema = cache.get(cluster, version, keyspace, table);
+            if (schema != null) {
+                instanceLog.debug("Schema of {}.{} taken from the cache at schema version {}", keyspace, table, version);
+                return tableSchema = schema;
+            }
+        }
+        schema = readSchemaFromSystemTables(session, keyspace, table);
+        if (schema != null && version != null && cache.put(cluster, version, schema)) {
+            instanceLog.debug("Schema of {}.{} cached at schema version {}", keyspace, table, version);
+        }
+        return tableSchema = schema;
+    }
+
+    /**
+     * @return the schema version of the node answering, or null if it could not be read
+     */
+    private String readSchemaVersion(Session session) {
+        Where query = QueryBuilder.select("schema_version").from("system", "local")
+           .where(QueryBuilder.eq("key", "local"));
+        instanceLog.trace("CQL: {}", query.getQueryString());
         try {
-            return sessionManager.getSession().execute(query).one() != null;
+            Row row = session.execute(query).one();
+            return row == null || row.isNull("schema_version") ? null : row.getUUID("schema_version").toString();
         } catch (Exception e) {
-            throw new CLILoaderRuntimeException("Unable to determine if table " +
-                    configService.getValue(MAIN_KEYSPACE_KEY) + "." + mappingConfig.getTable() + " exists.", e);
+            instanceLog.warn("Unable to read the schema version; not using the schema cache", e);
+            return null;
         }
     }
 
-    protected List<String> getTableColumns() {
-        instanceLog.debug("Getting columns for table {}.{}", configService.getValue(MAIN_KEYSPACE_KEY), mappingConfig.getTable());
-
-        Where query = QueryBuilder.select("keyspace_name", "columnfamily_name", "column_name", "type")
-           .from("system", "schema_columns").where(QueryBuilder.eq("keyspace_name", configService.getValue(MAIN_KEYSPACE_KEY)))
-           .and(QueryBuilder.eq("columnfamily_name", mappingConfig.getTable()));
+    private TableSchema readSchemaFromSystemTables(Session session, String keyspace, String table) {
+        Where query = QueryBuilder.select("column_name", "type", "component_index")
+           .from("system", "schema_columns").where(QueryBuilder.eq("keyspace_name", keyspace))
+           .and(QueryBuilder.eq("columnfamily_name", table));
 
         instanceLog.trace("CQL: {}", query.getQueryString());
 
+        List<Row> rows;
         try {
-            return Lists.transform(sessionManager.getSession().execute(query).all(), input -> input == null ? null : input.getString("column_name"));
+            rows = session.execute(query).all();
         } catch (Exception e) {
-            throw new CLILoaderRuntimeException("Unable to get columns for table " +
-                    configService.getValue(MAIN_KEYSPACE_KEY) + "." + mappingConfig.getTable(), e);
+            throw new CLILoaderRuntimeException("Unable to get columns for table " + keyspace + "." + table, e);
+        }
+        // every table has columns, so a table without any does not exist
+        if (rows.isEmpty()) {
+            return null;
         }
+        List<Row> partitionKey = new ArrayList<>();
+        List<Row> clusteringKey = new ArrayList<>();
+        List<String> columns = new ArrayList<>();
+        for (Row row : rows) {
+            columns.add(row.getString("column_name"));
+            if ("partition_key".equals(row.getString("type"))) {
+                partitionKey.add(row);
+            } else if ("clustering_key".equals(row.getString("type"))) {
+                clusteringKey.add(row);
+            }
+        }
+        // a key of a single column has no component index
+        Comparator<Row> keyOrder = Comparator.comparingInt(row -> row.isNull("component_index") ? 0 : row.getInt("component_index"));
+        partitionKey.sort(keyOrder);
+        clusteringKey.sort(keyOrder);
+
+        // the system tables give types as server classes; a select on the table gives them as the driver knows them
+        Select select = QueryBuilder.select(columns.toArray(new String[columns.size()])).from(keyspace, table).limit(1);
+        instanceLog.trace("CQL: {}", select.getQueryString());
+        Map<String, DataType> types = new LinkedHashMap<>();
+        try {
+            for (ColumnDefinitions.Definition definition : session.execute(select).getColumnDefinitions()) {
+                types.put(definition.getName(), definition.getType());
+            }
+        } catch (Exception e) {
+            throw new CLILoaderRuntimeException("Unable to get column types for table " + keyspace + "." + table, e);
+        }
+        return new TableSchema(keyspace, table, types, Lists.transform(partitionKey, row -> row.getString("column_name")),
+           Lists.transform(clusteringKey, row -> row.getString("column_name")));
     }
 
+    /**
+     * Quick estimate from the first lines of the file, for when an exact count would hold up the start of a load.
+     * For a compressed file the bytes are those of the compressed file, and the lines are estimated from the
+     * compressed bytes the first lines took up.
+     */
     protected CommandLineLoader.FileMetrics estimateBytesAndLinesInFile(String filename) {
         instanceLog.debug("Estimating lines and bytes in file");
         LineNumberReader in = null;
-        Charset utf8charset = Charset.forName("UTF-8");
+        CountingInputStream compressed = null;
         try {
-            in = new LineNumberReader(new FileReader(filename));
+            Compression compression = Compression.detect(Paths.get(filename));
+            if (compression == Compression.NONE) {
+                in = new LineNumberReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8));
+            } else {
+                compressed = new CountingInputStream(new FileInputStream(filename));
+                in = new LineNumberReader(new InputStreamReader(compression.decompress(compressed), StandardCharsets.UTF_8));
+            }
 
             CommandLineLoader.FileMetrics metrics = new CommandLineLoader.FileMetrics();
             metrics.lines++; // start with the assumption of one line
@@ -160,10 +311,11 @@ public abstract class AbstractLoader {
             do  {
                 line = in.readLine();
                 if (line != null) {
-                    byteCount += line.getBytes().length + 1;
+                    byteCount += line.getBytes(StandardCharsets.UTF_8).length + 1;
                     lineNumber++;
                 }
-            } while ((line != null) && lineNumber < LINE_COUNT_FOR_ESTIMATE);
+            } while ((line != null) && (lineNumber < LINE_COUNT_FOR_ESTIMATE ||
+               (compressed != null && compressed.getCount() < COMPRESSED_BYTES_FOR_ESTIMATE)));
 
             // if the file is empty, return 0 bytes and 0 lines
             if (lineNumber == 0L) {
@@ -177,9 +329,13 @@ public abstract class AbstractLoader {
             metrics.bytes = inputFile.length();
 
             // if we read everything in the file, then report exact value
-            if (lineNumber < LINE_COUNT_FOR_ESTIMATE) {
+            if (line == null) {
                 instanceLog.info("Input file exact line count: {}", lineNumber);
                 metrics.lines = lineNumber;
+            } else if (compressed != null) {
+                metrics.lines = metrics.bytes * lineNumber / compressed.getCount();
+                instanceLog.info("Estimating input file line count at {} from {}/{} compressed bytes in {} lines read",
+                        metrics.lines, compressed.getCount(), metrics.bytes, lineNumber);
             } else if (byteCount > 0L) {
                 // estimate the number of lines in that number of bytes
                 metrics.lines = metrics.bytes * lineNumber / byteCount;
@@ -192,6 +348,46 @@ public abstract class AbstractLoader {
             throw new CLILoaderRuntimeException("Unable to read the input file", e);
         } finally {
             CloseablesWrapper.closeQuietly(in);
+            CloseablesWrapper.closeQuietly(compressed);
+        }
+    }
+
+    /**
+     * Count the lines of the whole file exactly, in parallel. The header is left out of the index.
+     *
+     * @param file       the opened input file
+     * @param chunkBytes target size of the indexed chunks
+     * @return the index, with the first data line as line 1
+     */
+    protected LineIndex indexLinesInFile(ChunkedFile file, int chunkBytes) {
+        instanceLog.debug("Counting lines and bytes in file");
+        Stopwatch timer = DurationUtil.getStopwatchStarted();
+        try {
+            LineIndex index = LineIndex.build(file, file.split(file.nextLineStart(0), chunkBytes), 1L,
+               Runtime.getRuntime().availableProcessors());
+            instanceLog.info("Input file exact line count: {} in {} chunks, counted in {}", index.getLineCount() + 1,
+               index.getChunks().size(), formatElapsedTime(timer.elapsed(TimeUnit.MILLISECONDS)));
+            return index;
+        } catch (IOException e) {
+            throw new CLILoaderRuntimeException("Unable to read the input file", e);
+        }
+    }
+
+    /**
+     * @return the exact size of the file, with the header counted as a line
+     */
+    protected static FileMetrics fileMetrics(ChunkedFile file, LineIndex index) {
+        FileMetrics metrics = new FileMetrics();
+        metrics.bytes = file.size();
+        metrics.lines = file.size() == 0 ? 0 : index.getLineCount() + 1;
+        return metrics;
+    }
+
+    protected FileMetrics countBytesAndLinesInFile(String filename) {
+        try (ChunkedFile file = ChunkedFile.open(Paths.get(filename))) {
+            return fileMetrics(file, indexLinesInFile(file, Constants.LOADER_LINE_INDEX_CHUNK_BYTES));
+        } catch (IOException e) {
+            throw new CLILoaderRuntimeException("Unable to read the input file", e);
         }
     }
 
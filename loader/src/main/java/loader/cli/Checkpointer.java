@@ -0,0 +1,106 @@
+package loader.cli;
+
+import com.google.common.base.Ticker;
+import loader.io.FileChunk;
+import loader.pipeline.ChunkListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists a {@link LoadCheckpoint} at chunk boundaries, at most once per interval.
+ * <p/>
+ * Before a checkpoint is written, open batches are flushed and the writer is drained, so every row up to the
+ * chunk boundary has been acknowledged by the cluster. Rows rejected up to there are then flushed to the
+ * dead-letter file. The checkpoint never gets ahead of the data. Draining empties the in-flight window once per
+ * interval, which costs about one round trip.
+ */
+public class Checkpointer implements ChunkListener {
+    private static final Logger log = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final File checkpointFile;
+    private final File input;
+    private final String planFingerprint;
+    private final StatementWriter writer;
+    private final PartitionBatcher batcher;
+    private final DeadLetterWriter deadLetters;
+    private final long resumedInserts;
+    private final long intervalNanos;
+    private final Ticker ticker;
+
+    private long lastCheckpoint;
+    private LoadCheckpoint last;
+
+    /**
+     * @param batcher        open batches to flush before a checkpoint, or null if batching is off
+     * @param deadLetters    rejected rows to flush before a checkpoint, or null if rejects fail the load
+     * @param resumedInserts inserts acknowledged by the runs this load resumes
+     */
+    public Checkpointer(File checkpointFile, File input, String planFingerprint, StatementWriter writer,
+                        PartitionBatcher batcher, DeadLetterWriter deadLetters, long resumedInserts, long interval,
+                        TimeUnit unit) {
+        this(checkpointFile, input, planFingerprint, writer, batcher, deadLetters, resumedInserts, interval, unit,
+           Ticker.systemTicker());
+    }
+
+    Checkpointer(File checkpointFile, File input, String planFingerprint, StatementWriter writer,
+                 PartitionBatcher batcher, DeadLetterWriter deadLetters, long resumedInserts, long interval,
+                 TimeUnit unit, Ticker ticker) {
+        this.checkpointFile = checkpointFile;
+        this.input = input;
+        this.planFingerprint = planFingerprint;
+        this.writer = writer;
+        this.batcher = batcher;
+        this.deadLetters = deadLetters;
+        this.resumedInserts = resumedInserts;
+        this.intervalNanos = unit.toNanos(interval);
+        this.ticker = ticker;
+        this.lastCheckpoint = ticker.read();
+    }
+
+    @Override
+    public void chunkWritten(FileChunk chunk, long nextLineNumber) {
+        if (ticker.read() - lastCheckpoint < intervalNanos) {
+            return;
+        }
+        if (batcher != null) {
+            batcher.flush();
+        }
+        writer.flush();
+        // the drained writes have rejected their failed rows by now
+        if (deadLetters != null) {
+            deadLetters.flush();
+        }
+
+        LoadCheckpoint checkpoint = new LoadCheckpoint(input.getPath(), input.length(), input.lastModified(),
+           planFingerprint, chunk.getEnd(), nextLineNumber, resumedInserts + writer.getInsertsCompleted());
+        try {
+            checkpoint.write(checkpointFile);
+            last = checkpoint;
+            log.debug("Checkpoint written: {}", checkpoint);
+        } catch (IOException e) {
+            // a missed checkpoint only costs rework on resume, so keep loading
+            log.warn("Unable to write checkpoint file {}", checkpointFile, e);
+        }
+        lastCheckpoint = ticker.read();
+    }
+
+    /**
+     * @return the last checkpoint written by this run, or null if none was written yet
+     */
+    public LoadCheckpoint getLast() {
+        return last;
+    }
+
+    /**
+     * The load finished, so there is nothing left to resume.
+     */
+    public void complete() {
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            log.warn("Unable to delete checkpoint file {} of a completed load", checkpointFile);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package loader.cli;
+
+import cp.util.StringDictionary;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the text columns of a load with few distinct values, from a sample of the input, and has the
+ * {@link MappingPlan} take their cells from a {@link StringDictionary} each.
+ * <p/>
+ * Columns such as states or cities repeat a few thousand values over millions of lines; through a dictionary
+ * every repeat is found straight from the line, where it would otherwise be a new string.
+ */
+public class ColumnDictionaries {
+    // a column qualifies if its sampled values repeat at least this many times on average
+    private static final int MIN_AVERAGE_REPEATS = 4;
+    // values the dictionary has room for, beyond the distinct values of the sample
+    private static final int ROOM_FACTOR = 4;
+
+    private final Map<String, StringDictionary> dictionaries;
+
+    private ColumnDictionaries(Map<String, StringDictionary> dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Sample the text columns of the plan and give those with few distinct values a dictionary.
+     *
+     * @param lines       sample lines of the input, without the header
+     * @param maxDistinct distinct values of a column in the sample, above which it gets no dictionary
+     * @return the dictionaries, set on the plan
+     */
+    public static ColumnDictionaries sample(MappingPlan plan, Iterable<String> lines, int maxDistinct) {
+        List<String> columns = plan.getColumns();
+        List<Integer> candidates = new ArrayList<>();
+        for (int slot = 0; slot < plan.getMappedColumnCount(); slot++) {
+            if (MappingPlan.isText(plan.getTypes().get(slot))) {
+                candidates.add(slot);
+            }
+        }
+        List<Set<Object>> distinct = new ArrayList<>();
+        long[] sampled = new long[candidates.size()];
+        for (int c = 0; c < candidates.size(); c++) {
+            distinct.add(new HashSet<>());
+        }
+        long lineNumber = 0;
+        for (String line : lines) {
+            MappedRow row;
+            try {
+                row = plan.map(line, ++lineNumber);
+            } catch (CLILoaderRuntimeException e) {
+                // the load reports it
+                continue;
+            }
+            for (int c = 0; c < candidates.size(); c++) {
+                Object value = row.getValues()[candidates.get(c)];
+                if (value != null) {
+                    sampled[c]++;
+                    // past the limit the column is out, and the values need not be kept
+                    if (distinct.get(c).size() <= maxDistinct) {
+                        distinct.get(c).add(value);
+                    }
+                }
+            }
+        }
+
+        Map<String, StringDictionary> dictionaries = new LinkedHashMap<>();
+        for (int c = 0; c < candidates.size(); c++) {
+            int values = distinct.get(c).size();
+            if (values > 0 && values <= maxDistinct && sampled[c] >= (long) values * MIN_AVERAGE_REPEATS) {
+                StringDictionary dictionary = new StringDictionary(maxDistinct * ROOM_FACTOR);
+                plan.setDictionary(candidates.get(c), dictionary);
+                dictionaries.put(columns.get(candidates.get(c)), dictionary);
+            }
+        }
+        return new ColumnDictionaries(dictionaries);
+    }
+
+    /**
+     * @return the columns with a dictionary
+     */
+    public Set<String> getColumns() {
+        return dictionaries.keySet();
+    }
+
+    public StringDictionary getDictionary(String column) {
+        return dictionaries.get(column);
+    }
+
+    public boolean isEmpty() {
+        return dictionaries.isEmpty();
+    }
+
+    /**
+     * @return per column the values in its dictionary and the share of cells found there
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, StringDictionary> entry : dictionaries.entrySet()) {
+            StringDictionary dictionary = entry.getValue();
+            sb.append(sb.length() == 0 ? "" : ", ").append(entry.getKey()).append(": ").append(dictionary.size())
+               .append(" values, ").append(String.format("%.2f%%", dictionary.getHitRate() * 100)).append(" hits");
+            if (dictionary.getOverflows() > 0) {
+                sb.append(", ").append(dictionary.getOverflows()).append(" cells past the dictionary's room");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -1,17 +1,10 @@
 package loader.cli;
 
 import com.datastax.driver.core.*;
-import com.datastax.driver.core.ColumnDefinitions.Definition;
-import com.datastax.driver.core.DataType.Name;
-import com.datastax.driver.core.querybuilder.Insert;
-import com.datastax.driver.core.querybuilder.QueryBuilder;
-import com.datastax.driver.core.querybuilder.Select;
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
 import com.google.common.collect.Lists;
 import cp.config.ConfigurationService;
 import cp.config.ConstantConfigurationServiceImpl;
@@ -19,23 +12,49 @@ import cp.config.DelegatingConfigurationServiceImpl;
 import cp.config.PropertiesConfigurationServiceImpl;
 import cp.connect.CassandraSessionManager;
 import cp.connect.LiveCassandraSessionManagerImpl;
-import cp.exceptions.ProcessException;
 import cp.model.Constants;
 import cp.util.CaseInsensitiveSet;
 import cp.util.CommandLinePropertiesUtil;
+import cp.testsupport.DryRunCassandraSessionManager;
+import cp.testsupport.StandInTable;
 import cp.util.DurationUtil;
-import loader.util.CQLTypeUtil;
+import cp.util.FieldTokenizer;
+import loader.io.ChunkedFile;
+import loader.io.Compression;
+import loader.io.DecompressingInputStream;
+import loader.io.FileChunk;
+import loader.io.LineIndex;
+import loader.pipeline.ChunkListener;
+import loader.pipeline.LineMapper;
+import loader.pipeline.LoadPipeline;
+import loader.util.AdaptiveConcurrencyLimit;
 import loader.util.CQLUtil;
 import loader.util.CloseablesWrapper;
+import loader.util.ColumnProfiler;
+import loader.util.InFlightWindow;
+import loader.util.LoaderMetrics;
+import loader.util.MetricsReporter;
+import loader.util.ThreadUsageSampler;
+import loader.util.WriteBudget;
 import org.apache.log4j.LogManager;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import static cp.config.ConfigurationKeys.*;
 import static cp.util.CommandLinePropertiesUtil.setOptionsAsProperties;
@@ -72,13 +91,26 @@ public class CommandLineLoader extends AbstractLoader {
             }
         });
 
+        // a dry run measures the client, from the first read of the input to the last acknowledgement
+        ThreadUsageSampler usageSampler = loader.configService.getBooleanValue(LOADER_DRY_RUN_KEY, Boolean.FALSE) ?
+           new ThreadUsageSampler(Constants.LOADER_DRY_RUN_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS) : null;
         int executionResult = 0;
         try {
-            executionResult = loader.load();
+            if (MultiFileLoader.isMultiFileInput(loader.inputFilename)) {
+                // every file gets a loader of its own; they all share the session of this one
+                executionResult = new MultiFileLoader(loader.sessionManager, loader.configService, loader.mappingConfig,
+                   loader.inputFilename).load();
+            } else {
+                executionResult = loader.load();
+            }
         } catch (Exception e) {
             log.error("Error while loading", e);
             System.exit(-1);
         }
+        if (usageSampler != null) {
+            reportDryRun(usageSampler.stop(),
+               ((DryRunCassandraSessionManager) loader.sessionManager).getStandInSession().getRowsAcknowledged());
+        }
         System.exit(executionResult);
     }
 
@@ -141,7 +173,14 @@ public class CommandLineLoader extends AbstractLoader {
             mappingConfig.addUUIDs(configurationService.getValue(UUID_KEYS));
         }
 
-        CassandraSessionManager sessionManager = new LiveCassandraSessionManagerImpl(configurationService);
+        CassandraSessionManager sessionManager;
+        if (!Strings.isNullOrEmpty(configurationService.getValue(LOADER_SSTABLE_DIR_KEY))) {
+            sessionManager = sstableSessionManager(configurationService, mappingConfig);
+        } else if (configurationService.getBooleanValue(LOADER_DRY_RUN_KEY, Boolean.FALSE)) {
+            sessionManager = dryRunSessionManager(configurationService, mappingConfig);
+        } else {
+            sessionManager = new LiveCassandraSessionManagerImpl(configurationService);
+        }
         try {
             sessionManager.startCassandraClient();
         } catch (Exception e) {
@@ -152,32 +191,404 @@ public class CommandLineLoader extends AbstractLoader {
         return new CommandLineLoader(sessionManager, configurationService, mappingConfig, inputFileFilename);
     }
 
+    /**
+     * A session that goes nowhere, over the table given on the command line, so the whole client can be measured
+     * without a cluster.
+     */
+    private static CassandraSessionManager dryRunSessionManager(ConfigurationService configurationService,
+                                                                MappingConfig mappingConfig) {
+        String schema = configurationService.getValue(LOADER_DRY_RUN_SCHEMA_KEY);
+        if (Strings.isNullOrEmpty(schema)) {
+            log.error("Missing argument {}: the columns of table {} for a dry run", LOADER_DRY_RUN_SCHEMA_KEY,
+               mappingConfig.getTable());
+            printHelp();
+            System.exit(-1);
+        }
+        StandInTable table = null;
+        try {
+            table = StandInTable.parse(configurationService.getValue(MAIN_KEYSPACE_KEY), mappingConfig.getTable(),
+               schema, configurationService.getValue(LOADER_DRY_RUN_PARTITION_KEY_KEY));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid {}: {}", LOADER_DRY_RUN_SCHEMA_KEY, e.getMessage());
+            System.exit(-1);
+        }
+        double latencyMillis = configurationService.getDoubleValue(LOADER_DRY_RUN_LATENCY_MS_KEY,
+           Constants.LOADER_DEFAULT_DRY_RUN_LATENCY_MS);
+        log.info("Dry run: nothing is written; writes to {}.{} are acknowledged after {} ms", table.getKeyspace(),
+           table.getTable(), latencyMillis);
+        return new DryRunCassandraSessionManager(table, Math.round(latencyMillis * 1000000), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A session that goes nowhere, over the table of the CREATE TABLE statement the SSTables are written for, so
+     * the rows are converted as for a load through a cluster without one.
+     */
+    private static CassandraSessionManager sstableSessionManager(ConfigurationService configurationService,
+                                                                 MappingConfig mappingConfig) {
+        SSTableOutput.enterClientMode();
+        TableSchema table = null;
+        try {
+            table = SSTableOutput.readTable(readCreateTable(configurationService),
+               configurationService.getValue(MAIN_KEYSPACE_KEY));
+        } catch (CLILoaderRuntimeException | IllegalArgumentException e) {
+            log.error("Invalid {}: {}", LOADER_SSTABLE_SCHEMA_KEY, e.getMessage());
+            printHelp();
+            System.exit(-1);
+        }
+        if (!table.getKeyspace().equals(configurationService.getValue(MAIN_KEYSPACE_KEY)) ||
+           !table.getTable().equalsIgnoreCase(mappingConfig.getTable())) {
+            log.error("The {} statement creates {}.{}, but the load is into {}.{}", LOADER_SSTABLE_SCHEMA_KEY,
+               table.getKeyspace(), table.getTable(), configurationService.getValue(MAIN_KEYSPACE_KEY),
+               mappingConfig.getTable());
+            System.exit(-1);
+        }
+        return new DryRunCassandraSessionManager(standIn(table), 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return a stand-in of the table, for a session that goes nowhere
+     */
+    static StandInTable standIn(TableSchema table) {
+        return new StandInTable(table.getKeyspace(), table.getTable(), table.getTypes(), table.getPartitionKey(),
+           table.getClusteringKey());
+    }
+
+    private static String readCreateTable(ConfigurationService configurationService) {
+        String schemaFile = configurationService.getValue(LOADER_SSTABLE_SCHEMA_KEY);
+        if (Strings.isNullOrEmpty(schemaFile)) {
+            throw new CLILoaderRuntimeException("Missing argument " + LOADER_SSTABLE_SCHEMA_KEY +
+               ": the CREATE TABLE statement of the table the SSTables are written for");
+        }
+        try {
+            return new String(Files.readAllBytes(Paths.get(schemaFile)), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw new CLILoaderRuntimeException("Unable to read the CREATE TABLE statement from " + schemaFile, e);
+        }
+    }
+
+    /**
+     * Report how fast the client went on its own, and where its CPU time and allocations went.
+     */
+    private static void reportDryRun(ThreadUsageSampler.Usage usage, long rows) {
+        double seconds = usage.getWallNanos() / 1e9;
+        log.info("Dry run: {} rows acknowledged in {}, {} rows/s on the client alone", rows,
+           formatElapsedTime(TimeUnit.NANOSECONDS.toMillis(usage.getWallNanos())),
+           String.format("%.0f", seconds > 0 ? rows / seconds : 0));
+        if (usage.getAllocatedBytes() >= 0) {
+            log.info("Dry run allocations: {} allocated, {}/s, {} bytes per row; {} garbage collections took {} ms",
+               humanReadableByteCount(usage.getAllocatedBytes(), false),
+               humanReadableByteCount(seconds > 0 ? usage.getAllocatedBytes() / seconds : 0, false),
+               rows > 0 ? usage.getAllocatedBytes() / rows : 0, usage.getGcCount(), usage.getGcMillis());
+        }
+        long cpu = Math.max(usage.getProcessCpuNanos(), usage.getThreadCpuNanos());
+        log.info("Dry run CPU: {} s over {} s ({} cores busy on average, {} microseconds per row), by thread:{}",
+           String.format("%.2f", cpu / 1e9), String.format("%.2f", seconds),
+           String.format("%.2f", seconds > 0 ? cpu / 1e9 / seconds : 0),
+           String.format("%.2f", rows > 0 ? cpu / 1e3 / rows : 0), usage.summary());
+    }
+
     private static void printHelp(){
         // Required options
         log.info("------- Commandline loader options -------");
         log.info("Required options :");
         log.info("--{} : Name of the keyspace.", MAIN_KEYSPACE_KEY);
         log.info("--{} : Path to mapping file.", LOADER_MAPPING_FILE_KEY);
-        log.info("--{} : Path to input file.", LOADER_INPUT_FILE_KEY);
+        log.info("--{} : Path to input file, a directory of input files or a comma separated list of input files.", LOADER_INPUT_FILE_KEY);
+        log.info("--{} : Seconds between throughput and write latency reports; 0 disables them (Default value {})", LOADER_METRICS_INTERVAL_S_KEY, Constants.LOADER_DEFAULT_METRICS_INTERVAL_S);
+        log.info("--{} : File to append a JSON snapshot of the load metrics to with every report", LOADER_METRICS_FILE_KEY);
+        log.info("--{} : Files loaded at once when there are several input files (Default value {})", LOADER_CONCURRENT_FILES_KEY, Constants.LOADER_DEFAULT_CONCURRENT_FILES);
+        log.info("--{} : Maximum writes in flight across all files loaded at once (Default value {})", LOADER_TOTAL_IN_FLIGHT_KEY, Constants.LOADER_DEFAULT_ADAPTIVE_MAX_IN_FLIGHT);
         // Additional options
         log.info("Additional options :");
         log.info("--{} : Batch size for writing to db.", LOADER_BATCH_SIZE_KEY);
+        log.info("--{} : Adapt the writes in flight to the write latency and errors of the cluster (Default value false)", LOADER_ADAPTIVE_CONCURRENCY_KEY);
+        log.info("--{} : Maximum writes in flight at once (Default value {} when adaptive, otherwise the batch size)", LOADER_MAX_IN_FLIGHT_KEY, Constants.LOADER_DEFAULT_ADAPTIVE_MAX_IN_FLIGHT);
+        log.info("--{} : Minimum writes in flight at once when adaptive (Default value {})", LOADER_MIN_IN_FLIGHT_KEY, Constants.LOADER_DEFAULT_MIN_IN_FLIGHT);
+        log.info("--{} : p99 write latency in milliseconds under which adaptive writes may grow (Default value {})", LOADER_TARGET_P99_MS_KEY, Constants.LOADER_DEFAULT_TARGET_P99_MS);
+        log.info("--{} : Fraction of failed writes under which adaptive writes may grow (Default value {})", LOADER_TARGET_ERROR_RATE_KEY, Constants.LOADER_DEFAULT_TARGET_ERROR_RATE);
+        log.info("--{} : Times a write that timed out or hit an overloaded node is retried (Default value {})", LOADER_WRITE_RETRIES_KEY, Constants.LOADER_DEFAULT_WRITE_RETRIES);
         log.info("--{} : Cache size for prepared statements.", LOADER_CACHE_SIZE_KEY);
+        log.info("--{} : Number of parse workers; enables the pipelined loader when above 0 (Default value 0)", LOADER_THREADS_KEY);
+        log.info("--{} : Batches of lines queued between the reader and the writer in pipelined mode", LOADER_QUEUE_DEPTH_KEY);
+        log.info("--{} : Lines per batch handed to a parse worker in pipelined mode", LOADER_CHUNK_LINES_KEY);
+        log.info("--{} : Bytes per file chunk read at once, and decoded by one parse worker in pipelined mode, such as {}; needed for checkpoints; 0 reads line by line (Default value {})", LOADER_CHUNK_BYTES_KEY, Constants.LOADER_LINE_INDEX_CHUNK_BYTES, Constants.LOADER_DEFAULT_CHUNK_BYTES);
+        log.info("--{} : Group inserts into unlogged batches by partition or replica: none, partition or replica (Default value none)", LOADER_BATCH_MODE_KEY);
+        log.info("--{} : Maximum rows in one batch (Default value {})", LOADER_BATCH_ROWS_KEY, Constants.LOADER_DEFAULT_BATCH_ROWS);
+        log.info("--{} : Longest a row waits for its batch to fill, in milliseconds (Default value {})", LOADER_BATCH_DELAY_MS_KEY, Constants.LOADER_DEFAULT_BATCH_DELAY_MS);
+        log.info("--{} : Maximum batches open at once before the oldest is written (Default value {})", LOADER_BATCH_GROUPS_KEY, Constants.LOADER_DEFAULT_BATCH_GROUPS);
+        log.info("--{} : Route statements to a replica of their partition (Default value true when batching, otherwise false)", CASSANDRA_TOKEN_AWARE_KEY);
+        log.info("--{} : Start loading on an estimated line count and count the lines exactly while loading (Default value false)", LOADER_COUNT_IN_BACKGROUND_KEY);
+        log.info("--{} : Resume an interrupted load from its checkpoint (Default value false)", LOADER_RESUME_KEY);
+        log.info("--{} : Checkpoint file of the load (Default value is the input file name followed by {})", LOADER_CHECKPOINT_FILE_KEY, Constants.LOADER_CHECKPOINT_SUFFIX);
+        log.info("--{} : Milliseconds between checkpoints of a chunked load, such as 30000; 0 disables checkpoints (Default value {})", LOADER_CHECKPOINT_INTERVAL_MS_KEY, Constants.LOADER_DEFAULT_CHECKPOINT_INTERVAL_MS);
         log.info("--{} : Path to additional properties config file", CONFIG_FILE_KEY);
         log.info("--{} : Extra synthetic columns", SYNTHETICS_KEY);
         log.info("--{} : Extra timestamp columns", TIMESTAMPS_KEY);
         log.info("--{} : Extra linenumber columns", LINENUMBERS_KEY);
-        log.info("--{} : Extra uuid columns", UUID_KEYS);
+        log.info("--{} : Extra uuid columns, each optionally as column=random or column=time for time based uuids (Default random, time for timeuuid columns)", UUID_KEYS);
         log.info("--{} : Table name override", LOADER_TABLE_NAME_KEY);
+        log.info("--{} : Rows that fail to convert or write set aside before the load fails; -1 for no limit (Default value {})", LOADER_MAX_REJECTS_KEY, Constants.LOADER_DEFAULT_MAX_REJECTS);
+        log.info("--{} : File for the rows set aside, with line number and reason (Default value is the input file name followed by {})", LOADER_REJECT_FILE_KEY, Constants.LOADER_REJECTS_SUFFIX);
+        log.info("--{} : Profile the values of every mapped column while loading (Default value false)", LOADER_PROFILE_KEY);
+        log.info("--{} : JSON report of the column profile (Default value is the input file name followed by {})", LOADER_PROFILE_FILE_KEY, Constants.LOADER_PROFILE_SUFFIX);
+        log.info("--{} : Most frequent values reported per column in the profile (Default value {})", LOADER_PROFILE_TOP_K_KEY, Constants.LOADER_DEFAULT_PROFILE_TOP_K);
+        log.info("--{} : Run the whole load against a stand-in session that writes nothing, and report the rows/s, allocations and CPU time of the client (Default value false)", LOADER_DRY_RUN_KEY);
+        log.info("--{} : Columns of the table for a dry run, as a comma separated column:type list such as id:uuid,name:text,tags:set<text>", LOADER_DRY_RUN_SCHEMA_KEY);
+        log.info("--{} : Comma separated partition key columns for a dry run (Default value is the first column)", LOADER_DRY_RUN_PARTITION_KEY_KEY);
+        log.info("--{} : Milliseconds before a dry run acknowledges a write (Default value {})", LOADER_DRY_RUN_LATENCY_MS_KEY, Constants.LOADER_DEFAULT_DRY_RUN_LATENCY_MS);
+        log.info("--{} : Skip rows whose primary key already came earlier in the input file: none, exact (off heap key set) or bloom (Bloom filter, which also skips a small share of unique rows) (Default value {})", LOADER_DEDUP_KEY, Constants.LOADER_DEFAULT_DEDUP);
+        log.info("--{} : Copy of a duplicate key to load: first or last; last needs exact and reads the input twice (Default value {})", LOADER_DEDUP_POLICY_KEY, Constants.LOADER_DEFAULT_DEDUP_POLICY);
+        log.info("--{} : Comma separated columns to deduplicate on (Default value is the primary key of the table)", LOADER_DEDUP_COLUMNS_KEY);
+        log.info("--{} : Megabytes of memory for the deduplication keys (Default value {})", LOADER_DEDUP_MAX_MEMORY_MB_KEY, Constants.LOADER_DEFAULT_DEDUP_MAX_MEMORY_MB);
+        log.info("--{} : False positive rate the Bloom filter is sized for, within its memory (Default value {})", LOADER_DEDUP_FALSE_POSITIVE_RATE_KEY, Constants.LOADER_DEFAULT_DEDUP_FALSE_POSITIVE_RATE);
+        log.info("--{} : Write only the rows that are new or changed since the previous snapshot of the feed, as recorded in the delta index (Default value false)", LOADER_DELTA_KEY);
+        log.info("--{} : Delta index of the previous snapshot, replaced by that of this one once the load succeeds (Default value is keyspace.table{} beside the input file)", LOADER_DELTA_INDEX_KEY, Constants.LOADER_DELTA_INDEX_SUFFIX);
+        log.info("--{} : Delete the rows of the previous snapshot whose key is not in this one (Default value false)", LOADER_DELTA_DELETES_KEY);
+        log.info("--{} : Take the cells of text columns with few distinct values from a dictionary instead of creating a string for each (Default value false)", LOADER_DICTIONARY_KEY);
+        log.info("--{} : Lines sampled to find the columns with few distinct values (Default value {})", LOADER_DICTIONARY_SAMPLE_LINES_KEY, Constants.LOADER_DEFAULT_DICTIONARY_SAMPLE_LINES);
+        log.info("--{} : Distinct values of a column in the sample, above which it gets no dictionary (Default value {})", LOADER_DICTIONARY_MAX_DISTINCT_KEY, Constants.LOADER_DEFAULT_DICTIONARY_MAX_DISTINCT);
+        log.info("--{} : Directory where table schemas are kept between loads, checked against the schema version of the cluster, e.g. ~/.loader/schema-cache; none to read the schema every time (Default value {})", LOADER_SCHEMA_CACHE_DIR_KEY, Constants.LOADER_DEFAULT_SCHEMA_CACHE_DIR);
+        log.info("--{} : Lines sampled to prepare the inserts of their column shapes before the load starts; 0 to prepare every shape as it comes up (Default value {})", LOADER_WARMUP_LINES_KEY, Constants.LOADER_DEFAULT_WARMUP_LINES);
+        log.info("--{} : Write the rows to SSTables under this directory, for sstableloader, instead of inserting them; no cluster is needed", LOADER_SSTABLE_DIR_KEY);
+        log.info("--{} : File with the CREATE TABLE statement of the table the SSTables are written for", LOADER_SSTABLE_SCHEMA_KEY);
+        log.info("--{} : Megabytes buffered by the SSTable writer of every column shape before it writes an SSTable (Default value {})", LOADER_SSTABLE_BUFFER_MB_KEY, Constants.LOADER_DEFAULT_SSTABLE_BUFFER_MB);
+        log.info("--{} : Column shapes, each with an SSTable writer of its own, a load writes at most before it fails (Default value {})", LOADER_SSTABLE_MAX_SHAPES_KEY, Constants.LOADER_DEFAULT_SSTABLE_MAX_SHAPES);
+        log.info("--{} : Partitioner of the cluster the SSTables are streamed into (Default value {})", LOADER_SSTABLE_PARTITIONER_KEY, Constants.LOADER_DEFAULT_SSTABLE_PARTITIONER);
         log.info("--{} : Use strict mappings from mapping file (Default value false)", LOADER_USE_STRICT_MAPPING_KEY);
         log.info("-------  -------");
     }
 
+    /**
+     * Share a budget of writes in flight with the other files of a multi-file load. Call before {@link #load()}.
+     */
+    public void shareWriteBudget(WriteBudget writeBudget) {
+        this.writeBudget = writeBudget;
+    }
+
+    /**
+     * Start the progress lines of this load with {@code label}. Call before {@link #load()}.
+     */
+    public void setProgressLabel(String progressLabel) {
+        this.progressLabel = progressLabel;
+    }
+
+    /**
+     * @return rows acknowledged by the cluster during the last {@link #load()}
+     */
+    public long getInsertsCompleted() {
+        return insertsCompleted;
+    }
+
+    /**
+     * @return size of the input file of the last {@link #load()}
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    private static void removeShutdownHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // already shutting down, the hook is running
+        }
+    }
+
+    private MetricsReporter startMetricsReporter(LoaderMetrics metrics) {
+        int interval = configService.getIntegerValue(LOADER_METRICS_INTERVAL_S_KEY, Constants.LOADER_DEFAULT_METRICS_INTERVAL_S);
+        if (interval <= 0) {
+            return null;
+        }
+        String metricsFile = configService.getValue(LOADER_METRICS_FILE_KEY);
+        return new MetricsReporter(metrics, new File(inputFilename).getName(), interval, TimeUnit.SECONDS,
+           Strings.isNullOrEmpty(metricsFile) ? null : new File(metricsFile));
+    }
+
+    private DeadLetterWriter startDeadLetterWriter(LoaderMetrics metrics) {
+        int maxRejects = configService.getIntegerValue(LOADER_MAX_REJECTS_KEY, Constants.LOADER_DEFAULT_MAX_REJECTS);
+        if (maxRejects == 0) {
+            return null;
+        }
+        return new DeadLetterWriter(new File(configService.getValue(LOADER_REJECT_FILE_KEY,
+           inputFilename + Constants.LOADER_REJECTS_SUFFIX)), maxRejects, metrics);
+    }
+
+    /**
+     * Set aside the rows of a write that failed for good.
+     *
+     * @param context the row of the write, or the list of rows of a batch
+     * @return false if the rows could not all be set aside
+     */
+    private static boolean rejectWrite(DeadLetterWriter deadLetters, Object context, Throwable failure) {
+        if (context instanceof MappedRow) {
+            MappedRow row = (MappedRow) context;
+            return deadLetters.reject(row.getLineNumber(), row.getLine(), failure);
+        }
+        if (context instanceof List) {
+            for (Object row : (List<?>) context) {
+                if (!rejectWrite(deadLetters, row, failure)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void reportProfile(ColumnProfiler profiler) {
+        log.info("Column profile of {}:{}", inputFilename, profiler.summary());
+        File report = new File(configService.getValue(LOADER_PROFILE_FILE_KEY, inputFilename + Constants.LOADER_PROFILE_SUFFIX));
+        JSONObject json = new JSONObject()
+           .put("input", inputFilename)
+           .put("columns", profiler.toJSON());
+        try {
+            Files.write(report.toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+            log.info("Column profile written to {}", report);
+        } catch (IOException e) {
+            log.warn("Unable to write the column profile to {}", report, e);
+        }
+    }
+
+    /**
+     * @return up to {@code lines} lines from the start of the input, after the header
+     */
+    private List<String> readSample(int lines) throws IOException {
+        List<String> sample = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(Compression.openReader(inputFilename))) {
+            in.readLine();
+            String line;
+            while (sample.size() < lines && (line = in.readLine()) != null) {
+                sample.add(line);
+            }
+        }
+        return sample;
+    }
+
+    private Path deltaIndexFile() {
+        String indexFile = configService.getValue(LOADER_DELTA_INDEX_KEY);
+        if (!Strings.isNullOrEmpty(indexFile)) {
+            return Paths.get(indexFile);
+        }
+        // the snapshots of a feed usually differ in name, so the index goes by the table they are loaded into
+        return Paths.get(inputFilename).toAbsolutePath().resolveSibling(configService.getValue(MAIN_KEYSPACE_KEY) + "." +
+           mappingConfig.getTable() + Constants.LOADER_DELTA_INDEX_SUFFIX);
+    }
+
+    /**
+     * @return the deduplication stage asked for, or null if rows are not deduplicated
+     */
+    private PrimaryKeyDeduplicator buildDeduplicator(MappingPlan plan, long expectedRows) {
+        String dedup = configService.getValue(LOADER_DEDUP_KEY, Constants.LOADER_DEFAULT_DEDUP);
+        if ("none".equalsIgnoreCase(dedup)) {
+            return null;
+        }
+        PrimaryKeyDeduplicator.Structure structure;
+        PrimaryKeyDeduplicator.Policy policy;
+        try {
+            structure = PrimaryKeyDeduplicator.Structure.valueOf(dedup.toUpperCase());
+            policy = PrimaryKeyDeduplicator.Policy.valueOf(configService.getValue(LOADER_DEDUP_POLICY_KEY,
+               Constants.LOADER_DEFAULT_DEDUP_POLICY).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new CLILoaderRuntimeException("Unknown deduplication " + dedup + " or policy " +
+               configService.getValue(LOADER_DEDUP_POLICY_KEY) + "; see --" + LOADER_DEDUP_KEY + " and --" +
+               LOADER_DEDUP_POLICY_KEY, e);
+        }
+        String keyColumns = configService.getValue(LOADER_DEDUP_COLUMNS_KEY);
+        List<String> key = Strings.isNullOrEmpty(keyColumns) ? getPrimaryKeyColumns() :
+           Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings().split(keyColumns));
+        PrimaryKeyDeduplicator deduplicator = new PrimaryKeyDeduplicator(plan.getColumns(), key, structure, policy,
+           expectedRows, configService.getDoubleValue(LOADER_DEDUP_FALSE_POSITIVE_RATE_KEY,
+           Constants.LOADER_DEFAULT_DEDUP_FALSE_POSITIVE_RATE),
+           configService.getIntegerValue(LOADER_DEDUP_MAX_MEMORY_MB_KEY, Constants.LOADER_DEFAULT_DEDUP_MAX_MEMORY_MB) * 1024L * 1024L);
+        log.info("Skipping rows whose key ({}) came earlier in {}, keeping the {} copy", Joiner.on(", ").join(key),
+           inputFilename, policy.name().toLowerCase());
+        return deduplicator;
+    }
+
+    /**
+     * First pass of a last-wins deduplication: read the whole input once to find the last line of every key.
+     * Lines that do not convert are left to the load itself to report.
+     */
+    private void recordLastCopies(PrimaryKeyDeduplicator deduplicator, MappingPlan plan, ChunkedFile chunkedFile,
+                                  int chunkBytes, int threads) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        LineMapper<Void> recorder = (line, lineNumber) -> {
+            try {
+                deduplicator.recordLastCopy(plan.map(line, lineNumber));
+            } catch (CLILoaderRuntimeException e) {
+                log.trace("Line {} left out of the first pass", lineNumber, e);
+            }
+            return null;
+        };
+        LoadPipeline<Void> pipeline = threads <= 0 ? null : new LoadPipeline<>(threads,
+           configService.getIntegerValue(LOADER_QUEUE_DEPTH_KEY, threads * Constants.LOADER_DEFAULT_QUEUE_DEPTH_PER_THREAD),
+           configService.getIntegerValue(LOADER_CHUNK_LINES_KEY, Constants.LOADER_DEFAULT_CHUNK_LINES));
+        long lines = 0;
+        if (chunkedFile != null) {
+            List<FileChunk> chunks = chunkedFile.split(chunkedFile.nextLineStart(0), chunkBytes);
+            if (pipeline != null) {
+                lines = pipeline.run(chunkedFile, chunks, 1L, recorder, ignored -> { }, (chunk, nextLineNumber) -> { });
+            } else {
+                for (FileChunk chunk : chunks) {
+                    for (String line : chunkedFile.readLines(chunk)) {
+                        recorder.map(line, ++lines);
+                    }
+                }
+            }
+        } else {
+            try (BufferedReader in = new BufferedReader(Compression.openReader(inputFilename))) {
+                in.readLine();
+                if (pipeline != null) {
+                    lines = pipeline.run(in, 1L, recorder, ignored -> { });
+                } else {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        recorder.map(line, ++lines);
+                    }
+                }
+            }
+        }
+        log.info("Found the last copy of every key in {} lines in {}", lines, stopwatch);
+    }
+
+    private InFlightWindow buildWindow(LoadProgress progress, LoaderMetrics metrics) {
+        int writeRetries = configService.getIntegerValue(LOADER_WRITE_RETRIES_KEY, Constants.LOADER_DEFAULT_WRITE_RETRIES);
+        // the old batch size bounded how many writes were outstanding, so it remains the fixed window size and
+        // the starting point of the adaptive limit
+        int batchSize = configService.getIntegerValue(LOADER_BATCH_SIZE_KEY);
+        InFlightWindow window;
+        if (!configService.getBooleanValue(LOADER_ADAPTIVE_CONCURRENCY_KEY, Boolean.FALSE)) {
+            window = new InFlightWindow(configService.getIntegerValue(LOADER_MAX_IN_FLIGHT_KEY, batchSize), writeRetries);
+            window.setBudget(writeBudget);
+            window.setMetrics(metrics);
+            return window;
+        }
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(batchSize,
+           configService.getIntegerValue(LOADER_MIN_IN_FLIGHT_KEY, Constants.LOADER_DEFAULT_MIN_IN_FLIGHT),
+           configService.getIntegerValue(LOADER_MAX_IN_FLIGHT_KEY, Constants.LOADER_DEFAULT_ADAPTIVE_MAX_IN_FLIGHT),
+           configService.getIntegerValue(LOADER_TARGET_P99_MS_KEY, Constants.LOADER_DEFAULT_TARGET_P99_MS),
+           configService.getDoubleValue(LOADER_TARGET_ERROR_RATE_KEY, Constants.LOADER_DEFAULT_TARGET_ERROR_RATE),
+           Constants.LOADER_ADAPTIVE_BACKOFF, Constants.LOADER_ADAPTIVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log.info("Adaptive write concurrency starting at {} writes in flight, between {} and {}", limit.getLimit(),
+           limit.getMinLimit(), limit.getMaxLimit());
+        progress.reportConcurrency(limit);
+        window = new InFlightWindow(limit, writeRetries);
+        window.setBudget(writeBudget);
+        window.setMetrics(metrics);
+        return window;
+    }
+
     private static ConfigurationService buildConfigService(Properties properties) {
         ConstantConfigurationServiceImpl constantService = new ConstantConfigurationServiceImpl();
 
         PropertiesConfigurationServiceImpl propsService = new PropertiesConfigurationServiceImpl(properties);
         properties.setProperty(CASSANDRA_CONSISTENCY_LEVEL_KEY, CQLUtil.CQLKeyword.LOCAL_QUORUM.name());
+        // defaults of the loader, which the command line and the config file both override; filled in below,
+        // once the other layers are known
+        Properties loaderDefaults = new Properties();
+        PropertiesConfigurationServiceImpl defaultsService = new PropertiesConfigurationServiceImpl(loaderDefaults);
+        DelegatingConfigurationServiceImpl.DCSIBuilder builder = DelegatingConfigurationServiceImpl.builder()
+                .add(propsService);
         // user might choose to add an additional configuration file,
         // the properties from that file will be superseded by those from the command line
         if (properties.containsKey(CONFIG_FILE_KEY)) {
@@ -203,23 +614,31 @@ public class CommandLineLoader extends AbstractLoader {
                 System.exit(-1);
             }
 
-            return DelegatingConfigurationServiceImpl.builder()
-                    .add(propsService)
-                    .add(loaderConfig)
-                    .add(constantService)
-                    .build();
+            builder.add(loaderConfig);
         }
 
-        return DelegatingConfigurationServiceImpl.builder()
-                .add(propsService)
+        ConfigurationService configService = builder
+                .add(defaultsService)
                 .add(constantService)
                 .build();
+        // batches carry the partition key of their rows, so a batching load routes them to a replica unless
+        // told otherwise; other loads keep the routing of the session
+        String batchMode = configService.getValue(LOADER_BATCH_MODE_KEY);
+        if (!Strings.isNullOrEmpty(batchMode) && !"none".equalsIgnoreCase(batchMode)) {
+            loaderDefaults.setProperty(CASSANDRA_TOKEN_AWARE_KEY, Boolean.TRUE.toString());
+        }
+        return configService;
     }
 
     // static fields and methods above
     //====================================================================================================
     // instance fields and methods below
 
+    private WriteBudget writeBudget;
+    private String progressLabel;
+    private volatile long insertsCompleted = 0;
+    private volatile long inputBytes = 0;
+
     public CommandLineLoader(CassandraSessionManager sessionManager,
                              ConfigurationService configService,
                              MappingConfig mappingConfig,
@@ -235,80 +654,135 @@ public class CommandLineLoader extends AbstractLoader {
                " does not exist");
         }
 
-        FileMetrics fileMetrics = estimateBytesAndLinesInFile(inputFilename);
+        int threads = configService.getIntegerValue(LOADER_THREADS_KEY, 0);
+        boolean dryRun = configService.getBooleanValue(LOADER_DRY_RUN_KEY, Boolean.FALSE);
+        String sstableDir = configService.getValue(LOADER_SSTABLE_DIR_KEY);
+        boolean sstables = !Strings.isNullOrEmpty(sstableDir);
+        boolean delta = configService.getBooleanValue(LOADER_DELTA_KEY, Boolean.FALSE);
+        checkOptions(dryRun, sstableDir, delta);
+        Compression compression;
+        try {
+            compression = Compression.detect(Paths.get(inputFilename));
+        } catch (IOException e) {
+            throw new CLILoaderRuntimeException("Unable to read the input file " + inputFilename, e);
+        }
+        if (compression != Compression.NONE) {
+            log.info("Input file is {} compressed; it is decompressed while loading, on a thread of its own",
+               compression.name().toLowerCase());
+        }
+        // compressed input has no random access, so it is streamed instead of read in chunks
+        int chunkBytes = compression != Compression.NONE ? 0 :
+           configService.getIntegerValue(LOADER_CHUNK_BYTES_KEY, Constants.LOADER_DEFAULT_CHUNK_BYTES);
+        boolean countInBackground = configService.getBooleanValue(LOADER_COUNT_IN_BACKGROUND_KEY, Boolean.FALSE);
+
+        LineNumberReader inputFile = null;
+        ChunkedFile chunkedFile = null;
+        LineIndex lineIndex = null;
+        FileMetrics fileMetrics;
+        try {
+            if (chunkBytes > 0) {
+                chunkedFile = ChunkedFile.open(Paths.get(inputFilename));
+                if (countInBackground) {
+                    fileMetrics = estimateBytesAndLinesInFile(inputFilename);
+                } else {
+                    // the index also gives every chunk its line numbers up front
+                    lineIndex = indexLinesInFile(chunkedFile, chunkBytes);
+                    fileMetrics = fileMetrics(chunkedFile, lineIndex);
+                }
+            } else {
+                // counting the lines of compressed input would decompress it all twice
+                fileMetrics = countInBackground || compression != Compression.NONE ?
+                   estimateBytesAndLinesInFile(inputFilename) : countBytesAndLinesInFile(inputFilename);
+            }
+        } catch (IOException e) {
+            CloseablesWrapper.closeQuietly(chunkedFile);
+            throw new CLILoaderRuntimeException("Unable to read the input file " + inputFilename, e);
+        }
         log.debug("File metrics: {}", fileMetrics);
         if(fileMetrics.lines == 0){
             log.error("Invalid input file {}. File is empty", inputFilename);
+            CloseablesWrapper.closeQuietly(chunkedFile);
             return -1;
         }
-        LineNumberReader inputFile = null;
 
         Session session = sessionManager.getSession();
 
         int columnIndex = 0;
-        int linenumber = 0;
-        int linesProcessed = 0;
-        int lastPercentile = 0;
-        int insertsCompleted = 0;
-        Stopwatch timer = DurationUtil.getStopwatchStarted();
+        long linesProcessed = 0;
         boolean errorCondition = false;
-        boolean exceededEstimate = false;
-        List<ResultSetFuture> futures = Lists.newArrayListWithExpectedSize(configService.getIntegerValue(LOADER_BATCH_SIZE_KEY));
+        LoadProgress progress = new LoadProgress(fileMetrics);
+        if (progressLabel != null) {
+            progress.label(progressLabel);
+        }
+        LoaderMetrics metrics = LoaderMetrics.startMetrics();
+        DeadLetterWriter deadLetters = startDeadLetterWriter(metrics);
+        InFlightWindow window = buildWindow(progress, metrics);
+        LongAdder writesSetAside = new LongAdder();
+        if (deadLetters != null) {
+            window.setFailureHandler((context, failure) -> {
+                writesSetAside.increment();
+                return rejectWrite(deadLetters, context, failure);
+            });
+        }
+        StatementWriter writer = new StatementWriter(session, window, progress);
+        LoadStages stages = new LoadStages();
+        inputBytes = fileMetrics.bytes;
 
-        Runtime.getRuntime().addShutdownHook(new Thread(){
+        MetricsReporter metricsReporter = startMetricsReporter(metrics);
+
+        Thread cancelPendingHook = new Thread(){
             public void run(){
                 log.debug("In futures shutdown hook");
-                for (ResultSetFuture future: futures) {
-                    if(!future.isDone()){
-                        future.cancel(true);
-                    }
-                }
-            }
-        });
-
-        /**
-         *   Using Guava CacheLoader to cache the prepared statements for reuse.
-         *   The idea is to void inserting null values as they create tombstones in cassandra.
-         *   So we will try to create insert statements based on which columns have data in a line.
-         */
-        CacheLoader<String, PreparedStatement> cacheLoader = new CacheLoader<String, PreparedStatement>() {
-            @Override
-            public PreparedStatement load(String id)
-               throws Exception {
-                return session.prepare(id);
+                writer.cancelPending();
             }
         };
-        Cache<String, PreparedStatement> preparedStatementCache = CacheBuilder.newBuilder()
-           .maximumSize(configService.getIntegerValue(
-                   LOADER_CACHE_SIZE_KEY) == null ? Constants.PREPAREDSTATEMENT_CACHE_SIZE : configService.getIntegerValue(
-                   LOADER_CACHE_SIZE_KEY))
-           .recordStats()
-           .build(cacheLoader);
+        Runtime.getRuntime().addShutdownHook(cancelPendingHook);
 
         //For any columns with timestamp synthetic
         String timestamp = DurationUtil.getCurrentDateWithMDRDateFormat(); // TODO: temporary fix
 
-        PreparedStatement preparedStatement;
+        if (countInBackground && chunkedFile != null) {
+            // overlap the exact count with the load; progress runs on the estimate until the count is in
+            ChunkedFile countedFile = chunkedFile;
+            Thread counter = new Thread(() -> {
+                try {
+                    progress.exactCount(fileMetrics(countedFile, indexLinesInFile(countedFile, chunkBytes)));
+                } catch (RuntimeException e) {
+                    log.warn("Unable to count the lines of the input file; progress stays estimated", e);
+                }
+            }, "loader-line-count");
+            counter.setDaemon(true);
+            counter.start();
+        }
 
         try {
-            inputFile = new LineNumberReader(new FileReader(inputFilename));
-            String line;
+            String headerLine;
+            if (chunkedFile != null) {
+                // the file is read in newline aligned chunks; in pipelined mode the workers decode them in parallel
+                headerLine = chunkedFile.readLine(0);
+            } else if (compression != Compression.NONE) {
+                DecompressingInputStream decompressed = DecompressingInputStream.open(Paths.get(inputFilename), compression);
+                progress.trackInputBytes(decompressed::getCompressedBytesRead);
+                inputFile = new LineNumberReader(new InputStreamReader(decompressed, StandardCharsets.UTF_8));
+                headerLine = inputFile.readLine();
+            } else {
+                // the same charset as the chunks of a chunked load, so a file reads the same either way
+                inputFile = new LineNumberReader(new InputStreamReader(new FileInputStream(inputFilename),
+                   StandardCharsets.UTF_8));
+                headerLine = inputFile.readLine();
+            }
 
             //TODO: accept delimiter as an option from command line
-            List<String> fileHeaders = Arrays.asList(inputFile.readLine().split("\\t", -1));
-
-            CaseInsensitiveSet insertedColumns = new CaseInsensitiveSet();
+            FieldTokenizer headerFields = FieldTokenizer.tabs();
+            headerFields.tokenize(headerLine);
+            List<String> fileHeaders = headerFields.toList();
 
             if (log.isDebugEnabled()) {
                 log.debug("File headers: {}", Joiner.on(", ").join(fileHeaders));
             }
 
             List<String> columns = determineInputColumns(fileHeaders, getTableColumns());
-            Map<String, DataType> columnTypeMap = determineTableColumnTypes(columns.toArray(new String[columns.size()]));
-
-            int statementsInBatch = 0;
-
-            Map<String, String> syntheticToColumnMap = mappingConfig.getSyntheticToColumnMap();
+            Map<String, DataType> columnTypeMap = getTableColumnTypes(columns);
 
             //Fix for missing headers in file but mapped in mapping file.
             //Since we are getting different file formats at this time, user might have hard time correcting the mapping files.
@@ -327,171 +801,90 @@ public class CommandLineLoader extends AbstractLoader {
                 mappingConfig.getHeaderToColumnMap().remove(headerToRemove);
             }
 
-            do {
-                insertedColumns.clear();
-                line = inputFile.readLine();
-                if (line == null) {
-                    continue;
-                }
-
-                linenumber++;
-
-                Insert insertQuery = QueryBuilder.insertInto(CQLUtil.escapeIdentifier(configService.getValue(MAIN_KEYSPACE_KEY)),
-                                                             CQLUtil.escapeIdentifier(mappingConfig.getTable()));
-
-                List<Object> rowValuesToInsert = new ArrayList<>();
-
-                String rowData[] = line.split("\\t", -1);
-
-                /**
-                 * Check header to column map and either add the value in the file or if the value in the file is null/empty
-                 *  then either check the synthetics map for defaults or don't insert it if default value is not present
-                 */
-                mappingConfig.getHeaderToColumnMap().forEach((k, v) -> {
-                    int index = fileHeaders.indexOf(k);
-                    Object valueToInsert = CQLTypeUtil.convertObjectType(rowData[index], columnTypeMap.get(v.toLowerCase()));
-
-                    if (valueToInsert == null && syntheticToColumnMap.containsKey(v)) {
-                        // check if there is a default value in the synthetics map
-                        valueToInsert =
-                           CQLTypeUtil.convertObjectType(syntheticToColumnMap.get(v), columnTypeMap.get(v.toLowerCase()));
-                    }
-
-                    // only insert if the value is not null to avoid tombstones in cassandra
-                    if (valueToInsert != null) {
-                        insertQuery.value(v, QueryBuilder.bindMarker());
-                        rowValuesToInsert.add(valueToInsert);
-                        insertedColumns.add(v);
-                    }
-
-                });
-
-                /**
-                 * Check the rest of the synthetics map for any constants to be added for a column by
-                 * cross-referencing the columns already added and synthetics that haven't been added.
-                 * This is due to the fact that if a header and synthetics are both mapped to the same column then that
-                 * implies the synthetic is a default value in case of a n ull/empty file value, if a synthetic is
-                 * present with no header mapping then it is a constant value to be associated to a column
-                 */
-                syntheticToColumnMap.forEach((k, v) -> {
-                    if (!insertedColumns.contains(k)) {
-                        insertQuery.value(k, QueryBuilder.bindMarker());
-                        rowValuesToInsert.add(CQLTypeUtil.convertObjectType(v, columnTypeMap.get(k.toLowerCase())));
-                        insertedColumns.add(k);
-                    }
-                });
-
-                // check timestamps and add the value from the pre-calculated timestamp
-                mappingConfig.getTimestampColumns().forEach(s -> {
-                    if (!(columnTypeMap.get(s).getName().equals(Name.TEXT) ||
-                             columnTypeMap.get(s).getName().equals(Name.TIMESTAMP) || columnTypeMap.get(s).getName().equals(
-                       Name.VARCHAR))) {
-                        throw new ProcessException(
-                           "Invalid data type for column " + s + ". Expected TEXT/VARCHAR/TIMESTAMP but found " +
-                              columnTypeMap.get(s).getName());
-                    }
-
-                    insertQuery.value(s, QueryBuilder.bindMarker());
-                    rowValuesToInsert.add(CQLTypeUtil.convertObjectType(timestamp, columnTypeMap.get(s.toLowerCase())));
-                    insertedColumns.add(s);
-                });
-
-                // check linenumbers and add the value of the current linesprocessed count
-                final String finalLinenumber = String.valueOf(linenumber);
-                mappingConfig.getLineNumberColumns().forEach(s -> {
-                    insertQuery.value(s, QueryBuilder.bindMarker());
-                    rowValuesToInsert.add(CQLTypeUtil.convertObjectType(finalLinenumber, columnTypeMap.get(s.toLowerCase())));
-                    insertedColumns.add(s);
-                });
-
-                mappingConfig.getUuidColumns().forEach(s -> {
-                    insertQuery.value(s, QueryBuilder.bindMarker());
-                    rowValuesToInsert.add(CQLTypeUtil.convertObjectType(UUID.randomUUID().toString(), columnTypeMap.get(s.toLowerCase())));
-                    insertedColumns.add(s);
-                });
-
-                log.debug("Inserting {} columns. Columns: {}", insertedColumns.size(), insertedColumns.toString());
-
-                preparedStatement = preparedStatementCache.getIfPresent(insertQuery.getQueryString());
-                if(preparedStatement == null){
-                    preparedStatement = session.prepare(insertQuery.getQueryString());
-                    preparedStatementCache.put(insertQuery.getQueryString(), preparedStatement);
+            assembleStages(stages, session, writer, fileHeaders, columnTypeMap, timestamp, fileMetrics.lines,
+               sstableDir, delta);
+            LineMapper<MappedRow> mapper = buildMapper(stages, metrics, deadLetters);
+            Consumer<MappedRow> sink = buildSink(stages, writer, progress, metrics, deadLetters);
+            wireRestart(stages, chunkedFile, writer, progress, deadLetters, dryRun || sstables);
+            ChunkListener chunkListener = stages.checkpointer != null ? stages.checkpointer :
+               (chunk, nextLineNumber) -> { };
+
+            if (stages.deduplicator != null) {
+                if (stages.deduplicator.needsFirstPass()) {
+                    recordLastCopies(stages.deduplicator, stages.plan, chunkedFile, chunkBytes, threads);
+                } else if (stages.firstLineNumber > 1) {
+                    log.warn("Rows before line {} were loaded by the earlier run, so only duplicates from there on are skipped",
+                       stages.firstLineNumber);
                 }
+            }
 
-                futures.add(session.executeAsync( preparedStatement.bind(rowValuesToInsert.toArray())));
-
-                statementsInBatch++;
-                if (statementsInBatch == configService.getIntegerValue(LOADER_BATCH_SIZE_KEY)) {
-                    for (ResultSetFuture future: futures) {
-                        future.getUninterruptibly();
-                        insertsCompleted++;
-                    }
-                    futures.clear();
-                    statementsInBatch = 0;
+            List<FileChunk> chunks = null;
+            if (chunkedFile != null) {
+                chunks = lineIndex != null ? lineIndex.from(stages.startOffset) : null;
+                if (chunks == null) {
+                    chunks = chunkedFile.split(stages.startOffset, chunkBytes);
                 }
+            }
 
-                if (!exceededEstimate && insertsCompleted > fileMetrics.lines) {
-                    exceededEstimate = true;
-                    log.info("Line estimate fell short. Using actual inserted line count henceforth");
+            if (threads > 0) {
+                // pipelined mode: reader thread -> parse workers -> this thread as the writer
+                LoadPipeline<MappedRow> pipeline = new LoadPipeline<>(threads,
+                   configService.getIntegerValue(LOADER_QUEUE_DEPTH_KEY, threads * Constants.LOADER_DEFAULT_QUEUE_DEPTH_PER_THREAD),
+                   configService.getIntegerValue(LOADER_CHUNK_LINES_KEY, Constants.LOADER_DEFAULT_CHUNK_LINES));
+                if (chunkedFile != null) {
+                    // the header is line 0 of the file
+                    linesProcessed = stages.firstLineNumber + pipeline.run(chunkedFile, chunks, stages.firstLineNumber,
+                       mapper, sink, chunkListener);
+                } else {
+                    pipeline.run(inputFile, 1L, mapper, sink);
                 }
-
-                if (insertsCompleted > ((lastPercentile + 10) * fileMetrics.lines / 100)) {
-                    while (insertsCompleted > ((lastPercentile + 10) * fileMetrics.lines / 100)) {
-                        lastPercentile += 10;
+            } else if (chunkedFile != null) {
+                long linenumber = stages.firstLineNumber;
+                for (FileChunk chunk : chunks) {
+                    for (String line : chunkedFile.readLines(chunk)) {
+                        sink.accept(mapper.map(line, linenumber++));
                     }
-                    //log.trace("Elapsed time millis: {}", timer.elapsed(TimeUnit.MILLISECONDS));
-                    long newLineEstimate = fileMetrics.lines > insertsCompleted ? fileMetrics.lines : insertsCompleted;
-                    log.info("{}% complete. {}/{} lines processed. {} elapsed, {} remaining.",
-                       insertsCompleted * 100 / newLineEstimate, insertsCompleted, newLineEstimate,
-                       formatElapsedTime(timer.elapsed(TimeUnit.MILLISECONDS)),
-                       formatElapsedTime(estimateRemainingTime(insertsCompleted, newLineEstimate,
-                          timer.elapsed(TimeUnit.MILLISECONDS))));
+                    chunkListener.chunkWritten(chunk, linenumber);
                 }
-            } while (line != null);
-
-            if (statementsInBatch > 0 || !futures.isEmpty()) {
-                //log.trace("Waiting for batch of futures");
-                for (ResultSetFuture future: futures) {
-                    future.getUninterruptibly();
-                    insertsCompleted++;
+                linesProcessed = linenumber;
+            } else {
+                String line;
+                long linenumber = 0;
+                while ((line = inputFile.readLine()) != null) {
+                    sink.accept(mapper.map(line, ++linenumber));
                 }
             }
 
-            timer.stop();
-            long newLineEstimate = fileMetrics.lines > insertsCompleted ? fileMetrics.lines : insertsCompleted;
-            log.info("Loading data to db completed. {} lines of {} line file processed. {} elapsed.",
-               insertsCompleted, newLineEstimate, formatElapsedTime(timer.elapsed(TimeUnit.MILLISECONDS)));
-            if (timer.elapsed(TimeUnit.MILLISECONDS) > 0) {
-                double bytesPerSecond = 1000.0d * fileMetrics.bytes / timer.elapsed(TimeUnit.MILLISECONDS);
-                log.info("Throughput: {} per second", humanReadableByteCount(bytesPerSecond, false));
-            } else {
-                log.info("Cannot compute throughput; execution was too fast.");
-            }
+            finishLoad(stages, session, writer, progress, metrics, writesSetAside.sum(), dryRun);
 
         } catch (FileNotFoundException e) {
             errorCondition = true;
             log.error("Input file not found", e);
         } catch (IOException e) {
             errorCondition = true;
-            log.error("Error while loading input file on line {} and column {} (insert record number {})", inputFile.getLineNumber(),
-               columnIndex, insertsCompleted, e);
+            log.error("Error while loading input file on line {} and column {} (insert record number {})",
+               inputFile == null ? 0 : inputFile.getLineNumber(),
+               columnIndex, writer.getInsertsCompleted(), e);
         } catch (RuntimeException e) {
             errorCondition = true;
             log.error("Error while processing input file on line {} and column {} (insert record number {})",
-               inputFile == null ? 0 : inputFile.getLineNumber(), columnIndex, insertsCompleted, e);
+               inputFile == null ? 0 : inputFile.getLineNumber(), columnIndex, writer.getInsertsCompleted(), e);
         } catch (Exception e) {
             errorCondition = true;
             log.error("Error while loading input file on line {} and column {} (insert record number {})",
-               inputFile == null ? 0 : inputFile.getLineNumber(), columnIndex, insertsCompleted, e);
+               inputFile == null ? 0 : inputFile.getLineNumber(), columnIndex, writer.getInsertsCompleted(), e);
         } finally {
-            log.info("Prepared statement cache statistics : {} ", preparedStatementCache.stats().toString());
+            reportStages(stages, errorCondition);
             log.debug("Closing input file and session");
-            try {
+            if (inputFile != null) {
                 linesProcessed = inputFile.getLineNumber();
-            } catch (Exception e) {
-                log.error("Unable to count lines processed", e);
             }
             CloseablesWrapper.closeQuietly(inputFile);
+            CloseablesWrapper.closeQuietly(chunkedFile);
+            insertsCompleted = stages.sstableOutput != null ? stages.sstableOutput.getRowsWritten() :
+               writer.getInsertsCompleted();
+            reportTotals(metrics, metricsReporter, deadLetters);
+            removeShutdownHook(cancelPendingHook);
         }
         if (!errorCondition) {
             log.info("Load completed successfully. {} lines processed.", linesProcessed);
@@ -499,6 +892,329 @@ public class CommandLineLoader extends AbstractLoader {
         return errorCondition ? -1 : 0;
     }
 
+    /**
+     * Reject the options that cannot go together with a dry run, SSTable output or a delta load.
+     */
+    private void checkOptions(boolean dryRun, String sstableDir, boolean delta) {
+        boolean resume = configService.getBooleanValue(LOADER_RESUME_KEY, Boolean.FALSE);
+        if (dryRun && resume) {
+            throw new CLILoaderRuntimeException("A dry run loads nothing, so there is no load to resume; leave out --" +
+               LOADER_RESUME_KEY);
+        }
+        boolean sstables = !Strings.isNullOrEmpty(sstableDir);
+        if (sstables && resume) {
+            throw new CLILoaderRuntimeException("SSTables are written from the start of the file every time; leave out --" +
+               LOADER_RESUME_KEY + " and clear " + sstableDir + " to write them again");
+        }
+        if (sstables && configService.getBooleanValue(LOADER_DELTA_DELETES_KEY, Boolean.FALSE)) {
+            throw new CLILoaderRuntimeException("Rows missing from the snapshot are deleted through the cluster, " +
+               "not in SSTables; leave out --" + LOADER_DELTA_DELETES_KEY);
+        }
+        if (delta && resume) {
+            throw new CLILoaderRuntimeException("A delta load must see the whole snapshot to index it, so it cannot " +
+               "be resumed; leave out --" + LOADER_RESUME_KEY + " to load the delta again");
+        }
+    }
+
+    /**
+     * Compile the mapping plan, and build the optional stages around it as configured: warm-up, dictionaries,
+     * profiler, deduplicator, delta filter, SSTable output and batcher. Each stage is kept in {@code stages} as
+     * soon as it is built, so a failure part way still reports and closes the ones before it.
+     */
+    private void assembleStages(LoadStages stages, Session session, StatementWriter writer, List<String> fileHeaders,
+                                Map<String, DataType> columnTypeMap, String timestamp, long expectedRows,
+                                String sstableDir, boolean delta) throws IOException {
+        boolean sstables = !Strings.isNullOrEmpty(sstableDir);
+        int cacheSize = configService.getIntegerValue(LOADER_CACHE_SIZE_KEY, Constants.PREPAREDSTATEMENT_CACHE_SIZE);
+        MappingPlan plan = MappingPlan.compile(session, configService.getValue(MAIN_KEYSPACE_KEY), mappingConfig,
+           fileHeaders, columnTypeMap, timestamp, cacheSize);
+        stages.plan = plan;
+        boolean dictionary = configService.getBooleanValue(LOADER_DICTIONARY_KEY, Boolean.FALSE);
+        int dictionaryLines = dictionary ? configService.getIntegerValue(LOADER_DICTIONARY_SAMPLE_LINES_KEY,
+           Constants.LOADER_DEFAULT_DICTIONARY_SAMPLE_LINES) : 0;
+        // rows written to SSTables are never bound, so there is nothing to prepare
+        int warmupLines = sstables ? 0 :
+           configService.getIntegerValue(LOADER_WARMUP_LINES_KEY, Constants.LOADER_DEFAULT_WARMUP_LINES);
+        List<String> sample = dictionaryLines > 0 || warmupLines > 0 ?
+           readSample(Math.max(dictionaryLines, warmupLines)) : Collections.emptyList();
+        // before the dictionaries, which would count the sample as hits
+        if (warmupLines > 0) {
+            stages.warmup = StatementWarmup.sample(plan, sample.subList(0, Math.min(warmupLines, sample.size())));
+            stages.warmup.prepare(cacheSize);
+            log.info("Prepared statement warm-up: {}", stages.warmup.summary());
+            log.info("Column shapes of the sample: {}", stages.warmup.distribution());
+        }
+        if (dictionary) {
+            stages.dictionaries = ColumnDictionaries.sample(plan, sample.subList(0, Math.min(dictionaryLines, sample.size())),
+               configService.getIntegerValue(LOADER_DICTIONARY_MAX_DISTINCT_KEY, Constants.LOADER_DEFAULT_DICTIONARY_MAX_DISTINCT));
+            if (!stages.dictionaries.isEmpty()) {
+                log.info("Taking the cells of {} from dictionaries", Joiner.on(", ").join(stages.dictionaries.getColumns()));
+            }
+        }
+        if (configService.getBooleanValue(LOADER_PROFILE_KEY, Boolean.FALSE)) {
+            stages.profiler = new ColumnProfiler(plan.getColumns().subList(0, plan.getMappedColumnCount()),
+               configService.getIntegerValue(LOADER_PROFILE_TOP_K_KEY, Constants.LOADER_DEFAULT_PROFILE_TOP_K));
+        }
+        stages.deduplicator = buildDeduplicator(plan, expectedRows);
+        if (delta) {
+            stages.deltaFilter = new DeltaFilter(plan, getPrimaryKeyColumns(), deltaIndexFile(), expectedRows);
+        }
+
+        if (sstables) {
+            // the session goes nowhere, and its table is the one the CREATE TABLE statement makes
+            SSTableOutput.enterClientMode();
+            stages.sstableOutput = new SSTableOutput(new File(sstableDir), readCreateTable(configService), getTableSchema(),
+               plan, SSTableOutput.partitioner(configService.getValue(LOADER_SSTABLE_PARTITIONER_KEY,
+                  Constants.LOADER_DEFAULT_SSTABLE_PARTITIONER)),
+               configService.getIntegerValue(LOADER_SSTABLE_BUFFER_MB_KEY, Constants.LOADER_DEFAULT_SSTABLE_BUFFER_MB),
+               configService.getIntegerValue(LOADER_SSTABLE_MAX_SHAPES_KEY, Constants.LOADER_DEFAULT_SSTABLE_MAX_SHAPES));
+            log.info("Writing SSTables to {} instead of inserting; stream them in with sstableloader",
+               stages.sstableOutput.getDirectory());
+        }
+
+        String batchMode = configService.getValue(LOADER_BATCH_MODE_KEY);
+        if (!sstables && !Strings.isNullOrEmpty(batchMode) && !"none".equalsIgnoreCase(batchMode)) {
+            stages.batcher = new PartitionBatcher(writer, PartitionBatcher.Grouping.valueOf(batchMode.toUpperCase()),
+               session.getCluster().getMetadata(), configService.getValue(MAIN_KEYSPACE_KEY),
+               configService.getIntegerValue(LOADER_BATCH_ROWS_KEY, Constants.LOADER_DEFAULT_BATCH_ROWS),
+               configService.getIntegerValue(LOADER_BATCH_DELAY_MS_KEY, Constants.LOADER_DEFAULT_BATCH_DELAY_MS),
+               TimeUnit.MILLISECONDS,
+               configService.getIntegerValue(LOADER_BATCH_GROUPS_KEY, Constants.LOADER_DEFAULT_BATCH_GROUPS));
+        }
+    }
+
+    /**
+     * @return the mapper the parse workers run on every line: map, profile, and bind unless the row goes to
+     * SSTables; a line that does not map is set aside when rejects are
+     */
+    private static LineMapper<MappedRow> buildMapper(LoadStages stages, LoaderMetrics metrics,
+                                                     DeadLetterWriter deadLetters) {
+        MappingPlan plan = stages.plan;
+        ColumnProfiler profiler = stages.profiler;
+        boolean bind = stages.sstableOutput == null;
+        return (line, lineNumber) -> {
+            // characters rather than bytes, which is the same for ASCII input and saves encoding every line
+            metrics.bytesProcessed(line.length() + 1);
+            MappedRow row;
+            try {
+                row = plan.map(line, lineNumber);
+            } catch (CLILoaderRuntimeException e) {
+                if (deadLetters != null && deadLetters.reject(lineNumber, line, e)) {
+                    return null;
+                }
+                throw e;
+            }
+            if (profiler != null) {
+                profiler.profile(row.getValues());
+            }
+            return bind ? plan.bind(row) : row;
+        };
+    }
+
+    /**
+     * @return the sink the writer thread runs on every mapped row, in file order: skip duplicates and unchanged
+     * rows, then write the row to SSTables, the batcher or the writer
+     */
+    private static Consumer<MappedRow> buildSink(LoadStages stages, StatementWriter writer, LoadProgress progress,
+                                                 LoaderMetrics metrics, DeadLetterWriter deadLetters) {
+        PrimaryKeyDeduplicator deduplicator = stages.deduplicator;
+        DeltaFilter deltaFilter = stages.deltaFilter;
+        SSTableOutput sstableOutput = stages.sstableOutput;
+        PartitionBatcher batcher = stages.batcher;
+        // rows carry themselves as the context of their write only when failed writes are set aside
+        // duplicates and unchanged rows are told apart here, on the writer thread, which takes rows in file order
+        return row -> {
+            if (row == null) {
+                return;
+            }
+            if (deduplicator != null && !deduplicator.admit(row)) {
+                metrics.duplicateSkipped();
+                return;
+            }
+            if (deltaFilter != null && !deltaFilter.admit(row)) {
+                metrics.rowUnchanged();
+                return;
+            }
+            if (sstableOutput != null) {
+                sstableOutput.write(row);
+                progress.update(sstableOutput.getRowsWritten());
+                return;
+            }
+            Object context = deadLetters != null ? row : null;
+            if (batcher != null) {
+                batcher.add(row.getStatement(), context);
+            } else {
+                writer.write(row.getStatement(), 1, context);
+            }
+        };
+    }
+
+    /**
+     * Decide where the load starts reading: after the checkpoint of an interrupted run when resuming, otherwise
+     * after the header. Set up the checkpointer of a chunked load, and keep or clear the dead-letter file of the
+     * earlier run to match.
+     *
+     * @param writesNothing the load writes nothing to the cluster, so it neither resumes nor leaves a checkpoint
+     */
+    private void wireRestart(LoadStages stages, ChunkedFile chunkedFile, StatementWriter writer, LoadProgress progress,
+                             DeadLetterWriter deadLetters, boolean writesNothing) throws IOException {
+        boolean resume = configService.getBooleanValue(LOADER_RESUME_KEY, Boolean.FALSE);
+        if (chunkedFile != null) {
+            File input = new File(inputFilename);
+            File checkpointFile = new File(configService.getValue(LOADER_CHECKPOINT_FILE_KEY,
+               inputFilename + Constants.LOADER_CHECKPOINT_SUFFIX));
+            // a dry run loads nothing, so it neither continues nor leaves a checkpoint; nor do SSTables, written whole
+            LoadCheckpoint resumeFrom = writesNothing ? null : LoadCheckpoint.read(checkpointFile);
+            if (resumeFrom != null && resume) {
+                resumeFrom.verify(input, stages.plan.getFingerprint());
+                stages.startOffset = resumeFrom.getOffset();
+                stages.firstLineNumber = resumeFrom.getLineNumber();
+                progress.resumeFrom(resumeFrom.getInsertsAcknowledged());
+                log.info("Resuming load from line {} (byte offset {}); {} inserts were acknowledged before",
+                   stages.firstLineNumber, stages.startOffset, resumeFrom.getInsertsAcknowledged());
+            } else {
+                if (resumeFrom != null) {
+                    log.warn("Ignoring checkpoint {} of an earlier load; pass --{} true to continue from it",
+                       checkpointFile, LOADER_RESUME_KEY);
+                } else if (resume) {
+                    log.warn("No checkpoint found at {}; loading from the start of the file", checkpointFile);
+                }
+                stages.startOffset = chunkedFile.nextLineStart(0);
+                resumeFrom = null;
+            }
+            int checkpointInterval = writesNothing ? 0 : configService.getIntegerValue(LOADER_CHECKPOINT_INTERVAL_MS_KEY,
+               Constants.LOADER_DEFAULT_CHECKPOINT_INTERVAL_MS);
+            if (checkpointInterval > 0) {
+                stages.checkpointer = new Checkpointer(checkpointFile, input, stages.plan.getFingerprint(), writer,
+                   stages.batcher, deadLetters, resumeFrom == null ? 0 : resumeFrom.getInsertsAcknowledged(),
+                   checkpointInterval, TimeUnit.MILLISECONDS);
+            }
+        } else if (resume) {
+            throw new CLILoaderRuntimeException("Resuming a load requires uncompressed, chunked input; " +
+               LOADER_CHUNK_BYTES_KEY + " must be above 0");
+        } else if (configService.getIntegerValue(LOADER_CHECKPOINT_INTERVAL_MS_KEY,
+           Constants.LOADER_DEFAULT_CHECKPOINT_INTERVAL_MS) > 0) {
+            log.warn("Only chunked loads are checkpointed; set --{} above 0 for checkpoints", LOADER_CHUNK_BYTES_KEY);
+        }
+        if (deadLetters != null) {
+            if (stages.firstLineNumber > 1) {
+                long kept = deadLetters.resumeFrom(stages.firstLineNumber);
+                if (kept > 0) {
+                    log.info("{} rows set aside by the interrupted run are kept in {}", kept, deadLetters.getFile());
+                }
+            } else {
+                deadLetters.startFresh();
+            }
+        }
+    }
+
+    /**
+     * Once every line is read: write the open batches, delete the rows missing from a delta snapshot, wait for
+     * the writes in flight, close the SSTables, commit the delta index, and remove the checkpoint.
+     *
+     * @param writesSetAside writes that failed for good and were set aside
+     */
+    private void finishLoad(LoadStages stages, Session session, StatementWriter writer, LoadProgress progress,
+                            LoaderMetrics metrics, long writesSetAside, boolean dryRun) throws IOException {
+        if (stages.batcher != null) {
+            stages.batcher.flush();
+        }
+        DeltaFilter deltaFilter = stages.deltaFilter;
+        if (deltaFilter != null && configService.getBooleanValue(LOADER_DELTA_DELETES_KEY, Boolean.FALSE)) {
+            if (metrics.snapshot().getRowsRejected() > 0) {
+                // the key of a line that did not convert is unknown, so it would be taken for a deleted row
+                log.warn("Not deleting rows missing from this snapshot, since some of its lines were rejected");
+            } else {
+                deltaFilter.deleteMissing(session, configService.getValue(MAIN_KEYSPACE_KEY), mappingConfig.getTable(),
+                   writer);
+            }
+        }
+        writer.flush();
+        if (stages.sstableOutput != null) {
+            stages.sstableOutput.close();
+            progress.complete(stages.sstableOutput.getRowsWritten());
+        } else {
+            progress.complete(writer.getInsertsCompleted());
+        }
+        if (deltaFilter != null) {
+            if (dryRun) {
+                log.info("A dry run leaves the delta index as it was");
+            } else if (writesSetAside > 0) {
+                // the rows of those writes must count as changed next time too
+                log.warn("{} writes failed and were set aside, so the delta index is left as it was and the next " +
+                   "load writes this delta again", writesSetAside);
+            } else {
+                deltaFilter.commit();
+            }
+        }
+        if (writer.getWritesRetried() > 0) {
+            log.info("{} writes were retried after a timeout or an overloaded node", writer.getWritesRetried());
+        }
+        if (stages.checkpointer != null) {
+            stages.checkpointer.complete();
+        }
+    }
+
+    /**
+     * Log the statistics of every stage the load built, whether or not it succeeded, and close the stages that
+     * hold files.
+     */
+    private void reportStages(LoadStages stages, boolean failed) {
+        MappingPlan plan = stages.plan;
+        StatementWarmup warmup = stages.warmup;
+        if (plan != null) {
+            log.info("Prepared statement cache statistics : {} ", plan.cacheStats().toString());
+            log.info("Prepared statement cache hit rate: {}{}", String.format("%.2f%%", plan.cacheStats().hitRate() * 100),
+               warmup == null ? "" : String.format(", after warming up %d of %d sampled shapes",
+                  warmup.getPrepared(), warmup.getShapeCount()));
+        }
+        if (stages.batcher != null) {
+            stages.batcher.logStatistics();
+        }
+        if (stages.profiler != null) {
+            reportProfile(stages.profiler);
+        }
+        if (stages.deduplicator != null) {
+            log.info("Deduplication: {}", stages.deduplicator.summary());
+        }
+        if (stages.dictionaries != null && !stages.dictionaries.isEmpty()) {
+            log.info("Column dictionaries: {}", stages.dictionaries.summary());
+        }
+        if (stages.sstableOutput != null) {
+            log.info("SSTable output: {}", stages.sstableOutput.summary());
+            CloseablesWrapper.closeQuietly(stages.sstableOutput);
+        }
+        if (stages.deltaFilter != null) {
+            log.info("Delta load: {}", stages.deltaFilter.summary());
+            CloseablesWrapper.closeQuietly(stages.deltaFilter);
+        }
+        if (failed && stages.checkpointer != null && stages.checkpointer.getLast() != null) {
+            log.info("Load can be resumed from line {} with --{} true", stages.checkpointer.getLast().getLineNumber(),
+               LOADER_RESUME_KEY);
+        }
+    }
+
+    /**
+     * Close the dead-letter file and the metrics of the load, and log the totals over the whole load.
+     */
+    private static void reportTotals(LoaderMetrics metrics, MetricsReporter metricsReporter,
+                                     DeadLetterWriter deadLetters) {
+        if (deadLetters != null) {
+            deadLetters.close();
+            if (deadLetters.getRejected() > 0) {
+                log.warn("{} rows were rejected and set aside in {}", deadLetters.getRejected(), deadLetters.getFile());
+            }
+        }
+        metrics.stopMetrics();
+        if (metricsReporter != null) {
+            metricsReporter.close();
+        }
+        LoaderMetrics.Snapshot totals = metrics.snapshot();
+        log.info("Write latency over the load: p50 {} ms, p99 {} ms, p999 {} ms, max {} ms over {} writes",
+           totals.getWriteLatencyMillis(0.5), totals.getWriteLatencyMillis(0.99),
+           totals.getWriteLatencyMillis(0.999), totals.getMaxWriteLatencyMillis(), totals.getWrites());
+    }
+
     private List<String> determineInputColumns(List<String> headers,  List<String> tableColumns) {
         log.debug("Determining input columns for insert");
         log.debug("Input columns found({}): {}", tableColumns.size(), log.isDebugEnabled() ? Joiner.on(", ").join(tableColumns) : "");
@@ -635,18 +1351,22 @@ public class CommandLineLoader extends AbstractLoader {
         return orderedCopyColumns;
     }
 
-    private Map<String, DataType> determineTableColumnTypes(String[] columns) {
-        log.debug("Determining table column types");
-        Select select = QueryBuilder.select(columns)
-           .from(configService.getValue(MAIN_KEYSPACE_KEY), mappingConfig.getTable())
-           .limit(1);
-        log.trace("CQL: {}", select.getQueryString());
-        ResultSet rs = sessionManager.getSession().execute(select);
-        ColumnDefinitions columnDefs = rs.getColumnDefinitions();
-        Map<String, DataType> columnTypeMap = new TreeMap<>();
-        for (Definition def : columnDefs) {
-            columnTypeMap.put(def.getName().toLowerCase(), def.getType());
-        }
-        return columnTypeMap;
+    /**
+     * The stages one load builds around its mapping plan, and where it starts reading. A stage is null when the
+     * load does not use it, or when the load failed before building it.
+     */
+    private static class LoadStages {
+        MappingPlan plan;
+        StatementWarmup warmup;
+        ColumnDictionaries dictionaries;
+        ColumnProfiler profiler;
+        PrimaryKeyDeduplicator deduplicator;
+        DeltaFilter deltaFilter;
+        SSTableOutput sstableOutput;
+        PartitionBatcher batcher;
+        Checkpointer checkpointer;
+        // byte offset and line number of the first line read; after the header unless the load resumes
+        long startOffset = 0;
+        long firstLineNumber = 1L;
     }
 }
@@ -0,0 +1,276 @@
+package loader.cli;
+
+import com.google.common.base.Throwables;
+import loader.util.LoaderMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sets rejected rows aside in a dead-letter file instead of failing the load, up to a limit.
+ * <p/>
+ * Each rejected row becomes one tab separated record of its line number, the reason and the original line, so
+ * {@code cut -f3-} gives back lines that can be fixed and loaded again. Rows are rejected by the parse workers
+ * and the driver callbacks, which only queue the record; a thread of its own writes the file, which is created
+ * with the first reject. {@link #flush()} waits until the rows rejected so far are in the file.
+ * <p/>
+ * A load from the start of its input calls {@link #startFresh()}, so the file of an earlier run does not outlive it.
+ * A resumed load calls {@link #resumeFrom} instead, so the rows the interrupted run set aside stay in the file and
+ * count toward the limit.
+ */
+public class DeadLetterWriter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterWriter.class);
+    private static final Reject END = new Reject(0, null, null);
+    private static final String HEADER = "line_number\treason\tline";
+
+    private final File file;
+    private final long maxRejects;
+    private final LoaderMetrics metrics;
+    private final AtomicLong rejected = new AtomicLong();
+    private final BlockingQueue<Reject> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean limitLogged = false;
+    // the rejects are added to those of an interrupted run
+    private volatile boolean append = false;
+
+    /**
+     * @param file       the dead-letter file
+     * @param maxRejects rows set aside before rejects fail the load; negative for no limit
+     * @param metrics    counts the rows set aside, or null
+     */
+    public DeadLetterWriter(File file, long maxRejects, LoaderMetrics metrics) {
+        this.file = file;
+        this.maxRejects = maxRejects;
+        this.metrics = metrics;
+        this.thread = new Thread(this::writeRejects, "loader-dead-letter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Remove the file of an earlier run. Call before the first reject.
+     */
+    public void startFresh() throws IOException {
+        append = false;
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Keep the rows an interrupted run set aside before the line a resumed load starts from, and count them toward
+     * the limit. Rows from that line on are read again, so their records are dropped. Call before the first reject.
+     *
+     * @param lineNumber the first line number the resumed load reads
+     * @return rows the interrupted run set aside that are kept
+     */
+    public long resumeFrom(long lineNumber) throws IOException {
+        append = true;
+        if (!file.exists()) {
+            return 0;
+        }
+        List<String> records = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        List<String> kept = new ArrayList<>(records.size());
+        for (String record : records.subList(Math.min(1, records.size()), records.size())) {
+            int tab = record.indexOf('\t');
+            try {
+                if (tab > 0 && Long.parseLong(record.substring(0, tab)) < lineNumber) {
+                    kept.add(record);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Dropping a record of {} without a line number: {}", file, record);
+            }
+        }
+        if (kept.isEmpty()) {
+            Files.delete(file.toPath());
+        } else if (kept.size() < records.size() - 1) {
+            List<String> rewritten = new ArrayList<>(kept.size() + 1);
+            rewritten.add(HEADER);
+            rewritten.addAll(kept);
+            Files.write(file.toPath(), rewritten, StandardCharsets.UTF_8);
+        }
+        rejected.addAndGet(kept.size());
+        return kept.size();
+    }
+
+    /**
+     * Set a row aside, unless the limit of rejected rows is reached.
+     *
+     * @param lineNumber line number of the row in the input file
+     * @param line       the original input line, or null if it is not known
+     * @param failure    why the row was rejected
+     * @return false if the limit is reached and the failure should fail the load instead
+     */
+    public boolean reject(long lineNumber, String line, Throwable failure) {
+        long count = rejected.incrementAndGet();
+        if (maxRejects >= 0 && count > maxRejects) {
+            rejected.decrementAndGet();
+            if (!limitLogged) {
+                limitLogged = true;
+                log.error("More than {} rows rejected; see {} for the rows set aside so far", maxRejects, file);
+            }
+            return false;
+        }
+        if (metrics != null) {
+            metrics.rowRejected();
+        }
+        queue.add(new Reject(lineNumber, line, reason(failure)));
+        return true;
+    }
+
+    /**
+     * @return rows set aside so far
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Wait until every row rejected so far is written and flushed to the file. A checkpoint calls this before it
+     * is persisted, so the rows it skips on resume are never lost from the dead-letter file.
+     */
+    public void flush() {
+        Barrier barrier = new Barrier();
+        queue.add(barrier);
+        try {
+            // once closed, the writer thread has written everything and will not reach the barrier
+            while (!barrier.written.await(100, TimeUnit.MILLISECONDS)) {
+                if (!thread.isAlive()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write out every rejected row and close the file.
+     */
+    @Override
+    public void close() {
+        queue.add(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRejects() {
+        BufferedWriter out = null;
+        boolean failed = false;
+        try {
+            while (true) {
+                Reject reject = queue.take();
+                if (reject == END) {
+                    break;
+                }
+                if (reject instanceof Barrier) {
+                    try {
+                        if (out != null && !failed) {
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        failed = true;
+                        log.error("Unable to write rejected rows to {}; further rejects are only counted", file, e);
+                    } finally {
+                        ((Barrier) reject).written.countDown();
+                    }
+                    continue;
+                }
+                if (failed) {
+                    continue;
+                }
+                try {
+                    if (out == null) {
+                        boolean resumed = append && file.length() > 0;
+                        out = resumed ? Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                           StandardOpenOption.CREATE, StandardOpenOption.APPEND) :
+                           Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+                        if (!resumed) {
+                            out.write(HEADER);
+                            out.write('\n');
+                        }
+                    }
+                    out.write(Long.toString(reject.lineNumber));
+                    out.write('\t');
+                    out.write(reject.reason);
+                    out.write('\t');
+                    out.write(reject.line == null ? "" : reject.line);
+                    out.write('\n');
+                    if (queue.isEmpty()) {
+                        // keep the file current while the load runs; rejects are rare enough
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    log.error("Unable to write rejected rows to {}; further rejects are only counted", file, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.error("Unable to close the rejected rows file {}", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the messages of the failure and its causes, on one line without tabs
+     */
+    static String reason(Throwable failure) {
+        StringBuilder sb = new StringBuilder();
+        for (Throwable cause : Throwables.getCausalChain(failure)) {
+            String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            if (sb.indexOf(message) < 0) {
+                if (sb.length() > 0) {
+                    sb.append(": ");
+                }
+                sb.append(message);
+            }
+        }
+        return sb.toString().replaceAll("[\\t\\r\\n]+", " ");
+    }
+
+    private static class Barrier extends Reject {
+        final CountDownLatch written = new CountDownLatch(1);
+
+        Barrier() {
+            super(0, null, null);
+        }
+    }
+
+    private static class Reject {
+        final long lineNumber;
+        final String line;
+        final String reason;
+
+        Reject(long lineNumber, String line, String reason) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+}
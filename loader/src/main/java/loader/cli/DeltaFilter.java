@@ -0,0 +1,202 @@
+package loader.cli;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.Delete;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.hash.HashCode;
+import loader.io.DeltaIndex;
+import loader.io.DeltaIndexWriter;
+import loader.util.CQLUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads only what changed since the previous snapshot of a feed.
+ * <p/>
+ * Every row is looked up by its primary key in the {@link DeltaIndex} of the previous load. A row whose key is
+ * there with the same content hash is left out; new and changed rows are written. The rows of this load go into a
+ * new index, which replaces the previous one once the load has succeeded. Keys of the previous snapshot that this
+ * one no longer has can be deleted at the end.
+ * <p/>
+ * The content hash covers the columns read from the input file. Synthetic, timestamp and line number columns are
+ * left out, or every row would look changed on every load.
+ */
+public class DeltaFilter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DeltaFilter.class);
+    // the protocol of Cassandra 2.1, in which the key values are kept to be bound to deletes
+    private static final ProtocolVersion PROTOCOL_VERSION = ProtocolVersion.V3;
+
+    private final List<String> keyColumns;
+    private final int[] keySlots;
+    private final DataType[] keyTypes;
+    private final int contentColumns;
+    private final DeltaIndex previous;
+    private final DeltaIndexWriter next;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private long deleted;
+    private boolean committed;
+
+    /**
+     * @param plan       the mapping of this load
+     * @param keyColumns the primary key columns of the table
+     * @param indexFile  index of the previous load, replaced by the index of this one
+     * @param expectedRows rows expected in this load
+     * @throws IOException if the previous index could not be read, or the new one not started
+     */
+    public DeltaFilter(MappingPlan plan, List<String> keyColumns, Path indexFile, long expectedRows) throws IOException {
+        if (keyColumns.isEmpty()) {
+            throw new CLILoaderRuntimeException("No primary key columns to compare snapshots on");
+        }
+        this.keyColumns = keyColumns;
+        this.keySlots = RowHashes.slotsOf(plan.getColumns(), keyColumns, "compared with the previous snapshot");
+        this.keyTypes = new DataType[keySlots.length];
+        List<String> keyLayout = new ArrayList<>();
+        for (int i = 0; i < keySlots.length; i++) {
+            keyTypes[i] = plan.getTypes().get(keySlots[i]);
+            keyLayout.add(plan.getColumns().get(keySlots[i]) + " " + keyTypes[i]);
+        }
+        this.contentColumns = plan.getMappedColumnCount();
+        List<String> contentLayout = new ArrayList<>();
+        for (int i = 0; i < contentColumns; i++) {
+            contentLayout.add(plan.getColumns().get(i) + " " + plan.getTypes().get(i));
+        }
+
+        DeltaIndex index = DeltaIndex.open(indexFile);
+        if (index != null && !index.matches(String.join(", ", keyLayout), String.join(", ", contentLayout))) {
+            log.warn("The delta index {} was built on key ({}) and columns ({}), not on key ({}) and columns ({}); " +
+                  "loading every row", indexFile, index.getKeyLayout(), index.getContentLayout(),
+               String.join(", ", keyLayout), String.join(", ", contentLayout));
+            index.close();
+            index = null;
+        } else if (index == null) {
+            log.info("No delta index at {} yet; loading every row", indexFile);
+        } else {
+            log.info("Comparing rows with the {} keys of the previous snapshot in {}", index.size(), indexFile);
+        }
+        this.previous = index;
+        try {
+            this.next = new DeltaIndexWriter(indexFile, String.join(", ", keyLayout), String.join(", ", contentLayout),
+               expectedRows);
+        } catch (IOException e) {
+            if (previous != null) {
+                previous.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Record a row in the new index.
+     *
+     * @return false if the row is the same as in the previous snapshot, and need not be written
+     */
+    public boolean admit(MappedRow row) {
+        Object[] values = row.getValues();
+        HashCode key = RowHashes.key(values, keySlots);
+        if (key == null) {
+            // without its whole key the row cannot be written either; the write reports it
+            return true;
+        }
+        long content = RowHashes.content(values, contentColumns);
+        ByteBuffer[] keyValues = new ByteBuffer[keySlots.length];
+        for (int i = 0; i < keySlots.length; i++) {
+            keyValues[i] = keyTypes[i].serialize(values[keySlots[i]], PROTOCOL_VERSION);
+        }
+        try {
+            next.add(key.asLong(), RowHashes.low(key), content, keyValues);
+        } catch (IOException e) {
+            throw new CLILoaderRuntimeException("Unable to record line " + row.getLineNumber() + " in the delta index", e);
+        }
+
+        long entry = previous == null ? -1 : previous.find(key.asLong(), RowHashes.low(key));
+        if (entry < 0) {
+            added.increment();
+            return true;
+        }
+        if (previous.getContentHash(entry) == content) {
+            unchanged.increment();
+            return false;
+        }
+        changed.increment();
+        return true;
+    }
+
+    /**
+     * Delete the rows of the previous snapshot whose key did not come up in this load. Only called once every row
+     * of this load went through {@link #admit}.
+     *
+     * @return deletes written
+     */
+    public long deleteMissing(Session session, String keyspace, String table, StatementWriter writer) throws IOException {
+        if (previous == null || previous.unseen() == 0) {
+            return 0;
+        }
+        Delete.Where delete = QueryBuilder.delete().from(CQLUtil.escapeIdentifier(keyspace), CQLUtil.escapeIdentifier(table))
+           .where(QueryBuilder.eq(keyColumns.get(0), QueryBuilder.bindMarker()));
+        for (int i = 1; i < keyColumns.size(); i++) {
+            delete.and(QueryBuilder.eq(keyColumns.get(i), QueryBuilder.bindMarker()));
+        }
+        PreparedStatement prepared = session.prepare(delete.getQueryString());
+        log.info("Deleting the {} rows of the previous snapshot that are not in this one", previous.unseen());
+        previous.forEachUnseen(values -> {
+            BoundStatement bound = prepared.bind();
+            for (int i = 0; i < values.length; i++) {
+                bound.setBytesUnsafe(i, values[i]);
+            }
+            writer.write(bound);
+            deleted++;
+        });
+        return deleted;
+    }
+
+    /**
+     * Put the index of this load in place of the previous one, once the load has succeeded.
+     *
+     * @return keys in the new index
+     */
+    public long commit() throws IOException {
+        long keys = next.commit();
+        committed = true;
+        log.info("Delta index of {} keys written to {}", keys, next.getTarget());
+        return keys;
+    }
+
+    /**
+     * @return rows left out as unchanged so far
+     */
+    public long getUnchanged() {
+        return unchanged.sum();
+    }
+
+    public String summary() {
+        return String.format("%d new and %d changed rows written, %d unchanged rows left out, %d missing rows deleted",
+           added.sum(), changed.sum(), unchanged.sum(), deleted);
+    }
+
+    /**
+     * Release the previous index, and drop the new one unless it was committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            next.abort();
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package loader.cli;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * How far a load got: the byte offset and line number of the first line that has not been acknowledged yet,
+ * together with enough about the input and the mapping to tell whether a later run may resume from it.
+ */
+public class LoadCheckpoint {
+    private static final String INPUT_FILE = "inputFile";
+    private static final String INPUT_SIZE = "inputSize";
+    private static final String INPUT_MODIFIED = "inputModified";
+    private static final String PLAN_FINGERPRINT = "planFingerprint";
+    private static final String OFFSET = "offset";
+    private static final String LINE_NUMBER = "lineNumber";
+    private static final String INSERTS_ACKNOWLEDGED = "insertsAcknowledged";
+    private static final String UPDATED = "updated";
+
+    private final String inputFile;
+    private final long inputSize;
+    private final long inputModified;
+    private final String planFingerprint;
+    private final long offset;
+    private final long lineNumber;
+    private final long insertsAcknowledged;
+
+    public LoadCheckpoint(String inputFile, long inputSize, long inputModified, String planFingerprint,
+                          long offset, long lineNumber, long insertsAcknowledged) {
+        this.inputFile = inputFile;
+        this.inputSize = inputSize;
+        this.inputModified = inputModified;
+        this.planFingerprint = planFingerprint;
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+        this.insertsAcknowledged = insertsAcknowledged;
+    }
+
+    /**
+     * @return the checkpoint stored in {@code file}, or null if there is none
+     * @throws IOException if the file exists but could not be read
+     */
+    public static LoadCheckpoint read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            JSONObject json = new JSONObject(new JSONTokener(reader));
+            return new LoadCheckpoint(json.getString(INPUT_FILE), json.getLong(INPUT_SIZE), json.getLong(INPUT_MODIFIED),
+               json.getString(PLAN_FINGERPRINT), json.getLong(OFFSET), json.getLong(LINE_NUMBER),
+               json.getLong(INSERTS_ACKNOWLEDGED));
+        }
+    }
+
+    /**
+     * Replace the checkpoint in {@code file}. The new content is written next to it and moved into place, so a
+     * crash leaves either the old or the new checkpoint, never a partial one.
+     */
+    public void write(File file) throws IOException {
+        JSONObject json = new JSONObject()
+           .put(INPUT_FILE, inputFile)
+           .put(INPUT_SIZE, inputSize)
+           .put(INPUT_MODIFIED, inputModified)
+           .put(PLAN_FINGERPRINT, planFingerprint)
+           .put(OFFSET, offset)
+           .put(LINE_NUMBER, lineNumber)
+           .put(INSERTS_ACKNOWLEDGED, insertsAcknowledged)
+           .put(UPDATED, System.currentTimeMillis());
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, json.toString(2).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @throws CLILoaderRuntimeException if this checkpoint was not taken for the same input and mapping
+     */
+    public void verify(File input, String planFingerprint) {
+        if (input.length() != inputSize || input.lastModified() != inputModified) {
+            throw new CLILoaderRuntimeException("Cannot resume: input file " + input + " changed since the checkpoint of " +
+               inputFile + " was taken");
+        }
+        if (!this.planFingerprint.equals(planFingerprint)) {
+            throw new CLILoaderRuntimeException("Cannot resume: the mapping, headers or target table changed since the " +
+               "checkpoint was taken");
+        }
+    }
+
+    public String getInputFile() {
+        return inputFile;
+    }
+
+    public String getPlanFingerprint() {
+        return planFingerprint;
+    }
+
+    /**
+     * @return byte offset of the first line that has not been acknowledged
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return line number of the line at {@link #getOffset()}
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public long getInsertsAcknowledged() {
+        return insertsAcknowledged;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadCheckpoint{" +
+           "inputFile='" + inputFile + '\'' +
+           ", offset=" + offset +
+           ", lineNumber=" + lineNumber +
+           ", insertsAcknowledged=" + insertsAcknowledged +
+           '}';
+    }
+}
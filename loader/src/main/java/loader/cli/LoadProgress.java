@@ -0,0 +1,145 @@
+package loader.cli;
+
+import com.google.common.base.Stopwatch;
+import cp.util.DurationUtil;
+import loader.util.AdaptiveConcurrencyLimit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static loader.cli.AbstractLoader.estimateRemainingTime;
+import static loader.cli.AbstractLoader.formatElapsedTime;
+import static loader.cli.AbstractLoader.humanReadableByteCount;
+
+/**
+ * Logs load progress in 10% steps against the line count of the input file. The count may start as an
+ * estimate and be replaced by the exact count once a background count finishes.
+ * <p/>
+ * For a compressed input file, whose line count is only ever an estimate, progress is instead the share of the
+ * compressed file read so far.
+ */
+public class LoadProgress {
+    private static final Logger log = LoggerFactory.getLogger(LoadProgress.class);
+
+    private volatile AbstractLoader.FileMetrics fileMetrics;
+    private final Stopwatch timer;
+    private int lastPercentile = 0;
+    private boolean exceededEstimate = false;
+    private long resumedInserts = 0;
+    private AdaptiveConcurrencyLimit concurrencyLimit;
+    private String label = "";
+    private LongSupplier inputBytesRead;
+
+    public LoadProgress(AbstractLoader.FileMetrics fileMetrics) {
+        this.fileMetrics = fileMetrics;
+        this.timer = DurationUtil.getStopwatchStarted();
+    }
+
+    /**
+     * Start every progress line with {@code name}, to tell apart the files of a multi-file load.
+     */
+    public void label(String name) {
+        this.label = "[" + name + "] ";
+    }
+
+    /**
+     * Replace the estimated file metrics with the exact ones. May be called from any thread.
+     */
+    public void exactCount(AbstractLoader.FileMetrics exactMetrics) {
+        log.info("{}Exact input line count {} replaces the estimate of {}", label, exactMetrics.lines, fileMetrics.lines);
+        fileMetrics = exactMetrics;
+    }
+
+    /**
+     * Count the inserts acknowledged by the earlier runs of a resumed load as done. Call before the first update.
+     */
+    public void resumeFrom(long resumedInserts) {
+        this.resumedInserts = resumedInserts;
+        while (resumedInserts > ((lastPercentile + 10) * fileMetrics.lines / 100) && lastPercentile < 100) {
+            lastPercentile += 10;
+        }
+    }
+
+    /**
+     * Log the write concurrency limit and latency with every progress line. Call before the first update.
+     */
+    public void reportConcurrency(AdaptiveConcurrencyLimit concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Measure progress by the bytes of the input file read, out of its size in the file metrics, rather than by
+     * lines. Call before the first update.
+     */
+    public void trackInputBytes(LongSupplier inputBytesRead) {
+        this.inputBytesRead = inputBytesRead;
+    }
+
+    /**
+     * Called by the writer after every insert attempt, with the number of inserts completed so far by this run.
+     */
+    public void update(long insertsCompletedThisRun) {
+        if (inputBytesRead != null) {
+            updateByInputBytes(resumedInserts + insertsCompletedThisRun);
+            return;
+        }
+        long insertsCompleted = resumedInserts + insertsCompletedThisRun;
+        long lines = fileMetrics.lines;
+        if (!exceededEstimate && insertsCompleted > lines) {
+            exceededEstimate = true;
+            log.info("{}Line estimate fell short. Using actual inserted line count henceforth", label);
+        }
+
+        if (insertsCompleted > ((lastPercentile + 10) * lines / 100)) {
+            while (insertsCompleted > ((lastPercentile + 10) * lines / 100)) {
+                lastPercentile += 10;
+            }
+            long newLineEstimate = lines > insertsCompleted ? lines : insertsCompleted;
+            log.info("{}{}% complete. {}/{} lines processed. {} elapsed, {} remaining.", label,
+               insertsCompleted * 100 / newLineEstimate, insertsCompleted, newLineEstimate,
+               formatElapsedTime(timer.elapsed(TimeUnit.MILLISECONDS)),
+               formatElapsedTime(estimateRemainingTime(insertsCompletedThisRun, newLineEstimate - resumedInserts,
+                  timer.elapsed(TimeUnit.MILLISECONDS))));
+            logConcurrency();
+        }
+    }
+
+    private void updateByInputBytes(long insertsCompleted) {
+        long read = inputBytesRead.getAsLong();
+        long total = fileMetrics.bytes;
+        if (total > 0 && read * 100 / total >= lastPercentile + 10) {
+            while (read * 100 / total >= lastPercentile + 10 && lastPercentile < 100) {
+                lastPercentile += 10;
+            }
+            long elapsed = timer.elapsed(TimeUnit.MILLISECONDS);
+            log.info("{}{}% complete. {}/{} compressed bytes read, {} lines processed. {} elapsed, {} remaining.", label,
+               read * 100 / total, read, total, insertsCompleted, formatElapsedTime(elapsed),
+               formatElapsedTime(estimateRemainingTime(read, total, elapsed)));
+            logConcurrency();
+        }
+    }
+
+    private void logConcurrency() {
+        if (concurrencyLimit != null) {
+            log.info("{}Write concurrency limit {} ({}-{}), p99 write latency {} ms.", label,
+               concurrencyLimit.getLimit(), concurrencyLimit.getMinLimit(), concurrencyLimit.getMaxLimit(),
+               String.format("%.1f", concurrencyLimit.getLatencyP99Millis()));
+        }
+    }
+
+    public void complete(long insertsCompletedThisRun) {
+        timer.stop();
+        long insertsCompleted = resumedInserts + insertsCompletedThisRun;
+        long newLineEstimate = fileMetrics.lines > insertsCompleted ? fileMetrics.lines : insertsCompleted;
+        log.info("{}Loading data to db completed. {} lines of {} line file processed. {} elapsed.", label,
+           insertsCompleted, newLineEstimate, formatElapsedTime(timer.elapsed(TimeUnit.MILLISECONDS)));
+        if (timer.elapsed(TimeUnit.MILLISECONDS) > 0) {
+            double bytesPerSecond = 1000.0d * fileMetrics.bytes / timer.elapsed(TimeUnit.MILLISECONDS);
+            log.info("{}Throughput: {} per second", label, humanReadableByteCount(bytesPerSecond, false));
+        } else {
+            log.info("{}Cannot compute throughput; execution was too fast.", label);
+        }
+    }
+}
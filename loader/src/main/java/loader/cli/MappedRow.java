@@ -0,0 +1,53 @@
+package loader.cli;
+
+import com.datastax.driver.core.BoundStatement;
+
+/**
+ * One input line after conversion by a {@link MappingPlan}: the converted value of every plan column, in plan
+ * order, with null for columns that get no value on this line.
+ */
+public class MappedRow {
+    private final long lineNumber;
+    private final String line;
+    private final Object[] values;
+    private BoundStatement statement;
+
+    public MappedRow(long lineNumber, Object[] values) {
+        this(lineNumber, null, values);
+    }
+
+    /**
+     * @param line the input line the row was converted from
+     */
+    public MappedRow(long lineNumber, String line, Object[] values) {
+        this.lineNumber = lineNumber;
+        this.line = line;
+        this.values = values;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the input line the row was converted from, or null if it was not kept
+     */
+    public String getLine() {
+        return line;
+    }
+
+    public Object[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the insert for this row, or null if the row has not been bound yet
+     */
+    public BoundStatement getStatement() {
+        return statement;
+    }
+
+    void setStatement(BoundStatement statement) {
+        this.statement = statement;
+    }
+}
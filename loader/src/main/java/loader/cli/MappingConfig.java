@@ -23,6 +23,8 @@ public class MappingConfig {
 
     private CaseInsensitiveSet uuidColumns;
 
+    private Map<String, String> uuidModes;
+
     private String table;
 
     private String useStrictMapping;
@@ -33,6 +35,7 @@ public class MappingConfig {
         timestampColumns = new CaseInsensitiveSet();
         lineNumberColumns = new CaseInsensitiveSet();
         uuidColumns = new CaseInsensitiveSet();
+        uuidModes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         headersToIgnore = new CaseInsensitiveSet();
     }
 
@@ -54,6 +57,14 @@ public class MappingConfig {
 
     public CaseInsensitiveSet getUuidColumns(){return uuidColumns; }
 
+    /**
+     * @return how the uuids of a uuid column are made, {@code random} or {@code time}, or null for the default of
+     * the column type
+     */
+    public String getUuidMode(String column) {
+        return uuidModes.get(column);
+    }
+
     public CaseInsensitiveSet getHeadersToIgnore() {
         return headersToIgnore;
     }
@@ -130,10 +141,14 @@ public class MappingConfig {
             }
         }
 
+        // either a list of columns, or the columns with how their uuids are made
         JSONArray uuidJson = json.optJSONArray(UUID_KEYS);
-        if (uuidJson != null) {
-            for (int i = 0; i < uuidJson.length(); i++) {
-                String column = uuidJson.getString(i);
+        JSONObject uuidModeJson = json.optJSONObject(UUID_KEYS);
+        if (uuidJson != null || uuidModeJson != null) {
+            String[] uuidModeColumns = uuidModeJson == null ? null : JSONObject.getNames(uuidModeJson);
+            int count = uuidJson != null ? uuidJson.length() : uuidModeColumns == null ? 0 : uuidModeColumns.length;
+            for (int i = 0; i < count; i++) {
+                String column = uuidJson != null ? uuidJson.getString(i) : uuidModeColumns[i];
 
                 if (headerToColumnMap.containsValue(column))
                     throw new CLILoaderRuntimeException("Column " + column + " already mapped to a header");
@@ -142,6 +157,9 @@ public class MappingConfig {
                     throw new CLILoaderRuntimeException("Column " + column + " already has synthetic associated with it");
 
                 uuidColumns.add(column);
+                if (uuidModeJson != null) {
+                    uuidModes.put(column, uuidModeJson.getString(column));
+                }
             }
         }
 
@@ -242,10 +260,22 @@ public class MappingConfig {
         return this;
     }
 
+    /**
+     * Adds to the uuid set extra uuid columns that were passed as a command line argument.
+     * @param uuids - comma delimited string of columns to be filled with uuids, each optionally with how its uuids
+     *              are made, random or time
+     *                   Eg: "ID,EVENT_ID=time"
+     */
     public MappingConfig addUUIDs(String uuids) {
         Lists.newArrayList(Splitter.on(',').trimResults().split(uuids))
            .stream()
-           .forEach(s -> {
+           .forEach(entry -> {
+               String[] pair = Iterables.toArray(Splitter.on('=').trimResults().split(entry), String.class);
+               if (pair.length > 2) {
+                   throw new CLILoaderRuntimeException(String.format("Uuid column syntax incorrect: " +
+                      "expected \"{column}\" or \"{column}={mode}\", got \"%s\" instead", entry));
+               }
+               String s = pair[0];
                if (headerToColumnMap.containsValue(s))
                    throw new CLILoaderRuntimeException("Command line mapping contains linenumber targeting column " +
                       "already mapped in the mapping config file. Column key: " + s);
@@ -256,6 +286,9 @@ public class MappingConfig {
                    throw new CLILoaderRuntimeException("Command line mapping contains linenumber targeting column " +
                       "already mapped to a timestamp in either the config file or a command line argument. Column key: " + s);
                uuidColumns.add(s);
+               if (pair.length == 2) {
+                   uuidModes.put(s, pair[1]);
+               }
            });
         return this;
     }
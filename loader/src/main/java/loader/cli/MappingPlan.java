@@ -0,0 +1,446 @@
+package loader.cli;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.DataType.Name;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import cp.exceptions.ProcessException;
+import cp.util.CaseInsensitiveSet;
+import cp.util.FieldTokenizer;
+import cp.util.StringDictionary;
+import loader.util.CQLTypeUtil;
+import loader.util.CQLUtil;
+import loader.util.ColumnConverter;
+import loader.util.UuidGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The mapping config compiled against the headers of one input file and the column types of the target table.
+ * <p/>
+ * Every target column gets a slot in a fixed order: header mapped columns, then synthetic constants and
+ * timestamps, then line numbers, then uuids. Header indexes, converters, synthetic defaults and the load
+ * timestamp are all resolved up front, so mapping a line is a pass over arrays. The set of columns that
+ * actually have a value on a line is reduced to a bitmask which keys the prepared insert for that shape.
+ * <p/>
+ * Instances are safe to share between threads.
+ */
+public class MappingPlan {
+    private static final Logger log = LoggerFactory.getLogger(MappingPlan.class);
+    // lines are mapped by several workers at once, each splitting with its own
+    private static final ThreadLocal<FieldTokenizer> TOKENIZER = ThreadLocal.withInitial(FieldTokenizer::tabs);
+
+    private final Session session;
+    private final String keyspace;
+    private final String table;
+    // fields a line must have to hold every mapped column; trailing columns that are not mapped may be left off
+    private final int requiredFields;
+    private final String fingerprint;
+
+    private final String[] columns;
+    private final DataType[] types;
+    private final ColumnConverter[] converters;
+    private final int[] headerIndexes;
+    private final Object[] fixedValues;
+    private final StringDictionary[] dictionaries;
+    private final UuidGenerator[] uuidGenerators;
+    // uuid columns that take the uuid as it is, rather than as text
+    private final boolean[] uuidTypes;
+
+    // slots [0, mappedEnd) come from the file, [mappedEnd, fixedEnd) are constants,
+    // [fixedEnd, lineNumberEnd) are line numbers and [lineNumberEnd, columns.length) are uuids
+    private final int mappedEnd;
+    private final int fixedEnd;
+    private final int lineNumberEnd;
+
+    /**
+     *   Using Guava Cache to cache the prepared statements for reuse.
+     *   The idea is to void inserting null values as they create tombstones in cassandra.
+     *   So we create insert statements based on which columns have data in a line, keyed by the column mask.
+     */
+    private final Cache<Object, PreparedStatement> preparedStatementCache;
+
+    private MappingPlan(Session session, String keyspace, String table, String fingerprint,
+                        List<Slot> slots, int mappedEnd, int fixedEnd, int lineNumberEnd, int cacheSize) {
+        this.session = session;
+        this.keyspace = keyspace;
+        this.table = table;
+        this.fingerprint = fingerprint;
+        this.mappedEnd = mappedEnd;
+        this.fixedEnd = fixedEnd;
+        this.lineNumberEnd = lineNumberEnd;
+
+        int size = slots.size();
+        columns = new String[size];
+        types = new DataType[size];
+        converters = new ColumnConverter[size];
+        headerIndexes = new int[size];
+        fixedValues = new Object[size];
+        dictionaries = new StringDictionary[size];
+        uuidGenerators = new UuidGenerator[size];
+        uuidTypes = new boolean[size];
+        int lastMappedField = -1;
+        for (int i = 0; i < size; i++) {
+            Slot slot = slots.get(i);
+            columns[i] = slot.column;
+            types[i] = slot.type;
+            converters[i] = slot.converter;
+            headerIndexes[i] = slot.headerIndex;
+            fixedValues[i] = slot.fixedValue;
+            uuidGenerators[i] = slot.uuidGenerator;
+            uuidTypes[i] = slot.type.getName() == Name.UUID || slot.type.getName() == Name.TIMEUUID;
+            lastMappedField = Math.max(lastMappedField, slot.headerIndex);
+        }
+        requiredFields = lastMappedField + 1;
+
+        preparedStatementCache = CacheBuilder.newBuilder()
+           .maximumSize(cacheSize)
+           .recordStats()
+           .build();
+    }
+
+    /**
+     * Compile the plan for one load.
+     *
+     * @param session       Session used to prepare the inserts
+     * @param keyspace      Target keyspace
+     * @param mappingConfig Mapping config, already reconciled against the file headers
+     * @param fileHeaders   Headers of the input file, in file order
+     * @param columnTypeMap Target column types keyed by lower case column name
+     * @param timestamp     Value for the timestamp columns of this load
+     * @param cacheSize     Maximum number of prepared insert shapes to keep
+     * @return the compiled plan
+     */
+    public static MappingPlan compile(Session session,
+                                      String keyspace,
+                                      MappingConfig mappingConfig,
+                                      List<String> fileHeaders,
+                                      Map<String, DataType> columnTypeMap,
+                                      String timestamp,
+                                      int cacheSize) {
+        List<Slot> slots = new ArrayList<>();
+        CaseInsensitiveSet planned = new CaseInsensitiveSet();
+        Map<String, String> syntheticToColumnMap = mappingConfig.getSyntheticToColumnMap();
+
+        // header mapped columns; a synthetic on the same column is the default for blank cells
+        mappingConfig.getHeaderToColumnMap().forEach((header, column) -> {
+            int headerIndex = fileHeaders.indexOf(header);
+            if (headerIndex < 0) {
+                throw new CLILoaderRuntimeException("Header " + header + " is not present in the input file");
+            }
+            Slot slot = new Slot(column, columnTypeMap.get(column.toLowerCase()), headerIndex);
+            for (Map.Entry<String, String> synthetic : syntheticToColumnMap.entrySet()) {
+                if (synthetic.getKey().equalsIgnoreCase(column)) {
+                    slot.fixedValue = slot.converter.convert(synthetic.getValue());
+                }
+            }
+            slots.add(slot);
+            planned.add(column);
+        });
+        int mappedEnd = slots.size();
+
+        // synthetics with no header are constants
+        syntheticToColumnMap.forEach((column, value) -> {
+            if (!planned.contains(column)) {
+                Slot slot = new Slot(column, columnTypeMap.get(column.toLowerCase()), -1);
+                slot.fixedValue = slot.converter.convert(value);
+                slots.add(slot);
+                planned.add(column);
+            }
+        });
+
+        // timestamps are the same for every line of the load
+        for (String column : mappingConfig.getTimestampColumns()) {
+            DataType type = columnTypeMap.get(column.toLowerCase());
+            if (!(type.getName().equals(Name.TEXT) || type.getName().equals(Name.TIMESTAMP) ||
+                     type.getName().equals(Name.VARCHAR))) {
+                throw new ProcessException(
+                   "Invalid data type for column " + column + ". Expected TEXT/VARCHAR/TIMESTAMP but found " +
+                      type.getName());
+            }
+            Slot slot = new Slot(column, type, -1);
+            slot.fixedValue = slot.converter.convert(timestamp);
+            slots.add(slot);
+        }
+        int fixedEnd = slots.size();
+
+        for (String column : mappingConfig.getLineNumberColumns()) {
+            slots.add(new Slot(column, columnTypeMap.get(column.toLowerCase()), -1));
+        }
+        int lineNumberEnd = slots.size();
+
+        for (String column : mappingConfig.getUuidColumns()) {
+            Slot slot = new Slot(column, columnTypeMap.get(column.toLowerCase()), -1);
+            try {
+                slot.uuidGenerator = UuidGenerator.forColumn(mappingConfig.getUuidMode(column), slot.type);
+            } catch (IllegalArgumentException e) {
+                throw new ProcessException("Invalid uuid mode for column " + column + ": " + e.getMessage());
+            }
+            slots.add(slot);
+        }
+
+        log.debug("Compiled mapping plan with {} columns: {} from the file, {} constant, {} line number, {} uuid",
+           slots.size(), mappedEnd, fixedEnd - mappedEnd, lineNumberEnd - fixedEnd, slots.size() - lineNumberEnd);
+
+        // everything that decides what gets written for a line, except the load timestamp which differs per run
+        Hasher hasher = Hashing.sha256().newHasher()
+           .putString(keyspace, StandardCharsets.UTF_8).putByte((byte) 0)
+           .putString(mappingConfig.getTable(), StandardCharsets.UTF_8).putByte((byte) 0);
+        for (String header : fileHeaders) {
+            hasher.putString(header, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        for (Slot slot : slots) {
+            hasher.putString(slot.column, StandardCharsets.UTF_8).putByte((byte) 0)
+               .putString(String.valueOf(slot.type), StandardCharsets.UTF_8).putByte((byte) 0)
+               .putInt(slot.headerIndex);
+        }
+        syntheticToColumnMap.forEach((column, value) -> hasher.putString(column, StandardCharsets.UTF_8).putByte((byte) 0)
+           .putString(value, StandardCharsets.UTF_8).putByte((byte) 0));
+
+        return new MappingPlan(session, keyspace, mappingConfig.getTable(), hasher.hash().toString(),
+           slots, mappedEnd, fixedEnd, lineNumberEnd, cacheSize);
+    }
+
+    /**
+     * Convert one line of the input file.
+     *
+     * @param line The raw input line, without its line terminator
+     * @param lineNumber The data line number, starting at 1 for the first line after the header
+     * @return the converted row
+     * @throws CLILoaderRuntimeException if the line could not be converted
+     */
+    public MappedRow map(String line, long lineNumber) {
+        // the bounds of every field, so a cell only becomes a string if its converter needs one
+        FieldTokenizer fields = TOKENIZER.get();
+        int fieldCount = fields.tokenize(line);
+        if (fieldCount < requiredFields) {
+            throw new CLILoaderRuntimeException("Unable to map input line " + lineNumber + ": found " + fieldCount +
+               " fields but the mapped columns need " + requiredFields);
+        }
+
+        Object[] values = new Object[columns.length];
+        int i = 0;
+        try {
+            for (; i < mappedEnd; i++) {
+                int field = headerIndexes[i];
+                Object value;
+                if (fields.isEmpty(field)) {
+                    value = converters[i].convert("");
+                } else if (dictionaries[i] != null) {
+                    value = converters[i].convert(fields.intern(field, dictionaries[i]));
+                } else {
+                    value = converters[i].convert(line, fields.start(field), fields.end(field));
+                }
+                // only columns with a value are inserted, to avoid tombstones in cassandra
+                values[i] = value != null ? value : fixedValues[i];
+            }
+            for (; i < fixedEnd; i++) {
+                values[i] = fixedValues[i];
+            }
+            for (; i < lineNumberEnd; i++) {
+                values[i] = lineNumberValue(i, lineNumber);
+            }
+            for (; i < columns.length; i++) {
+                UUID uuid = uuidGenerators[i].next();
+                values[i] = uuidTypes[i] ? uuid : converters[i].convert(uuid.toString());
+            }
+        } catch (RuntimeException e) {
+            throw new CLILoaderRuntimeException("Unable to map input line " + lineNumber + " to column " + columns[i], e);
+        }
+        return new MappedRow(lineNumber, line, values);
+    }
+
+    /**
+     * Attach the insert for a converted row, preparing it first if this is a new column shape.
+     *
+     * @return the same row, for chaining
+     */
+    public MappedRow bind(MappedRow row) {
+        Object[] values = row.getValues();
+        Object shape = shapeOf(row);
+
+        PreparedStatement preparedStatement;
+        try {
+            // concurrent workers asking for the same shape share a single prepare
+            preparedStatement = preparedStatementCache.get(shape, () -> session.prepare(insertFor(values)));
+        } catch (ExecutionException e) {
+            throw new CLILoaderRuntimeException("Unable to prepare insert for input line " + row.getLineNumber(), e.getCause());
+        }
+
+        int present = 0;
+        for (Object value : values) {
+            if (value != null) {
+                present++;
+            }
+        }
+        Object[] bindValues = new Object[present];
+        int b = 0;
+        for (Object value : values) {
+            if (value != null) {
+                bindValues[b++] = value;
+            }
+        }
+        row.setStatement(preparedStatement.bind(bindValues));
+        return row;
+    }
+
+    /**
+     * @return the key of the insert for a row: the set of columns that have a value, as a {@code Long} mask or a
+     * {@link BitSet} for tables of more than 64 columns
+     */
+    public Object shapeOf(MappedRow row) {
+        Object[] values = row.getValues();
+        if (columns.length <= Long.SIZE) {
+            long mask = 0L;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    mask |= 1L << i;
+                }
+            }
+            return mask;
+        }
+        BitSet mask = new BitSet(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                mask.set(i);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Prepare the insert for the shape of a row without waiting for it, and keep it for {@link #bind} once it is
+     * prepared. A shape already prepared is not prepared again.
+     *
+     * @return the insert, once prepared
+     */
+    public ListenableFuture<PreparedStatement> prepareAsync(MappedRow row) {
+        Object shape = shapeOf(row);
+        PreparedStatement prepared = preparedStatementCache.asMap().get(shape);
+        if (prepared != null) {
+            return Futures.immediateFuture(prepared);
+        }
+        ListenableFuture<PreparedStatement> future = session.prepareAsync(insertFor(row.getValues()));
+        return Futures.transform(future, (Function<PreparedStatement, PreparedStatement>) statement -> {
+            // a row of the shape bound meanwhile prepared it too; either statement does
+            preparedStatementCache.asMap().putIfAbsent(shape, statement);
+            return statement;
+        });
+    }
+
+    public List<String> getColumns() {
+        List<String> result = new ArrayList<>(columns.length);
+        for (String column : columns) {
+            result.add(column);
+        }
+        return result;
+    }
+
+    /**
+     * Take the cells of a column from a dictionary instead of creating a string for each.
+     *
+     * @param slot position of the column in {@link #getColumns()}; it must be a text column from the file
+     * @throws IllegalArgumentException for any other column
+     */
+    public void setDictionary(int slot, StringDictionary dictionary) {
+        if (slot >= mappedEnd || !isText(types[slot])) {
+            throw new IllegalArgumentException("Column " + columns[slot] + " is not a text column read from the file");
+        }
+        dictionaries[slot] = dictionary;
+    }
+
+    /**
+     * @return true if the cells of columns of the type are kept as they are, so they can come from a dictionary
+     */
+    public static boolean isText(DataType type) {
+        return type.getName() == Name.TEXT || type.getName() == Name.VARCHAR || type.getName() == Name.ASCII;
+    }
+
+    /**
+     * @return the type of every one of {@link #getColumns()}
+     */
+    public List<DataType> getTypes() {
+        return Arrays.asList(types.clone());
+    }
+
+    /**
+     * @return how many of the first {@link #getColumns()} get their value from the input file
+     */
+    public int getMappedColumnCount() {
+        return mappedEnd;
+    }
+
+    /**
+     * @return a digest of the target table, file headers, columns, types and synthetic values of this plan. It
+     * stays the same from one run to the next as long as the same file is loaded with the same mapping.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public CacheStats cacheStats() {
+        return preparedStatementCache.stats();
+    }
+
+    private Object lineNumberValue(int i, long lineNumber) {
+        switch (types[i].getName()) {
+            case BIGINT:
+            case COUNTER:
+                return lineNumber;
+            case INT:
+                return (int) lineNumber;
+            case VARINT:
+                return BigInteger.valueOf(lineNumber);
+            default:
+                return converters[i].convert(Long.toString(lineNumber));
+        }
+    }
+
+    private String insertFor(Object[] values) {
+        Insert insertQuery = QueryBuilder.insertInto(CQLUtil.escapeIdentifier(keyspace), CQLUtil.escapeIdentifier(table));
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                insertQuery.value(columns[i], QueryBuilder.bindMarker());
+            }
+        }
+        String query = insertQuery.getQueryString();
+        log.debug("Preparing new insert shape: {}", query);
+        return query;
+    }
+
+    private static class Slot {
+        final String column;
+        final DataType type;
+        final ColumnConverter converter;
+        final int headerIndex;
+        Object fixedValue;
+        UuidGenerator uuidGenerator;
+
+        Slot(String column, DataType type, int headerIndex) {
+            this.column = column;
+            this.type = type;
+            this.converter = CQLTypeUtil.converterFor(type);
+            this.headerIndex = headerIndex;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package loader.cli;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cp.config.ConfigurationService;
+import cp.connect.CassandraSessionManager;
+import cp.model.Constants;
+import cp.util.DurationUtil;
+import loader.util.WriteBudget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static cp.config.ConfigurationKeys.*;
+
+/**
+ * Loads a directory or a list of input files, several at a time, over the one session of the load.
+ * <p/>
+ * Every file is loaded by a {@link CommandLineLoader} of its own, with its own progress, checkpoint and write
+ * window. The windows share a {@link WriteBudget}, so the writes in flight across all files stay within one
+ * total however many files are loading. The largest files start first, which keeps a long file from being the
+ * only one still loading at the end. A failed file does not stop the others; the load fails once all are done.
+ */
+public class MultiFileLoader extends AbstractLoader {
+    private static final Logger log = LoggerFactory.getLogger(MultiFileLoader.class);
+
+    private static final Splitter INPUT_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final Map<String, Long> rowsLoaded = new LinkedHashMap<>();
+
+    /**
+     * @param input value of the input file option
+     * @return true if the input names a directory or more than one file
+     */
+    public static boolean isMultiFileInput(String input) {
+        List<String> entries = INPUT_SPLITTER.splitToList(input);
+        return entries.size() > 1 || (entries.size() == 1 && new File(entries.get(0)).isDirectory());
+    }
+
+    /**
+     * @param input a directory, a file, or a comma separated list of either
+     * @return the input files, with the visible files of each directory in name order; checkpoint, profile and
+     * rejected rows files are left out
+     */
+    public static List<String> resolveInputFiles(String input) {
+        List<String> files = new ArrayList<>();
+        for (String entry : INPUT_SPLITTER.split(input)) {
+            File file = new File(entry);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles(child -> child.isFile() && !child.isHidden() &&
+                   !child.getName().endsWith(Constants.LOADER_CHECKPOINT_SUFFIX) &&
+                   !child.getName().endsWith(Constants.LOADER_PROFILE_SUFFIX) &&
+                   !child.getName().endsWith(Constants.LOADER_REJECTS_SUFFIX));
+                if (children == null) {
+                    throw new CLILoaderRuntimeException("Unable to list the input directory " + entry);
+                }
+                Arrays.sort(children);
+                for (File child : children) {
+                    files.add(child.getPath());
+                }
+            } else {
+                files.add(entry);
+            }
+        }
+        return files;
+    }
+
+    public MultiFileLoader(CassandraSessionManager sessionManager,
+                           ConfigurationService configService,
+                           MappingConfig mappingConfig,
+                           String inputFilename) {
+        super(sessionManager, configService, mappingConfig, inputFilename);
+    }
+
+    @Override
+    public int load() {
+        if (configService.getValue(LOADER_CHECKPOINT_FILE_KEY) != null) {
+            throw new CLILoaderRuntimeException("--" + LOADER_CHECKPOINT_FILE_KEY + " names a single checkpoint file; " +
+               "leave it unset to give every input file a checkpoint of its own");
+        }
+        if (configService.getValue(LOADER_PROFILE_FILE_KEY) != null) {
+            throw new CLILoaderRuntimeException("--" + LOADER_PROFILE_FILE_KEY + " names a single profile report; " +
+               "leave it unset to give every input file a report of its own");
+        }
+        if (configService.getValue(LOADER_REJECT_FILE_KEY) != null) {
+            throw new CLILoaderRuntimeException("--" + LOADER_REJECT_FILE_KEY + " names a single rejected rows file; " +
+               "leave it unset to give every input file one of its own");
+        }
+        if (configService.getBooleanValue(LOADER_DELTA_KEY, Boolean.FALSE)) {
+            throw new CLILoaderRuntimeException("--" + LOADER_DELTA_KEY + " compares a snapshot with the one loaded " +
+               "before it; load the snapshot files of a feed one at a time");
+        }
+        List<String> files = resolveInputFiles(inputFilename);
+        if (files.isEmpty()) {
+            log.error("No input files found in {}", inputFilename);
+            return -1;
+        }
+        files.sort(Comparator.comparingLong((String file) -> new File(file).length()).reversed());
+
+        int concurrentFiles = Math.min(files.size(),
+           configService.getIntegerValue(LOADER_CONCURRENT_FILES_KEY, Constants.LOADER_DEFAULT_CONCURRENT_FILES));
+        WriteBudget budget = new WriteBudget(
+           configService.getIntegerValue(LOADER_TOTAL_IN_FLIGHT_KEY, Constants.LOADER_DEFAULT_ADAPTIVE_MAX_IN_FLIGHT));
+        log.info("Loading {} files, {} at a time, with at most {} writes in flight across all files", files.size(),
+           concurrentFiles, budget.getSize());
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrentFiles, new ThreadFactoryBuilder()
+           .setNameFormat("loader-file-%d")
+           .build());
+        Stopwatch timer = DurationUtil.getStopwatchStarted();
+        List<Future<FileResult>> results = new ArrayList<>(files.size());
+        for (String file : files) {
+            results.add(pool.submit(() -> loadFile(file, budget)));
+        }
+        pool.shutdown();
+
+        long rows = 0;
+        long bytes = 0;
+        List<String> failedFiles = new ArrayList<>();
+        rowsLoaded.clear();
+        try {
+            for (Future<FileResult> future : results) {
+                FileResult result = future.get();
+                rowsLoaded.put(result.file, result.rows);
+                rows += result.rows;
+                bytes += result.bytes;
+                if (!result.succeeded) {
+                    failedFiles.add(result.file);
+                }
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new CLILoaderRuntimeException("Interrupted while loading files", e);
+        } catch (ExecutionException e) {
+            // loadFile catches everything a load can throw
+            throw new CLILoaderRuntimeException("Unexpected failure while loading files", e.getCause());
+        }
+        timer.stop();
+
+        long elapsed = timer.elapsed(TimeUnit.MILLISECONDS);
+        log.info("Loaded {} of {} files: {} rows, {} in {}.", files.size() - failedFiles.size(), files.size(), rows,
+           humanReadableByteCount(bytes, false), formatElapsedTime(elapsed));
+        if (elapsed > 0) {
+            log.info("Aggregate throughput: {} rows per second, {} per second", rows * 1000 / elapsed,
+               humanReadableByteCount(1000.0d * bytes / elapsed, false));
+        }
+        if (!failedFiles.isEmpty()) {
+            log.error("{} files failed to load: {}", failedFiles.size(), failedFiles);
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * @return rows acknowledged by the cluster for each file of the last {@link #load()}, largest file first
+     */
+    public Map<String, Long> getRowsLoaded() {
+        return Collections.unmodifiableMap(rowsLoaded);
+    }
+
+    /**
+     * @return rows acknowledged by the cluster across all files of the last {@link #load()}
+     */
+    public long getInsertsCompleted() {
+        long rows = 0;
+        for (long fileRows : rowsLoaded.values()) {
+            rows += fileRows;
+        }
+        return rows;
+    }
+
+    private FileResult loadFile(String file, WriteBudget budget) {
+        CommandLineLoader loader = new CommandLineLoader(sessionManager, configService, mappingConfig, file);
+        loader.shareWriteBudget(budget);
+        loader.setProgressLabel(new File(file).getName());
+        boolean succeeded;
+        try {
+            succeeded = loader.load() == 0;
+        } catch (RuntimeException e) {
+            log.error("Error while loading input file {}", file, e);
+            succeeded = false;
+        }
+        return new FileResult(file, succeeded, loader.getInsertsCompleted(), loader.getInputBytes());
+    }
+
+    private static class FileResult {
+        final String file;
+        final boolean succeeded;
+        final long rows;
+        final long bytes;
+
+        FileResult(String file, boolean succeeded, long rows, long bytes) {
+            this.file = file;
+            this.succeeded = succeeded;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package loader.cli;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.Statement;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional stage in front of the {@link StatementWriter} that groups inserts into unlogged batches.
+ * <p/>
+ * Statements are grouped by routing key, which is the serialized partition key the driver computes for
+ * prepared statements from the table metadata. Each batch is routed by its first statement, so with a token
+ * aware policy the batch goes straight to a replica. This saves the coordinator from fanning out one request per
+ * row. It pays off when the input is sorted or clustered by partition key, as for the wide partitions of
+ * person_skill_1 or friend_list.
+ * <p/>
+ * Rows can also be held by the set of replicas that own their key, so that partitions on the same replicas are
+ * written together. A batch still only ever holds the rows of one partition: an unlogged batch that spans
+ * partitions makes its coordinator forward each one to other replicas, which is the fan out batching saves.
+ * <p/>
+ * A group is written once it holds {@code maxRows} rows, or once its first row has waited {@code maxDelay}.
+ * The delay is checked as rows arrive. When more than {@code maxGroups} groups are open, the oldest one is
+ * written. A group of one row is written as a plain statement. Statements without a routing key are not
+ * grouped. Rows added with a context are written with the context of the row, or for a batch the list of the
+ * contexts of its rows, for the writer's failure handler. Only ever called from the writer thread.
+ */
+public class PartitionBatcher {
+    private static final Logger log = LoggerFactory.getLogger(PartitionBatcher.class);
+
+    public enum Grouping {
+        /** one batch per partition; the batch is applied atomically on its replicas */
+        PARTITION,
+        /** partitions that share a replica set are held and written together, one batch per partition */
+        REPLICA
+    }
+
+    private final StatementWriter writer;
+    private final Grouping grouping;
+    private final Metadata metadata;
+    private final String keyspace;
+    private final int maxRows;
+    private final long maxDelayNanos;
+    private final int maxGroups;
+    private final Ticker ticker;
+
+    // insertion ordered, so the head is always the group that has been waiting longest
+    private final LinkedHashMap<Object, Group> groups = new LinkedHashMap<>();
+
+    private long batchesWritten;
+    private long rowsBatched;
+    private long rowsUnbatched;
+
+    public PartitionBatcher(StatementWriter writer, Grouping grouping, Metadata metadata, String keyspace,
+                            int maxRows, long maxDelay, TimeUnit unit, int maxGroups) {
+        this(writer, grouping, metadata, keyspace, maxRows, maxDelay, unit, maxGroups, Ticker.systemTicker());
+    }
+
+    PartitionBatcher(StatementWriter writer, Grouping grouping, Metadata metadata, String keyspace,
+                     int maxRows, long maxDelay, TimeUnit unit, int maxGroups, Ticker ticker) {
+        if (maxRows < 1 || maxGroups < 1) {
+            throw new IllegalArgumentException("Batch rows and open groups must both be positive");
+        }
+        this.writer = writer;
+        this.grouping = grouping;
+        this.metadata = metadata;
+        this.keyspace = keyspace;
+        this.maxRows = maxRows;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.maxGroups = maxGroups;
+        this.ticker = ticker;
+    }
+
+    public void add(Statement statement) {
+        add(statement, null);
+    }
+
+    /**
+     * @param context what the statement was made from, such as its row; null for none
+     */
+    public void add(Statement statement, Object context) {
+        long now = ticker.read();
+        ByteBuffer routingKey = statement.getRoutingKey();
+        if (routingKey == null) {
+            writeGroup(new Group(now, statement, context));
+        } else {
+            Object key = grouping == Grouping.REPLICA ? metadata.getReplicas(keyspace, routingKey) : routingKey;
+            Group group = groups.get(key);
+            if (group == null) {
+                if (groups.size() >= maxGroups) {
+                    writeOldest();
+                }
+                groups.put(key, new Group(now, statement, context));
+            } else {
+                group.add(statement, context);
+                if (group.statements.size() >= maxRows) {
+                    groups.remove(key);
+                    writeGroup(group);
+                }
+            }
+        }
+        writeExpired(now);
+    }
+
+    /**
+     * Write every open group.
+     */
+    public void flush() {
+        for (Group group : groups.values()) {
+            writeGroup(group);
+        }
+        groups.clear();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten;
+    }
+
+    public long getRowsBatched() {
+        return rowsBatched;
+    }
+
+    public long getRowsUnbatched() {
+        return rowsUnbatched;
+    }
+
+    public void logStatistics() {
+        log.info("Batching by {}: {} rows in {} batches (average {} rows per batch), {} rows written singly",
+           grouping.name().toLowerCase(), rowsBatched, batchesWritten,
+           batchesWritten == 0 ? 0 : rowsBatched / batchesWritten, rowsUnbatched);
+    }
+
+    private void writeExpired(long now) {
+        Iterator<Group> oldest = groups.values().iterator();
+        while (oldest.hasNext()) {
+            Group group = oldest.next();
+            if (now - group.created < maxDelayNanos) {
+                break;
+            }
+            oldest.remove();
+            writeGroup(group);
+        }
+    }
+
+    private void writeOldest() {
+        Iterator<Map.Entry<Object, Group>> oldest = groups.entrySet().iterator();
+        Group group = oldest.next().getValue();
+        oldest.remove();
+        writeGroup(group);
+    }
+
+    private void writeGroup(Group group) {
+        if (grouping == Grouping.REPLICA && group.statements.size() > 1) {
+            for (Group partition : group.byPartition()) {
+                write(partition);
+            }
+        } else {
+            write(group);
+        }
+    }
+
+    private void write(Group group) {
+        List<Statement> statements = group.statements;
+        if (statements.size() == 1) {
+            rowsUnbatched++;
+            if (group.contexts == null) {
+                writer.write(statements.get(0));
+            } else {
+                writer.write(statements.get(0), 1, group.contexts.get(0));
+            }
+        } else {
+            batchesWritten++;
+            rowsBatched += statements.size();
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED).addAll(statements);
+            if (group.contexts == null) {
+                writer.write(batch, statements.size());
+            } else {
+                writer.write(batch, statements.size(), group.contexts);
+            }
+        }
+    }
+
+    private class Group {
+        final long created;
+        final List<Statement> statements = new ArrayList<>(Math.min(maxRows, 16));
+        // null while no row of the group has a context
+        List<Object> contexts;
+
+        Group(long created, Statement first, Object context) {
+            this.created = created;
+            add(first, context);
+        }
+
+        void add(Statement statement, Object context) {
+            if (context != null && contexts == null) {
+                contexts = new ArrayList<>(Math.min(maxRows, 16));
+                for (int i = 0; i < statements.size(); i++) {
+                    contexts.add(null);
+                }
+            }
+            statements.add(statement);
+            if (contexts != null) {
+                contexts.add(context);
+            }
+        }
+
+        /**
+         * Split a replica group into one group per routing key, in the order the partitions first arrived.
+         */
+        Iterable<Group> byPartition() {
+            Map<ByteBuffer, Group> partitions = new LinkedHashMap<>();
+            for (int i = 0; i < statements.size(); i++) {
+                Statement statement = statements.get(i);
+                Object context = contexts == null ? null : contexts.get(i);
+                Group partition = partitions.get(statement.getRoutingKey());
+                if (partition == null) {
+                    partitions.put(statement.getRoutingKey(), new Group(created, statement, context));
+                } else {
+                    partition.add(statement, context);
+                }
+            }
+            return partitions.values();
+        }
+    }
+}
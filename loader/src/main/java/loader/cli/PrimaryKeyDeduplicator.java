@@ -0,0 +1,137 @@
+package loader.cli;
+
+import com.google.common.base.Joiner;
+import com.google.common.hash.HashCode;
+import loader.util.ConcurrentBloomFilter;
+import loader.util.OffHeapKeySet;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Skips the rows of a load whose primary key was already loaded from the same file, so duplicate keys in the
+ * input do not turn into overwrites.
+ * <p/>
+ * The converted values of the key columns are reduced to a 128 bit fingerprint, which goes into one of two
+ * memory bounded structures:
+ * <ul>
+ * <li>{@link Structure#EXACT}: an {@link OffHeapKeySet}, which tells duplicates apart for certain. Once its
+ * memory bound is reached new keys are no longer recorded, and their duplicates are loaded.</li>
+ * <li>{@link Structure#BLOOM}: a {@link ConcurrentBloomFilter} of a fixed size, which takes a small share of
+ * distinct keys for duplicates and skips them as well.</li>
+ * </ul>
+ * With {@link Policy#FIRST} the first copy of a key in the file is loaded; rows are admitted by the writer, which
+ * takes them in file order even when parse workers map them out of order. With {@link Policy#LAST} the last copy in
+ * the file is loaded: a first pass over the input records the line of the last copy of every key, so it needs the
+ * exact structure, which then keeps a line number per key.
+ * <p/>
+ * Rows with a null key value are always loaded; the write reports them.
+ */
+public class PrimaryKeyDeduplicator {
+    public enum Structure {
+        EXACT, BLOOM
+    }
+
+    public enum Policy {
+        FIRST, LAST
+    }
+
+    private final List<String> keyColumns;
+    private final int[] keySlots;
+    private final Structure structure;
+    private final Policy policy;
+    private final OffHeapKeySet keys;
+    private final ConcurrentBloomFilter filter;
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * @param planColumns       columns of the mapping plan, in the order of the row values
+     * @param keyColumns        the primary key columns
+     * @param expectedKeys      keys the Bloom filter is sized for
+     * @param falsePositiveRate false positive rate the Bloom filter is sized for
+     * @param maxBytes          memory the structure may take
+     * @throws CLILoaderRuntimeException if a key column is not loaded, or last-wins is asked of a Bloom filter
+     */
+    public PrimaryKeyDeduplicator(List<String> planColumns, List<String> keyColumns, Structure structure, Policy policy,
+                                  long expectedKeys, double falsePositiveRate, long maxBytes) {
+        if (keyColumns.isEmpty()) {
+            throw new CLILoaderRuntimeException("No primary key columns to deduplicate on");
+        }
+        if (policy == Policy.LAST && structure != Structure.EXACT) {
+            throw new CLILoaderRuntimeException("Keeping the last copy of a key needs the exact key set; " +
+               "a Bloom filter cannot tell which copy is the last");
+        }
+        this.keyColumns = keyColumns;
+        this.keySlots = RowHashes.slotsOf(planColumns, keyColumns, "deduplicated");
+        this.structure = structure;
+        this.policy = policy;
+        this.keys = structure == Structure.EXACT ? new OffHeapKeySet(maxBytes, policy == Policy.LAST) : null;
+        this.filter = structure == Structure.BLOOM ? new ConcurrentBloomFilter(expectedKeys, falsePositiveRate, maxBytes) : null;
+    }
+
+    /**
+     * @return true if {@link #recordLastCopy} must see every row of the input before the load
+     */
+    public boolean needsFirstPass() {
+        return policy == Policy.LAST;
+    }
+
+    /**
+     * First pass of a last-wins load: note the line of a row as the last copy of its key so far.
+     */
+    public void recordLastCopy(MappedRow row) {
+        HashCode fingerprint = RowHashes.key(row.getValues(), keySlots);
+        if (fingerprint != null) {
+            keys.putMax(fingerprint.asLong(), RowHashes.low(fingerprint), row.getLineNumber());
+        }
+    }
+
+    /**
+     * @return false if the row is a duplicate to skip
+     */
+    public boolean admit(MappedRow row) {
+        HashCode fingerprint = RowHashes.key(row.getValues(), keySlots);
+        if (fingerprint == null) {
+            return true;
+        }
+        boolean admitted;
+        if (policy == Policy.LAST) {
+            long last = keys.get(fingerprint.asLong(), RowHashes.low(fingerprint));
+            // a key the first pass found no room for is loaded every time
+            admitted = last < 0 || last == row.getLineNumber();
+        } else if (structure == Structure.EXACT) {
+            admitted = keys.add(fingerprint.asLong(), RowHashes.low(fingerprint));
+        } else {
+            admitted = filter.add(fingerprint.asLong(), RowHashes.low(fingerprint));
+        }
+        if (!admitted) {
+            skipped.increment();
+        }
+        return admitted;
+    }
+
+    /**
+     * @return rows skipped as duplicates so far
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getSkipped()).append(" duplicate rows skipped on (").append(Joiner.on(", ").join(keyColumns))
+           .append("), keeping the ").append(policy == Policy.FIRST ? "first" : "last").append(" copy; ");
+        if (keys != null) {
+            sb.append(String.format("%d keys in %.1f MiB off heap", keys.size(), keys.getAllocatedBytes() / (1024.0 * 1024.0)));
+            if (keys.getUntracked() > 0) {
+                sb.append(", ").append(keys.getUntracked())
+                   .append(" keys not tracked for lack of memory, so their duplicates were loaded");
+            }
+        } else {
+            sb.append(String.format("Bloom filter of %.1f MiB with %d hashes sized for %d keys, false positive rate now %.2g",
+               filter.getBits() / 8 / (1024.0 * 1024.0), filter.getHashes(), filter.getExpectedKeys(),
+               filter.getFalsePositiveRate()));
+        }
+        return sb.toString();
+    }
+}
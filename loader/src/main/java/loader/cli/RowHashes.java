@@ -0,0 +1,104 @@
+package loader.cli;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Fingerprints of the converted values of a {@link MappedRow}, shared by the stages that recognise rows from one
+ * line, or one load, to the next.
+ */
+final class RowHashes {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private RowHashes() {
+    }
+
+    /**
+     * @param purpose what the columns are for, for the error message
+     * @return the position of every column among the plan columns
+     * @throws CLILoaderRuntimeException if a column is not among them
+     */
+    static int[] slotsOf(List<String> planColumns, List<String> columns, String purpose) {
+        int[] slots = new int[columns.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = -1;
+            for (int j = 0; j < planColumns.size() && slots[i] < 0; j++) {
+                if (planColumns.get(j).equalsIgnoreCase(columns.get(i))) {
+                    slots[i] = j;
+                }
+            }
+            if (slots[i] < 0) {
+                throw new CLILoaderRuntimeException("Column " + columns.get(i) + " gets no value from the mapping, " +
+                   "so rows cannot be " + purpose + " on it");
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * @return the 128 bit fingerprint of the values in the slots, or null if one of them is null
+     */
+    static HashCode key(Object[] values, int[] slots) {
+        Hasher hasher = HASH.newHasher();
+        for (int slot : slots) {
+            if (values[slot] == null) {
+                return null;
+            }
+            put(hasher, values[slot]);
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * @return a 64 bit hash of the first {@code count} values, nulls included
+     */
+    static long content(Object[] values, int count) {
+        Hasher hasher = HASH.newHasher();
+        for (int i = 0; i < count; i++) {
+            if (values[i] == null) {
+                // a length no value has, so a null differs from an empty value
+                hasher.putInt(-1);
+            } else {
+                put(hasher, values[i]);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * @return the second half of a 128 bit fingerprint; {@link HashCode#asLong()} is the first
+     */
+    static long low(HashCode fingerprint) {
+        return ByteBuffer.wrap(fingerprint.asBytes()).getLong(8);
+    }
+
+    private static void put(Hasher hasher, Object value) {
+        if (value instanceof CharSequence) {
+            CharSequence chars = (CharSequence) value;
+            // the length keeps ("ab", "c") and ("a", "bc") apart
+            hasher.putInt(chars.length()).putUnencodedChars(chars);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            hasher.putLong(((Number) value).longValue());
+        } else if (value instanceof UUID) {
+            hasher.putLong(((UUID) value).getMostSignificantBits()).putLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof Date) {
+            hasher.putLong(((Date) value).getTime());
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer bytes = ((ByteBuffer) value).duplicate();
+            hasher.putInt(bytes.remaining());
+            while (bytes.hasRemaining()) {
+                hasher.putByte(bytes.get());
+            }
+        } else {
+            String text = value.toString();
+            hasher.putInt(text.length()).putUnencodedChars(text);
+        }
+    }
+}
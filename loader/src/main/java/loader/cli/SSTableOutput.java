@@ -0,0 +1,295 @@
+package loader.cli;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.cql3.CQL3Type;
+import org.apache.cassandra.cql3.QueryProcessor;
+import org.apache.cassandra.cql3.statements.CFStatement;
+import org.apache.cassandra.cql3.statements.CreateTableStatement;
+import org.apache.cassandra.cql3.statements.ParsedStatement;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.ListType;
+import org.apache.cassandra.db.marshal.MapType;
+import org.apache.cassandra.db.marshal.ReversedType;
+import org.apache.cassandra.db.marshal.SetType;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.exceptions.SyntaxException;
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.apache.cassandra.utils.FBUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static cp.config.ConfigurationKeys.LOADER_SSTABLE_MAX_SHAPES_KEY;
+
+/**
+ * Writes the rows of a load to SSTables in a local directory, for {@code sstableloader} to stream into the cluster,
+ * instead of inserting them through a session.
+ * <p/>
+ * The SSTables go to {@code <directory>/<keyspace>/<table>}, the layout {@code sstableloader} takes. Like the
+ * inserts of the {@link MappingPlan}, a row only writes the columns that have a value, since a null would be
+ * written as a tombstone. {@link CQLSSTableWriter} takes a single insert, so every column shape gets a writer, and
+ * SSTables, of its own; the writers of a load are capped, as each buffers its rows in memory. Values are serialized
+ * by the driver as they would be bound to the insert, so the writer takes exactly what a load through a session
+ * would write.
+ * <p/>
+ * The SSTables must be written with the partitioner of the cluster they are streamed into. Call
+ * {@link #enterClientMode()} before reading a table or writing SSTables. Rows are written from one thread.
+ */
+public class SSTableOutput implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(SSTableOutput.class);
+    // the table name of a CREATE TABLE statement, and the dot after it if it is a keyspace
+    private static final Pattern TABLE_NAME = Pattern.compile("^\\s*CREATE\\s+(?:TABLE|COLUMNFAMILY)\\s+" +
+       "(?:IF\\s+NOT\\s+EXISTS\\s+)?(\"(?:[^\"]|\"\")+\"|\\w+)(\\s*\\.)?", Pattern.CASE_INSENSITIVE);
+
+    private final File directory;
+    private final String createTable;
+    private final String keyspace;
+    private final String table;
+    private final MappingPlan plan;
+    private final List<String> columns;
+    private final List<DataType> types;
+    private final IPartitioner partitioner;
+    private final int bufferMegabytes;
+    private final int maxShapes;
+    private final Map<Object, CQLSSTableWriter> writers = new HashMap<>();
+    private long rowsWritten;
+    private boolean closed;
+
+    /**
+     * @param root            directory the keyspace directory of the SSTables goes in
+     * @param createTable     the CREATE TABLE statement of the target table
+     * @param target          the table the statement creates
+     * @param partitioner     the partitioner of the cluster the SSTables are streamed into
+     * @param bufferMegabytes data buffered by the writer of a shape before it writes an SSTable
+     * @param maxShapes       column shapes, and so writers, at most
+     */
+    public SSTableOutput(File root, String createTable, TableSchema target, MappingPlan plan, IPartitioner partitioner,
+                         int bufferMegabytes, int maxShapes) {
+        this.directory = new File(new File(root, target.getKeyspace()), target.getTable());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new CLILoaderRuntimeException("Unable to create the SSTable directory " + directory);
+        }
+        this.createTable = qualify(createTable, target.getKeyspace());
+        this.keyspace = target.getKeyspace();
+        this.table = target.getTable();
+        this.plan = plan;
+        this.columns = plan.getColumns();
+        this.types = plan.getTypes();
+        this.partitioner = partitioner;
+        this.bufferMegabytes = bufferMegabytes;
+        this.maxShapes = maxShapes;
+    }
+
+    /**
+     * Run Cassandra as a client of the cluster: without a cassandra.yaml and without a commit log.
+     */
+    public static void enterClientMode() {
+        Config.setClientMode(true);
+    }
+
+    /**
+     * @param name the class name of a partitioner, or its simple name for those of Cassandra
+     */
+    public static IPartitioner partitioner(String name) {
+        try {
+            return FBUtilities.newPartitioner(name);
+        } catch (ConfigurationException e) {
+            throw new CLILoaderRuntimeException("Unknown partitioner " + name, e);
+        }
+    }
+
+    /**
+     * Read the columns and the primary key of the table a CREATE TABLE statement makes, so a load can convert its
+     * rows without a cluster.
+     *
+     * @param keyspace keyspace of the table, if the statement does not name one
+     */
+    public static TableSchema readTable(String createTable, String keyspace) {
+        CFMetaData metadata;
+        try {
+            ParsedStatement statement = QueryProcessor.parseStatement(createTable);
+            if (!(statement instanceof CreateTableStatement.RawStatement)) {
+                throw new CLILoaderRuntimeException("Not a CREATE TABLE statement: " + createTable);
+            }
+            CFStatement table = (CFStatement) statement;
+            table.prepareKeyspace(keyspace);
+            metadata = CFMetaData.compile(createTable, table.keyspace());
+        } catch (SyntaxException | RuntimeException e) {
+            throw new CLILoaderRuntimeException("Invalid CREATE TABLE statement: " + createTable, e);
+        }
+        Map<String, DataType> types = new LinkedHashMap<>();
+        List<String> partitionKey = names(metadata.partitionKeyColumns());
+        List<String> clusteringKey = names(metadata.clusteringColumns());
+        for (ColumnDefinition column : metadata.allColumns()) {
+            types.put(column.name.toString(), dataTypeOf(column.type, column.name.toString()));
+        }
+        return new TableSchema(metadata.ksName, metadata.cfName, types, partitionKey, clusteringKey);
+    }
+
+    /**
+     * @return the type the driver has for a column type of Cassandra
+     */
+    private static DataType dataTypeOf(AbstractType<?> type, String column) {
+        if (type instanceof ReversedType) {
+            return dataTypeOf(((ReversedType<?>) type).baseType, column);
+        }
+        if (type instanceof ListType) {
+            return DataType.list(dataTypeOf(((ListType<?>) type).getElementsType(), column), !type.isMultiCell());
+        }
+        if (type instanceof SetType) {
+            return DataType.set(dataTypeOf(((SetType<?>) type).getElementsType(), column), !type.isMultiCell());
+        }
+        if (type instanceof MapType) {
+            MapType<?, ?> map = (MapType<?, ?>) type;
+            return DataType.map(dataTypeOf(map.getKeysType(), column), dataTypeOf(map.getValuesType(), column),
+               !type.isMultiCell());
+        }
+        CQL3Type cqlType = type.asCQL3Type();
+        if (cqlType == CQL3Type.Native.VARCHAR) {
+            // an alias of text, left out of the primitive types
+            return DataType.varchar();
+        }
+        if (cqlType instanceof CQL3Type.Native) {
+            for (DataType primitive : DataType.allPrimitiveTypes()) {
+                if (primitive.getName().name().equals(((CQL3Type.Native) cqlType).name())) {
+                    return primitive;
+                }
+            }
+        }
+        if (cqlType instanceof CQL3Type.Custom) {
+            return DataType.custom(type.getClass().getName());
+        }
+        throw new CLILoaderRuntimeException("Column " + column + " is of type " + cqlType +
+           ", which SSTables cannot be written for");
+    }
+
+    /**
+     * @return the statement with the table name prefixed by the keyspace, if it does not name one; the writer
+     * only takes a table in a keyspace
+     */
+    static String qualify(String createTable, String keyspace) {
+        Matcher name = TABLE_NAME.matcher(createTable);
+        if (!name.find() || name.group(2) != null) {
+            return createTable;
+        }
+        return createTable.substring(0, name.start(1)) + keyspace + "." + createTable.substring(name.start(1));
+    }
+
+    private static List<String> names(List<ColumnDefinition> columns) {
+        List<String> names = new ArrayList<>();
+        for (ColumnDefinition column : columns) {
+            names.add(column.name.toString());
+        }
+        return names;
+    }
+
+    /**
+     * Write a converted row, opening a writer for its shape if it is the first row of that shape.
+     */
+    public void write(MappedRow row) {
+        Object[] values = row.getValues();
+        Object shape = plan.shapeOf(row);
+        CQLSSTableWriter writer = writers.get(shape);
+        if (writer == null) {
+            if (writers.size() >= maxShapes) {
+                throw new CLILoaderRuntimeException("Input line " + row.getLineNumber() + " is of a column shape " +
+                   "past the first " + maxShapes + ", each written by a writer buffering " + bufferMegabytes +
+                   " MB; raise --" + LOADER_SSTABLE_MAX_SHAPES_KEY + ", or give the empty cells of the input a default");
+            }
+            writer = open(values);
+            writers.put(shape, writer);
+        }
+        List<ByteBuffer> bound = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                bound.add(types.get(i).serialize(values[i], ProtocolVersion.V3));
+            }
+        }
+        try {
+            writer.rawAddRow(bound);
+        } catch (InvalidRequestException | IOException e) {
+            throw new CLILoaderRuntimeException("Unable to write input line " + row.getLineNumber() + " to an SSTable", e);
+        }
+        rowsWritten++;
+    }
+
+    private CQLSSTableWriter open(Object[] values) {
+        Insert insert = QueryBuilder.insertInto(keyspace, table);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                insert.value(columns.get(i), QueryBuilder.bindMarker());
+            }
+        }
+        try {
+            return CQLSSTableWriter.builder()
+               .inDirectory(directory)
+               .forTable(createTable)
+               .using(insert.toString())
+               .withPartitioner(partitioner)
+               .withBufferSizeInMB(bufferMegabytes)
+               .build();
+        } catch (RuntimeException e) {
+            // the builder reports a statement it cannot take as an IllegalArgumentException
+            throw new CLILoaderRuntimeException("Unable to open an SSTable writer for " + insert, e);
+        }
+    }
+
+    /**
+     * Write out what the writers still buffer, and wait for their SSTables to be complete.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        for (CQLSSTableWriter writer : writers.values()) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        log.debug("Closed {} SSTable writers of {}.{}", writers.size(), keyspace, table);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public String summary() {
+        return String.format("%d rows written to SSTables in %s by the writers of %d column shapes", rowsWritten,
+           directory, writers.size());
+    }
+}
@@ -0,0 +1,114 @@
+package loader.cli;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Table schemas kept on disk between loads, one file per table, each stamped with the schema version of the
+ * cluster it was read from.
+ * <p/>
+ * Cassandra gives the schema a new version on every change to any keyspace, so a schema kept under the version
+ * the cluster reports now is still the schema of the table, and a load can start without reading it again. A
+ * schema kept under any other version is read again and replaced. The cache never fails a load: a file that cannot
+ * be read or written is logged and the schema read from the cluster.
+ */
+public class SchemaCache {
+    private static final Logger log = LoggerFactory.getLogger(SchemaCache.class);
+    static final int MAGIC = 0x53434831;
+    static final String SUFFIX = ".schema";
+
+    private final Path directory;
+
+    public SchemaCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param cluster name of the cluster, so that loads into several clusters each keep their own schemas
+     * @param version schema version the cluster reports now
+     * @return the schema kept under that version, or null if there is none
+     */
+    public TableSchema get(String cluster, String version, String keyspace, String table) {
+        Path file = fileOf(cluster, keyspace, table);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("{} is not a cached schema; reading the schema of {}.{} from the cluster", file, keyspace, table);
+                return null;
+            }
+            String kept = in.readUTF();
+            if (!kept.equals(version)) {
+                log.debug("Cached schema of {}.{} is of schema version {}, the cluster is at {}", keyspace, table,
+                   kept, version);
+                return null;
+            }
+            TableSchema schema = TableSchema.read(in);
+            if (!schema.getKeyspace().equals(keyspace) || !schema.getTable().equals(table)) {
+                return null;
+            }
+            return schema;
+        } catch (EOFException e) {
+            log.warn("Cached schema {} is incomplete; reading the schema of {}.{} from the cluster", file, keyspace, table);
+            return null;
+        } catch (IOException e) {
+            log.warn("Unable to read cached schema {}; reading the schema of {}.{} from the cluster", file, keyspace,
+               table, e);
+            return null;
+        }
+    }
+
+    /**
+     * Keep the schema under the version it was read at, in place of what was kept for the table before.
+     *
+     * @return false if the schema could not be kept
+     */
+    public boolean put(String cluster, String version, TableSchema schema) {
+        if (!schema.isWritable()) {
+            log.debug("Schema of {}.{} has types that only exist with their keyspace; not caching it",
+               schema.getKeyspace(), schema.getTable());
+            return false;
+        }
+        Path file = fileOf(cluster, schema.getKeyspace(), schema.getTable());
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(version);
+                schema.write(out);
+            }
+            // a load starting at the same time reads either the old file or the new one, never part of one
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to cache the schema of {}.{} in {}", schema.getKeyspace(), schema.getTable(), directory, e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // the warning above already covers it
+                }
+            }
+            return false;
+        }
+    }
+
+    Path fileOf(String cluster, String keyspace, String table) {
+        String name = (cluster == null ? "" : cluster + ".") + keyspace + "." + table;
+        // cluster names are free text
+        return directory.resolve(name.replaceAll("[^A-Za-z0-9_.-]", "_") + SUFFIX);
+    }
+}
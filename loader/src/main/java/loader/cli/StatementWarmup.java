@@ -0,0 +1,154 @@
+package loader.cli;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import cp.util.DurationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepares the inserts of a load before it starts, for the column shapes found in a sample of the input.
+ * <p/>
+ * The {@link MappingPlan} prepares an insert for every set of columns that have a value on a line, the first time
+ * that set comes up. On a sparse file that is dozens of prepares, each holding up the worker that came across its
+ * shape. Here the shapes of the sample are prepared all at once, most frequent first, so the load starts with
+ * them in place. Shapes the sample did not have are still prepared as they come up.
+ */
+public class StatementWarmup {
+    private static final Logger log = LoggerFactory.getLogger(StatementWarmup.class);
+    // shapes listed in the summary
+    private static final int TOP_SHAPES = 5;
+
+    private final MappingPlan plan;
+    private final List<Shape> shapes;
+    private final long sampled;
+    private int prepared;
+    private int failed;
+    private long elapsedMillis;
+
+    private StatementWarmup(MappingPlan plan, List<Shape> shapes, long sampled) {
+        this.plan = plan;
+        this.shapes = shapes;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Find the column shapes of the sample lines, most frequent first.
+     *
+     * @param lines sample lines of the input, without the header
+     */
+    public static StatementWarmup sample(MappingPlan plan, Iterable<String> lines) {
+        Map<Object, Shape> shapes = new HashMap<>();
+        long lineNumber = 0;
+        long sampled = 0;
+        for (String line : lines) {
+            MappedRow row;
+            try {
+                row = plan.map(line, ++lineNumber);
+            } catch (CLILoaderRuntimeException e) {
+                // the load reports it
+                continue;
+            }
+            sampled++;
+            Shape shape = shapes.computeIfAbsent(plan.shapeOf(row), key -> new Shape(row));
+            shape.lines++;
+        }
+        List<Shape> ordered = new ArrayList<>(shapes.values());
+        ordered.sort(Comparator.comparingLong((Shape shape) -> shape.lines).reversed());
+        return new StatementWarmup(plan, ordered, sampled);
+    }
+
+    /**
+     * Prepare the inserts of the most frequent shapes in parallel, and wait for them.
+     *
+     * @param maxShapes shapes prepared at most; more would not stay in the plan's cache
+     * @return inserts prepared
+     */
+    public int prepare(int maxShapes) {
+        Stopwatch timer = DurationUtil.getStopwatchStarted();
+        List<ListenableFuture<PreparedStatement>> futures = new ArrayList<>();
+        for (Shape shape : shapes.subList(0, Math.min(maxShapes, shapes.size()))) {
+            futures.add(plan.prepareAsync(shape.row));
+        }
+        for (ListenableFuture<PreparedStatement> future : futures) {
+            try {
+                Uninterruptibles.getUninterruptibly(future);
+                prepared++;
+            } catch (ExecutionException e) {
+                // the first line of the shape fails to bind the same way, and is reported then
+                failed++;
+                log.warn("Unable to prepare an insert ahead of the load", e.getCause());
+            }
+        }
+        elapsedMillis = timer.elapsed(TimeUnit.MILLISECONDS);
+        return prepared;
+    }
+
+    /**
+     * @return inserts prepared ahead of the load
+     */
+    public int getPrepared() {
+        return prepared;
+    }
+
+    /**
+     * @return shapes found in the sample
+     */
+    public int getShapeCount() {
+        return shapes.size();
+    }
+
+    /**
+     * @return the share of the sample lines of every shape, most frequent first, each given by its columns
+     */
+    public String distribution() {
+        StringBuilder sb = new StringBuilder();
+        for (Shape shape : shapes.subList(0, Math.min(TOP_SHAPES, shapes.size()))) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(String.format("%.1f%%", 100.0 * shape.lines / sampled))
+               .append(" (").append(shape.columns(plan.getColumns())).append(')');
+        }
+        if (shapes.size() > TOP_SHAPES) {
+            long rest = sampled;
+            for (Shape shape : shapes.subList(0, TOP_SHAPES)) {
+                rest -= shape.lines;
+            }
+            sb.append(String.format(", %.1f%% in %d other shapes", 100.0 * rest / sampled, shapes.size() - TOP_SHAPES));
+        }
+        return sb.toString();
+    }
+
+    public String summary() {
+        return String.format("%d shapes in %d sample lines, %d inserts prepared in %d ms%s", shapes.size(), sampled,
+           prepared, elapsedMillis, failed == 0 ? "" : ", " + failed + " failed");
+    }
+
+    private static final class Shape {
+        private final MappedRow row;
+        private long lines;
+
+        private Shape(MappedRow row) {
+            this.row = row;
+        }
+
+        private String columns(List<String> names) {
+            Object[] values = row.getValues();
+            List<String> present = new ArrayList<>();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    present.add(names.get(i));
+                }
+            }
+            return String.join(", ", present);
+        }
+    }
+}
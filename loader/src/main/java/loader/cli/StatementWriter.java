@@ -0,0 +1,66 @@
+package loader.cli;
+
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import loader.util.InFlightWindow;
+
+/**
+ * Writer stage of a load: executes statements asynchronously through a sliding {@link InFlightWindow},
+ * so the cluster sees a steady, or adaptively limited, number of concurrent writes. Only ever called from a single thread.
+ */
+public class StatementWriter {
+    private final Session session;
+    private final InFlightWindow window;
+    private final LoadProgress progress;
+
+    public StatementWriter(Session session, InFlightWindow window, LoadProgress progress) {
+        this.session = session;
+        this.window = window;
+        this.progress = progress;
+    }
+
+    public void write(Statement statement) {
+        write(statement, 1);
+    }
+
+    /**
+     * @param rows number of rows the statement writes, more than one for a batch
+     */
+    public void write(Statement statement, int rows) {
+        write(statement, rows, null);
+    }
+
+    /**
+     * @param rows    number of rows the statement writes, more than one for a batch
+     * @param context handed to the window's failure handler if the write fails for good
+     */
+    public void write(Statement statement, int rows, Object context) {
+        window.execute(session, statement, rows, context);
+        progress.update(window.getCompleted());
+    }
+
+    /**
+     * Block until every statement written so far has completed.
+     */
+    public void flush() {
+        window.drain();
+    }
+
+    /**
+     * Cancel whatever is still in flight. Safe to call from a shutdown hook.
+     */
+    public void cancelPending() {
+        window.cancelPending();
+    }
+
+    public long getInsertsCompleted() {
+        return window.getCompleted();
+    }
+
+    /**
+     * @return writes executed again after failing on congestion
+     */
+    public long getWritesRetried() {
+        return window.getRetried();
+    }
+}
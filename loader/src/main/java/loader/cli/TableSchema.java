@@ -0,0 +1,237 @@
+package loader.cli;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.TableMetadata;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a load needs to know of its target table: the columns with their types, and the primary key.
+ * <p/>
+ * It is read from the schema metadata of the driver, or from the system tables, and can be written to and read
+ * back from a {@link SchemaCache}.
+ */
+public final class TableSchema {
+    private final String keyspace;
+    private final String table;
+    private final Map<String, DataType> types;
+    private final List<String> partitionKey;
+    private final List<String> clusteringKey;
+
+    /**
+     * @param types         the columns of the table with their types, in table order
+     * @param partitionKey  the partition key columns in key order
+     * @param clusteringKey the clustering columns in key order
+     */
+    public TableSchema(String keyspace, String table, Map<String, DataType> types, List<String> partitionKey,
+                       List<String> clusteringKey) {
+        this.keyspace = keyspace;
+        this.table = table;
+        this.types = ImmutableMap.copyOf(types);
+        this.partitionKey = ImmutableList.copyOf(partitionKey);
+        this.clusteringKey = ImmutableList.copyOf(clusteringKey);
+    }
+
+    /**
+     * @return the table as the driver knows it, or null if the driver does not know the table
+     */
+    public static TableSchema fromMetadata(Metadata metadata, String keyspace, String table) {
+        KeyspaceMetadata keyspaceMetadata = metadata == null ? null : metadata.getKeyspace(keyspace);
+        TableMetadata tableMetadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(table);
+        if (tableMetadata == null) {
+            return null;
+        }
+        Map<String, DataType> types = new LinkedHashMap<>();
+        for (ColumnMetadata column : tableMetadata.getColumns()) {
+            types.put(column.getName(), column.getType());
+        }
+        return new TableSchema(keyspace, table, types, names(tableMetadata.getPartitionKey()),
+           names(tableMetadata.getClusteringColumns()));
+    }
+
+    private static List<String> names(List<ColumnMetadata> columns) {
+        List<String> names = new ArrayList<>();
+        for (ColumnMetadata column : columns) {
+            names.add(column.getName());
+        }
+        return names;
+    }
+
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the columns of the table, in table order
+     */
+    public List<String> getColumns() {
+        return ImmutableList.copyOf(types.keySet());
+    }
+
+    /**
+     * @return the type of every column of the table
+     */
+    public Map<String, DataType> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return the partition key columns, then the clustering columns, each in key order
+     */
+    public List<String> getPrimaryKey() {
+        return ImmutableList.<String>builder().addAll(partitionKey).addAll(clusteringKey).build();
+    }
+
+    public List<String> getPartitionKey() {
+        return partitionKey;
+    }
+
+    public List<String> getClusteringKey() {
+        return clusteringKey;
+    }
+
+    /**
+     * @return true if every column type can be written by {@link #write}; user types and tuples only exist with
+     * the metadata of their keyspace
+     */
+    public boolean isWritable() {
+        for (DataType type : types.values()) {
+            if (!isWritable(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWritable(DataType type) {
+        if (type.getName() == DataType.Name.UDT || type.getName() == DataType.Name.TUPLE) {
+            return false;
+        }
+        for (DataType argument : type.getTypeArguments()) {
+            if (!isWritable(argument)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(keyspace);
+        out.writeUTF(table);
+        out.writeInt(types.size());
+        for (Map.Entry<String, DataType> column : types.entrySet()) {
+            out.writeUTF(column.getKey());
+            writeType(out, column.getValue());
+        }
+        writeNames(out, partitionKey);
+        writeNames(out, clusteringKey);
+    }
+
+    static TableSchema read(DataInput in) throws IOException {
+        String keyspace = in.readUTF();
+        String table = in.readUTF();
+        Map<String, DataType> types = new LinkedHashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String column = in.readUTF();
+            types.put(column, readType(in));
+        }
+        return new TableSchema(keyspace, table, types, readNames(in), readNames(in));
+    }
+
+    private static void writeType(DataOutput out, DataType type) throws IOException {
+        if (!isWritable(type)) {
+            throw new IOException("Type " + type + " cannot be written without the metadata of its keyspace");
+        }
+        out.writeUTF(type.getName().name());
+        out.writeBoolean(type.isFrozen());
+        if (type.getName() == DataType.Name.CUSTOM) {
+            out.writeUTF(type.getCustomTypeClassName());
+        }
+        for (DataType argument : type.getTypeArguments()) {
+            writeType(out, argument);
+        }
+    }
+
+    private static DataType readType(DataInput in) throws IOException {
+        DataType.Name name;
+        try {
+            name = DataType.Name.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown column type", e);
+        }
+        boolean frozen = in.readBoolean();
+        switch (name) {
+            case CUSTOM:
+                return DataType.custom(in.readUTF());
+            case LIST:
+                return DataType.list(readType(in), frozen);
+            case SET:
+                return DataType.set(readType(in), frozen);
+            case MAP:
+                return DataType.map(readType(in), readType(in), frozen);
+            case VARCHAR:
+                // an alias of text, left out of the primitive types
+                return DataType.varchar();
+            default:
+                for (DataType primitive : DataType.allPrimitiveTypes()) {
+                    if (primitive.getName() == name) {
+                        return primitive;
+                    }
+                }
+                throw new IOException("Unknown column type " + name);
+        }
+    }
+
+    private static void writeNames(DataOutput out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    private static List<String> readNames(DataInput in) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TableSchema)) {
+            return false;
+        }
+        TableSchema other = (TableSchema) o;
+        return keyspace.equals(other.keyspace) && table.equals(other.table) && types.equals(other.types) &&
+           partitionKey.equals(other.partitionKey) && clusteringKey.equals(other.clusteringKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return types.hashCode() * 31 + partitionKey.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return keyspace + "." + table + types + " primary key (" + partitionKey + ", " + clusteringKey + ")";
+    }
+}
@@ -0,0 +1,183 @@
+package loader.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read only view of an input file that can be cut into newline aligned {@link FileChunk}s and decoded by
+ * several threads at once.
+ * <p/>
+ * Chunks are memory mapped and decoded straight from the mapping, so there is no shared reader and no lock
+ * between threads. Lines end at {@code \n}; a {@code \r} right before it is dropped, which matches what
+ * {@link java.io.BufferedReader#readLine()} returns for unix and windows files. Since {@code \n} never appears
+ * inside a multi-byte UTF-8 sequence, cutting on it is safe for UTF-8 input.
+ */
+public class ChunkedFile implements Closeable {
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private final FileChannel channel;
+    private final long size;
+    private final Charset charset;
+
+    private ChunkedFile(FileChannel channel, Charset charset) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.charset = charset;
+    }
+
+    public static ChunkedFile open(Path path) throws IOException {
+        return open(path, StandardCharsets.UTF_8);
+    }
+
+    public static ChunkedFile open(Path path, Charset charset) throws IOException {
+        return new ChunkedFile(FileChannel.open(path, StandardOpenOption.READ), charset);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @param position any offset in the file
+     * @return offset of the first line starting after {@code position}, or the file size if there is none
+     * @throws IOException if the file could not be read
+     */
+    public long nextLineStart(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Decode the single line starting at {@code position}, such as the header line.
+     *
+     * @return the line without its terminator, or null if {@code position} is at the end of the file
+     * @throws IOException if the file could not be read
+     */
+    public String readLine(long position) throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        List<String> lines = readLines(new FileChunk(0, position, nextLineStart(position)));
+        return lines.get(0);
+    }
+
+    /**
+     * Cut {@code [from, size)} into chunks of roughly {@code chunkBytes}, each moved forward to the next line
+     * boundary. A line longer than {@code chunkBytes} ends up in a chunk of its own.
+     *
+     * @param from       offset of the first line to include, usually just past the header
+     * @param chunkBytes target chunk size
+     * @return the chunks in file order; empty if there is nothing after {@code from}
+     * @throws IOException if the file could not be read
+     */
+    public List<FileChunk> split(long from, int chunkBytes) throws IOException {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        List<FileChunk> chunks = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, (size - from) / chunkBytes + 1));
+        long start = from;
+        while (start < size) {
+            long end = start + chunkBytes >= size ? size : nextLineStart(start + chunkBytes - 1);
+            chunks.add(new FileChunk(chunks.size(), start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Decode every line of a chunk. Safe to call from several threads at once.
+     *
+     * @return the lines without terminators, in file order
+     * @throws IOException if the chunk could not be mapped
+     */
+    public List<String> readLines(FileChunk chunk) throws IOException {
+        byte[] bytes = bytesOf(chunk);
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                lines.add(new String(bytes, lineStart, lineEnd - lineStart, charset));
+                lineStart = i + 1;
+            }
+        }
+        // the last line of the file may have no terminator
+        if (lineStart < bytes.length) {
+            int lineEnd = bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+            lines.add(new String(bytes, lineStart, lineEnd - lineStart, charset));
+        }
+        return lines;
+    }
+
+    /**
+     * Count the lines of a chunk without decoding them. Safe to call from several threads at once.
+     *
+     * @return the number of lines {@link #readLines} would return for the chunk
+     * @throws IOException if the chunk could not be mapped
+     */
+    public long countLines(FileChunk chunk) throws IOException {
+        if (chunk.length() == 0) {
+            return 0;
+        }
+        if (chunk.length() > Integer.MAX_VALUE) {
+            throw new IOException("Chunk " + chunk + " is too large to map");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk.getStart(), chunk.length());
+        int length = mapped.limit();
+        long newlines = 0;
+        int i = 0;
+        // eight bytes at a time: flag the bytes equal to \n and count the flags
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            long word = mapped.getLong(i) ^ NEWLINES;
+            long flags = ~(((word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | word | LOW_SEVEN_BITS);
+            newlines += Long.bitCount(flags);
+        }
+        for (; i < length; i++) {
+            if (mapped.get(i) == '\n') {
+                newlines++;
+            }
+        }
+        // the last line of the file may have no terminator
+        return mapped.get(length - 1) == '\n' ? newlines : newlines + 1;
+    }
+
+    private byte[] bytesOf(FileChunk chunk) throws IOException {
+        if (chunk.length() > Integer.MAX_VALUE) {
+            throw new IOException("Chunk " + chunk + " is too large to map");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk.getStart(), chunk.length());
+        // one bulk copy out of the mapping is much cheaper than byte by byte access while scanning
+        byte[] bytes = new byte[(int) chunk.length()];
+        mapped.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,94 @@
+package loader.io;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of an input file, told apart by the magic bytes at its start rather than by its name.
+ */
+public enum Compression {
+    NONE(new byte[0]) {
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+    GZIP(new byte[]{(byte) 0x1f, (byte) 0x8b}) {
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+    ZSTD(new byte[]{(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd}) {
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new ZstdInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] magic;
+
+    Compression(byte[] magic) {
+        this.magic = magic;
+    }
+
+    /**
+     * @return a stream of the decompressed content of {@code in}
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    public static Compression detect(Path file) throws IOException {
+        byte[] start = new byte[4];
+        int read = 0;
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            int n;
+            while (read < start.length && (n = in.read(start, read, start.length - read)) > 0) {
+                read += n;
+            }
+        }
+        for (Compression compression : values()) {
+            if (compression != NONE && startsWith(start, read, compression.magic)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    private static boolean startsWith(byte[] start, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (start[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open an input file for reading lines, compressed or not. A compressed file is decompressed on a thread of its
+     * own, see {@link DecompressingInputStream}. Either way the input is decoded as UTF-8, like the chunks of a
+     * chunked load.
+     */
+    public static Reader openReader(String filename) throws IOException {
+        Path file = Paths.get(filename);
+        Compression compression = detect(file);
+        if (compression == NONE) {
+            return new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8);
+        }
+        return new InputStreamReader(DecompressingInputStream.open(file, compression), StandardCharsets.UTF_8);
+    }
+}
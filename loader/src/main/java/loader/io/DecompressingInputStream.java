@@ -0,0 +1,234 @@
+package loader.io;
+
+import cp.model.Constants;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decompressed content of a compressed file, decompressed ahead of the reader on a thread of its own.
+ * <p/>
+ * The decompressing thread fills blocks from a fixed pool and hands them over in order, so decompression
+ * overlaps with parsing and stays at most the pool size ahead of it. Blocks go back to the pool once they are
+ * read, so nothing is allocated per block. A failure to read or decompress the file is rethrown by the next read
+ * after the blocks decompressed before it.
+ * <p/>
+ * {@link #getCompressedBytesRead()} tells how far into the file decompression has got, for progress against the
+ * size of the file. Reads are expected from a single thread.
+ */
+public class DecompressingInputStream extends InputStream {
+    private static final Block END = new Block(0);
+
+    private final Path file;
+    private final long compressedSize;
+    private final CountingStream counted;
+    private final InputStream decompressed;
+    private final BlockingQueue<Block> free;
+    private final BlockingQueue<Block> filled;
+    private final Thread thread;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+
+    // only used by the reading thread
+    private Block current;
+    private int position;
+
+    public static DecompressingInputStream open(Path file, Compression compression) throws IOException {
+        return new DecompressingInputStream(file, compression, Constants.LOADER_DECOMPRESS_BLOCK_BYTES,
+           Constants.LOADER_DECOMPRESS_BLOCKS);
+    }
+
+    /**
+     * @param blockSize bytes handed over at once
+     * @param blocks    blocks decompressed ahead of the reader at most
+     */
+    public DecompressingInputStream(Path file, Compression compression, int blockSize, int blocks) throws IOException {
+        if (blockSize < 1 || blocks < 1) {
+            throw new IllegalArgumentException("Block size and blocks must both be positive");
+        }
+        this.file = file;
+        this.compressedSize = Files.size(file);
+        this.counted = new CountingStream(new FileInputStream(file.toFile()));
+        try {
+            this.decompressed = compression.decompress(counted);
+        } catch (IOException | RuntimeException e) {
+            counted.close();
+            throw e;
+        }
+        this.free = new ArrayBlockingQueue<>(blocks);
+        // one more, for the end of the file
+        this.filled = new ArrayBlockingQueue<>(blocks + 1);
+        for (int i = 0; i < blocks; i++) {
+            free.add(new Block(blockSize));
+        }
+        this.thread = new Thread(this::decompress, "loader-decompress-" + file.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return bytes of the compressed file consumed by decompression so far
+     */
+    public long getCompressedBytesRead() {
+        return counted.count;
+    }
+
+    /**
+     * @return size of the compressed file
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    private void decompress() {
+        try {
+            while (!closed) {
+                Block block = free.take();
+                block.length = 0;
+                boolean end = false;
+                // a codec may return fewer bytes than asked for, even none, before the end; only -1 is the end
+                while (block.length < block.data.length) {
+                    int n = decompressed.read(block.data, block.length, block.data.length - block.length);
+                    if (n < 0) {
+                        end = true;
+                        break;
+                    }
+                    block.length += n;
+                }
+                if (block.length > 0) {
+                    filled.put(block);
+                }
+                if (end) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            try {
+                decompressed.close();
+            } catch (IOException e) {
+                // nothing left to read from it
+            }
+            filled.offer(END);
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (current == END) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + file + " to decompress");
+        }
+        position = 0;
+        if (current == END) {
+            if (failure != null) {
+                throw new IOException("Unable to decompress " + file, failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if ((current == null || position == current.length) && !nextBlock()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if ((current == null || position == current.length) && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            thread.interrupt();
+        }
+    }
+
+    private static final class Block {
+        final byte[] data;
+        int length;
+
+        Block(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    private static final class CountingStream extends FilterInputStream {
+        // only written by the decompressing thread
+        private volatile long count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
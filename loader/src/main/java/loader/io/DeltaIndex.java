@@ -0,0 +1,246 @@
+package loader.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Index of the snapshot of a feed loaded last time: for every primary key, a hash of the row content and the
+ * serialized key values. A delta load looks every row up here to write only rows that are new or changed, and
+ * afterwards finds the keys it did not see to delete them.
+ * <p/>
+ * The file starts with a header, then the entries sorted by key fingerprint, then the key values:
+ * <pre>
+ * int magic, UTF key layout, UTF content layout, long entry count, long start of the key values
+ * per entry: long key fingerprint high, long key fingerprint low, long content hash, long key values offset
+ * per entry: int length, then per key column: int length, serialized value
+ * </pre>
+ * The entries are memory mapped and searched in place, so opening an index of any size costs next to nothing and
+ * the pages the operating system keeps are shared with nothing else on the heap. Keys are looked up by the writer
+ * of the load; the keys seen are marked in a bit set.
+ */
+public class DeltaIndex implements Closeable {
+    static final int MAGIC = 0x444c5431;
+    static final int ENTRY_BYTES = 32;
+    static final int COUNTS_BYTES = 16;
+    // a mapped buffer is indexed by int, so the entries are mapped a gigabyte at a time
+    private static final int ENTRIES_PER_MAPPING = 1 << 25;
+
+    private final FileChannel channel;
+    private final String keyLayout;
+    private final String contentLayout;
+    private final long entries;
+    private final long keysStart;
+    private final MappedByteBuffer[] mappings;
+    private final AtomicLongArray seen;
+
+    private DeltaIndex(FileChannel channel, String keyLayout, String contentLayout, long entriesStart, long entries,
+                       long keysStart) throws IOException {
+        this.channel = channel;
+        this.keyLayout = keyLayout;
+        this.contentLayout = contentLayout;
+        this.entries = entries;
+        this.keysStart = keysStart;
+        this.mappings = new MappedByteBuffer[(int) ((entries + ENTRIES_PER_MAPPING - 1) / ENTRIES_PER_MAPPING)];
+        for (int i = 0; i < mappings.length; i++) {
+            long first = (long) i * ENTRIES_PER_MAPPING;
+            mappings[i] = channel.map(FileChannel.MapMode.READ_ONLY, entriesStart + first * ENTRY_BYTES,
+               Math.min(ENTRIES_PER_MAPPING, entries - first) * ENTRY_BYTES);
+        }
+        this.seen = new AtomicLongArray((int) Math.max(1, (entries + Long.SIZE - 1) / Long.SIZE));
+    }
+
+    /**
+     * @return the index, or null if there is no file yet
+     * @throws IOException if the file is not a delta index or could not be read
+     */
+    public static DeltaIndex open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String keyLayout;
+        String contentLayout;
+        long entries;
+        long keysStart;
+        int headerBytes;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a delta index");
+            }
+            keyLayout = in.readUTF();
+            contentLayout = in.readUTF();
+            entries = in.readLong();
+            keysStart = in.readLong();
+            // readUTF reads a two byte length before the bytes
+            headerBytes = Integer.BYTES + 2 + utfLength(keyLayout) + 2 + utfLength(contentLayout) + COUNTS_BYTES;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (keysStart != headerBytes + entries * ENTRY_BYTES || keysStart > channel.size()) {
+                throw new IOException("Delta index " + file + " is incomplete");
+            }
+            return new DeltaIndex(channel, keyLayout, contentLayout, headerBytes, entries, keysStart);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int utfLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            length += c >= 0x0001 && c <= 0x007f ? 1 : c <= 0x07ff ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * @return true if the index was built with the same key and content columns, so its entries compare with
+     * the rows of this load
+     */
+    public boolean matches(String keyLayout, String contentLayout) {
+        return this.keyLayout.equals(keyLayout) && this.contentLayout.equals(contentLayout);
+    }
+
+    public String getKeyLayout() {
+        return keyLayout;
+    }
+
+    public String getContentLayout() {
+        return contentLayout;
+    }
+
+    public long size() {
+        return entries;
+    }
+
+    /**
+     * Look a key up, and mark it as seen if it is there.
+     *
+     * @return the position of the key's entry, or -1 if the key is not in the index
+     */
+    public long find(long keyHigh, long keyLow) {
+        long from = 0;
+        long to = entries - 1;
+        while (from <= to) {
+            long middle = (from + to) >>> 1;
+            int comparison = compare(high(middle), low(middle), keyHigh, keyLow);
+            if (comparison < 0) {
+                from = middle + 1;
+            } else if (comparison > 0) {
+                to = middle - 1;
+            } else {
+                markSeen(middle);
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param entry position from {@link #find}
+     */
+    public long getContentHash(long entry) {
+        return mapping(entry).getLong(offset(entry) + 16);
+    }
+
+    /**
+     * @return keys not looked up since the index was opened
+     */
+    public long unseen() {
+        long set = 0;
+        for (int i = 0; i < seen.length(); i++) {
+            set += Long.bitCount(seen.get(i));
+        }
+        return entries - set;
+    }
+
+    /**
+     * Hand the serialized key values of every key not looked up since the index was opened to {@code consumer},
+     * in index order.
+     */
+    public void forEachUnseen(Consumer<ByteBuffer[]> consumer) throws IOException {
+        for (long entry = 0; entry < entries; entry++) {
+            if ((seen.get((int) (entry >>> 6)) & (1L << entry)) == 0) {
+                consumer.accept(keyValues(mapping(entry).getLong(offset(entry) + 24)));
+            }
+        }
+    }
+
+    private ByteBuffer[] keyValues(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, keysStart + offset);
+        ByteBuffer key = ByteBuffer.allocate(length.getInt(0));
+        readFully(key, keysStart + offset + Integer.BYTES);
+        key.flip();
+        int columns = 0;
+        for (int position = 0; position < key.limit(); position += Integer.BYTES + key.getInt(position)) {
+            columns++;
+        }
+        ByteBuffer[] values = new ByteBuffer[columns];
+        for (int i = 0; i < columns; i++) {
+            int valueLength = key.getInt();
+            ByteBuffer value = key.slice();
+            value.limit(valueLength);
+            values[i] = value;
+            key.position(key.position() + valueLength);
+        }
+        return values;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Delta index ends early");
+            }
+        }
+    }
+
+    private void markSeen(long entry) {
+        int word = (int) (entry >>> 6);
+        long mask = 1L << entry;
+        long current = seen.get(word);
+        while ((current & mask) == 0 && !seen.compareAndSet(word, current, current | mask)) {
+            current = seen.get(word);
+        }
+    }
+
+    private long high(long entry) {
+        return mapping(entry).getLong(offset(entry));
+    }
+
+    private long low(long entry) {
+        return mapping(entry).getLong(offset(entry) + 8);
+    }
+
+    private MappedByteBuffer mapping(long entry) {
+        return mappings[(int) (entry / ENTRIES_PER_MAPPING)];
+    }
+
+    private static int offset(long entry) {
+        return (int) (entry % ENTRIES_PER_MAPPING) * ENTRY_BYTES;
+    }
+
+    /**
+     * Order of the entries: by key fingerprint, as unsigned numbers.
+     */
+    static int compare(long high, long low, long otherHigh, long otherLow) {
+        int comparison = Long.compareUnsigned(high, otherHigh);
+        return comparison != 0 ? comparison : Long.compareUnsigned(low, otherLow);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
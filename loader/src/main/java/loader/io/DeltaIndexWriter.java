@@ -0,0 +1,277 @@
+package loader.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Builds the {@link DeltaIndex} of the snapshot being loaded, for the next load of the same feed to compare with.
+ * <p/>
+ * Entries are added by the writer of the load, which takes rows in file order, so of a key added more than once
+ * the entry added last is that of the last copy in the file. They are spread over temporary bucket files by the top
+ * bits of their key fingerprint, each behind a lock of its own. On
+ * {@link #commit()} every bucket, a small share of the whole, is sorted in memory in turn and appended to the
+ * index, which then replaces the previous index in one move. Until then the previous index stays as it was.
+ */
+public class DeltaIndexWriter {
+    private static final long ENTRIES_PER_BUCKET = 1 << 20;
+    private static final int MAX_BUCKET_BITS = 10;
+
+    private final Path target;
+    private final String keyLayout;
+    private final String contentLayout;
+    private final Path spillDirectory;
+    private final int bucketBits;
+    private final Bucket[] buckets;
+    private boolean closed;
+
+    /**
+     * @param target        the index file to write, replacing any there
+     * @param keyLayout     key columns and types, see {@link DeltaIndex#matches}
+     * @param contentLayout content columns and types, see {@link DeltaIndex#matches}
+     * @param expectedRows  rows expected, to size the buckets
+     */
+    public DeltaIndexWriter(Path target, String keyLayout, String contentLayout, long expectedRows) throws IOException {
+        this.target = target.toAbsolutePath();
+        this.keyLayout = keyLayout;
+        this.contentLayout = contentLayout;
+        int bits = 0;
+        while (bits < MAX_BUCKET_BITS && (expectedRows >> bits) > ENTRIES_PER_BUCKET) {
+            bits++;
+        }
+        this.bucketBits = bits;
+        this.spillDirectory = Files.createTempDirectory(this.target.getParent(), this.target.getFileName() + ".");
+        this.buckets = new Bucket[1 << bits];
+        try {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Bucket(spillDirectory.resolve("bucket-" + i).toFile());
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Record the key and content hash of a row. Safe to call from several threads at once.
+     *
+     * @param keyValues serialized value of every key column
+     */
+    public void add(long keyHigh, long keyLow, long contentHash, ByteBuffer[] keyValues) throws IOException {
+        Bucket bucket = buckets[bucketBits == 0 ? 0 : (int) (keyHigh >>> (Long.SIZE - bucketBits))];
+        synchronized (bucket) {
+            DataOutputStream out = bucket.out;
+            out.writeLong(keyHigh);
+            out.writeLong(keyLow);
+            out.writeLong(contentHash);
+            int keyBytes = 0;
+            for (ByteBuffer value : keyValues) {
+                keyBytes += Integer.BYTES + value.remaining();
+            }
+            out.writeInt(keyBytes);
+            for (ByteBuffer value : keyValues) {
+                out.writeInt(value.remaining());
+                if (value.hasArray()) {
+                    out.write(value.array(), value.arrayOffset() + value.position(), value.remaining());
+                } else {
+                    ByteBuffer bytes = value.duplicate();
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes.get());
+                    }
+                }
+            }
+            bucket.entries++;
+        }
+    }
+
+    /**
+     * Sort the entries into the index and put it in place of the previous one.
+     *
+     * @return entries in the index; of a key added more than once, the entry added last is kept
+     */
+    public long commit() throws IOException {
+        for (Bucket bucket : buckets) {
+            bucket.out.close();
+        }
+        closed = true;
+        byte[] header = header();
+        Path index = spillDirectory.resolve("index");
+        File keys = spillDirectory.resolve("keys").toFile();
+        long entries = 0;
+        try (RandomAccessFile indexFile = new RandomAccessFile(index.toFile(), "rw");
+             DataOutputStream entryOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile.getFD()), 1 << 16));
+             DataOutputStream keyOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keys), 1 << 16))) {
+            indexFile.seek(header.length + DeltaIndex.COUNTS_BYTES);
+            long keyOffset = 0;
+            for (Bucket bucket : buckets) {
+                Sorted sorted = bucket.read();
+                int[] order = sorted.order();
+                for (int i = 0; i < order.length; i++) {
+                    int e = order[i];
+                    // the sort is stable, so of equal keys the one added last comes last
+                    if (i + 1 < order.length && sorted.high[e] == sorted.high[order[i + 1]] &&
+                       sorted.low[e] == sorted.low[order[i + 1]]) {
+                        continue;
+                    }
+                    entryOut.writeLong(sorted.high[e]);
+                    entryOut.writeLong(sorted.low[e]);
+                    entryOut.writeLong(sorted.content[e]);
+                    entryOut.writeLong(keyOffset);
+                    keyOut.writeInt(sorted.keys[e].length);
+                    keyOut.write(sorted.keys[e]);
+                    keyOffset += Integer.BYTES + sorted.keys[e].length;
+                    entries++;
+                }
+                Files.delete(bucket.file.toPath());
+            }
+            entryOut.flush();
+            keyOut.flush();
+            long keysStart = header.length + DeltaIndex.COUNTS_BYTES + entries * DeltaIndex.ENTRY_BYTES;
+            FileChannel channel = indexFile.getChannel();
+            try (FileChannel keyChannel = FileChannel.open(keys.toPath())) {
+                long copied = 0;
+                while (copied < keyChannel.size()) {
+                    copied += keyChannel.transferTo(copied, keyChannel.size() - copied, channel.position(keysStart + copied));
+                }
+            }
+            indexFile.seek(0);
+            indexFile.write(header);
+            indexFile.writeLong(entries);
+            indexFile.writeLong(keysStart);
+            channel.force(true);
+        }
+        Files.delete(keys.toPath());
+        Files.move(index, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(spillDirectory);
+        return entries;
+    }
+
+    /**
+     * Drop what was recorded and leave the previous index in place.
+     */
+    public void abort() {
+        for (Bucket bucket : buckets) {
+            if (bucket != null) {
+                try {
+                    if (!closed) {
+                        bucket.out.close();
+                    }
+                } catch (IOException e) {
+                    // being thrown away anyway
+                }
+                bucket.file.delete();
+            }
+        }
+        closed = true;
+        spillDirectory.resolve("index").toFile().delete();
+        spillDirectory.resolve("keys").toFile().delete();
+        spillDirectory.toFile().delete();
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(DeltaIndex.MAGIC);
+        out.writeUTF(keyLayout);
+        out.writeUTF(contentLayout);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static final class Bucket {
+        private final File file;
+        private final DataOutputStream out;
+        private int entries;
+
+        private Bucket(File file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 14));
+        }
+
+        private Sorted read() throws IOException {
+            Sorted sorted = new Sorted(entries);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+               Files.newInputStream(file.toPath()), 1 << 16))) {
+                for (int e = 0; e < entries; e++) {
+                    sorted.high[e] = in.readLong();
+                    sorted.low[e] = in.readLong();
+                    sorted.content[e] = in.readLong();
+                    sorted.keys[e] = new byte[in.readInt()];
+                    in.readFully(sorted.keys[e]);
+                }
+            } catch (EOFException e) {
+                throw new IOException("Delta index bucket " + file + " ends early", e);
+            }
+            return sorted;
+        }
+    }
+
+    private static final class Sorted {
+        private final long[] high;
+        private final long[] low;
+        private final long[] content;
+        private final byte[][] keys;
+
+        private Sorted(int entries) {
+            high = new long[entries];
+            low = new long[entries];
+            content = new long[entries];
+            keys = new byte[entries][];
+        }
+
+        /**
+         * @return the entries in key order; a stable merge sort, so equal keys stay in the order they were added
+         */
+        private int[] order() {
+            int[] order = new int[high.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            sort(order, new int[order.length], 0, order.length);
+            return order;
+        }
+
+        private void sort(int[] order, int[] scratch, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sort(order, scratch, from, middle);
+            sort(order, scratch, middle, to);
+            if (compare(order[middle - 1], order[middle]) <= 0) {
+                return;
+            }
+            System.arraycopy(order, from, scratch, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && compare(scratch[left], scratch[right]) <= 0)) {
+                    order[i] = scratch[left++];
+                } else {
+                    order[i] = scratch[right++];
+                }
+            }
+        }
+
+        private int compare(int a, int b) {
+            return DeltaIndex.compare(high[a], low[a], high[b], low[b]);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package loader.io;
+
+/**
+ * A byte range of an input file that starts at the beginning of a line and ends just after a line terminator
+ * (or at the end of the file), so it can be parsed without looking at any other chunk.
+ * <p/>
+ * Chunks that come out of a {@link LineIndex} also know the number of their first line and how many lines
+ * they hold.
+ */
+public class FileChunk {
+    private static final long UNKNOWN = -1L;
+
+    private final int index;
+    private final long start;
+    private final long end;
+    private final long firstLineNumber;
+    private final long lineCount;
+
+    public FileChunk(int index, long start, long end) {
+        this(index, start, end, UNKNOWN, UNKNOWN);
+    }
+
+    public FileChunk(int index, long start, long end, long firstLineNumber, long lineCount) {
+        this.index = index;
+        this.start = start;
+        this.end = end;
+        this.firstLineNumber = firstLineNumber;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * @return position of this chunk in file order, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return offset of the first byte of the chunk
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return offset just past the last byte of the chunk
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public long length() {
+        return end - start;
+    }
+
+    /**
+     * @return true if the line numbers of this chunk are known
+     */
+    public boolean isIndexed() {
+        return firstLineNumber != UNKNOWN;
+    }
+
+    /**
+     * @return number of the first line of the chunk, or -1 if the chunk is not indexed
+     */
+    public long getFirstLineNumber() {
+        return firstLineNumber;
+    }
+
+    /**
+     * @return number of lines in the chunk, or -1 if the chunk is not indexed
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public String toString() {
+        return "FileChunk{" +
+           "index=" + index +
+           ", start=" + start +
+           ", end=" + end +
+           (isIndexed() ? ", firstLineNumber=" + firstLineNumber + ", lineCount=" + lineCount : "") +
+           '}';
+    }
+}
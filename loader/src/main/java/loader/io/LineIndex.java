@@ -0,0 +1,109 @@
+package loader.io;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import loader.cli.CLILoaderRuntimeException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exact line count of a split file, with the first line number of every chunk.
+ * <p/>
+ * The newlines of each chunk are counted in parallel straight from the raw bytes, without decoding, so the
+ * count runs at close to disk speed. The indexed chunks can be handed to the parse workers, which then know
+ * their line numbers up front. They can also be used to pick up a load again at any chunk boundary.
+ */
+public class LineIndex {
+    private final List<FileChunk> chunks;
+    private final long lineCount;
+
+    private LineIndex(List<FileChunk> chunks, long lineCount) {
+        this.chunks = chunks;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Count the lines of every chunk.
+     *
+     * @param file            the split file
+     * @param chunks          its chunks, in file order
+     * @param firstLineNumber number of the first line of the first chunk
+     * @param threads         number of threads counting at once
+     * @return the index
+     * @throws IOException if the file could not be read
+     */
+    public static LineIndex build(ChunkedFile file, List<FileChunk> chunks, long firstLineNumber, int threads)
+       throws IOException {
+        ExecutorService counters = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, chunks.size())),
+           new ThreadFactoryBuilder()
+              .setNameFormat("loader-line-counter-%d")
+              .setDaemon(true)
+              .build());
+        try {
+            List<Future<Long>> counts = new ArrayList<>(chunks.size());
+            for (FileChunk chunk : chunks) {
+                counts.add(counters.submit(() -> file.countLines(chunk)));
+            }
+
+            List<FileChunk> indexed = new ArrayList<>(chunks.size());
+            long lineNumber = firstLineNumber;
+            for (int i = 0; i < chunks.size(); i++) {
+                FileChunk chunk = chunks.get(i);
+                long lines = counts.get(i).get();
+                indexed.add(new FileChunk(chunk.getIndex(), chunk.getStart(), chunk.getEnd(), lineNumber, lines));
+                lineNumber += lines;
+            }
+            return new LineIndex(Collections.unmodifiableList(indexed), lineNumber - firstLineNumber);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CLILoaderRuntimeException("Interrupted while counting lines", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            counters.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the indexed chunks, in file order
+     */
+    public List<FileChunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return number of lines in all chunks
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param offset byte offset to continue from, such as the offset of a checkpoint
+     * @return the chunks from the one starting at {@code offset} on, or null if no chunk starts there
+     */
+    public List<FileChunk> from(long offset) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long start = chunks.get(middle).getStart();
+            if (start < offset) {
+                low = middle + 1;
+            } else if (start > offset) {
+                high = middle - 1;
+            } else {
+                return chunks.subList(middle, chunks.size());
+            }
+        }
+        return null;
+    }
+}
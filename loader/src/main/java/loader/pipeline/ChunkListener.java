@@ -0,0 +1,16 @@
+package loader.pipeline;
+
+import loader.io.FileChunk;
+
+/**
+ * Told by a {@link LoadPipeline} each time the writer stage has been handed every row of a file chunk.
+ * Called on the writer thread, between chunks, so it may block the writer, for example to wait for writes.
+ */
+public interface ChunkListener {
+
+    /**
+     * @param chunk          the chunk whose rows have all been handed to the writer
+     * @param nextLineNumber line number of the first line after the chunk
+     */
+    void chunkWritten(FileChunk chunk, long nextLineNumber);
+}
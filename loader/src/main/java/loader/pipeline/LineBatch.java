@@ -0,0 +1,28 @@
+package loader.pipeline;
+
+import java.util.List;
+
+/**
+ * A run of consecutive input lines, the unit of work handed from the reader stage to a parse worker.
+ */
+public class LineBatch {
+    private final long firstLineNumber;
+    private final List<String> lines;
+
+    public LineBatch(long firstLineNumber, List<String> lines) {
+        this.firstLineNumber = firstLineNumber;
+        this.lines = lines;
+    }
+
+    public long getFirstLineNumber() {
+        return firstLineNumber;
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    public int size() {
+        return lines.size();
+    }
+}
@@ -0,0 +1,17 @@
+package loader.pipeline;
+
+/**
+ * Transforms one input line into whatever the writer stage of a {@link LoadPipeline} consumes.
+ * Implementations are called concurrently from several worker threads.
+ *
+ * @param <T> type handed to the writer stage
+ */
+public interface LineMapper<T> {
+
+    /**
+     * @param line       the raw input line, without its line terminator
+     * @param lineNumber the data line number, starting at 1 for the first line after the header
+     * @return the mapped value, or null if the line produces nothing to write
+     */
+    T map(String line, long lineNumber);
+}
@@ -0,0 +1,233 @@
+package loader.pipeline;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import loader.cli.CLILoaderRuntimeException;
+import loader.io.ChunkedFile;
+import loader.io.FileChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Three stage load pipeline.
+ * <ul>
+ *     <li>a reader thread groups input lines into numbered {@link LineBatch}es, or hands out the chunks of a
+ *     split {@link ChunkedFile}, and queues the work for the workers</li>
+ *     <li>a fixed pool of workers runs the {@link LineMapper} over each batch or chunk</li>
+ *     <li>the calling thread takes the mapped batches in input order and feeds them to the writer</li>
+ * </ul>
+ * The stages are joined by a bounded queue of pending batches, so a slow writer throttles the reader instead of
+ * the whole file being buffered in memory. Because batches are queued in the order they were read, the writer
+ * sees rows in file order and line numbers stay exact.
+ *
+ * @param <T> type produced by the mapper and consumed by the writer
+ */
+public class LoadPipeline<T> {
+    private static final Logger log = LoggerFactory.getLogger(LoadPipeline.class);
+
+    private final int workerCount;
+    private final int queueDepth;
+    private final int batchLines;
+
+    // identity marker queued by the reader after the last batch
+    private final Future<List<T>> endOfInput = CompletableFuture.completedFuture(null);
+
+    public LoadPipeline(int workerCount, int queueDepth, int batchLines) {
+        if (workerCount < 1 || queueDepth < 1 || batchLines < 1) {
+            throw new IllegalArgumentException("Worker count, queue depth and batch lines must all be positive");
+        }
+        this.workerCount = workerCount;
+        this.queueDepth = queueDepth;
+        this.batchLines = batchLines;
+    }
+
+    /**
+     * Run the pipeline to the end of a stream of lines.
+     *
+     * @param in              reader positioned on the first data line; read only by the reader thread
+     * @param firstLineNumber number given to the first line read
+     * @param mapper          parse stage, called from the worker threads
+     * @param writer          writer stage, called from the calling thread in input order
+     * @return the number of lines read
+     * @throws IOException if the input could not be read
+     */
+    public long run(BufferedReader in, long firstLineNumber, LineMapper<T> mapper, Consumer<T> writer) throws IOException {
+        log.info("Starting load pipeline with {} parse workers, queue depth {}, {} lines per batch",
+                workerCount, queueDepth, batchLines);
+        return execute((workers, queue) -> read(in, firstLineNumber, mapper, workers, queue), writer,
+                (batchIndex, linesRead) -> { });
+    }
+
+    /**
+     * Run the pipeline over the chunks of a split file. Each worker decodes a whole chunk on its own, so reading
+     * scales with the workers instead of being limited to the single reader thread. Indexed chunks bring their
+     * line numbers with them; otherwise line numbers are carried from chunk to chunk as each one finishes
+     * decoding. Either way they come out the same as for a sequential read.
+     *
+     * @param file            the split input file
+     * @param chunks          chunks to load, in file order
+     * @param firstLineNumber number given to the first line of the first chunk
+     * @param mapper          parse stage, called from the worker threads
+     * @param writer          writer stage, called from the calling thread in input order
+     * @param listener        told on the calling thread after the rows of each chunk have been written
+     * @return the number of lines read
+     * @throws IOException if the input could not be read
+     */
+    public long run(ChunkedFile file, List<FileChunk> chunks, long firstLineNumber, LineMapper<T> mapper,
+                    Consumer<T> writer, ChunkListener listener) throws IOException {
+        log.info("Starting load pipeline with {} parse workers, queue depth {}, {} file chunks",
+                workerCount, queueDepth, chunks.size());
+        return execute((workers, queue) -> split(file, chunks, firstLineNumber, mapper, workers, queue), writer,
+                (batchIndex, linesRead) -> listener.chunkWritten(chunks.get(batchIndex), firstLineNumber + linesRead));
+    }
+
+    private long execute(Producer<T> producer, Consumer<T> writer, BatchListener listener) throws IOException {
+        BlockingQueue<Future<List<T>>> queue = new ArrayBlockingQueue<>(queueDepth);
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, new ThreadFactoryBuilder()
+                .setNameFormat("loader-worker-%d")
+                .setDaemon(true)
+                .build());
+        AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                producer.produce(workers, queue);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                readerFailure.set(t);
+            } finally {
+                try {
+                    queue.put(endOfInput);
+                } catch (InterruptedException e) {
+                    // the writer has given up and is no longer draining the queue
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "loader-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long linesRead = 0;
+        int batchIndex = 0;
+        boolean completed = false;
+        try {
+            Future<List<T>> pending;
+            while ((pending = queue.take()) != endOfInput) {
+                List<T> batch = pending.get();
+                // one entry per input line, null for lines the mapper skipped
+                linesRead += batch.size();
+                for (T mapped : batch) {
+                    if (mapped != null) {
+                        writer.accept(mapped);
+                    }
+                }
+                listener.batchWritten(batchIndex++, linesRead);
+            }
+            reader.join();
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CLILoaderRuntimeException("Interrupted while waiting on the load pipeline", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            if (!completed) {
+                reader.interrupt();
+            }
+            workers.shutdownNow();
+        }
+
+        Throwable failure = readerFailure.get();
+        if (failure != null) {
+            Throwables.propagateIfInstanceOf(failure, IOException.class);
+            throw Throwables.propagate(failure);
+        }
+        return linesRead;
+    }
+
+    private void read(BufferedReader in, long firstLineNumber, LineMapper<T> mapper, ExecutorService workers,
+                      BlockingQueue<Future<List<T>>> queue) throws IOException, InterruptedException {
+        long lineNumber = firstLineNumber;
+        long batchStart = lineNumber;
+        List<String> lines = new ArrayList<>(batchLines);
+        String line;
+        while ((line = in.readLine()) != null) {
+            lines.add(line);
+            lineNumber++;
+            if (lines.size() == batchLines) {
+                submit(new LineBatch(batchStart, lines), mapper, workers, queue);
+                batchStart = lineNumber;
+                lines = new ArrayList<>(batchLines);
+            }
+        }
+        if (!lines.isEmpty()) {
+            submit(new LineBatch(batchStart, lines), mapper, workers, queue);
+        }
+    }
+
+    private void split(ChunkedFile file, List<FileChunk> chunks, long firstLineNumber, LineMapper<T> mapper,
+                       ExecutorService workers, BlockingQueue<Future<List<T>>> queue) throws InterruptedException {
+        // unless the chunks are indexed, each chunk learns its first line number from the chunk before it. Chunks
+        // are submitted in file order to a FIFO pool, so the chunk being waited on has always been picked up already.
+        CompletableFuture<Long> offset = CompletableFuture.completedFuture(firstLineNumber);
+        for (FileChunk chunk : chunks) {
+            CompletableFuture<Long> previous = chunk.isIndexed() ?
+                    CompletableFuture.completedFuture(chunk.getFirstLineNumber()) : offset;
+            CompletableFuture<Long> next = new CompletableFuture<>();
+            queue.put(workers.submit(() -> mapChunk(file, chunk, previous, next, mapper)));
+            offset = next;
+        }
+    }
+
+    private void submit(LineBatch batch, LineMapper<T> mapper, ExecutorService workers,
+                        BlockingQueue<Future<List<T>>> queue) throws InterruptedException {
+        queue.put(workers.submit(() -> mapBatch(batch, mapper)));
+    }
+
+    private List<T> mapChunk(ChunkedFile file, FileChunk chunk, CompletableFuture<Long> previous,
+                             CompletableFuture<Long> next, LineMapper<T> mapper) throws Exception {
+        try {
+            List<String> lines = file.readLines(chunk);
+            long firstLineNumber = previous.get();
+            next.complete(firstLineNumber + lines.size());
+            return mapBatch(new LineBatch(firstLineNumber, lines), mapper);
+        } catch (Exception | Error e) {
+            // let the chunks after this one fail too instead of waiting forever
+            next.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private List<T> mapBatch(LineBatch batch, LineMapper<T> mapper) {
+        List<T> mapped = new ArrayList<>(batch.size());
+        long lineNumber = batch.getFirstLineNumber();
+        for (String line : batch.getLines()) {
+            mapped.add(mapper.map(line, lineNumber++));
+        }
+        return mapped;
+    }
+
+    private interface Producer<T> {
+        void produce(ExecutorService workers, BlockingQueue<Future<List<T>>> queue) throws Exception;
+    }
+
+    private interface BatchListener {
+        void batchWritten(int batchIndex, long linesRead);
+    }
+}
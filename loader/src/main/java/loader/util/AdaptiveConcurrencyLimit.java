@@ -0,0 +1,178 @@
+package loader.util;
+
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.QueryTimeoutException;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit on concurrent writes that follows the cluster, additive increase and multiplicative decrease (AIMD).
+ * <p/>
+ * Write latencies are sampled over fixed intervals. At the end of an interval in which the writer was held back
+ * by the limit, the limit grows by one if the p99 latency and the error rate stayed under their targets. It is
+ * cut by {@code backoff} as soon as a write times out or a node reports it is overloaded, and at the end of an
+ * interval whose p99 latency or error rate went over target. It is cut at most once per interval, so a burst of
+ * timeouts from writes issued at the old limit does not drive it straight to the minimum.
+ * <p/>
+ * Thread safe; latencies are reported from the driver's callback threads.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class);
+
+    // the p99 of an interval comes from at most this many samples; later samples overwrite earlier ones
+    private static final int MAX_SAMPLES = 4096;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetP99Nanos;
+    private final double targetErrorRate;
+    private final double backoff;
+    private final long intervalNanos;
+    private final Ticker ticker;
+
+    private volatile int limit;
+    private volatile long lastP99Nanos = 0;
+
+    // guarded by this
+    private final long[] samples = new long[MAX_SAMPLES];
+    private long writes = 0;
+    private long errors = 0;
+    private boolean congested = false;
+    private boolean saturated = false;
+    private boolean decreased = false;
+    private long intervalStart;
+
+    /**
+     * @param initialLimit    the limit to start from
+     * @param minLimit        the limit never goes below this
+     * @param maxLimit        the limit never goes above this
+     * @param targetP99       p99 write latency to stay under
+     * @param targetErrorRate fraction of failed writes to stay under
+     * @param backoff         factor the limit is multiplied by when it is cut, between 0 and 1
+     * @param interval        length of a sampling interval
+     * @param unit            unit of {@code targetP99} and {@code interval}
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long targetP99, double targetErrorRate,
+                                    double backoff, long interval, TimeUnit unit) {
+        this(initialLimit, minLimit, maxLimit, targetP99, targetErrorRate, backoff, interval, unit, Ticker.systemTicker());
+    }
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long targetP99, double targetErrorRate,
+                             double backoff, long interval, TimeUnit unit, Ticker ticker) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit range " + minLimit + "-" + maxLimit);
+        }
+        if (backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("Backoff must be between 0 and 1, was " + backoff);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.targetP99Nanos = unit.toNanos(targetP99);
+        this.targetErrorRate = targetErrorRate;
+        this.backoff = backoff;
+        this.intervalNanos = unit.toNanos(interval);
+        this.ticker = ticker;
+        this.intervalStart = ticker.read();
+    }
+
+    /**
+     * @return true if the failure means the cluster is taking more writes than it can handle. No host being
+     * available is an outage rather than congestion: fewer writes in flight would not help.
+     */
+    public static boolean isCongestion(Throwable failure) {
+        return failure instanceof OverloadedException
+           || failure instanceof QueryTimeoutException;
+    }
+
+    /**
+     * Called when a write had to wait because the limit was reached, meaning a higher limit would be used.
+     */
+    public synchronized void onLimitReached() {
+        saturated = true;
+    }
+
+    public void onSuccess(long latencyNanos) {
+        record(latencyNanos, false, false);
+    }
+
+    public void onFailure(long latencyNanos, Throwable failure) {
+        record(latencyNanos, true, isCongestion(failure));
+    }
+
+    private synchronized void record(long latencyNanos, boolean error, boolean congestion) {
+        samples[(int) (writes % MAX_SAMPLES)] = latencyNanos;
+        writes++;
+        if (error) {
+            errors++;
+        }
+        if (congestion) {
+            congested = true;
+            if (!decreased) {
+                decrease("write timed out or node overloaded");
+            }
+        }
+        if (ticker.read() - intervalStart >= intervalNanos) {
+            endInterval();
+        }
+    }
+
+    private void endInterval() {
+        long[] sorted = Arrays.copyOf(samples, (int) Math.min(writes, MAX_SAMPLES));
+        Arrays.sort(sorted);
+        long p99 = sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)];
+        lastP99Nanos = p99;
+        double errorRate = (double) errors / writes;
+
+        if (!decreased) {
+            if (congested || p99 > targetP99Nanos || errorRate > targetErrorRate) {
+                decrease(String.format("p99 latency %.1f ms, error rate %.3f", p99 / 1e6, errorRate));
+            } else if (saturated && limit < maxLimit) {
+                limit++;
+                log.debug("Write concurrency limit raised to {}, p99 latency {} ms", limit, p99 / 1e6);
+            }
+        }
+
+        writes = 0;
+        errors = 0;
+        congested = false;
+        saturated = false;
+        decreased = false;
+        intervalStart = ticker.read();
+    }
+
+    private void decrease(String reason) {
+        int previous = limit;
+        limit = Math.max(minLimit, (int) (limit * backoff));
+        decreased = true;
+        if (limit != previous) {
+            log.info("Write concurrency limit cut from {} to {}: {}", previous, limit, reason);
+        }
+    }
+
+    /**
+     * @return the current number of writes allowed in flight
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return p99 write latency of the last completed interval, in milliseconds
+     */
+    public double getLatencyP99Millis() {
+        return lastP99Nanos / 1e6;
+    }
+}
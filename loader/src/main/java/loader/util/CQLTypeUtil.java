@@ -84,6 +84,17 @@ public class CQLTypeUtil {
 
     }
 
+    /**
+     * Resolve the converter for a column once, so the per-cell path does not look anything up.
+     *
+     * @param dataType The Datastax CQL type of the column
+     * @return a converter with the same semantics as {@link #convertObjectType(String, DataType)}
+     * @see ColumnConverters
+     */
+    public static ColumnConverter converterFor(DataType dataType) {
+        return ColumnConverters.compile(dataType);
+    }
+
     protected static ByteBuffer convertToByteBuffer(String strValue) {
         try {
             return ByteBuffer.wrap(strValue.getBytes());
@@ -171,7 +182,7 @@ public class CQLTypeUtil {
 
     // this array defines the order in which we will apply date formats
     // to attempt parsing.
-    private static final DateTimeFormatter DATE_PARSER_ORDERING[] =
+    static final DateTimeFormatter DATE_PARSER_ORDERING[] =
             { YYYYMMDD_Dashes_DateTimeFormatter, YYYYMMDD_Dashes_DateFormatter, MMDDYYYY_Slashes_DateTime24HFormatter,
                 MMDDYYYY_Slashes_DateFormatter, MMDDYYYY_Dashes_DateTime24HFormatter, MMDDYYYY_Dashes_DateFormatter,
                 YYYYMMDD_Dashes_T_DateTimeFormatter};
@@ -263,13 +274,13 @@ public class CQLTypeUtil {
             try {
                 key = convertObjectType(kvPair[0], keyType);
             } catch (Exception e) {
-                throw new CLILoaderRuntimeException("Unable to convert value to Set because a key type conversion failed");
+                throw new CLILoaderRuntimeException("Unable to convert value to Map because a key type conversion failed");
             }
             Object value = null;
             try {
                 value = convertObjectType(kvPair[1], valueType);
             } catch (Exception e) {
-                throw new CLILoaderRuntimeException("Unable to convert value to Set because a value type conversion failed");
+                throw new CLILoaderRuntimeException("Unable to convert value to Map because a value type conversion failed");
             }
             resultMap.put(key, value);
         }
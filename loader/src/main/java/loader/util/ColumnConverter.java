@@ -0,0 +1,27 @@
+package loader.util;
+
+import javax.annotation.Nullable;
+
+/**
+ * Converts the raw text of one cell to the Java type bound for a particular CQL column.
+ * Resolved once per column by {@link CQLTypeUtil#converterFor}, then reused for every row.
+ */
+public interface ColumnConverter {
+
+    /**
+     * @param strValue the raw cell text
+     * @return the converted value, or null for null and blank input
+     * @throws loader.cli.CLILoaderRuntimeException if the conversion failed
+     */
+    Object convert(@Nullable String strValue);
+
+    /**
+     * Convert the characters {@code [start, end)} of a line, creating a string of them only if the converter
+     * needs one, as this default does.
+     *
+     * @throws loader.cli.CLILoaderRuntimeException if the conversion failed
+     */
+    default Object convert(CharSequence chars, int start, int end) {
+        return convert(chars.subSequence(start, end).toString());
+    }
+}
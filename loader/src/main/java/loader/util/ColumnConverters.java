@@ -0,0 +1,405 @@
+package loader.util;
+
+import com.datastax.driver.core.DataType;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import loader.cli.CLILoaderRuntimeException;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a {@link DataType} into a {@link ColumnConverter} specialized for it, so the type is switched on once
+ * per column instead of once per cell.
+ * <p/>
+ * The converters give exactly the results of {@link CQLTypeUtil#convertObjectType(String, DataType)}. Numbers
+ * in the plain forms found in data files are parsed by hand, without exceptions or intermediate objects. Any
+ * other form (more digits, exponents, whitespace, non ASCII digits, invalid input) goes to the general
+ * {@link CQLTypeUtil} method, which also produces the error for invalid input. The numbers are read straight
+ * from the characters of their cell, so a numeric cell in a plain form never becomes a string.
+ */
+public class ColumnConverters {
+
+    private ColumnConverters() {}
+
+    // powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+       1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+       1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // digits that always fit the target type, whatever they are
+    private static final int MAX_INT_DIGITS = 9;
+    private static final int MAX_LONG_DIGITS = 18;
+    // integers up to 2^53 are exact doubles
+    private static final int MAX_EXACT_DOUBLE_DIGITS = 15;
+
+    private static final long NOT_A_NUMBER = -1L;
+
+    /**
+     * @param dataType The Datastax CQL type of the column
+     * @return the converter for the column
+     */
+    public static ColumnConverter compile(DataType dataType) {
+        switch (dataType.getName()) {
+            case ASCII:
+            case TEXT:
+            case VARCHAR:
+                return strValue -> isNullOrEmpty(strValue) ? null : strValue;
+            case BIGINT:
+            case COUNTER:
+                return new RangeConverter(ColumnConverters::toLong);
+            case INT:
+                return new RangeConverter(ColumnConverters::toInteger);
+            case VARINT:
+                return new RangeConverter(ColumnConverters::toBigInteger);
+            case DOUBLE:
+                return new RangeConverter(ColumnConverters::toDouble);
+            case DECIMAL:
+                return new RangeConverter(ColumnConverters::toBigDecimal);
+            case FLOAT:
+                return strValue -> isNullOrEmpty(strValue) ? null : CQLTypeUtil.convertToFloat(strValue);
+            case BOOLEAN:
+                return strValue -> isNullOrEmpty(strValue) ? null : CQLTypeUtil.convertToBoolean(strValue);
+            case BLOB:
+                return strValue -> isNullOrEmpty(strValue) ? null : CQLTypeUtil.convertToByteBuffer(strValue);
+            case UUID:
+            case TIMEUUID:
+                return strValue -> isNullOrEmpty(strValue) ? null : CQLTypeUtil.convertToUUID(strValue);
+            case TIMESTAMP:
+                return new DateConverter();
+            case LIST:
+                return new ListConverter(compile(dataType.getTypeArguments().get(0)));
+            case SET:
+                return new SetConverter(compile(dataType.getTypeArguments().get(0)));
+            case MAP:
+                return new MapConverter(compile(dataType.getTypeArguments().get(0)),
+                   compile(dataType.getTypeArguments().get(1)));
+            default:
+                // unsupported types only fail once there is a value to convert
+                return strValue -> CQLTypeUtil.convertObjectType(strValue, dataType);
+        }
+    }
+
+    private static boolean isNullOrEmpty(String strValue) {
+        return strValue == null || strValue.isEmpty();
+    }
+
+    static Long toLong(String strValue) {
+        return strValue == null ? null : toLong(strValue, 0, strValue.length());
+    }
+
+    static Long toLong(CharSequence chars, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        int from = start + signLength(chars, start);
+        long value = end - from <= MAX_LONG_DIGITS ? digits(chars, from, end) : NOT_A_NUMBER;
+        if (value == NOT_A_NUMBER) {
+            return CQLTypeUtil.convertToLong(text(chars, start, end));
+        }
+        return chars.charAt(start) == '-' ? -value : value;
+    }
+
+    static Integer toInteger(String strValue) {
+        return strValue == null ? null : toInteger(strValue, 0, strValue.length());
+    }
+
+    static Integer toInteger(CharSequence chars, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        int from = start + signLength(chars, start);
+        long value = end - from <= MAX_INT_DIGITS ? digits(chars, from, end) : NOT_A_NUMBER;
+        if (value == NOT_A_NUMBER) {
+            return CQLTypeUtil.convertToInteger(text(chars, start, end));
+        }
+        return (int) (chars.charAt(start) == '-' ? -value : value);
+    }
+
+    static BigInteger toBigInteger(String strValue) {
+        return strValue == null ? null : toBigInteger(strValue, 0, strValue.length());
+    }
+
+    static BigInteger toBigInteger(CharSequence chars, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        int from = start + signLength(chars, start);
+        long value = end - from <= MAX_LONG_DIGITS ? digits(chars, from, end) : NOT_A_NUMBER;
+        if (value == NOT_A_NUMBER) {
+            return CQLTypeUtil.convertToBigInteger(text(chars, start, end));
+        }
+        return BigInteger.valueOf(chars.charAt(start) == '-' ? -value : value);
+    }
+
+    static Double toDouble(String strValue) {
+        return strValue == null ? null : toDouble(strValue, 0, strValue.length());
+    }
+
+    static Double toDouble(CharSequence chars, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        double value = plainDecimal(chars, start, end);
+        return Double.isNaN(value) ? CQLTypeUtil.convertToDouble(text(chars, start, end)) : value;
+    }
+
+    static BigDecimal toBigDecimal(String strValue) {
+        return strValue == null ? null : toBigDecimal(strValue, 0, strValue.length());
+    }
+
+    static BigDecimal toBigDecimal(CharSequence chars, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        if (indexOf(chars, '.', start, end) != -1) {
+            double value = plainDecimal(chars, start, end);
+            return Double.isNaN(value) ? CQLTypeUtil.convertToBigDecimal(text(chars, start, end)) : BigDecimal.valueOf(value);
+        }
+        int from = start + signLength(chars, start);
+        long value = end - from <= MAX_LONG_DIGITS ? digits(chars, from, end) : NOT_A_NUMBER;
+        if (value == NOT_A_NUMBER) {
+            return CQLTypeUtil.convertToBigDecimal(text(chars, start, end));
+        }
+        return BigDecimal.valueOf(chars.charAt(start) == '-' ? -value : value);
+    }
+
+    private static int signLength(CharSequence chars, int start) {
+        char first = chars.charAt(start);
+        return first == '-' || first == '+' ? 1 : 0;
+    }
+
+    private static int indexOf(CharSequence chars, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the characters as a string, for the general conversion
+     */
+    private static String text(CharSequence chars, int start, int end) {
+        return chars.subSequence(start, end).toString();
+    }
+
+    /**
+     * @return the value of the ASCII digits in {@code [from, to)}, or {@link #NOT_A_NUMBER} if the range is empty
+     * or holds anything else. The caller makes sure the digits cannot overflow.
+     */
+    private static long digits(CharSequence chars, int from, int to) {
+        if (from >= to) {
+            return NOT_A_NUMBER;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parse {@code [sign] digits [. digits]} with at most 15 digits in all. Both the digits and the power of ten
+     * are then exact doubles, so one division gives the correctly rounded result, the same double that
+     * {@link Double#parseDouble} returns.
+     *
+     * @return the value, or NaN if the text is not in that form
+     */
+    private static double plainDecimal(CharSequence chars, int from, int to) {
+        int start = from + signLength(chars, from);
+        int point = indexOf(chars, '.', start, to);
+        int digitCount = to - start - (point < 0 ? 0 : 1);
+        if (digitCount < 1 || digitCount > MAX_EXACT_DOUBLE_DIGITS) {
+            return Double.NaN;
+        }
+        long mantissa;
+        int fractionDigits;
+        if (point < 0) {
+            mantissa = digits(chars, start, to);
+            fractionDigits = 0;
+        } else {
+            long whole = point == start ? 0 : digits(chars, start, point);
+            long fraction = point == to - 1 ? 0 : digits(chars, point + 1, to);
+            if (whole == NOT_A_NUMBER || fraction == NOT_A_NUMBER) {
+                return Double.NaN;
+            }
+            fractionDigits = to - point - 1;
+            mantissa = whole;
+            for (int i = 0; i < fractionDigits; i++) {
+                mantissa *= 10;
+            }
+            mantissa += fraction;
+        }
+        if (mantissa == NOT_A_NUMBER) {
+            return Double.NaN;
+        }
+        double value = (double) mantissa / POWERS_OF_TEN[fractionDigits];
+        return chars.charAt(from) == '-' ? -value : value;
+    }
+
+    /**
+     * Reads characters of a cell.
+     */
+    private interface CharRangeFunction {
+        Object apply(CharSequence chars, int start, int end);
+    }
+
+    /**
+     * A converter that reads its value from the characters of the cell, whether or not they are a string.
+     */
+    static class RangeConverter implements ColumnConverter {
+        private final CharRangeFunction function;
+
+        RangeConverter(CharRangeFunction function) {
+            this.function = function;
+        }
+
+        @Override
+        public Object convert(String strValue) {
+            return strValue == null ? null : function.apply(strValue, 0, strValue.length());
+        }
+
+        @Override
+        public Object convert(CharSequence chars, int start, int end) {
+            return function.apply(chars, start, end);
+        }
+    }
+
+    /**
+     * Tries the format that parsed the previous value of the column first. A column almost always holds a
+     * single format, so after the first value no formatter fails and no exception is thrown. A value that
+     * matches several formats is read with the format of the previous value.
+     */
+    static class DateConverter implements ColumnConverter {
+        // shared by the parse workers; a stale read only costs a failed attempt
+        private volatile int lastFormat = 0;
+
+        @Override
+        public Object convert(String strValue) {
+            if (isNullOrEmpty(strValue)) {
+                return null;
+            }
+            DateTimeFormatter[] formats = CQLTypeUtil.DATE_PARSER_ORDERING;
+            int last = lastFormat;
+            try {
+                return formats[last].parseDateTime(strValue).toDate();
+            } catch (Exception e) {
+                // the column changed format; fall back to the full search
+            }
+            for (int i = 0; i < formats.length; i++) {
+                if (i == last) {
+                    continue;
+                }
+                try {
+                    Date date = formats[i].parseDateTime(strValue).toDate();
+                    lastFormat = i;
+                    return date;
+                } catch (Exception e) {
+                    // try the next format
+                }
+            }
+            throw new CLILoaderRuntimeException("Unable to convert value to Date using any known format: " + strValue);
+        }
+    }
+
+    static class ListConverter implements ColumnConverter {
+        private final ColumnConverter elementConverter;
+
+        ListConverter(ColumnConverter elementConverter) {
+            this.elementConverter = elementConverter;
+        }
+
+        @Override
+        public Object convert(String strValue) {
+            if (isNullOrEmpty(strValue)) {
+                return null;
+            }
+            String elements[] = strValue.split(",");
+            List<Object> resultList = Lists.newArrayListWithExpectedSize(elements.length);
+            for (String elementValue : elements) {
+                try {
+                    resultList.add(elementConverter.convert(elementValue));
+                } catch (Exception e) {
+                    throw new CLILoaderRuntimeException("Unable to convert value to List because a list element type conversion failed");
+                }
+            }
+            return resultList;
+        }
+    }
+
+    static class SetConverter implements ColumnConverter {
+        private final ColumnConverter elementConverter;
+
+        SetConverter(ColumnConverter elementConverter) {
+            this.elementConverter = elementConverter;
+        }
+
+        @Override
+        public Object convert(String strValue) {
+            if (isNullOrEmpty(strValue)) {
+                return null;
+            }
+            String elements[] = strValue.split(",");
+            Set<Object> resultSet = Sets.newHashSetWithExpectedSize(elements.length);
+            for (String elementValue : elements) {
+                try {
+                    resultSet.add(elementConverter.convert(elementValue));
+                } catch (Exception e) {
+                    throw new CLILoaderRuntimeException("Unable to convert value to Set because a set element type conversion failed");
+                }
+            }
+            return resultSet;
+        }
+    }
+
+    static class MapConverter implements ColumnConverter {
+        private final ColumnConverter keyConverter;
+        private final ColumnConverter valueConverter;
+
+        MapConverter(ColumnConverter keyConverter, ColumnConverter valueConverter) {
+            this.keyConverter = keyConverter;
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        public Object convert(String strValue) {
+            if (isNullOrEmpty(strValue)) {
+                return null;
+            }
+            String elements[] = strValue.split(",");
+            Map<Object, Object> resultMap = Maps.newHashMapWithExpectedSize(elements.length);
+            for (String kvPairStr : elements) {
+                String kvPair[] = kvPairStr.split("=");
+                if (kvPair.length != 2) {
+                    throw new CLILoaderRuntimeException("Unable to convert value to Map because a key-value pair is missing an =");
+                }
+                Object key;
+                try {
+                    key = keyConverter.convert(kvPair[0]);
+                } catch (Exception e) {
+                    throw new CLILoaderRuntimeException("Unable to convert value to Map because a key type conversion failed");
+                }
+                Object value;
+                try {
+                    value = valueConverter.convert(kvPair[1]);
+                } catch (Exception e) {
+                    throw new CLILoaderRuntimeException("Unable to convert value to Map because a value type conversion failed");
+                }
+                resultMap.put(key, value);
+            }
+            return resultMap;
+        }
+    }
+}
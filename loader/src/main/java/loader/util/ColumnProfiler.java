@@ -0,0 +1,174 @@
+package loader.util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profile of the values of every column of a load, gathered from the converted rows as they go by instead of in
+ * a separate pass over the input.
+ * <p/>
+ * Per column it counts the values and the nulls, keeps the lowest and highest value, estimates the number of
+ * distinct values with a {@link HyperLogLog} and the most frequent values with a {@link ConcurrentStreamSummary}.
+ * Every part takes values from several parse workers at once without a shared lock.
+ */
+public class ColumnProfiler {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final ColumnProfile[] profiles;
+    private final int topK;
+
+    /**
+     * @param columns names of the columns, in the order of the values offered
+     * @param topK    most frequent values reported per column
+     */
+    public ColumnProfiler(List<String> columns, int topK) {
+        this.topK = topK;
+        this.profiles = new ColumnProfile[columns.size()];
+        for (int i = 0; i < profiles.length; i++) {
+            // tracking more values than are reported keeps the reported counts close to exact
+            profiles[i] = new ColumnProfile(columns.get(i), Math.max(topK * 10, 100));
+        }
+    }
+
+    /**
+     * Profile the first values of a converted row, one per column; null is a missing value.
+     */
+    public void profile(Object[] values) {
+        for (int i = 0; i < profiles.length; i++) {
+            profiles[i].offer(values[i]);
+        }
+    }
+
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        for (ColumnProfile profile : profiles) {
+            json.put(profile.column, profile.toJSON(topK));
+        }
+        return json;
+    }
+
+    /**
+     * @return one line per column
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (ColumnProfile profile : profiles) {
+            sb.append(String.format("%n")).append(profile.summary(topK));
+        }
+        return sb.toString();
+    }
+
+    static long hash(Object value) {
+        if (value instanceof CharSequence) {
+            return HASH.hashUnencodedChars((CharSequence) value).asLong();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return HyperLogLog.mix(((Number) value).longValue());
+        }
+        return HyperLogLog.mix(value.hashCode());
+    }
+
+    private static final class ColumnProfile {
+        private final String column;
+        private final LongAdder values = new LongAdder();
+        private final LongAdder nulls = new LongAdder();
+        private final AtomicReference<Object> min = new AtomicReference<>();
+        private final AtomicReference<Object> max = new AtomicReference<>();
+        private final HyperLogLog distinct = new HyperLogLog();
+        private final ConcurrentStreamSummary<Object> frequent;
+
+        private ColumnProfile(String column, int capacity) {
+            this.column = column;
+            this.frequent = new ConcurrentStreamSummary<>(capacity);
+        }
+
+        private void offer(Object value) {
+            if (value == null) {
+                nulls.increment();
+                return;
+            }
+            values.increment();
+            if (value instanceof Comparable && !(value instanceof Collection) && !(value instanceof Map)) {
+                // once the extremes are found the reads alone decide, so the updates stay rare
+                while (true) {
+                    Object current = min.get();
+                    if ((current != null && compare(value, current) >= 0) || min.compareAndSet(current, value)) {
+                        break;
+                    }
+                }
+                while (true) {
+                    Object current = max.get();
+                    if ((current != null && compare(value, current) <= 0) || max.compareAndSet(current, value)) {
+                        break;
+                    }
+                }
+            }
+            distinct.offerHash(hash(value));
+            frequent.offer(value);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compare(Object value, Object current) {
+            return ((Comparable<Object>) value).compareTo(current);
+        }
+
+        private JSONObject toJSON(int topK) {
+            JSONArray top = new JSONArray();
+            for (ScoredItem<Object> item : frequent.peekWithScores(topK)) {
+                top.put(new JSONObject()
+                   .put("value", jsonValue(item.getItem()))
+                   .put("count", item.getCount())
+                   .put("error", item.getError()));
+            }
+            JSONObject json = new JSONObject()
+               .put("values", values.sum())
+               .put("nulls", nulls.sum())
+               .put("distinct", distinct.cardinality())
+               .put("top", top);
+            if (min.get() != null) {
+                json.put("min", jsonValue(min.get()));
+                json.put("max", jsonValue(max.get()));
+            }
+            return json;
+        }
+
+        private String summary(int topK) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(column).append(": ").append(values.sum()).append(" values, ")
+               .append(nulls.sum()).append(" nulls, ~").append(distinct.cardinality()).append(" distinct");
+            if (min.get() != null) {
+                sb.append(", min ").append(text(min.get())).append(", max ").append(text(max.get()));
+            }
+            List<ScoredItem<Object>> top = frequent.peekWithScores(topK);
+            if (!top.isEmpty()) {
+                sb.append(", top");
+                for (ScoredItem<Object> item : top) {
+                    sb.append(' ').append(text(item.getItem())).append(" (").append(item.getCount()).append(')');
+                }
+            }
+            return sb.toString();
+        }
+
+        private static Object jsonValue(Object value) {
+            if (value instanceof Double && !Double.isFinite((Double) value) ||
+               value instanceof Float && !Float.isFinite((Float) value)) {
+                // JSON has no numbers for NaN and the infinities
+                return text(value);
+            }
+            return value instanceof Number || value instanceof Boolean ? value : text(value);
+        }
+
+        private static String text(Object value) {
+            return value instanceof Date ? ((Date) value).toInstant().toString() : String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package loader.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of 128 bit key fingerprints that several threads add to at once.
+ * <p/>
+ * The filter is sized up front for the keys expected and the false positive rate wanted, within a memory bound.
+ * The bit positions of a key are derived from the two halves of its fingerprint as in <i>Less Hashing, Same
+ * Performance: Building a Better Bloom Filter</i> by Kirsch and Mitzenmacher. Bits are only ever set, with a
+ * compare-and-set on the word that holds them, so adding never takes a lock. A key added by two threads at once
+ * may be reported as new to both.
+ */
+public class ConcurrentBloomFilter {
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long expectedKeys;
+
+    /**
+     * @param expectedKeys      keys the filter is sized for
+     * @param falsePositiveRate chance that a key never added is taken for one that was, once the expected keys
+     *                          are in
+     * @param maxBytes          memory the filter may take at most, which raises the false positive rate if it is
+     *                          not enough
+     */
+    public ConcurrentBloomFilter(long expectedKeys, double falsePositiveRate, long maxBytes) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1, was " + falsePositiveRate);
+        }
+        this.expectedKeys = Math.max(expectedKeys, 1);
+        long wanted = (long) Math.ceil(-this.expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long words = Math.max(1, Math.min((wanted + Long.SIZE - 1) / Long.SIZE,
+           Math.min(maxBytes / Long.BYTES, Integer.MAX_VALUE - 8)));
+        this.words = new AtomicLongArray((int) words);
+        this.bits = words * Long.SIZE;
+        // past a couple dozen bit positions per key the rate hardly improves, while every add gets slower
+        this.hashes = Math.max(1, Math.min(24, (int) Math.round((double) bits / this.expectedKeys * Math.log(2))));
+    }
+
+    /**
+     * Add a key.
+     *
+     * @return false if the key may have been added before; true if it certainly was not
+     */
+    public boolean add(long high, long low) {
+        boolean changed = false;
+        long combined = high;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (combined & Long.MAX_VALUE) % bits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0) {
+                if (words.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+                current = words.get(word);
+            }
+            combined += low;
+        }
+        return changed;
+    }
+
+    /**
+     * @return false if the key was certainly never added
+     */
+    public boolean mightContain(long high, long low) {
+        long combined = high;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (combined & Long.MAX_VALUE) % bits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += low;
+        }
+        return true;
+    }
+
+    public long getBits() {
+        return bits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    public long getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    /**
+     * @return the false positive rate for the next key, from the share of bits set so far
+     */
+    public double getFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bits, hashes);
+    }
+}
@@ -1,13 +1,12 @@
 package loader.util;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.lang.String.format;
 
@@ -18,6 +17,14 @@ import static java.lang.String.format;
  * by Metwally, Agrawal, and Abbadi
  * <p/>
  * Ideally used in multithreaded applications, otherwise see {@link StreamSummary}
+ * <p/>
+ * Offers go to one of several stripes, each a {@link StreamSummary} of the full capacity behind a lock of its
+ * own. A thread keeps to the same stripe while it is free and moves on to the next one when it is not, so threads
+ * offering at once rarely wait on each other, and a frequent element counted by every thread does not make them
+ * all queue on one lock. {@link #peekWithScores} merges the stripes as in <i>Mergeable Summaries</i> by Agarwal
+ * et al.: counts of an element add up, and a stripe that does not track it adds its lowest count to both the
+ * count and the error. Merged counts keep the guarantee of a single summary,
+ * {@code count - error <= true count <= count}.
  *
  * @param <T> type of data in the stream to be summarized
  * @author Eric Vlaanderen
@@ -25,17 +32,30 @@ import static java.lang.String.format;
 public class ConcurrentStreamSummary<T> implements ITopK<T> {
 
     private final int capacity;
-    private final ConcurrentHashMap<T, ScoredItem<T>> itemMap;
-    private final AtomicReference<ScoredItem<T>> minVal;
-    private final AtomicLong size;
-    private final AtomicBoolean reachCapacity;
+    private final Stripe<T>[] stripes;
 
     public ConcurrentStreamSummary(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param capacity elements tracked, in each stripe and in the merged summary
+     * @param stripes  summaries offers are spread over
+     */
+    public ConcurrentStreamSummary(int capacity, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must be positive, was " + stripes);
+        }
         this.capacity = capacity;
-        this.minVal = new AtomicReference<>();
-        this.size = new AtomicLong(0);
-        this.itemMap = new ConcurrentHashMap<>(capacity);
-        this.reachCapacity = new AtomicBoolean(false);
+        this.stripes = newStripes(stripes);
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe<>(capacity);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Stripe<T>[] newStripes(int count) {
+        return (Stripe<T>[]) Array.newInstance(Stripe.class, count);
     }
 
     @Override
@@ -43,46 +63,29 @@ public class ConcurrentStreamSummary<T> implements ITopK<T> {
         return offer(element, 1);
     }
 
+    /**
+     * @return false if the element was already in the top of the stripe that counted it
+     */
     @Override
     public boolean offer(T element, int incrementCount) {
-        long val = incrementCount;
-        ScoredItem<T> value = new ScoredItem<>(element, incrementCount);
-        ScoredItem<T> oldVal = itemMap.putIfAbsent(element, value);
-
-        if (oldVal != null) {
-            val = oldVal.addAndGetCount(incrementCount);
-        } else if (reachCapacity.get() || size.incrementAndGet() > capacity) {
-            reachCapacity.set(true);
-
-            ScoredItem<T> oldMinVal = minVal.getAndSet(value);
-            itemMap.remove(oldMinVal.getItem());
-
-            while (oldMinVal.isNewItem()) {
-                // Wait for the oldMinVal so its error and value are completely up to date.
-                // no thread.sleep here due to the overhead of calling it - the waiting time will be microseconds.
+        int home = (int) (Thread.currentThread().getId() % stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe<T> stripe = stripes[(home + i) % stripes.length];
+            if (stripe.lock.tryLock()) {
+                try {
+                    return stripe.summary.offer(element, incrementCount);
+                } finally {
+                    stripe.lock.unlock();
+                }
             }
-
-            long count = oldMinVal.getCount();
-            value.addAndGetCount(count);
-            value.setError(count);
         }
-
-        value.setNewItem(false);
-        minVal.set(getMinValue());
-
-        return val != incrementCount;
-    }
-
-    private ScoredItem<T> getMinValue() {
-        ScoredItem<T> minVal = null;
-
-        for (ScoredItem<T> entry : itemMap.values()) {
-            if (minVal == null || (!entry.isNewItem() && entry.getCount() < minVal.getCount())) {
-                minVal = entry;
-            }
+        Stripe<T> stripe = stripes[home];
+        stripe.lock.lock();
+        try {
+            return stripe.summary.offer(element, incrementCount);
+        } finally {
+            stripe.lock.unlock();
         }
-
-        return minVal;
     }
 
     @Override
@@ -90,13 +93,15 @@ public class ConcurrentStreamSummary<T> implements ITopK<T> {
         StringBuilder sb = new StringBuilder();
         sb.append('[');
 
-        for (ScoredItem<T> entry : itemMap.values()) {
+        for (ScoredItem<T> entry : peekWithScores(capacity)) {
             sb.append('(').append(entry.getCount()).append(": ")
                .append(entry.getItem()).append(", e: ").append(entry.getError())
                .append("),");
         }
 
-        sb.deleteCharAt(sb.length() - 1);
+        if (sb.length() > 1) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
         sb.append(']');
         return sb.toString();
     }
@@ -111,11 +116,42 @@ public class ConcurrentStreamSummary<T> implements ITopK<T> {
         return toReturn;
     }
 
+    /**
+     * @return up to {@code k} elements with their merged counts and errors, highest count first. Offers made while
+     * the stripes are merged may or may not be counted.
+     */
     public List<ScoredItem<T>> peekWithScores(int k) {
-        List<ScoredItem<T>> values = new ArrayList<>();
-        for (Map.Entry<T, ScoredItem<T>> entry : itemMap.entrySet()) {
-            ScoredItem<T> value = entry.getValue();
-            values.add(new ScoredItem<>(value.getItem(), value.getCount(), value.getError()));
+        Map<T, Merged> merged = new HashMap<>();
+        long minCounts = 0;
+        for (Stripe<T> stripe : stripes) {
+            List<ScoredItem<T>> counters;
+            long minCount;
+            stripe.lock.lock();
+            try {
+                counters = stripe.summary.peekWithScores(capacity);
+                minCount = stripe.summary.getMinCount();
+            } finally {
+                stripe.lock.unlock();
+            }
+            minCounts += minCount;
+            for (ScoredItem<T> counter : counters) {
+                Merged value = merged.get(counter.getItem());
+                if (value == null) {
+                    value = new Merged();
+                    merged.put(counter.getItem(), value);
+                }
+                value.count += counter.getCount();
+                value.error += counter.getError();
+                value.minCountsTracked += minCount;
+            }
+        }
+
+        List<ScoredItem<T>> values = new ArrayList<>(merged.size());
+        for (Map.Entry<T, Merged> entry : merged.entrySet()) {
+            Merged value = entry.getValue();
+            // the element may have been counted up to the lowest count of every stripe that does not track it
+            long untracked = minCounts - value.minCountsTracked;
+            values.add(new ScoredItem<>(entry.getKey(), value.count + untracked, value.error + untracked));
         }
         Collections.sort(values);
         values = values.size() > k ? values.subList(0, k) : values;
@@ -162,4 +198,19 @@ public class ConcurrentStreamSummary<T> implements ITopK<T> {
 
         return sb.toString();
     }
+
+    private static final class Stripe<T> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StreamSummary<T> summary;
+
+        private Stripe(int capacity) {
+            this.summary = new StreamSummary<>(capacity);
+        }
+    }
+
+    private static final class Merged {
+        private long count;
+        private long error;
+        private long minCountsTracked;
+    }
 }
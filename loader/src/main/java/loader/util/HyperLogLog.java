@@ -0,0 +1,89 @@
+package loader.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate count of distinct values, after <i>HyperLogLog: the analysis of a near-optimal cardinality
+ * estimation algorithm</i> by Flajolet, Fusy, Gandouet and Meunier.
+ * <p/>
+ * Values are offered as 64 bit hashes. The top {@code precision} bits pick a register, which keeps the longest
+ * run of leading zeros seen in the rest. With 2^precision registers the standard error is about
+ * 1.04 / sqrt(2^precision), 0.8% at the default precision of 14. A register only ever grows, so it is updated
+ * with a compare-and-set and threads offering at once never wait on each other. The 64 bit hash needs no large
+ * range correction; small counts are estimated by linear counting.
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final AtomicIntegerArray registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18, was " + precision);
+        }
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+    }
+
+    public void offerHash(long hash) {
+        int register = (int) (hash >>> (Long.SIZE - precision));
+        // the position of the first set bit after the register bits; the sentinel bit caps it for all zeros
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        int current = registers.get(register);
+        while (rank > current) {
+            if (registers.compareAndSet(register, current, rank)) {
+                return;
+            }
+            current = registers.get(register);
+        }
+    }
+
+    public long cardinality() {
+        int m = registers.length();
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            int value = registers.get(i);
+            sum += 1.0d / (1L << value);
+            if (value == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5d * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673d;
+            case 32:
+                return 0.697d;
+            case 64:
+                return 0.709d;
+            default:
+                return 0.7213d / (1 + 1.079d / m);
+        }
+    }
+
+    /**
+     * Spread the bits of a value that is not a hash already, such as a number or a {@code hashCode()}. The
+     * finalizer of MurmurHash3.
+     */
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,378 @@
+package loader.util;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+import cp.model.Constants;
+import loader.cli.CLILoaderRuntimeException;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sliding window over asynchronous writes. A slot is taken before each executeAsync and handed back by the
+ * future's completion callback, so a constant number of writes stay in flight instead of the writer stalling
+ * on every write of a batch before issuing the next one.
+ * <p/>
+ * The window is either a fixed size or follows an {@link AdaptiveConcurrencyLimit}. Writes that fail because
+ * the cluster is congested can be retried: they are queued by the callback and executed again by the writer
+ * thread ahead of new writes, once the (by then usually lower) limit allows it and a backoff has passed. The
+ * backoff doubles with every attempt up to a bound, and is jittered so the retries of a burst of failures do not
+ * all arrive at once. A write that finds no host available is neither retried nor set aside: the cluster is out of
+ * reach, so the load fails.
+ * <p/>
+ * Windows that share a {@link WriteBudget} also take a slot of the budget for each write.
+ * <p/>
+ * A {@link FailureHandler} may set aside writes that fail and are not retried, with the context they were
+ * executed with, so the load goes on without them. The first failed write that is not retried or set aside is
+ * remembered and rethrown on the next call to {@link #execute}
+ * or {@link #drain}. Completed and failed counts are in rows, so a batch of n rows counts n once it completes.
+ * Writes are expected from a single thread.
+ */
+public class InFlightWindow {
+
+    /**
+     * Decides what becomes of a write that failed for good. Called from the driver's callback threads.
+     */
+    public interface FailureHandler {
+
+        /**
+         * @param context what the write was executed with, such as the rows it carries
+         * @param failure why the write failed
+         * @return true if the write is set aside and the load goes on, false to fail the load
+         */
+        boolean onFailure(Object context, Throwable failure);
+    }
+
+    private final int size;
+    private final AdaptiveConcurrencyLimit adaptiveLimit;
+    private final int maxRetries;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final Set<ResultSetFuture> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private WriteBudget budget;
+    private LoaderMetrics metrics;
+    private FailureHandler failureHandler;
+    private long retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Constants.LOADER_RETRY_BACKOFF_MS);
+    private long maxRetryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Constants.LOADER_MAX_RETRY_BACKOFF_MS);
+
+    // the session of the last write, for the retries executed while draining; only used by the writer thread
+    private Session session;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+    // guarded by lock
+    private int inFlightCount = 0;
+    private final Queue<Write> retries = new ArrayDeque<>();
+
+    public InFlightWindow(int size) {
+        this(size, 0);
+    }
+
+    /**
+     * @param size       writes in flight at once
+     * @param maxRetries times a write that failed on congestion is tried again before the load fails
+     */
+    public InFlightWindow(int size, int maxRetries) {
+        if (size < 1) {
+            throw new IllegalArgumentException("In-flight window size must be positive, was " + size);
+        }
+        this.size = size;
+        this.adaptiveLimit = null;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param adaptiveLimit the limit that sets how many writes are in flight at once
+     * @param maxRetries    times a write that failed on congestion is tried again before the load fails
+     */
+    public InFlightWindow(AdaptiveConcurrencyLimit adaptiveLimit, int maxRetries) {
+        this.size = adaptiveLimit.getMaxLimit();
+        this.adaptiveLimit = adaptiveLimit;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Share a budget of writes in flight with other windows. Call before the first write.
+     */
+    public void setBudget(WriteBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Record the latency and outcome of every write. Call before the first write.
+     */
+    public void setMetrics(LoaderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set aside writes that fail for good instead of failing the load. Call before the first write.
+     */
+    public void setFailureHandler(FailureHandler failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Wait before a retry: {@code initial} before the first, twice as long before each one after it, up to
+     * {@code max}, each wait cut by a random share of up to a half. Call before the first write.
+     */
+    public void setRetryBackoff(long initial, long max, TimeUnit unit) {
+        this.retryBackoffNanos = unit.toNanos(initial);
+        this.maxRetryBackoffNanos = unit.toNanos(max);
+    }
+
+    /**
+     * Execute a statement once a slot in the window is free.
+     *
+     * @throws CLILoaderRuntimeException if an earlier write has failed
+     */
+    public ResultSetFuture execute(Session session, Statement statement) {
+        return execute(session, statement, 1);
+    }
+
+    /**
+     * Execute a statement that writes {@code rows} rows, such as a batch, once a slot in the window is free.
+     *
+     * @throws CLILoaderRuntimeException if an earlier write has failed
+     */
+    public ResultSetFuture execute(Session session, Statement statement, int rows) {
+        return execute(session, statement, rows, null);
+    }
+
+    /**
+     * Execute a statement that writes {@code rows} rows once a slot in the window is free.
+     *
+     * @param context handed to the {@link FailureHandler} if the write fails for good
+     * @throws CLILoaderRuntimeException if an earlier write has failed
+     */
+    public ResultSetFuture execute(Session session, Statement statement, int rows, Object context) {
+        this.session = session;
+        executeRetries(session);
+        rethrowFailure();
+        acquire();
+        return submit(session, new Write(statement, rows, 0, context, 0L));
+    }
+
+    /**
+     * Block until every write issued so far has completed, including retries.
+     *
+     * @throws CLILoaderRuntimeException if any write has failed
+     */
+    public void drain() {
+        while (true) {
+            lock.lock();
+            try {
+                while (inFlightCount > 0 && retries.isEmpty()) {
+                    slotReleased.awaitUninterruptibly();
+                }
+                if (retries.isEmpty()) {
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+            executeRetries(session);
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * Cancel whatever is still in flight. Safe to call from a shutdown hook.
+     */
+    public void cancelPending() {
+        for (ResultSetFuture future : inFlight) {
+            future.cancel(true);
+        }
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return writes executed again after failing on congestion
+     */
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlightCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current number of writes allowed in flight
+     */
+    public int getSize() {
+        return adaptiveLimit == null ? size : adaptiveLimit.getLimit();
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (inFlightCount >= getSize() && adaptiveLimit != null) {
+                adaptiveLimit.onLimitReached();
+            }
+            while (inFlightCount >= getSize()) {
+                slotReleased.awaitUninterruptibly();
+            }
+            inFlightCount++;
+        } finally {
+            lock.unlock();
+        }
+        if (budget != null) {
+            budget.acquire();
+        }
+    }
+
+    private void executeRetries(Session session) {
+        while (true) {
+            Write retry;
+            lock.lock();
+            try {
+                retry = retries.poll();
+            } finally {
+                lock.unlock();
+            }
+            if (retry == null) {
+                return;
+            }
+            long wait = retry.notBefore - System.nanoTime();
+            if (wait > 0) {
+                Uninterruptibles.sleepUninterruptibly(wait, TimeUnit.NANOSECONDS);
+            }
+            acquire();
+            retried.incrementAndGet();
+            submit(session, retry);
+        }
+    }
+
+    private ResultSetFuture submit(Session session, Write write) {
+        long started = System.nanoTime();
+        ResultSetFuture future;
+        try {
+            future = session.executeAsync(write.statement);
+        } catch (RuntimeException e) {
+            release(null, null);
+            throw e;
+        }
+        inFlight.add(future);
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                long latency = System.nanoTime() - started;
+                if (adaptiveLimit != null) {
+                    adaptiveLimit.onSuccess(latency);
+                }
+                if (metrics != null) {
+                    metrics.writeCompleted(latency, write.rows, true);
+                }
+                completed.addAndGet(write.rows);
+                release(future, null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                long latency = System.nanoTime() - started;
+                if (adaptiveLimit != null) {
+                    adaptiveLimit.onFailure(latency, t);
+                }
+                if (metrics != null) {
+                    metrics.writeCompleted(latency, write.rows, false);
+                }
+                if (write.attempt < maxRetries && AdaptiveConcurrencyLimit.isCongestion(t) && firstFailure.get() == null) {
+                    release(future, new Write(write.statement, write.rows, write.attempt + 1, write.context,
+                       System.nanoTime() + backoff(write.attempt + 1)));
+                } else if (failureHandler != null && firstFailure.get() == null && !(t instanceof NoHostAvailableException) &&
+                   failureHandler.onFailure(write.context, t)) {
+                    failed.addAndGet(write.rows);
+                    release(future, null);
+                } else {
+                    failed.addAndGet(write.rows);
+                    firstFailure.compareAndSet(null, t);
+                    release(future, null);
+                }
+            }
+        });
+        return future;
+    }
+
+    private void release(ResultSetFuture future, Write retry) {
+        if (future != null) {
+            inFlight.remove(future);
+        }
+        if (budget != null) {
+            budget.release();
+        }
+        lock.lock();
+        try {
+            // queue the retry with the release, so drain never sees an empty window with a retry on the way
+            if (retry != null) {
+                retries.add(retry);
+            }
+            inFlightCount--;
+            slotReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return nanoseconds to wait before the given attempt, between half and all of its exponential backoff
+     */
+    private long backoff(int attempt) {
+        long backoff = Math.min(maxRetryBackoffNanos, retryBackoffNanos << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private void rethrowFailure() {
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            throw new CLILoaderRuntimeException("Write failed after " + completed.get() + " rows were written", failure);
+        }
+    }
+
+    private static class Write {
+        final Statement statement;
+        final int rows;
+        final int attempt;
+        final Object context;
+        // System.nanoTime() before which the write is not executed
+        final long notBefore;
+
+        Write(Statement statement, int rows, int attempt, Object context, long notBefore) {
+            this.statement = statement;
+            this.rows = rows;
+            this.attempt = attempt;
+            this.context = context;
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -1,83 +1,217 @@
 package loader.util;
 
 import com.google.common.base.Stopwatch;
+import org.json.JSONObject;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counters and write latencies of a load, safe to update from every parse worker and driver callback at once.
+ * <p/>
+ * Counters are {@link LongAdder}s and latencies go into a {@link LatencyHistogram}, so updates on the hot path
+ * never wait on each other. Readers take a {@link Snapshot}; the difference between two snapshots gives the
+ * rates and latency percentiles of the time between them.
+ */
 public class LoaderMetrics {
 
-    private Long rowsInserted;
-    private Long rowsRejected;
-    private Long bytesProcessed;
-    private Float bytesPerSecond;
-    private Float rowsPerhour;
-
-    private Stopwatch stopwatch;
-    private boolean startReadingMetrics;
-
-    public static LoaderMetrics startMetrics(){
-        LoaderMetrics loaderMetrics = new LoaderMetrics();
-        loaderMetrics.stopwatch = Stopwatch.createStarted();
-        loaderMetrics.rowsInserted = new Long(0);
-        loaderMetrics.rowsRejected = new Long(0);
-        loaderMetrics.startReadingMetrics = true;
-        return loaderMetrics;
+    private final LongAdder rowsInserted = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder rowsSkipped = new LongAdder();
+    private final LongAdder rowsUnchanged = new LongAdder();
+    private final LongAdder bytesProcessed = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final Stopwatch stopwatch;
+
+    private LoaderMetrics() {
+        this.stopwatch = Stopwatch.createStarted();
     }
 
-    public void rowInserted(Long bytes){
-        bytesProcessed = bytesProcessed + bytes;
-        rowsInserted++;
+    public static LoaderMetrics startMetrics() {
+        return new LoaderMetrics();
     }
 
-    public void rowJected(Long bytes){
-        bytesProcessed = bytesProcessed + bytes;
-        rowsRejected++;
+    /**
+     * @param bytes input consumed, such as a line and its terminator
+     */
+    public void bytesProcessed(long bytes) {
+        bytesProcessed.add(bytes);
     }
 
-    public void increaseRowsInsertedCount() throws MetricsException{
-        if(startReadingMetrics){
-            throw new MetricsException("Loader Metrics did not start. startMetrics() was not called.");
-        }else{
-            rowsInserted++;
-        }
+    public void rowRejected() {
+        rowsRejected.increment();
     }
 
-    public void increaseRowsRejectedCount() throws MetricsException{
-        if(startReadingMetrics){
-            throw new MetricsException("Loader Metrics did not start. startMetrics() was not called.");
-        }else{
-            rowsRejected++;
+    /**
+     * Record a row left out because its key was loaded already.
+     */
+    public void duplicateSkipped() {
+        rowsSkipped.increment();
+    }
+
+    /**
+     * Record a row left out because the previous snapshot of the feed had it already.
+     */
+    public void rowUnchanged() {
+        rowsUnchanged.increment();
+    }
+
+    /**
+     * Record a completed write, from the completion callback of its future.
+     *
+     * @param latencyNanos time from executing the write to its completion
+     * @param rows         rows the write carried, more than one for a batch
+     * @param succeeded    false if the write failed, whether or not it is retried
+     */
+    public void writeCompleted(long latencyNanos, int rows, boolean succeeded) {
+        writes.increment();
+        writeLatency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        if (succeeded) {
+            rowsInserted.add(rows);
+        } else {
+            writeFailures.increment();
         }
     }
 
-    public void stopMetrics() throws MetricsException{
-        if(startReadingMetrics){
-            throw new MetricsException("Loader Metrics did not start. startMetrics() was not called.");
-        }else{
+    public void stopMetrics() {
+        if (stopwatch.isRunning()) {
             stopwatch.stop();
-            bytesPerSecond = ( bytesProcessed / (float) stopwatch.elapsed(TimeUnit.SECONDS));
-            rowsPerhour = ( (rowsInserted + rowsRejected ) /  ( (float) stopwatch.elapsed(TimeUnit.SECONDS) / (float) 3600) );
-            startReadingMetrics = false;
         }
     }
 
-    public String getrecordedMetrics() {
-        return "LoaderMetrics{" +
-           "rowsInserted=" + rowsInserted +
-           ", rowsRejected=" + rowsRejected +
-           ", bytesProcessed=" + bytesProcessed +
-           ", bytesPerSecond=" + bytesPerSecond +
-           ", rowsPerhour=" + rowsPerhour +
-           ", stopwatch=" + stopwatch +
-           ", startReadingMetrics=" + startReadingMetrics +
-           '}';
+    public Snapshot snapshot() {
+        return new Snapshot(stopwatch.elapsed(TimeUnit.MILLISECONDS), rowsInserted.sum(), rowsRejected.sum(),
+           rowsSkipped.sum(), rowsUnchanged.sum(), bytesProcessed.sum(), writes.sum(), writeFailures.sum(), writeLatency.snapshot());
     }
 
-    class MetricsException extends Exception{
-        private String exceptionMessage;
+    /**
+     * The metrics of a load at one point in time, or between two points in time.
+     */
+    public static class Snapshot {
+        private final long elapsedMillis;
+        private final long rowsInserted;
+        private final long rowsRejected;
+        private final long rowsSkipped;
+        private final long rowsUnchanged;
+        private final long bytesProcessed;
+        private final long writes;
+        private final long writeFailures;
+        private final LatencyHistogram.Snapshot writeLatency;
+
+        private Snapshot(long elapsedMillis, long rowsInserted, long rowsRejected, long rowsSkipped,
+                         long rowsUnchanged, long bytesProcessed, long writes, long writeFailures, LatencyHistogram.Snapshot writeLatency) {
+            this.elapsedMillis = elapsedMillis;
+            this.rowsInserted = rowsInserted;
+            this.rowsRejected = rowsRejected;
+            this.rowsSkipped = rowsSkipped;
+            this.rowsUnchanged = rowsUnchanged;
+            this.bytesProcessed = bytesProcessed;
+            this.writes = writes;
+            this.writeFailures = writeFailures;
+            this.writeLatency = writeLatency;
+        }
+
+        /**
+         * @return what happened after {@code earlier} was taken
+         */
+        public Snapshot since(Snapshot earlier) {
+            return new Snapshot(elapsedMillis - earlier.elapsedMillis, rowsInserted - earlier.rowsInserted,
+               rowsRejected - earlier.rowsRejected, rowsSkipped - earlier.rowsSkipped,
+               rowsUnchanged - earlier.rowsUnchanged, bytesProcessed - earlier.bytesProcessed, writes - earlier.writes,
+               writeFailures - earlier.writeFailures, writeLatency.since(earlier.writeLatency));
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getRowsInserted() {
+            return rowsInserted;
+        }
+
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        /**
+         * @return rows left out as duplicates of a key loaded already
+         */
+        public long getRowsSkipped() {
+            return rowsSkipped;
+        }
+
+        /**
+         * @return rows left out as unchanged since the previous snapshot
+         */
+        public long getRowsUnchanged() {
+            return rowsUnchanged;
+        }
+
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getWriteFailures() {
+            return writeFailures;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis > 0 ? rowsInserted * 1000.0d / elapsedMillis : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedMillis > 0 ? bytesProcessed * 1000.0d / elapsedMillis : 0;
+        }
+
+        /**
+         * @param quantile between 0 and 1, such as 0.99
+         * @return write latency at the quantile, in milliseconds
+         */
+        public double getWriteLatencyMillis(double quantile) {
+            return writeLatency.getValueAt(quantile) / 1000.0d;
+        }
+
+        public double getMaxWriteLatencyMillis() {
+            return writeLatency.getMax() / 1000.0d;
+        }
+
+        public JSONObject toJSON() {
+            return new JSONObject()
+               .put("elapsedMs", elapsedMillis)
+               .put("rowsInserted", rowsInserted)
+               .put("rowsRejected", rowsRejected)
+               .put("rowsSkipped", rowsSkipped)
+               .put("rowsUnchanged", rowsUnchanged)
+               .put("bytesProcessed", bytesProcessed)
+               .put("writes", writes)
+               .put("writeFailures", writeFailures)
+               .put("rowsPerSecond", getRowsPerSecond())
+               .put("bytesPerSecond", getBytesPerSecond())
+               .put("writeLatencyMs", new JSONObject()
+                  .put("p50", getWriteLatencyMillis(0.5))
+                  .put("p99", getWriteLatencyMillis(0.99))
+                  .put("p999", getWriteLatencyMillis(0.999))
+                  .put("max", getMaxWriteLatencyMillis()));
+        }
 
-        public MetricsException(String exceptionMessage){
-            this.exceptionMessage = exceptionMessage;
+        @Override
+        public String toString() {
+            return "LoaderMetrics{" +
+               "elapsedMillis=" + elapsedMillis +
+               ", rowsInserted=" + rowsInserted +
+               ", rowsRejected=" + rowsRejected +
+               ", rowsSkipped=" + rowsSkipped +
+               ", rowsUnchanged=" + rowsUnchanged +
+               ", bytesProcessed=" + bytesProcessed +
+               ", writes=" + writes +
+               ", writeFailures=" + writeFailures +
+               '}';
         }
     }
 }
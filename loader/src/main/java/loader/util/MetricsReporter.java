@@ -0,0 +1,104 @@
+package loader.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the throughput and write latency percentiles of a load at a fixed interval, for the interval just past.
+ * <p/>
+ * Optionally appends every report as one JSON object per line to a file, so long loads can be charted
+ * afterwards. Reports are taken from a {@link LoaderMetrics} snapshot on a thread of their own; the load itself
+ * does no extra work for them.
+ */
+public class MetricsReporter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private final LoaderMetrics metrics;
+    private final String label;
+    private final File jsonFile;
+    private final ScheduledExecutorService scheduler;
+    private LoaderMetrics.Snapshot previous;
+    private boolean jsonFailed = false;
+
+    /**
+     * @param metrics  the metrics to report
+     * @param label    name of the load in the reports, such as the input file name
+     * @param interval time between reports
+     * @param unit     unit of {@code interval}
+     * @param jsonFile file to append JSON snapshots to, or null
+     */
+    public MetricsReporter(LoaderMetrics metrics, String label, long interval, TimeUnit unit, File jsonFile) {
+        this.metrics = metrics;
+        this.label = label;
+        this.jsonFile = jsonFile;
+        this.previous = metrics.snapshot();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+           .setNameFormat("loader-metrics-%d")
+           .setDaemon(true)
+           .build());
+        scheduler.scheduleAtFixedRate(this::report, interval, interval, unit);
+    }
+
+    synchronized void report() {
+        try {
+            LoaderMetrics.Snapshot current = metrics.snapshot();
+            LoaderMetrics.Snapshot interval = current.since(previous);
+            previous = current;
+            log.info("[{}] {} rows/s, {} MiB/s, write latency p50 {} ms, p99 {} ms, p999 {} ms over {} writes ({} failed). " +
+                  "{} rows inserted, {} rejected, {} duplicates skipped, {} unchanged so far.", label, String.format("%.0f", interval.getRowsPerSecond()),
+               format(interval.getBytesPerSecond() / (1024 * 1024)), format(interval.getWriteLatencyMillis(0.5)),
+               format(interval.getWriteLatencyMillis(0.99)), format(interval.getWriteLatencyMillis(0.999)),
+               interval.getWrites(), interval.getWriteFailures(), current.getRowsInserted(), current.getRowsRejected(),
+               current.getRowsSkipped(), current.getRowsUnchanged());
+            if (jsonFile != null) {
+                writeJSON(current, interval);
+            }
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule
+            log.warn("Unable to report load metrics", e);
+        }
+    }
+
+    private void writeJSON(LoaderMetrics.Snapshot total, LoaderMetrics.Snapshot interval) {
+        JSONObject json = new JSONObject()
+           .put("time", System.currentTimeMillis())
+           .put("load", label)
+           .put("interval", interval.toJSON())
+           .put("total", total.toJSON());
+        try {
+            // one line per write, so the reports of several loads appending to the same file do not interleave
+            Files.write(jsonFile.toPath(), (json.toString() + "\n").getBytes(StandardCharsets.UTF_8),
+               StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            if (!jsonFailed) {
+                jsonFailed = true;
+                log.warn("Unable to write metrics snapshots to {}", jsonFile, e);
+            }
+        }
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    /**
+     * Stop reporting, after one last report of the interval since the previous one.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        report();
+    }
+}
@@ -0,0 +1,238 @@
+package loader.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Set of 128 bit key fingerprints, optionally with a long value per key, kept outside the heap.
+ * <p/>
+ * Fingerprints are stored in open-addressing tables with linear probing, in direct buffers, so millions of keys
+ * cost 16 bytes each (24 with values) and nothing for the garbage collector to trace. At 128 bits two distinct
+ * keys share a fingerprint with a probability of about n^2 / 2^129, which for any file that fits on a disk is
+ * as good as exact.
+ * <p/>
+ * The keys are spread over segments by their fingerprint, each a table behind a lock of its own, so parse
+ * workers rarely wait on each other. A segment doubles when it is three quarters full, as long as the memory of
+ * all segments stays within the bound; a key that finds no room is not recorded and is counted as untracked.
+ * The all-zero fingerprint marks an empty slot, so it is stored as a fingerprint of 1 instead.
+ */
+public class OffHeapKeySet {
+    private static final int SEGMENTS = 64;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final boolean withValues;
+    private final int slotBytes;
+    private final long maxBytes;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final LongAdder untracked = new LongAdder();
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param maxBytes   memory all tables together may take
+     * @param withValues whether to keep a value per key, see {@link #putMax}
+     */
+    public OffHeapKeySet(long maxBytes, boolean withValues) {
+        this.withValues = withValues;
+        this.slotBytes = withValues ? 24 : 16;
+        this.maxBytes = maxBytes;
+        if (maxBytes < (long) SEGMENTS * INITIAL_SLOTS * slotBytes) {
+            throw new IllegalArgumentException("At least " + (SEGMENTS * INITIAL_SLOTS * slotBytes) +
+               " bytes are needed, was " + maxBytes);
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(INITIAL_SLOTS);
+        }
+    }
+
+    /**
+     * Add a key.
+     *
+     * @return false if the key was already in the set; true if it was added, or could not be for lack of room
+     */
+    public boolean add(long high, long low) {
+        long stored = low == 0 && high == 0 ? 1 : low;
+        Segment segment = segment(high);
+        segment.lock.lock();
+        try {
+            int slot = segment.find(high, stored);
+            if (slot >= 0) {
+                return false;
+            }
+            segment.insert(-slot - 1, high, stored, 0);
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Record a value for a key, keeping the highest value recorded for it.
+     */
+    public void putMax(long high, long low, long value) {
+        checkValues();
+        long stored = low == 0 && high == 0 ? 1 : low;
+        Segment segment = segment(high);
+        segment.lock.lock();
+        try {
+            int slot = segment.find(high, stored);
+            if (slot >= 0) {
+                if (segment.value(slot) < value) {
+                    segment.table.putLong(slot * slotBytes + 16, value);
+                }
+            } else {
+                segment.insert(-slot - 1, high, stored, value);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the value recorded for a key, or -1 if the key is not in the set
+     */
+    public long get(long high, long low) {
+        checkValues();
+        Segment segment = segment(high);
+        segment.lock.lock();
+        try {
+            int slot = segment.find(high, low == 0 && high == 0 ? 1 : low);
+            return slot >= 0 ? segment.value(slot) : -1;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private void checkValues() {
+        if (!withValues) {
+            throw new IllegalStateException("This set keeps no values");
+        }
+    }
+
+    private Segment segment(long high) {
+        // the low bits of the fingerprint pick the slot, so the segment comes from the top bits
+        return segments[(int) (high >>> (Long.SIZE - 6))];
+    }
+
+    /**
+     * @return keys in the set
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return keys that were not recorded because the memory bound was reached
+     */
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    /**
+     * @return memory taken by the tables
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private ByteBuffer table;
+        private int mask;
+        private int size;
+
+        private Segment(int slots) {
+            allocatedBytes.addAndGet((long) slots * slotBytes);
+            this.table = ByteBuffer.allocateDirect(slots * slotBytes);
+            this.mask = slots - 1;
+        }
+
+        /**
+         * @return the slot of the key, or -(empty slot where it belongs) - 1
+         */
+        private int find(long high, long low) {
+            int slot = (int) low & mask;
+            while (true) {
+                int offset = slot * slotBytes;
+                long storedHigh = table.getLong(offset);
+                long storedLow = table.getLong(offset + 8);
+                if (storedHigh == 0 && storedLow == 0) {
+                    return -slot - 1;
+                }
+                if (storedHigh == high && storedLow == low) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private long value(int slot) {
+            return table.getLong(slot * slotBytes + 16);
+        }
+
+        /**
+         * Add a key at the empty slot where it belongs, unless there is no room left for it.
+         */
+        private void insert(int slot, long high, long low, long value) {
+            if ((size + 1) * 4L > (mask + 1) * 3L) {
+                if (!grow()) {
+                    // a full table must keep empty slots for lookups to end
+                    untracked.increment();
+                    return;
+                }
+                slot = -find(high, low) - 1;
+            }
+            write(slot, high, low, value);
+            size++;
+        }
+
+        private void write(int slot, long high, long low, long value) {
+            int offset = slot * slotBytes;
+            table.putLong(offset, high);
+            table.putLong(offset + 8, low);
+            if (withValues) {
+                table.putLong(offset + 16, value);
+            }
+        }
+
+        private boolean grow() {
+            int slots = (mask + 1) * 2;
+            long bytes = (long) slots * slotBytes;
+            if (bytes > Integer.MAX_VALUE) {
+                return false;
+            }
+            long allocated;
+            do {
+                allocated = allocatedBytes.get();
+                if (allocated + bytes > maxBytes) {
+                    return false;
+                }
+            } while (!allocatedBytes.compareAndSet(allocated, allocated + bytes));
+            ByteBuffer old = table;
+            int oldSlots = mask + 1;
+            table = ByteBuffer.allocateDirect((int) bytes);
+            mask = slots - 1;
+            for (int slot = 0; slot < oldSlots; slot++) {
+                int offset = slot * slotBytes;
+                long high = old.getLong(offset);
+                long low = old.getLong(offset + 8);
+                if (high != 0 || low != 0) {
+                    write(-find(high, low) - 1, high, low, withValues ? old.getLong(offset + 16) : 0);
+                }
+            }
+            // the old table goes when the garbage collector finds its buffer
+            allocatedBytes.addAndGet(-(long) oldSlots * slotBytes);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package loader.util;
+
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Records the outcome of every row of a file as one status record per chunk of rows, instead of one per row.
+ * <p/>
+ * Rows are numbered from 1, and chunk n covers rows {@code n * chunkRows + 1} to {@code (n + 1) * chunkRows}. A
+ * record carries the range of rows recorded in its chunk, the rows that succeeded and failed, and a bitmap of the
+ * failed rows by their offset from the first row of the record. {@link StatusChunks} reads the records back, row by
+ * row.
+ * <p/>
+ * Rows may be recorded from any thread and in any order, such as from the callbacks of their writes as they
+ * complete. Once every row of a chunk is recorded, its record is queued; the loading thread hands the queued
+ * records to the sink with {@link #writeCompleted()}, so the sink is never called from a callback.
+ */
+public class StatusChunkRecorder {
+    private final String keyspace;
+    private final long runId;
+    private final String loaderName;
+    private final String source;
+    private final int chunkRows;
+    private final Consumer<Statement> sink;
+
+    private final ConcurrentHashMap<Long, Chunk> open = new ConcurrentHashMap<>();
+    private final Queue<Statement> completed = new ConcurrentLinkedQueue<>();
+    private long chunksWritten;
+
+    /**
+     * @param source    the file the rows come from, as rows are numbered per file
+     * @param chunkRows rows covered by a chunk at most
+     * @param sink      writes the record of a chunk; only called by the loading thread
+     */
+    public StatusChunkRecorder(String keyspace, long runId, String loaderName, String source, int chunkRows,
+                               Consumer<Statement> sink) {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("A chunk covers at least one row, was " + chunkRows);
+        }
+        this.keyspace = keyspace;
+        this.runId = runId;
+        this.loaderName = loaderName;
+        this.source = source;
+        this.chunkRows = chunkRows;
+        this.sink = sink;
+    }
+
+    /**
+     * Record the outcome of a row, once. Safe to call from several threads at once.
+     *
+     * @param rowNumber number of the row in its file, from 1
+     */
+    public void record(long rowNumber, boolean success) {
+        if (rowNumber < 1) {
+            throw new IllegalArgumentException("Rows are numbered from 1, was " + rowNumber);
+        }
+        long index = (rowNumber - 1) / chunkRows;
+        Chunk chunk = open.computeIfAbsent(index, i -> new Chunk(i * chunkRows + 1));
+        boolean full;
+        synchronized (chunk) {
+            full = chunk.record((int) (rowNumber - chunk.start), success) == chunkRows;
+        }
+        if (full && open.remove(index, chunk)) {
+            completed.add(chunk.toStatement());
+        }
+    }
+
+    /**
+     * Hand the records of the chunks whose rows are all recorded to the sink. Call from the loading thread.
+     */
+    public void writeCompleted() {
+        Statement statement;
+        while ((statement = completed.poll()) != null) {
+            sink.accept(statement);
+            chunksWritten++;
+        }
+    }
+
+    /**
+     * Hand the records of every chunk with rows recorded to the sink, whether its rows are all recorded or not.
+     * Call from the loading thread once the outcome of every row is known.
+     */
+    public void flush() {
+        writeCompleted();
+        List<Chunk> partial = new ArrayList<>(open.values());
+        open.clear();
+        Collections.sort(partial, Comparator.comparingLong(chunk -> chunk.start));
+        for (Chunk chunk : partial) {
+            synchronized (chunk) {
+                sink.accept(chunk.toStatement());
+            }
+            chunksWritten++;
+        }
+    }
+
+    /**
+     * @return records handed to the sink so far
+     */
+    public long getChunksWritten() {
+        return chunksWritten;
+    }
+
+    private class Chunk {
+        final long start;
+        // offsets from the start of the chunk
+        final BitSet recorded = new BitSet(chunkRows);
+        final BitSet failedRows = new BitSet(chunkRows);
+        int succeeded;
+        int failed;
+
+        Chunk(long start) {
+            this.start = start;
+        }
+
+        /**
+         * @return rows of the chunk recorded so far
+         */
+        int record(int offset, boolean success) {
+            if (recorded.get(offset)) {
+                throw new IllegalArgumentException("Row " + (start + offset) + " recorded twice");
+            }
+            recorded.set(offset);
+            if (success) {
+                succeeded++;
+            } else {
+                failed++;
+                failedRows.set(offset);
+            }
+            return succeeded + failed;
+        }
+
+        Statement toStatement() {
+            int first = recorded.nextSetBit(0);
+            return QueryBuilder.insertInto(keyspace, StatusChunks.TABLE)
+               .value(StatusChunks.RUN_ID, runId)
+               .value(StatusChunks.LOADER_NAME, loaderName)
+               .value(StatusChunks.SOURCE, source)
+               .value(StatusChunks.FIRST_ROW, start + first)
+               .value(StatusChunks.LAST_ROW, start + recorded.length() - 1)
+               .value(StatusChunks.SUCCEEDED, succeeded)
+               .value(StatusChunks.FAILED, failed)
+               .value(StatusChunks.FAILED_ROWS, ByteBuffer.wrap(failedRows.get(first, chunkRows).toByteArray()))
+               .value(StatusChunks.PROCESSED, "FALSE")
+               .value(StatusChunks.LOAD_DATE, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package loader.util;
+
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
+import cp.model.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reads back the status records of {@link StatusChunkRecorder}, expanding them to the rows they cover.
+ * <p/>
+ * The records are kept in the table of {@link #CREATE_TABLE}, which a load creates with {@link #createTable} if it
+ * is not there yet. The bitmap of failed rows is a {@link BitSet} as {@link BitSet#toByteArray()} writes it, with a bit for every
+ * row from {@code first_row}.
+ */
+public final class StatusChunks {
+    static final String TABLE = Constants.LOADER_STATUS_CHUNK_TABLE;
+    static final String RUN_ID = "runid";
+    static final String LOADER_NAME = "loader_name";
+    static final String SOURCE = "source";
+    static final String FIRST_ROW = "first_row";
+    static final String LAST_ROW = "last_row";
+    static final String SUCCEEDED = "succeeded";
+    static final String FAILED = "failed";
+    static final String FAILED_ROWS = "failed_rows";
+    static final String PROCESSED = "processed";
+    static final String LOAD_DATE = "load_date";
+
+    /**
+     * The table of the status records, in the keyspace given as the format argument.
+     */
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS %s." + TABLE + " (" +
+       RUN_ID + " bigint, " +
+       LOADER_NAME + " text, " +
+       SOURCE + " text, " +
+       FIRST_ROW + " bigint, " +
+       LAST_ROW + " bigint, " +
+       SUCCEEDED + " int, " +
+       FAILED + " int, " +
+       FAILED_ROWS + " blob, " +
+       PROCESSED + " text, " +
+       LOAD_DATE + " timestamp, " +
+       "PRIMARY KEY ((" + RUN_ID + ", " + LOADER_NAME + "), " + SOURCE + ", " + FIRST_ROW + "))";
+
+    private StatusChunks() {
+    }
+
+    /**
+     * Create the table of the status records in the keyspace, unless it is there already.
+     */
+    public static void createTable(Session session, String keyspace) {
+        session.execute(String.format(CREATE_TABLE, keyspace));
+    }
+
+    /**
+     * @return whether the row loaded, or null if no record covers it
+     */
+    public static Boolean rowSucceeded(Session session, String keyspace, long runId, String loaderName, String source,
+                                       long rowNumber) {
+        Select query = QueryBuilder.select(FIRST_ROW, LAST_ROW, FAILED_ROWS).from(keyspace, TABLE)
+           .where(QueryBuilder.eq(RUN_ID, runId))
+           .and(QueryBuilder.eq(LOADER_NAME, loaderName))
+           .and(QueryBuilder.eq(SOURCE, source))
+           .and(QueryBuilder.lte(FIRST_ROW, rowNumber))
+           .orderBy(QueryBuilder.desc(FIRST_ROW))
+           .limit(1);
+        Row chunk = session.execute(query).one();
+        if (chunk == null || chunk.getLong(LAST_ROW) < rowNumber) {
+            return null;
+        }
+        return !failedRows(chunk).get((int) (rowNumber - chunk.getLong(FIRST_ROW)));
+    }
+
+    /**
+     * @return the numbers of the rows of the source that failed to load, in increasing order
+     */
+    public static List<Long> failedRows(Session session, String keyspace, long runId, String loaderName, String source) {
+        Select.Where query = QueryBuilder.select(FIRST_ROW, FAILED, FAILED_ROWS).from(keyspace, TABLE)
+           .where(QueryBuilder.eq(RUN_ID, runId))
+           .and(QueryBuilder.eq(LOADER_NAME, loaderName))
+           .and(QueryBuilder.eq(SOURCE, source));
+        List<Long> rows = new ArrayList<>();
+        for (Row chunk : session.execute(query)) {
+            if (chunk.getInt(FAILED) == 0) {
+                continue;
+            }
+            long firstRow = chunk.getLong(FIRST_ROW);
+            BitSet failed = failedRows(chunk);
+            for (int offset = failed.nextSetBit(0); offset >= 0; offset = failed.nextSetBit(offset + 1)) {
+                rows.add(firstRow + offset);
+            }
+        }
+        return rows;
+    }
+
+    private static BitSet failedRows(Row chunk) {
+        ByteBuffer bitmap = chunk.getBytes(FAILED_ROWS);
+        return bitmap == null ? new BitSet() : BitSet.valueOf(bitmap);
+    }
+}
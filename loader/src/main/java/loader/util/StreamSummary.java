@@ -0,0 +1,227 @@
+package loader.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Based on the <i>Space-Saving</i> algorithm and the <i>Stream-Summary</i>
+ * data structure as described in:
+ * <i>Efficient Computation of Frequent and Top-k Elements in Data Streams</i>
+ * by Metwally, Agrawal, and Abbadi
+ * <p/>
+ * Counters with the same count share a bucket, and the buckets form a doubly-linked list in count order, so
+ * the counter with the lowest count is always at hand and counting an element once moves its counter at most
+ * one bucket along: O(1) per offer. Larger increments walk forward over the buckets they skip.
+ * <p/>
+ * Every count is an overestimate by at most its error: {@code count - error <= true count <= count}.
+ * <p/>
+ * Not thread safe, see {@link ConcurrentStreamSummary} for multithreaded use.
+ *
+ * @param <T> type of data in the stream to be summarized
+ */
+public class StreamSummary<T> implements ITopK<T> {
+
+    private final int capacity;
+    private final Map<T, Counter<T>> counters;
+    private Bucket<T> lowest;
+    private Bucket<T> highest;
+
+    public StreamSummary(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    @Override
+    public boolean offer(T element) {
+        return offer(element, 1);
+    }
+
+    @Override
+    public boolean offer(T element, int incrementCount) {
+        if (incrementCount < 1) {
+            throw new IllegalArgumentException("Increment must be positive, was " + incrementCount);
+        }
+        Counter<T> counter = counters.get(element);
+        if (counter != null) {
+            moveTo(counter, counter.bucket.count + incrementCount);
+            return false;
+        }
+
+        if (counters.size() < capacity) {
+            counter = new Counter<>(element);
+            moveTo(counter, incrementCount);
+        } else {
+            // the element takes over the counter with the lowest count, and with it that count as its error
+            counter = lowest.first;
+            counters.remove(counter.item);
+            counter.item = element;
+            counter.error = lowest.count;
+            moveTo(counter, lowest.count + incrementCount);
+        }
+        counters.put(element, counter);
+        return true;
+    }
+
+    /**
+     * Move a counter to the bucket of {@code count}, which is higher than its current count.
+     */
+    private void moveTo(Counter<T> counter, long count) {
+        Bucket<T> previous = counter.bucket;
+        Bucket<T> smaller = null;
+        Bucket<T> bucket = previous != null ? previous : lowest;
+        while (bucket != null && bucket.count < count) {
+            smaller = bucket;
+            bucket = bucket.larger;
+        }
+        if (bucket == null || bucket.count != count) {
+            bucket = insertBucket(new Bucket<>(count), smaller, bucket);
+        }
+
+        if (previous != null) {
+            previous.remove(counter);
+            if (previous.first == null) {
+                unlinkBucket(previous);
+            }
+        }
+        bucket.add(counter);
+    }
+
+    private Bucket<T> insertBucket(Bucket<T> bucket, Bucket<T> smaller, Bucket<T> larger) {
+        bucket.smaller = smaller;
+        bucket.larger = larger;
+        if (smaller != null) {
+            smaller.larger = bucket;
+        } else {
+            lowest = bucket;
+        }
+        if (larger != null) {
+            larger.smaller = bucket;
+        } else {
+            highest = bucket;
+        }
+        return bucket;
+    }
+
+    private void unlinkBucket(Bucket<T> bucket) {
+        if (bucket.smaller != null) {
+            bucket.smaller.larger = bucket.larger;
+        } else {
+            lowest = bucket.larger;
+        }
+        if (bucket.larger != null) {
+            bucket.larger.smaller = bucket.smaller;
+        } else {
+            highest = bucket.smaller;
+        }
+    }
+
+    @Override
+    public List<T> peek(int k) {
+        List<T> toReturn = new ArrayList<>(Math.min(k, counters.size()));
+        for (Bucket<T> bucket = highest; bucket != null && toReturn.size() < k; bucket = bucket.smaller) {
+            for (Counter<T> counter = bucket.first; counter != null && toReturn.size() < k; counter = counter.next) {
+                toReturn.add(counter.item);
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * @return up to {@code k} elements with their counts and errors, highest count first
+     */
+    public List<ScoredItem<T>> peekWithScores(int k) {
+        List<ScoredItem<T>> toReturn = new ArrayList<>(Math.min(k, counters.size()));
+        for (Bucket<T> bucket = highest; bucket != null && toReturn.size() < k; bucket = bucket.smaller) {
+            for (Counter<T> counter = bucket.first; counter != null && toReturn.size() < k; counter = counter.next) {
+                toReturn.add(new ScoredItem<>(counter.item, bucket.count, counter.error));
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * @return the count an element that is not tracked may have at most: the lowest count once the summary is
+     * full, 0 before that
+     */
+    public long getMinCount() {
+        return counters.size() < capacity ? 0 : lowest.count;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (Bucket<T> bucket = highest; bucket != null; bucket = bucket.smaller) {
+            for (Counter<T> counter = bucket.first; counter != null; counter = counter.next) {
+                sb.append('(').append(bucket.count).append(": ")
+                   .append(counter.item).append(", e: ").append(counter.error)
+                   .append("),");
+            }
+        }
+        if (sb.length() > 1) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private static final class Counter<T> {
+        private T item;
+        private long error;
+        private Bucket<T> bucket;
+        private Counter<T> previous;
+        private Counter<T> next;
+
+        private Counter(T item) {
+            this.item = item;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private final long count;
+        private Counter<T> first;
+        private Bucket<T> smaller;
+        private Bucket<T> larger;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+
+        private void add(Counter<T> counter) {
+            counter.bucket = this;
+            counter.previous = null;
+            counter.next = first;
+            if (first != null) {
+                first.previous = counter;
+            }
+            first = counter;
+        }
+
+        private void remove(Counter<T> counter) {
+            if (counter.previous != null) {
+                counter.previous.next = counter.next;
+            } else {
+                first = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.previous = counter.previous;
+            }
+            counter.bucket = null;
+            counter.previous = null;
+            counter.next = null;
+        }
+    }
+}
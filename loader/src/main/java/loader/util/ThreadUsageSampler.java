@@ -0,0 +1,291 @@
+package loader.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Where the CPU time and the allocations of the process go while it runs, by group of threads.
+ * <p/>
+ * Threads are grouped by name without their number, so all {@code loader-worker-N} threads make one group. The
+ * CPU time and the bytes allocated by every thread are sampled at a fixed interval on a thread of its own, since
+ * a thread that has ended can no longer be asked; a thread that ends between two samples loses at most the last
+ * interval. What the process spent outside the sampled threads, such as on garbage collection and compilation,
+ * is reported apart when the JVM tells the CPU time of the whole process.
+ */
+public class ThreadUsageSampler {
+    private static final Logger log = LoggerFactory.getLogger(ThreadUsageSampler.class);
+    private static final Pattern THREAD_NUMBER = Pattern.compile("-\\d+$");
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.ThreadMXBean allocations;
+    private final com.sun.management.OperatingSystemMXBean os;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, ThreadUsage> usage = new HashMap<>();
+    private final long startNanos;
+    private final long startProcessCpu;
+    private final long startGcCount;
+    private final long startGcMillis;
+    private boolean first = true;
+
+    /**
+     * @param interval time between samples
+     */
+    public ThreadUsageSampler(long interval, TimeUnit unit) {
+        if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean &&
+           ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            log.warn("This JVM does not tell the bytes allocated by every thread; allocations are not reported");
+        }
+        this.allocations = allocations;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        this.os = os instanceof com.sun.management.OperatingSystemMXBean ? (com.sun.management.OperatingSystemMXBean) os : null;
+
+        this.startNanos = System.nanoTime();
+        this.startProcessCpu = processCpuNanos();
+        this.startGcCount = gcCount();
+        this.startGcMillis = gcMillis();
+        sample();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+           .setNameFormat("loader-thread-usage-%d")
+           .setDaemon(true)
+           .build());
+        scheduler.scheduleAtFixedRate(this::sample, interval, interval, unit);
+    }
+
+    synchronized void sample() {
+        try {
+            long[] ids = threads.getAllThreadIds();
+            ThreadInfo[] infos = threads.getThreadInfo(ids);
+            long[] allocated = allocations != null ? allocations.getThreadAllocatedBytes(ids) : null;
+            for (int i = 0; i < ids.length; i++) {
+                long cpu = threads.getThreadCpuTime(ids[i]);
+                if (infos[i] == null || cpu < 0) {
+                    // ended since the ids were taken
+                    continue;
+                }
+                long bytes = allocated != null ? Math.max(allocated[i], 0) : 0;
+                ThreadUsage thread = usage.get(ids[i]);
+                if (thread == null) {
+                    // what the threads running at the start had used before does not count
+                    thread = new ThreadUsage(infos[i].getThreadName(), first ? cpu : 0, first ? bytes : 0);
+                    usage.put(ids[i], thread);
+                }
+                thread.cpuNanos = cpu;
+                thread.allocatedBytes = bytes;
+            }
+            first = false;
+        } catch (RuntimeException e) {
+            log.warn("Unable to sample thread usage", e);
+        }
+    }
+
+    /**
+     * Take a last sample and stop sampling.
+     *
+     * @return the usage since the sampler was created
+     */
+    public synchronized Usage stop() {
+        scheduler.shutdownNow();
+        sample();
+        Map<String, Group> groups = new HashMap<>();
+        for (ThreadUsage thread : usage.values()) {
+            String name = THREAD_NUMBER.matcher(thread.name).replaceFirst("");
+            Group group = groups.computeIfAbsent(name, Group::new);
+            group.threads++;
+            group.cpuNanos += thread.cpuNanos - thread.startCpuNanos;
+            group.allocatedBytes += thread.allocatedBytes - thread.startAllocatedBytes;
+        }
+        List<Group> byCpu = new ArrayList<>(groups.values());
+        byCpu.sort((a, b) -> Long.compare(b.cpuNanos, a.cpuNanos));
+        long processCpu = processCpuNanos();
+        return new Usage(System.nanoTime() - startNanos, processCpu < 0 ? -1 : processCpu - startProcessCpu,
+           allocations != null, gcCount() - startGcCount, gcMillis() - startGcMillis, byCpu);
+    }
+
+    private long processCpuNanos() {
+        return os != null ? os.getProcessCpuTime() : -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+
+    private static final class ThreadUsage {
+        private final String name;
+        private final long startCpuNanos;
+        private final long startAllocatedBytes;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private ThreadUsage(String name, long startCpuNanos, long startAllocatedBytes) {
+            this.name = name;
+            this.startCpuNanos = startCpuNanos;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+    }
+
+    /**
+     * CPU time and allocations of a group of threads of the same name.
+     */
+    public static final class Group {
+        private final String name;
+        private int threads;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private Group(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * Usage of the process over the time it was sampled.
+     */
+    public static final class Usage {
+        private final long wallNanos;
+        private final long processCpuNanos;
+        private final boolean allocationsKnown;
+        private final long gcCount;
+        private final long gcMillis;
+        private final List<Group> groups;
+
+        private Usage(long wallNanos, long processCpuNanos, boolean allocationsKnown, long gcCount, long gcMillis,
+                      List<Group> groups) {
+            this.wallNanos = wallNanos;
+            this.processCpuNanos = processCpuNanos;
+            this.allocationsKnown = allocationsKnown;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.groups = Collections.unmodifiableList(groups);
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return CPU time of the whole process, or -1 if the JVM does not tell
+         */
+        public long getProcessCpuNanos() {
+            return processCpuNanos;
+        }
+
+        /**
+         * @return CPU time of the sampled threads
+         */
+        public long getThreadCpuNanos() {
+            long cpu = 0;
+            for (Group group : groups) {
+                cpu += group.cpuNanos;
+            }
+            return cpu;
+        }
+
+        /**
+         * @return bytes allocated by the sampled threads, or -1 if the JVM does not tell
+         */
+        public long getAllocatedBytes() {
+            if (!allocationsKnown) {
+                return -1;
+            }
+            long bytes = 0;
+            for (Group group : groups) {
+                bytes += group.allocatedBytes;
+            }
+            return bytes;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        /**
+         * @return the thread groups, the busiest first
+         */
+        public List<Group> getGroups() {
+            return groups;
+        }
+
+        /**
+         * @return one line per thread group
+         */
+        public String summary() {
+            long total = Math.max(processCpuNanos, getThreadCpuNanos());
+            StringBuilder sb = new StringBuilder();
+            for (Group group : groups) {
+                if (group.cpuNanos == 0 && group.allocatedBytes == 0) {
+                    continue;
+                }
+                sb.append(String.format("%n  %-28s %3d thread(s) %6.1f%% %9.2f s CPU", group.name, group.threads,
+                   percent(group.cpuNanos, total), group.cpuNanos / 1e9));
+                if (allocationsKnown) {
+                    sb.append(String.format(" %10.1f MiB allocated", group.allocatedBytes / (1024.0 * 1024.0)));
+                }
+            }
+            if (processCpuNanos >= 0) {
+                long other = Math.max(processCpuNanos - getThreadCpuNanos(), 0);
+                sb.append(String.format("%n  %-28s %15s %6.1f%% %9.2f s CPU", "other (GC, compiler, ...)", "",
+                   percent(other, total), other / 1e9));
+            }
+            return sb.toString();
+        }
+
+        private static double percent(long part, long total) {
+            return total > 0 ? 100.0 * part / total : 0;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package loader.util;
+
+import com.datastax.driver.core.DataType;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the values of uuid columns, from state of the calling thread only, so that parse workers do not
+ * contend on a shared generator.
+ * <p/>
+ * {@code UUID.randomUUID()} draws from one {@link SecureRandom} for the whole process. A synthetic key needs to be
+ * unique, not unpredictable, so {@link #RANDOM} draws from {@link ThreadLocalRandom} instead. {@link #TIME} makes
+ * version 1 uuids for timeuuid columns: every thread counts its own timestamps up from the clock, under a clock
+ * sequence of its own, so two threads do not make the same uuid.
+ */
+public enum UuidGenerator {
+    /**
+     * Random version 4 uuids.
+     */
+    RANDOM {
+        @Override
+        public UUID next() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long most = random.nextLong() & ~0xf000L | 0x4000L;
+            long least = random.nextLong() & ~(0xc0L << 56) | (0x80L << 56);
+            return new UUID(most, least);
+        }
+    },
+
+    /**
+     * Time based version 1 uuids, as timeuuid columns take.
+     */
+    TIME {
+        @Override
+        public UUID next() {
+            return CLOCK.get().next();
+        }
+    };
+
+    // 100 nanosecond intervals between the start of the gregorian calendar, where uuid time starts, and the epoch
+    private static final long GREGORIAN_TO_EPOCH = 0x01b21dd213814000L;
+    // a random node with the multicast bit set, so it is never taken for the address of a real interface
+    private static final long NODE = new SecureRandom().nextLong() & 0xffffffffffffL | 0x010000000000L;
+    private static final AtomicInteger CLOCK_SEQUENCES = new AtomicInteger(new SecureRandom().nextInt());
+    private static final ThreadLocal<Clock> CLOCK = ThreadLocal.withInitial(Clock::new);
+
+    /**
+     * @return a new uuid
+     */
+    public abstract UUID next();
+
+    /**
+     * @param mode {@code random} or {@code time}, or null or empty for the default of the column type
+     * @param type type of the column the uuids are for
+     * @throws IllegalArgumentException for an unknown mode, or random uuids for a timeuuid column
+     */
+    public static UuidGenerator forColumn(String mode, DataType type) {
+        boolean timeuuid = type.getName() == DataType.Name.TIMEUUID;
+        if (mode == null || mode.isEmpty()) {
+            return timeuuid ? TIME : RANDOM;
+        }
+        UuidGenerator generator;
+        try {
+            generator = valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown uuid mode " + mode + "; expected random or time", e);
+        }
+        if (timeuuid && generator != TIME) {
+            throw new IllegalArgumentException("A timeuuid column takes time uuids only, not " + mode);
+        }
+        return generator;
+    }
+
+    /**
+     * Timestamps of one thread, each used once.
+     */
+    private static final class Clock {
+        private final long clockSequenceAndNode;
+        private long lastTimestamp;
+
+        private Clock() {
+            long clockSequence = CLOCK_SEQUENCES.getAndIncrement() & 0x3fffL;
+            clockSequenceAndNode = (0x80L | clockSequence >>> 8) << 56 | (clockSequence & 0xffL) << 48 | NODE;
+        }
+
+        private UUID next() {
+            // when a thread makes more than ten thousand uuids in a millisecond it gets ahead of the clock for a while
+            long timestamp = Math.max(System.currentTimeMillis() * 10000 + GREGORIAN_TO_EPOCH, lastTimestamp + 1);
+            lastTimestamp = timestamp;
+            long most = (timestamp & 0xffffffffL) << 32 | (timestamp >>> 32 & 0xffffL) << 16 | 0x1000L |
+               timestamp >>> 48 & 0x0fffL;
+            return new UUID(most, clockSequenceAndNode);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package loader.util;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes in flight allowed across several {@link InFlightWindow}s at once, such as the windows of files that are
+ * loaded concurrently over one session. Each window still keeps to its own limit; the budget caps their sum, so
+ * the cluster sees the same load whether one file or many are being written.
+ */
+public class WriteBudget {
+    private final int size;
+    private final Semaphore permits;
+
+    public WriteBudget(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Write budget must be positive, was " + size);
+        }
+        this.size = size;
+        // fair, so a file with a slow writer thread is not starved by the others
+        this.permits = new Semaphore(size, true);
+    }
+
+    void acquire() {
+        permits.acquireUninterruptibly();
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return writes in flight across all windows sharing the budget
+     */
+    public int getInFlight() {
+        return size - permits.availablePermits();
+    }
+}
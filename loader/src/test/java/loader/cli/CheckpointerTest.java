@@ -0,0 +1,84 @@
+package loader.cli;
+
+import com.google.common.base.Ticker;
+import loader.io.FileChunk;
+import org.mockito.InOrder;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CheckpointerTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private static File tempFile(String suffix) throws Exception {
+        File file = File.createTempFile("checkpointer", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testCheckpointIsTakenAfterWritesAreAcknowledged() throws Exception {
+        File input = tempFile(".tsv");
+        Files.write(input.toPath(), "HEADER\na\nb\nc\n".getBytes(StandardCharsets.UTF_8));
+        File checkpointFile = tempFile(".checkpoint");
+        checkpointFile.delete();
+
+        StatementWriter writer = mock(StatementWriter.class);
+        PartitionBatcher batcher = mock(PartitionBatcher.class);
+        DeadLetterWriter deadLetters = mock(DeadLetterWriter.class);
+        when(writer.getInsertsCompleted()).thenReturn(2L);
+        Checkpointer checkpointer = new Checkpointer(checkpointFile, input, "plan", writer, batcher, deadLetters,
+           40L, 1, TimeUnit.SECONDS, ticker);
+
+        // too soon after the start of the load
+        checkpointer.chunkWritten(new FileChunk(0, 7, 9), 2L);
+        verify(writer, never()).flush();
+        assertThat(checkpointFile).doesNotExist();
+
+        nanos.set(TimeUnit.SECONDS.toNanos(2));
+        checkpointer.chunkWritten(new FileChunk(1, 9, 13), 4L);
+        InOrder barrier = inOrder(batcher, writer, deadLetters);
+        barrier.verify(batcher).flush();
+        barrier.verify(writer).flush();
+        barrier.verify(deadLetters).flush();
+
+        LoadCheckpoint checkpoint = LoadCheckpoint.read(checkpointFile);
+        assertThat(checkpoint.getOffset()).isEqualTo(13L);
+        assertThat(checkpoint.getLineNumber()).isEqualTo(4L);
+        assertThat(checkpoint.getInsertsAcknowledged()).isEqualTo(42L);
+        assertThat(checkpoint.getPlanFingerprint()).isEqualTo("plan");
+        checkpoint.verify(input, "plan");
+
+        checkpointer.complete();
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testCheckpointOfAnotherMappingIsRejected() throws Exception {
+        File input = tempFile(".tsv");
+        Files.write(input.toPath(), "HEADER\na\n".getBytes(StandardCharsets.UTF_8));
+        File checkpointFile = tempFile(".checkpoint");
+
+        new LoadCheckpoint(input.getPath(), input.length(), input.lastModified(), "plan", 7, 1, 0).write(checkpointFile);
+
+        LoadCheckpoint.read(checkpointFile).verify(input, "another plan");
+    }
+}
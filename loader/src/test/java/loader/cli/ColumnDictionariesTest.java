@@ -0,0 +1,63 @@
+package loader.cli;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Session;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ColumnDictionariesTest {
+
+    private static MappingPlan plan() {
+        Map<String, DataType> types = new TreeMap<>();
+        types.put("name", DataType.text());
+        types.put("age", DataType.cint());
+        types.put("state", DataType.text());
+        return MappingPlan.compile(mock(Session.class), "ks", MappingConfig.fromJSON(new JSONObject(
+           "{\"table\": \"people\", \"map\": {\"NAME\": \"name\", \"AGE\": \"age\", \"STATE\": \"state\"}}")),
+           Arrays.asList("NAME", "AGE", "STATE"), types, "2016-01-01", 10);
+    }
+
+    private static List<String> lines(int count) {
+        String[] states = {"VA", "MD", "DC", "WV"};
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("person" + i + "\t" + (i % 90) + "\t" + states[i % states.length]);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testPicksTextColumnsWithFewDistinctValues() {
+        MappingPlan plan = plan();
+
+        ColumnDictionaries dictionaries = ColumnDictionaries.sample(plan, lines(1000), 100);
+
+        // names are all distinct and ages are not text
+        assertThat(dictionaries.getColumns()).containsExactly("state");
+        MappedRow first = plan.map("Alice\t30\tVA", 1);
+        MappedRow second = plan.map("Bob\t40\tVA", 2);
+        assertThat(second.getValues()[plan.getColumns().indexOf("state")])
+           .isSameAs(first.getValues()[plan.getColumns().indexOf("state")]);
+        assertThat(second.getValues()[plan.getColumns().indexOf("name")]).isEqualTo("Bob");
+        assertThat(dictionaries.getDictionary("state").getHits()).isEqualTo(1);
+        assertThat(dictionaries.summary()).startsWith("state: 1 values, 50.00% hits");
+    }
+
+    @Test
+    public void testSkipsColumnsAboveTheDistinctLimit() {
+        MappingPlan plan = plan();
+
+        assertThat(ColumnDictionaries.sample(plan, lines(1000), 3).isEmpty()).isTrue();
+        // too few lines for the values to repeat
+        assertThat(ColumnDictionaries.sample(plan(), lines(8), 100).isEmpty()).isTrue();
+    }
+}
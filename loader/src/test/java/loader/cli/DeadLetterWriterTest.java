@@ -0,0 +1,98 @@
+package loader.cli;
+
+import loader.util.LoaderMetrics;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeadLetterWriterTest {
+
+    @Test
+    public void testRejectsAreWrittenUpToTheLimit() throws Exception {
+        File file = File.createTempFile("loader", ".rejects.tsv");
+        file.deleteOnExit();
+        LoaderMetrics metrics = LoaderMetrics.startMetrics();
+        DeadLetterWriter deadLetters = new DeadLetterWriter(file, 2, metrics);
+
+        assertThat(deadLetters.reject(7, "a\tnot a date", new CLILoaderRuntimeException("Unable to map input line 7 to column created",
+           new IllegalArgumentException("Unable to convert value to Date\tnot a date")))).isTrue();
+        assertThat(deadLetters.reject(9, null, new RuntimeException())).isTrue();
+        assertThat(deadLetters.reject(12, "c\td", new RuntimeException("one too many"))).isFalse();
+        deadLetters.close();
+
+        assertThat(deadLetters.getRejected()).isEqualTo(2);
+        assertThat(metrics.snapshot().getRowsRejected()).isEqualTo(2);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).containsExactly(
+           "line_number\treason\tline",
+           "7\tUnable to map input line 7 to column created: Unable to convert value to Date not a date\ta\tnot a date",
+           "9\tRuntimeException\t");
+    }
+
+    @Test
+    public void testFlushWritesTheRejectsSoFar() throws Exception {
+        File file = File.createTempFile("loader", ".rejects.tsv");
+        file.deleteOnExit();
+        DeadLetterWriter deadLetters = new DeadLetterWriter(file, -1, null);
+        deadLetters.startFresh();
+
+        deadLetters.flush();
+        assertThat(file).doesNotExist();
+
+        deadLetters.reject(3, "a	b", new RuntimeException("bad row"));
+        deadLetters.flush();
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)).containsExactly(
+           "line_number\treason\tline",
+           "3\tbad row\ta\tb");
+
+        deadLetters.close();
+        // nothing waits on a closed writer
+        deadLetters.flush();
+    }
+
+    @Test
+    public void testNoFileWithoutRejects() throws Exception {
+        File file = new File(Files.createTempDirectory("loader").toFile(), "input.tsv.rejects.tsv");
+        DeadLetterWriter deadLetters = new DeadLetterWriter(file, -1, null);
+        deadLetters.close();
+
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testAFreshLoadRemovesTheFileOfAnEarlierRun() throws Exception {
+        File file = File.createTempFile("loader", ".rejects.tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "line_number\treason\tline\n3\tbad\tx\n".getBytes(StandardCharsets.UTF_8));
+        DeadLetterWriter deadLetters = new DeadLetterWriter(file, -1, null);
+        deadLetters.startFresh();
+        deadLetters.close();
+
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testAResumedLoadKeepsTheRejectsOfTheInterruptedRun() throws Exception {
+        File file = File.createTempFile("loader", ".rejects.tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("line_number\treason\tline\n3\tbad\tx\n" +
+           // read again from the checkpoint on, so set aside again if it is still bad
+           "12\tbad\ty\n").getBytes(StandardCharsets.UTF_8));
+        DeadLetterWriter deadLetters = new DeadLetterWriter(file, 2, null);
+
+        assertThat(deadLetters.resumeFrom(10)).isEqualTo(1);
+        assertThat(deadLetters.getRejected()).isEqualTo(1);
+        assertThat(deadLetters.reject(12, "y", new RuntimeException("bad"))).isTrue();
+        // the limit counts the rejects of both runs
+        assertThat(deadLetters.reject(15, "z", new RuntimeException("bad"))).isFalse();
+        deadLetters.close();
+
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)).containsExactly(
+           "line_number\treason\tline", "3\tbad\tx", "12\tbad\ty");
+    }
+}
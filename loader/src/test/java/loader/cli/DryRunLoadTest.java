@@ -0,0 +1,173 @@
+package loader.cli;
+
+import cp.config.PropertiesConfigurationServiceImpl;
+import cp.model.Constants;
+import cp.testsupport.DryRunCassandraSessionManager;
+import cp.testsupport.StandInTable;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static cp.config.ConfigurationKeys.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DryRunLoadTest {
+
+    private static File inputFile(int lines) throws Exception {
+        File input = File.createTempFile("people", ".tsv");
+        input.deleteOnExit();
+        StringBuilder sb = new StringBuilder("NAME\tAGE\tSTATE\n");
+        for (int i = 0; i < lines; i++) {
+            sb.append("person").append(i).append('\t').append(i % 90).append('\t').append(i % 2 == 0 ? "VA" : "").append('\n');
+        }
+        Files.write(input.toPath(), sb.toString().getBytes());
+        return input;
+    }
+
+    private static Properties properties(String threads) {
+        Properties properties = new Properties();
+        properties.setProperty(MAIN_KEYSPACE_KEY, "ks");
+        properties.setProperty(LOADER_DRY_RUN_KEY, "true");
+        properties.setProperty(LOADER_BATCH_SIZE_KEY, "16");
+        properties.setProperty(LOADER_THREADS_KEY, threads);
+        properties.setProperty(LOADER_METRICS_INTERVAL_S_KEY, "0");
+        properties.setProperty(LOADER_SCHEMA_CACHE_DIR_KEY, "none");
+        return properties;
+    }
+
+    private static DryRunCassandraSessionManager sessionManager() {
+        return new DryRunCassandraSessionManager(StandInTable.parse("ks", "people", "name:text,age:int,state:text", null),
+           1, TimeUnit.MILLISECONDS);
+    }
+
+    private static MappingConfig mappingConfig() {
+        return MappingConfig.fromJSON(new JSONObject("{\"table\": \"people\", \"map\": {\"NAME\": \"name\"}}"));
+    }
+
+    @Test
+    public void testLoadsThroughTheWholeClientWithoutACluster() throws Exception {
+        File input = inputFile(2000);
+        for (String threads : new String[]{"0", "2"}) {
+            DryRunCassandraSessionManager sessionManager = sessionManager();
+            CommandLineLoader loader = new CommandLineLoader(sessionManager,
+               new PropertiesConfigurationServiceImpl(properties(threads)), mappingConfig(), input.getPath());
+
+            assertThat(loader.load()).isEqualTo(0);
+
+            assertThat(loader.getInsertsCompleted()).isEqualTo(2000);
+            assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).isEqualTo(2000);
+            // nothing was loaded, so there is nothing to resume
+            assertThat(new File(input.getPath() + Constants.LOADER_CHECKPOINT_SUFFIX)).doesNotExist();
+            sessionManager.stopCassandraClient();
+        }
+    }
+
+    @Test
+    public void testSkipsRowsWithAKeyLoadedBefore() throws Exception {
+        File input = File.createTempFile("people", ".tsv");
+        input.deleteOnExit();
+        StringBuilder sb = new StringBuilder("NAME\tAGE\tSTATE\n");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("person").append(i % 500).append('\t').append(i % 90).append("\tVA\n");
+        }
+        Files.write(input.toPath(), sb.toString().getBytes());
+        for (String[] dedup : new String[][]{{"exact", "first", "0"}, {"exact", "last", "2"}, {"bloom", "first", "2"}}) {
+            Properties properties = properties(dedup[2]);
+            properties.setProperty(LOADER_DEDUP_KEY, dedup[0]);
+            properties.setProperty(LOADER_DEDUP_POLICY_KEY, dedup[1]);
+            DryRunCassandraSessionManager sessionManager = sessionManager();
+            CommandLineLoader loader = new CommandLineLoader(sessionManager,
+               new PropertiesConfigurationServiceImpl(properties), mappingConfig(), input.getPath());
+
+            assertThat(loader.load()).isEqualTo(0);
+
+            // the key is the partition key of the stand-in table, the name
+            assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).as(dedup[0] + " " + dedup[1])
+               .isEqualTo(500);
+            sessionManager.stopCassandraClient();
+        }
+    }
+
+    @Test
+    public void testReadsTheSchemaFromTheCacheWhileTheVersionHolds() throws Exception {
+        File input = inputFile(100);
+        File cacheDir = Files.createTempDirectory("schema-cache").toFile();
+        cacheDir.deleteOnExit();
+        long[] expectedSchemaQueries = {2, 0};
+        for (int load = 0; load < 2; load++) {
+            Properties properties = properties("0");
+            properties.setProperty(LOADER_SCHEMA_CACHE_DIR_KEY, cacheDir.getPath());
+            DryRunCassandraSessionManager sessionManager = sessionManager();
+            CommandLineLoader loader = new CommandLineLoader(sessionManager,
+               new PropertiesConfigurationServiceImpl(properties), mappingConfig(), input.getPath());
+
+            assertThat(loader.load()).isEqualTo(0);
+
+            assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).isEqualTo(100);
+            // the columns, then a select for their types
+            assertThat(sessionManager.getStandInSession().getSchemaQueries()).as("load " + load)
+               .isEqualTo(expectedSchemaQueries[load]);
+            sessionManager.stopCassandraClient();
+        }
+        for (File cached : cacheDir.listFiles()) {
+            cached.deleteOnExit();
+        }
+    }
+
+    private static File snapshot(int first, int last, int changedFrom) throws Exception {
+        File input = File.createTempFile("people", ".tsv");
+        input.deleteOnExit();
+        StringBuilder sb = new StringBuilder("NAME\tAGE\tSTATE\n");
+        for (int i = first; i < last; i++) {
+            sb.append("person").append(i).append('\t').append(i >= changedFrom ? 99 : i % 90).append("\tVA\n");
+        }
+        Files.write(input.toPath(), sb.toString().getBytes());
+        return input;
+    }
+
+    @Test
+    public void testWritesOnlyWhatChangedSinceThePreviousSnapshot() throws Exception {
+        File index = File.createTempFile("people", Constants.LOADER_DELTA_INDEX_SUFFIX);
+        index.delete();
+        index.deleteOnExit();
+        // day two drops persons 0-29, changes the age of 1900-1999 and adds 2000-2049
+        File[] snapshots = {snapshot(0, 2000, 2000), snapshot(30, 2050, 1900)};
+        long[] expectedWrites = {2000, 30 + 100 + 50};
+        for (int day = 0; day < 2; day++) {
+            Properties properties = properties(day == 0 ? "0" : "2");
+            properties.setProperty(LOADER_DELTA_KEY, "true");
+            properties.setProperty(LOADER_DELTA_INDEX_KEY, index.getPath());
+            properties.setProperty(LOADER_DELTA_DELETES_KEY, "true");
+            properties.remove(LOADER_DRY_RUN_KEY);
+            DryRunCassandraSessionManager sessionManager = sessionManager();
+            CommandLineLoader loader = new CommandLineLoader(sessionManager,
+               new PropertiesConfigurationServiceImpl(properties), mappingConfig(), snapshots[day].getPath());
+
+            assertThat(loader.load()).isEqualTo(0);
+
+            assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).as("day " + day)
+               .isEqualTo(expectedWrites[day]);
+            assertThat(index).exists();
+            sessionManager.stopCassandraClient();
+        }
+    }
+
+    @Test
+    public void testBatchesAreCountedByRow() throws Exception {
+        File input = inputFile(500);
+        Properties properties = properties("2");
+        properties.setProperty(LOADER_BATCH_MODE_KEY, "partition");
+        DryRunCassandraSessionManager sessionManager = sessionManager();
+        CommandLineLoader loader = new CommandLineLoader(sessionManager,
+           new PropertiesConfigurationServiceImpl(properties), mappingConfig(), input.getPath());
+
+        assertThat(loader.load()).isEqualTo(0);
+
+        assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).isEqualTo(500);
+        sessionManager.stopCassandraClient();
+    }
+}
@@ -0,0 +1,131 @@
+package loader.cli;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import cp.exceptions.ProcessException;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MappingPlanTest {
+
+    private static final List<String> HEADERS = Arrays.asList("NAME", "AGE", "STATE");
+
+    private static Map<String, DataType> columnTypes() {
+        Map<String, DataType> types = new TreeMap<>();
+        types.put("name", DataType.text());
+        types.put("age", DataType.cint());
+        types.put("state", DataType.text());
+        types.put("source", DataType.text());
+        types.put("line_number", DataType.bigint());
+        return types;
+    }
+
+    private static MappingConfig mappingConfig() {
+        return MappingConfig.fromJSON(new JSONObject("{" +
+                "\"table\": \"people\"," +
+                "\"map\": {\"NAME\": \"name\", \"AGE\": \"age\", \"STATE\": \"state\"}," +
+                "\"synthetics\": {\"state\": \"DC\", \"source\": \"vendor\"}," +
+                "\"linenumbers\": [\"line_number\"]" +
+                "}"));
+    }
+
+    private static MappingPlan plan(Session session) {
+        return MappingPlan.compile(session, "ks", mappingConfig(), HEADERS, columnTypes(), "2016-01-01", 10);
+    }
+
+    @Test
+    public void testMapResolvesValuesDefaultsAndSynthetics() {
+        MappingPlan plan = plan(mock(Session.class));
+
+        assertThat(plan.getColumns()).containsExactly("age", "name", "state", "source", "line_number");
+
+        MappedRow row = plan.map("Alice\t42\t", 7L);
+        assertThat(row.getLineNumber()).isEqualTo(7L);
+        assertThat(row.getValues()).containsExactly(42, "Alice", "DC", "vendor", 7L);
+
+        row = plan.map("Bob\t\tVA", 8L);
+        assertThat(row.getValues()).containsExactly(null, "Bob", "VA", "vendor", 8L);
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testShortLineIsRejected() {
+        plan(mock(Session.class)).map("Alice\t42", 1L);
+    }
+
+    @Test
+    public void testTrailingColumnsThatAreNotMappedMayBeLeftOff() {
+        MappingConfig config = MappingConfig.fromJSON(new JSONObject("{" +
+                "\"table\": \"people\"," +
+                "\"map\": {\"NAME\": \"name\", \"AGE\": \"age\"}" +
+                "}"));
+        MappingPlan plan = MappingPlan.compile(mock(Session.class), "ks", config, HEADERS, columnTypes(), "2016-01-01", 10);
+
+        assertThat(plan.map("Alice\t42", 1L).getValues()).containsExactly(42, "Alice");
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testBadValueIsRejected() {
+        plan(mock(Session.class)).map("Alice\tforty\tVA", 1L);
+    }
+
+    @Test
+    public void testInsertIsPreparedOncePerColumnShape() {
+        Session session = mock(Session.class);
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(preparedStatement);
+        MappingPlan plan = plan(session);
+
+        plan.bind(plan.map("Alice\t42\tVA", 1L));
+        plan.bind(plan.map("Bob\t43\tMD", 2L));
+        plan.bind(plan.map("Carol\t\tMD", 3L));
+
+        verify(session, times(2)).prepare(anyString());
+        verify(session).prepare("INSERT INTO ks.people(age,name,state,source,line_number) VALUES (?,?,?,?,?);");
+        verify(session).prepare("INSERT INTO ks.people(name,state,source,line_number) VALUES (?,?,?,?);");
+        assertThat(plan.cacheStats().hitCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testUuidColumnsTakeUuidsOfTheirMode() {
+        Map<String, DataType> types = columnTypes();
+        types.put("id", DataType.uuid());
+        types.put("event_id", DataType.timeuuid());
+        types.put("ref", DataType.text());
+        MappingConfig config = MappingConfig.fromJSON(new JSONObject("{" +
+                "\"table\": \"people\"," +
+                "\"map\": {\"NAME\": \"name\"}," +
+                "\"uuidcolumns\": {\"id\": \"time\", \"ref\": \"random\"}" +
+                "}")).addUUIDs("event_id");
+        MappingPlan plan = MappingPlan.compile(mock(Session.class), "ks", config, HEADERS, types, "2016-01-01", 10);
+
+        Object[] values = plan.map("Alice\t42\tVA", 1L).getValues();
+
+        List<String> columns = plan.getColumns();
+        assertThat(((UUID) values[columns.indexOf("id")]).version()).isEqualTo(1);
+        assertThat(((UUID) values[columns.indexOf("event_id")]).version()).isEqualTo(1);
+        assertThat(UUID.fromString((String) values[columns.indexOf("ref")]).version()).isEqualTo(4);
+    }
+
+    @Test(expectedExceptions = ProcessException.class)
+    public void testRandomUuidsForATimeuuidColumnAreRejected() {
+        Map<String, DataType> types = columnTypes();
+        types.put("event_id", DataType.timeuuid());
+        MappingConfig config = MappingConfig.fromJSON(new JSONObject("{\"table\": \"people\", \"map\": {\"NAME\": \"name\"}}"))
+           .addUUIDs("event_id=random");
+        MappingPlan.compile(mock(Session.class), "ks", config, HEADERS, types, "2016-01-01", 10);
+    }
+}
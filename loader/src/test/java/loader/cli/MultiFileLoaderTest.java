@@ -0,0 +1,82 @@
+package loader.cli;
+
+import cp.config.PropertiesConfigurationServiceImpl;
+import cp.testsupport.DryRunCassandraSessionManager;
+import cp.testsupport.StandInTable;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static cp.config.ConfigurationKeys.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultiFileLoaderTest {
+
+    @Test
+    public void testResolvesDirectoriesAndLists() throws Exception {
+        File directory = Files.createTempDirectory("counties").toFile();
+        directory.deleteOnExit();
+        for (String name : new String[]{"b.tsv", "a.tsv", ".hidden", "a.tsv.checkpoint"}) {
+            File file = new File(directory, name);
+            Files.write(file.toPath(), "h\n1\n".getBytes());
+            file.deleteOnExit();
+        }
+        File single = new File(directory, "a.tsv");
+
+        assertThat(MultiFileLoader.isMultiFileInput(single.getPath())).isFalse();
+        assertThat(MultiFileLoader.isMultiFileInput(directory.getPath())).isTrue();
+        assertThat(MultiFileLoader.isMultiFileInput("x.tsv, y.tsv")).isTrue();
+
+        List<String> files = MultiFileLoader.resolveInputFiles(directory.getPath() + ", other.tsv");
+        assertThat(files).containsExactly(new File(directory, "a.tsv").getPath(), new File(directory, "b.tsv").getPath(),
+           "other.tsv");
+    }
+
+    @Test
+    public void testLoadsEveryFileWithinOneSharedBudget() throws Exception {
+        File directory = Files.createTempDirectory("people").toFile();
+        directory.deleteOnExit();
+        int[] sizes = {1500, 1000, 500};
+        for (int f = 0; f < sizes.length; f++) {
+            StringBuilder sb = new StringBuilder("NAME\tAGE\tSTATE\n");
+            for (int i = 0; i < sizes[f]; i++) {
+                sb.append("person").append(f).append('_').append(i).append('\t').append(i % 90).append("\tVA\n");
+            }
+            File file = new File(directory, "people" + f + ".tsv");
+            Files.write(file.toPath(), sb.toString().getBytes());
+            file.deleteOnExit();
+        }
+        Properties properties = new Properties();
+        properties.setProperty(MAIN_KEYSPACE_KEY, "ks");
+        properties.setProperty(LOADER_DRY_RUN_KEY, "true");
+        properties.setProperty(LOADER_SCHEMA_CACHE_DIR_KEY, "none");
+        properties.setProperty(LOADER_METRICS_INTERVAL_S_KEY, "0");
+        properties.setProperty(LOADER_THREADS_KEY, "2");
+        // each window alone would allow 16 writes in flight, three files at once 48
+        properties.setProperty(LOADER_BATCH_SIZE_KEY, "16");
+        properties.setProperty(LOADER_CONCURRENT_FILES_KEY, "3");
+        properties.setProperty(LOADER_TOTAL_IN_FLIGHT_KEY, "20");
+        DryRunCassandraSessionManager sessionManager = new DryRunCassandraSessionManager(
+           StandInTable.parse("ks", "people", "name:text,age:int,state:text", null), 1, TimeUnit.MILLISECONDS);
+        MultiFileLoader loader = new MultiFileLoader(sessionManager, new PropertiesConfigurationServiceImpl(properties),
+           MappingConfig.fromJSON(new JSONObject("{\"table\": \"people\", \"map\": {\"NAME\": \"name\"}}")),
+           directory.getPath());
+
+        assertThat(loader.load()).isEqualTo(0);
+
+        Map<String, Long> rowsLoaded = loader.getRowsLoaded();
+        for (int f = 0; f < sizes.length; f++) {
+            assertThat(rowsLoaded.get(new File(directory, "people" + f + ".tsv").getPath())).isEqualTo((long) sizes[f]);
+        }
+        assertThat(loader.getInsertsCompleted()).isEqualTo(3000L);
+        assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).isEqualTo(3000L);
+        assertThat(sessionManager.getStandInSession().getMaxInFlight()).isBetween(1L, 20L);
+        sessionManager.stopCassandraClient();
+    }
+}
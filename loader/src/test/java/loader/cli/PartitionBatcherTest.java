@@ -0,0 +1,150 @@
+package loader.cli;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.Statement;
+import com.google.common.base.Ticker;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PartitionBatcherTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private static Statement row(String partitionKey) {
+        BoundStatement statement = mock(BoundStatement.class);
+        when(statement.getRoutingKey()).thenReturn(partitionKey == null ? null : ByteBuffer.wrap(partitionKey.getBytes()));
+        return statement;
+    }
+
+    private PartitionBatcher batcher(StatementWriter writer, int maxRows, int maxGroups) {
+        return new PartitionBatcher(writer, PartitionBatcher.Grouping.PARTITION, null, "ks", maxRows, 100,
+           TimeUnit.MILLISECONDS, maxGroups, ticker);
+    }
+
+    @Test
+    public void testFullGroupIsWrittenAsOneUnloggedBatch() {
+        StatementWriter writer = mock(StatementWriter.class);
+        PartitionBatcher batcher = batcher(writer, 3, 10);
+
+        batcher.add(row("a"));
+        batcher.add(row("b"));
+        batcher.add(row("a"));
+        verify(writer, never()).write(any(Statement.class), anyInt());
+
+        batcher.add(row("a"));
+        ArgumentCaptor<Statement> batch = ArgumentCaptor.forClass(Statement.class);
+        verify(writer).write(batch.capture(), eq(3));
+        assertThat(batch.getValue()).isInstanceOf(BatchStatement.class);
+        assertThat(((BatchStatement) batch.getValue()).size()).isEqualTo(3);
+
+        // the lone row left for partition b goes out as a plain statement
+        batcher.flush();
+        verify(writer).write(any(BoundStatement.class));
+        assertThat(batcher.getBatchesWritten()).isEqualTo(1L);
+        assertThat(batcher.getRowsBatched()).isEqualTo(3L);
+        assertThat(batcher.getRowsUnbatched()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testRowsWithoutRoutingKeyAreNotHeld() {
+        StatementWriter writer = mock(StatementWriter.class);
+        PartitionBatcher batcher = batcher(writer, 3, 10);
+
+        Statement statement = row(null);
+        batcher.add(statement);
+
+        verify(writer).write(statement);
+    }
+
+    @Test
+    public void testGroupsAreWrittenAfterTheDelay() {
+        StatementWriter writer = mock(StatementWriter.class);
+        PartitionBatcher batcher = batcher(writer, 10, 10);
+
+        batcher.add(row("a"));
+        batcher.add(row("a"));
+        nanos.set(TimeUnit.MILLISECONDS.toNanos(50));
+        batcher.add(row("b"));
+        verify(writer, never()).write(any(Statement.class), anyInt());
+
+        nanos.set(TimeUnit.MILLISECONDS.toNanos(120));
+        batcher.add(row("b"));
+        verify(writer).write(any(BatchStatement.class), eq(2));
+        assertThat(batcher.getBatchesWritten()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testOldestGroupIsWrittenWhenTooManyAreOpen() {
+        StatementWriter writer = mock(StatementWriter.class);
+        PartitionBatcher batcher = batcher(writer, 10, 2);
+
+        Statement first = row("a");
+        batcher.add(first);
+        batcher.add(row("b"));
+        batcher.add(row("c"));
+
+        verify(writer).write(first);
+        assertThat(batcher.getRowsUnbatched()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testReplicaGroupsAreWrittenOneBatchPerPartition() {
+        StatementWriter writer = mock(StatementWriter.class);
+        Metadata metadata = mock(Metadata.class);
+        Host host = mock(Host.class);
+        when(metadata.getReplicas(eq("ks"), any(ByteBuffer.class))).thenReturn(Collections.singleton(host));
+        PartitionBatcher batcher = new PartitionBatcher(writer, PartitionBatcher.Grouping.REPLICA, metadata, "ks",
+           5, 100, TimeUnit.MILLISECONDS, 10, ticker);
+
+        // every partition lives on the same replica, so their rows are held in one group until it is full
+        batcher.add(row("a"));
+        batcher.add(row("b"));
+        batcher.add(row("a"));
+        batcher.add(row("b"));
+        verify(writer, never()).write(any(Statement.class), anyInt());
+
+        Statement single = row("c");
+        batcher.add(single);
+        ArgumentCaptor<Statement> batches = ArgumentCaptor.forClass(Statement.class);
+        verify(writer, times(2)).write(batches.capture(), eq(2));
+        List<Statement> written = batches.getAllValues();
+        for (Statement batch : written) {
+            assertThat(batch).isInstanceOf(BatchStatement.class);
+            BatchStatement rows = (BatchStatement) batch;
+            assertThat(rows.getStatements()).hasSize(2);
+            ByteBuffer key = rows.getStatements().iterator().next().getRoutingKey();
+            for (Statement row : rows.getStatements()) {
+                assertThat(row.getRoutingKey()).isEqualTo(key);
+            }
+        }
+        verify(writer).write(single);
+        assertThat(batcher.getBatchesWritten()).isEqualTo(2L);
+        assertThat(batcher.getRowsBatched()).isEqualTo(4L);
+        assertThat(batcher.getRowsUnbatched()).isEqualTo(1L);
+    }
+}
@@ -0,0 +1,69 @@
+package loader.cli;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrimaryKeyDeduplicatorTest {
+    private static final List<String> COLUMNS = Arrays.asList("name", "age", "state");
+
+    private static PrimaryKeyDeduplicator deduplicator(PrimaryKeyDeduplicator.Structure structure,
+                                                       PrimaryKeyDeduplicator.Policy policy) {
+        return new PrimaryKeyDeduplicator(COLUMNS, Arrays.asList("NAME", "state"), structure, policy, 1000, 0.001,
+           4 * 1024 * 1024);
+    }
+
+    private static MappedRow row(long lineNumber, Object... values) {
+        return new MappedRow(lineNumber, values);
+    }
+
+    @Test
+    public void testKeepsTheFirstCopy() {
+        for (PrimaryKeyDeduplicator.Structure structure : PrimaryKeyDeduplicator.Structure.values()) {
+            PrimaryKeyDeduplicator deduplicator = deduplicator(structure, PrimaryKeyDeduplicator.Policy.FIRST);
+
+            assertThat(deduplicator.admit(row(1, "ann", 30, "VA"))).isTrue();
+            assertThat(deduplicator.admit(row(2, "ann", 31, "VA"))).isFalse();
+            assertThat(deduplicator.admit(row(3, "ann", 30, "MD"))).isTrue();
+            // the lengths of the key values are part of the key
+            assertThat(deduplicator.admit(row(4, "annV", 30, "A"))).isTrue();
+            assertThat(deduplicator.admit(row(5, null, 30, "VA"))).isTrue();
+            assertThat(deduplicator.admit(row(6, null, 30, "VA"))).isTrue();
+
+            assertThat(deduplicator.getSkipped()).isEqualTo(1);
+            assertThat(deduplicator.needsFirstPass()).isFalse();
+        }
+    }
+
+    @Test
+    public void testKeepsTheLastCopy() {
+        PrimaryKeyDeduplicator deduplicator = deduplicator(PrimaryKeyDeduplicator.Structure.EXACT,
+           PrimaryKeyDeduplicator.Policy.LAST);
+        MappedRow[] rows = {row(1, "ann", 30, "VA"), row(2, "bob", 40, "VA"), row(3, "ann", 31, "VA")};
+        assertThat(deduplicator.needsFirstPass()).isTrue();
+        for (MappedRow row : rows) {
+            deduplicator.recordLastCopy(row);
+        }
+
+        assertThat(deduplicator.admit(rows[0])).isFalse();
+        assertThat(deduplicator.admit(rows[1])).isTrue();
+        assertThat(deduplicator.admit(rows[2])).isTrue();
+        assertThat(deduplicator.getSkipped()).isEqualTo(1);
+        assertThat(deduplicator.summary()).startsWith("1 duplicate rows skipped on (NAME, state), keeping the last copy");
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testLastCopyNeedsTheExactSet() {
+        deduplicator(PrimaryKeyDeduplicator.Structure.BLOOM, PrimaryKeyDeduplicator.Policy.LAST);
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testKeyColumnsMustBeMapped() {
+        new PrimaryKeyDeduplicator(COLUMNS, Collections.singletonList("id"), PrimaryKeyDeduplicator.Structure.EXACT,
+           PrimaryKeyDeduplicator.Policy.FIRST, 1000, 0.001, 4 * 1024 * 1024);
+    }
+}
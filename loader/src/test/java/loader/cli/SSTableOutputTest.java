@@ -0,0 +1,155 @@
+package loader.cli;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Session;
+import cp.config.PropertiesConfigurationServiceImpl;
+import cp.model.Constants;
+import cp.testsupport.DryRunCassandraSessionManager;
+import org.json.JSONObject;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static cp.config.ConfigurationKeys.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SSTableOutputTest {
+    private static final String CREATE_TABLE = "CREATE TABLE ks.people (state text, name text, age int, " +
+       "tags set<text>, PRIMARY KEY ((state), name))";
+
+    @BeforeClass
+    public void enterClientMode() {
+        SSTableOutput.enterClientMode();
+    }
+
+    @Test
+    public void testReadsTheTableOfACreateTableStatement() {
+        TableSchema table = SSTableOutput.readTable(CREATE_TABLE, "other");
+
+        assertThat(table.getKeyspace()).isEqualTo("ks");
+        assertThat(table.getTable()).isEqualTo("people");
+        assertThat(table.getTypes()).containsEntry("state", DataType.text()).containsEntry("age", DataType.cint())
+           .containsEntry("tags", DataType.set(DataType.text())).hasSize(4);
+        assertThat(table.getPartitionKey()).containsExactly("state");
+        assertThat(table.getClusteringKey()).containsExactly("name");
+        assertThat(SSTableOutput.readTable("CREATE TABLE ks.events (day text, at timestamp, tags frozen<list<int>>, " +
+           "PRIMARY KEY (day, at)) WITH CLUSTERING ORDER BY (at DESC)", "ks").getTypes())
+           .containsEntry("at", DataType.timestamp()).containsEntry("tags", DataType.frozenList(DataType.cint()));
+        // the keyspace of the load when the statement names none
+        assertThat(SSTableOutput.readTable("CREATE TABLE people (id uuid PRIMARY KEY)", "ks").getKeyspace())
+           .isEqualTo("ks");
+    }
+
+    @Test
+    public void testQualifiesTheTableWithTheKeyspaceOfTheLoad() {
+        assertThat(SSTableOutput.qualify("create table if not exists people (id uuid PRIMARY KEY)", "ks"))
+           .isEqualTo("create table if not exists ks.people (id uuid PRIMARY KEY)");
+        assertThat(SSTableOutput.qualify("CREATE TABLE \"People\" (id uuid PRIMARY KEY)", "ks"))
+           .isEqualTo("CREATE TABLE ks.\"People\" (id uuid PRIMARY KEY)");
+        assertThat(SSTableOutput.qualify(CREATE_TABLE, "other")).isEqualTo(CREATE_TABLE);
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testRejectsAStatementThatIsNotACreateTable() {
+        SSTableOutput.readTable("SELECT * FROM ks.people", "ks");
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class)
+    public void testRejectsAnUnknownPartitioner() {
+        SSTableOutput.partitioner("NoSuchPartitioner");
+    }
+
+    @Test(expectedExceptions = CLILoaderRuntimeException.class, expectedExceptionsMessageRegExp = "Input line 3 .*")
+    public void testFailsOnAColumnShapePastTheCap() throws Exception {
+        TableSchema table = SSTableOutput.readTable(CREATE_TABLE, "ks");
+        MappingConfig config = MappingConfig.fromJSON(new JSONObject("{\"table\": \"people\", " +
+           "\"map\": {\"NAME\": \"name\", \"AGE\": \"age\", \"STATE\": \"state\"}}"));
+        MappingPlan plan = MappingPlan.compile(mock(Session.class), "ks", config, Arrays.asList("NAME", "AGE", "STATE"),
+           table.getTypes(), "2016-01-01", 10);
+        Path output = Files.createTempDirectory("sstables");
+        SSTableOutput sstables = new SSTableOutput(output.toFile(), CREATE_TABLE, table, plan,
+           SSTableOutput.partitioner(Constants.LOADER_DEFAULT_SSTABLE_PARTITIONER), 1, 1);
+        try {
+            sstables.write(plan.map("ann\t30\tVA", 1L));
+            sstables.write(plan.map("bob\t31\tMD", 2L));
+            sstables.write(plan.map("cy\t\tMD", 3L));
+        } finally {
+            sstables.close();
+            deleteOnExit(output);
+        }
+    }
+
+    @Test
+    public void testWritesSSTablesWithoutACluster() throws Exception {
+        File input = File.createTempFile("people", ".tsv");
+        input.deleteOnExit();
+        StringBuilder sb = new StringBuilder("NAME\tAGE\tSTATE\n");
+        for (int i = 0; i < 1000; i++) {
+            // every other line has no age, so the rows come in two column shapes
+            sb.append("person").append(i).append('\t').append(i % 2 == 0 ? String.valueOf(i % 90) : "")
+               .append('\t').append(i % 3 == 0 ? "VA" : "MD").append('\n');
+        }
+        Files.write(input.toPath(), sb.toString().getBytes());
+        File schema = File.createTempFile("people", ".cql");
+        schema.deleteOnExit();
+        // the keyspace of the load when the statement names none
+        Files.write(schema.toPath(), CREATE_TABLE.replace("ks.", "").getBytes());
+        Path output = Files.createTempDirectory("sstables");
+
+        for (String threads : new String[]{"0", "2"}) {
+            Properties properties = new Properties();
+            properties.setProperty(MAIN_KEYSPACE_KEY, "ks");
+            properties.setProperty(LOADER_BATCH_SIZE_KEY, "16");
+            properties.setProperty(LOADER_THREADS_KEY, threads);
+            properties.setProperty(LOADER_METRICS_INTERVAL_S_KEY, "0");
+            properties.setProperty(LOADER_SCHEMA_CACHE_DIR_KEY, "none");
+            properties.setProperty(LOADER_SSTABLE_DIR_KEY, output.resolve(threads).toString());
+            properties.setProperty(LOADER_SSTABLE_SCHEMA_KEY, schema.getPath());
+            DryRunCassandraSessionManager sessionManager = new DryRunCassandraSessionManager(
+               CommandLineLoader.standIn(SSTableOutput.readTable(CREATE_TABLE, "ks")), 0, TimeUnit.NANOSECONDS);
+            CommandLineLoader loader = new CommandLineLoader(sessionManager,
+               new PropertiesConfigurationServiceImpl(properties),
+               MappingConfig.fromJSON(new JSONObject("{\"table\": \"people\", \"map\": {}}")), input.getPath());
+            try {
+                assertThat(loader.load()).isEqualTo(0);
+            } finally {
+                sessionManager.stopCassandraClient();
+            }
+
+            assertThat(loader.getInsertsCompleted()).isEqualTo(1000);
+            // nothing went through the session
+            assertThat(sessionManager.getStandInSession().getRowsAcknowledged()).isEqualTo(0);
+            assertThat(new File(input.getPath() + Constants.LOADER_CHECKPOINT_SUFFIX)).doesNotExist();
+            // laid out as sstableloader takes them, one SSTable per column shape
+            List<Path> data = dataFiles(output.resolve(threads).resolve("ks").resolve("people"));
+            assertThat(data).hasSize(2);
+            for (Path file : data) {
+                assertThat(file.toFile().length()).isGreaterThan(0);
+            }
+        }
+        deleteOnExit(output);
+    }
+
+    private static void deleteOnExit(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.forEach(file -> file.toFile().deleteOnExit());
+        }
+    }
+
+    private static List<Path> dataFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith("-Data.db")).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package loader.cli;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.TableMetadata;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SchemaCacheTest {
+
+    private Path directory;
+    private SchemaCache cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("schema-cache");
+        directory.toFile().deleteOnExit();
+        cache = new SchemaCache(directory);
+    }
+
+    private static TableSchema people() {
+        Map<String, DataType> types = new LinkedHashMap<>();
+        types.put("state", DataType.text());
+        types.put("name", DataType.varchar());
+        types.put("age", DataType.cint());
+        types.put("tags", DataType.set(DataType.text()));
+        types.put("scores", DataType.frozenMap(DataType.text(), DataType.list(DataType.cdouble())));
+        types.put("payload", DataType.custom("org.apache.cassandra.db.marshal.BytesType"));
+        return new TableSchema("ks", "people", types, Arrays.asList("state"), Arrays.asList("name"));
+    }
+
+    @Test
+    public void testKeepsTheSchemaWhileTheVersionHolds() {
+        TableSchema schema = people();
+
+        assertThat(cache.put("Test Cluster", "v1", schema)).isTrue();
+
+        TableSchema cached = cache.get("Test Cluster", "v1", "ks", "people");
+        assertThat(cached).isEqualTo(schema);
+        assertThat(cached.getColumns()).containsExactly("state", "name", "age", "tags", "scores", "payload");
+        assertThat(cached.getTypes().get("scores").isFrozen()).isTrue();
+        assertThat(cached.getPrimaryKey()).containsExactly("state", "name");
+        assertThat(cache.get("Test Cluster", "v2", "ks", "people")).isNull();
+        assertThat(cache.get("Other Cluster", "v1", "ks", "people")).isNull();
+        assertThat(cache.get("Test Cluster", "v1", "ks", "places")).isNull();
+    }
+
+    @Test
+    public void testReplacesTheSchemaOfAnEarlierVersion() {
+        cache.put(null, "v1", people());
+        Map<String, DataType> types = new LinkedHashMap<>(people().getTypes());
+        types.put("zip", DataType.text());
+        TableSchema altered = new TableSchema("ks", "people", types, Arrays.asList("state"), Arrays.asList("name"));
+
+        cache.put(null, "v2", altered);
+
+        assertThat(cache.get(null, "v1", "ks", "people")).isNull();
+        assertThat(cache.get(null, "v2", "ks", "people").getColumns()).contains("zip");
+        assertThat(directory.toFile().list()).containsExactly("ks.people" + SchemaCache.SUFFIX);
+    }
+
+    @Test
+    public void testIgnoresFilesItCannotRead() throws Exception {
+        cache.put(null, "v1", people());
+        Path file = cache.fileOf(null, "ks", "people");
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThat(cache.get(null, "v1", "ks", "people")).isNull();
+
+        Files.write(file, "not a schema".getBytes());
+        assertThat(cache.get(null, "v1", "ks", "people")).isNull();
+    }
+
+    @Test
+    public void testReadsTheSchemaFromTheDriverMetadata() {
+        TableMetadata table = mock(TableMetadata.class);
+        ColumnMetadata state = column("state", DataType.text());
+        ColumnMetadata name = column("name", DataType.text());
+        ColumnMetadata age = column("age", DataType.cint());
+        when(table.getColumns()).thenReturn(ImmutableList.of(state, name, age));
+        when(table.getPartitionKey()).thenReturn(ImmutableList.of(state));
+        when(table.getClusteringColumns()).thenReturn(ImmutableList.of(name));
+        KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+        when(keyspace.getTable("people")).thenReturn(table);
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspace);
+
+        TableSchema schema = TableSchema.fromMetadata(metadata, "ks", "people");
+
+        assertThat(schema.getColumns()).containsExactly("state", "name", "age");
+        assertThat(schema.getTypes().get("age")).isEqualTo(DataType.cint());
+        assertThat(schema.getPrimaryKey()).containsExactly("state", "name");
+        assertThat(TableSchema.fromMetadata(metadata, "ks", "places")).isNull();
+        assertThat(TableSchema.fromMetadata(metadata, "other", "people")).isNull();
+    }
+
+    private static ColumnMetadata column(String name, DataType type) {
+        ColumnMetadata column = mock(ColumnMetadata.class);
+        when(column.getName()).thenReturn(name);
+        when(column.getType()).thenReturn(type);
+        return column;
+    }
+}
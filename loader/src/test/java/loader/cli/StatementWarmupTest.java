@@ -0,0 +1,89 @@
+package loader.cli;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StatementWarmupTest {
+
+    private static MappingPlan plan(Session session) {
+        Map<String, DataType> types = new TreeMap<>();
+        types.put("name", DataType.text());
+        types.put("age", DataType.cint());
+        types.put("state", DataType.text());
+        return MappingPlan.compile(session, "ks", MappingConfig.fromJSON(new JSONObject(
+           "{\"table\": \"people\", \"map\": {\"NAME\": \"name\", \"AGE\": \"age\", \"STATE\": \"state\"}}")),
+           Arrays.asList("NAME", "AGE", "STATE"), types, "2016-01-01", 10);
+    }
+
+    private static List<String> sparseLines() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // every other line has no age, every tenth no state
+            lines.add("person" + i + "\t" + (i % 2 == 0 ? "" : i) + "\t" + (i % 10 == 0 ? "" : "VA"));
+        }
+        lines.add("person100\tnot a number\tVA");
+        return lines;
+    }
+
+    @Test
+    public void testPreparesTheShapesOfTheSampleAheadOfTheLoad() {
+        Session session = mock(Session.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(session.prepareAsync(anyString())).thenReturn(Futures.immediateFuture(prepared));
+        MappingPlan plan = plan(session);
+
+        StatementWarmup warmup = StatementWarmup.sample(plan, sparseLines());
+
+        assertThat(warmup.getShapeCount()).isEqualTo(3);
+        assertThat(warmup.distribution())
+           .isEqualTo("50.0% (age, name, state), 40.0% (name, state), 10.0% (name)");
+        assertThat(warmup.prepare(10)).isEqualTo(3);
+        verify(session, times(3)).prepareAsync(anyString());
+        verify(session).prepareAsync("INSERT INTO ks.people(name) VALUES (?);");
+
+        plan.bind(plan.map("Alice\t42\tVA", 1L));
+        plan.bind(plan.map("Bob\t\t", 2L));
+        verify(session, never()).prepare(anyString());
+        assertThat(plan.cacheStats().hitCount()).isEqualTo(2L);
+        assertThat(warmup.summary()).startsWith("3 shapes in 100 sample lines, 3 inserts prepared");
+    }
+
+    @Test
+    public void testLeavesRareShapesAndFailedPreparesToTheLoad() {
+        Session session = mock(Session.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(session.prepareAsync(anyString())).thenReturn(Futures.immediateFuture(prepared));
+        when(session.prepareAsync("INSERT INTO ks.people(name,state) VALUES (?,?);"))
+           .thenReturn(Futures.immediateFailedFuture(new IllegalStateException("no host")));
+        when(session.prepare(anyString())).thenReturn(prepared);
+        MappingPlan plan = plan(session);
+        StatementWarmup warmup = StatementWarmup.sample(plan, sparseLines());
+
+        // the most frequent shape and the failed one
+        assertThat(warmup.prepare(2)).isEqualTo(1);
+
+        plan.bind(plan.map("Bob\t\tVA", 1L));
+        plan.bind(plan.map("Carol\t\t", 2L));
+        plan.bind(plan.map("Dave\t40\tMD", 3L));
+        verify(session, times(2)).prepare(anyString());
+        assertThat(warmup.summary()).endsWith(", 1 failed");
+    }
+}
@@ -0,0 +1,68 @@
+package loader.io;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChunkedFileTest {
+
+    private static File write(String content) throws Exception {
+        File file = File.createTempFile("chunked", ".tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testChunksAreAlignedToLineBoundaries() throws Exception {
+        StringBuilder sb = new StringBuilder("HEADER\n");
+        for (int i = 1; i <= 500; i++) {
+            sb.append("row").append(i).append("\tcafé\n");
+        }
+        try (ChunkedFile file = ChunkedFile.open(write(sb.toString()).toPath())) {
+            assertThat(file.readLine(0)).isEqualTo("HEADER");
+
+            List<FileChunk> chunks = file.split(file.nextLineStart(0), 100);
+            assertThat(chunks.size()).isGreaterThan(1);
+            assertThat(chunks.get(0).getStart()).isEqualTo(7L);
+            assertThat(chunks.get(chunks.size() - 1).getEnd()).isEqualTo(file.size());
+
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                assertThat(chunks.get(i).getIndex()).isEqualTo(i);
+                if (i > 0) {
+                    assertThat(chunks.get(i).getStart()).isEqualTo(chunks.get(i - 1).getEnd());
+                }
+                lines.addAll(file.readLines(chunks.get(i)));
+            }
+            assertThat(lines).hasSize(500);
+            assertThat(lines.get(0)).isEqualTo("row1\tcafé");
+            assertThat(lines.get(499)).isEqualTo("row500\tcafé");
+        }
+    }
+
+    @Test
+    public void testLinesMatchBufferedReaderSemantics() throws Exception {
+        try (ChunkedFile file = ChunkedFile.open(write("a\r\n\nb\tc\r\nlast").toPath())) {
+            List<FileChunk> chunks = file.split(0, 1024);
+            assertThat(chunks).hasSize(1);
+            assertThat(file.readLines(chunks.get(0))).containsExactly("a", "", "b\tc", "last");
+        }
+    }
+
+    @Test
+    public void testLongLineGetsItsOwnChunk() throws Exception {
+        try (ChunkedFile file = ChunkedFile.open(write("x\nyyyyyyyyyyyyyyyyyyyy\nz\n").toPath())) {
+            List<FileChunk> chunks = file.split(0, 2);
+            assertThat(chunks).hasSize(3);
+            assertThat(file.readLines(chunks.get(1))).containsExactly("yyyyyyyyyyyyyyyyyyyy");
+            assertThat(file.readLines(chunks.get(2))).containsExactly("z");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package loader.io;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DecompressingInputStreamTest {
+
+    private static byte[] content() {
+        StringBuilder sb = new StringBuilder("id\tname\n");
+        for (int i = 1; i <= 20000; i++) {
+            sb.append(i).append("\tname ").append(i % 97).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Path gzip(byte[] content) throws IOException {
+        Path file = Files.createTempFile("loader", ".tsv.gz");
+        file.toFile().deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static Path zstd(byte[] content) throws IOException {
+        Path file = Files.createTempFile("loader", ".tsv.zst");
+        file.toFile().deleteOnExit();
+        try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(file))) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testDetectsCompressionByMagicBytes() throws IOException {
+        byte[] content = content();
+        Path plain = Files.createTempFile("loader", ".gz");
+        plain.toFile().deleteOnExit();
+        Files.write(plain, content);
+
+        assertThat(Compression.detect(gzip(content))).isEqualTo(Compression.GZIP);
+        assertThat(Compression.detect(zstd(content))).isEqualTo(Compression.ZSTD);
+        // the name does not matter
+        assertThat(Compression.detect(plain)).isEqualTo(Compression.NONE);
+        Path empty = Files.createTempFile("loader", ".tsv");
+        empty.toFile().deleteOnExit();
+        assertThat(Compression.detect(empty)).isEqualTo(Compression.NONE);
+    }
+
+    @Test
+    public void testDecompressesAcrossManyBlocks() throws IOException {
+        byte[] content = content();
+        for (Path file : Arrays.asList(gzip(content), zstd(content))) {
+            // small blocks from a small pool, so the decompressing thread waits on the reader many times over
+            try (DecompressingInputStream in = new DecompressingInputStream(file, Compression.detect(file), 4096, 3)) {
+                assertThat(readAll(in)).isEqualTo(content);
+                assertThat(in.read()).isEqualTo(-1);
+                assertThat(in.getCompressedBytesRead()).isEqualTo(Files.size(file));
+                assertThat(in.getCompressedSize()).isEqualTo(Files.size(file));
+            }
+        }
+    }
+
+    @Test
+    public void testOpenReaderReadsAnyInput() throws IOException {
+        byte[] content = content();
+        Path plain = Files.createTempFile("loader", ".tsv");
+        plain.toFile().deleteOnExit();
+        Files.write(plain, content);
+        for (Path file : Arrays.asList(plain, gzip(content), zstd(content))) {
+            try (Reader reader = Compression.openReader(file.toString());
+                 BufferedReader lines = new BufferedReader(reader)) {
+                assertThat(lines.readLine()).isEqualTo("id\tname");
+                assertThat(lines.lines().count()).isEqualTo(20000);
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedInputFailsTheReader() throws IOException {
+        Path file = gzip(content());
+        byte[] compressed = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(compressed, compressed.length / 2));
+
+        try (DecompressingInputStream in = new DecompressingInputStream(file, Compression.GZIP, 4096, 3)) {
+            readAll(in);
+            fail("Expected the truncated input to fail");
+        } catch (IOException e) {
+            assertThat(e).hasMessageContaining("Unable to decompress");
+        }
+    }
+
+    @Test
+    public void testCloseStopsDecompression() throws IOException {
+        Path file = zstd(content());
+        DecompressingInputStream in = new DecompressingInputStream(file, Compression.ZSTD, 1024, 2);
+        assertThat(in.read()).isEqualTo('i');
+        in.close();
+        try {
+            in.read(new byte[10], 0, 10);
+            fail("Expected a closed stream to fail");
+        } catch (IOException e) {
+            assertThat(e).hasMessage("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package loader.io;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeltaIndexTest {
+
+    private static ByteBuffer[] key(int i) {
+        return new ByteBuffer[]{ByteBuffer.wrap(("key" + i).getBytes(StandardCharsets.UTF_8)), ByteBuffer.allocate(4).putInt(0, i)};
+    }
+
+    @Test
+    public void testFindsWhatWasWrittenAndTheKeysNotLookedUp() throws Exception {
+        Path directory = Files.createTempDirectory("delta");
+        Path file = directory.resolve("ks.people.delta.idx");
+        assertThat(DeltaIndex.open(file)).isNull();
+
+        // enough rows for several buckets
+        int rows = 1500000;
+        DeltaIndexWriter writer = new DeltaIndexWriter(file, "name text, id int", "name text, age int", rows);
+        Random random = new Random(1);
+        long[] highs = new long[rows];
+        long[] lows = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            highs[i] = random.nextLong();
+            lows[i] = random.nextLong();
+            writer.add(highs[i], lows[i], i * 31L, i % 100000 == 0 ? key(i) : new ByteBuffer[0]);
+        }
+        // a key written again keeps its last content
+        writer.add(highs[7], lows[7], -7, new ByteBuffer[0]);
+        assertThat(writer.commit()).isEqualTo(rows);
+        assertThat(Files.list(directory).count()).isEqualTo(1);
+
+        try (DeltaIndex index = DeltaIndex.open(file)) {
+            assertThat(index.size()).isEqualTo(rows);
+            assertThat(index.matches("name text, id int", "name text, age int")).isTrue();
+            assertThat(index.matches("name text", "name text, age int")).isFalse();
+            int mismatches = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i % 100000 != 0) {
+                    long entry = index.find(highs[i], lows[i]);
+                    if (entry < 0 || index.getContentHash(entry) != (i == 7 ? -7 : i * 31L)) {
+                        mismatches++;
+                    }
+                }
+            }
+            assertThat(mismatches).isZero();
+            assertThat(index.find(highs[1] + 1, lows[1])).isEqualTo(-1);
+            assertThat(index.unseen()).isEqualTo(15);
+
+            List<Integer> unseen = new ArrayList<>();
+            index.forEachUnseen(values -> {
+                assertThat(values).hasSize(2);
+                assertThat(StandardCharsets.UTF_8.decode(values[0]).toString()).isEqualTo("key" + values[1].getInt(0));
+                unseen.add(values[1].getInt(0));
+            });
+            assertThat(unseen).hasSize(15).contains(0, 100000, 1400000);
+        }
+    }
+
+    @Test
+    public void testAbortLeavesThePreviousIndex() throws Exception {
+        Path directory = Files.createTempDirectory("delta");
+        Path file = directory.resolve("ks.people.delta.idx");
+        DeltaIndexWriter first = new DeltaIndexWriter(file, "id int", "id int", 10);
+        first.add(1, 2, 3, key(1));
+        first.commit();
+
+        DeltaIndexWriter second = new DeltaIndexWriter(file, "id int", "id int", 10);
+        second.add(4, 5, 6, key(4));
+        second.abort();
+
+        try (DeltaIndex index = DeltaIndex.open(file)) {
+            assertThat(index.size()).isEqualTo(1);
+            assertThat(index.find(1, 2)).isEqualTo(0);
+            assertThat(index.find(4, 5)).isEqualTo(-1);
+        }
+        assertThat(Files.list(directory).count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,68 @@
+package loader.io;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LineIndexTest {
+
+    private static ChunkedFile open(String content) throws Exception {
+        File file = File.createTempFile("index", ".tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return ChunkedFile.open(file.toPath());
+    }
+
+    @Test
+    public void testCountsMatchDecodedLines() throws Exception {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        int lines = 0;
+        while (sb.length() < 20000) {
+            int width = random.nextInt(40);
+            for (int i = 0; i < width; i++) {
+                sb.append(i % 7 == 0 ? '\t' : (char) ('a' + random.nextInt(26)));
+            }
+            sb.append(random.nextBoolean() ? "\n" : "\r\n");
+            lines++;
+        }
+        // no terminator on the last line
+        sb.append("last");
+        lines++;
+
+        try (ChunkedFile file = open(sb.toString())) {
+            LineIndex index = LineIndex.build(file, file.split(0, 997), 1L, 4);
+            assertThat(index.getLineCount()).isEqualTo(lines);
+
+            long lineNumber = 1;
+            for (FileChunk chunk : index.getChunks()) {
+                assertThat(chunk.isIndexed()).isTrue();
+                assertThat(chunk.getFirstLineNumber()).isEqualTo(lineNumber);
+                assertThat(chunk.getLineCount()).isEqualTo(file.readLines(chunk).size());
+                lineNumber += chunk.getLineCount();
+            }
+        }
+    }
+
+    @Test
+    public void testChunksFromAnOffset() throws Exception {
+        try (ChunkedFile file = open("a\nb\nc\nd\ne\n")) {
+            LineIndex index = LineIndex.build(file, file.split(0, 4), 1L, 2);
+            assertThat(index.getChunks()).hasSize(3);
+
+            List<FileChunk> rest = index.from(4);
+            assertThat(rest).hasSize(2);
+            assertThat(rest.get(0).getFirstLineNumber()).isEqualTo(3L);
+            assertThat(file.readLines(rest.get(0))).containsExactly("c", "d");
+
+            assertThat(index.from(5)).isNull();
+            assertThat(index.from(file.size())).isNull();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package loader.pipeline;
+
+import loader.cli.CLILoaderRuntimeException;
+import loader.io.ChunkedFile;
+import loader.io.FileChunk;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LoadPipelineTest {
+
+    private static BufferedReader input(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= lines; i++) {
+            sb.append("row").append(i).append('\n');
+        }
+        return new BufferedReader(new StringReader(sb.toString()));
+    }
+
+    @Test
+    public void testWriterSeesLinesInInputOrder() throws Exception {
+        LoadPipeline<String> pipeline = new LoadPipeline<>(4, 3, 7);
+        List<String> written = new ArrayList<>();
+
+        long linesRead = pipeline.run(input(1000), 1L, (line, lineNumber) -> lineNumber + ":" + line, written::add);
+
+        assertThat(linesRead).isEqualTo(1000L);
+        assertThat(written).hasSize(1000);
+        for (int i = 0; i < written.size(); i++) {
+            assertThat(written.get(i)).isEqualTo((i + 1) + ":row" + (i + 1));
+        }
+    }
+
+    @Test
+    public void testChunkedRunKeepsGlobalLineNumbers() throws Exception {
+        File tsv = File.createTempFile("pipeline", ".tsv");
+        tsv.deleteOnExit();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            sb.append("row").append(i).append('\n');
+        }
+        Files.write(tsv.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        LoadPipeline<String> pipeline = new LoadPipeline<>(4, 3, 7);
+        List<String> written = new ArrayList<>();
+        List<Long> chunkEnds = new ArrayList<>();
+        try (ChunkedFile file = ChunkedFile.open(tsv.toPath())) {
+            List<FileChunk> chunks = file.split(0, 64);
+            long linesRead = pipeline.run(file, chunks, 1L, (line, lineNumber) -> lineNumber + ":" + line, written::add,
+                    (chunk, nextLineNumber) -> {
+                        // every line before the chunk boundary has already reached the writer
+                        assertThat(written).hasSize((int) nextLineNumber - 1);
+                        chunkEnds.add(chunk.getEnd());
+                    });
+            assertThat(linesRead).isEqualTo(1000L);
+            assertThat(chunkEnds).hasSize(chunks.size());
+            assertThat(chunkEnds.get(chunkEnds.size() - 1)).isEqualTo(file.size());
+        }
+
+        assertThat(written).hasSize(1000);
+        for (int i = 0; i < written.size(); i++) {
+            assertThat(written.get(i)).isEqualTo((i + 1) + ":row" + (i + 1));
+        }
+    }
+
+    @Test
+    public void testNullMappingsAreSkipped() throws Exception {
+        LoadPipeline<Long> pipeline = new LoadPipeline<>(2, 2, 10);
+        List<Long> written = new ArrayList<>();
+
+        pipeline.run(input(25), 1L, (line, lineNumber) -> lineNumber % 2 == 0 ? lineNumber : null, written::add);
+
+        assertThat(written).hasSize(12);
+        assertThat(written.get(0)).isEqualTo(2L);
+        assertThat(written.get(11)).isEqualTo(24L);
+    }
+
+    @Test
+    public void testWorkerFailureStopsThePipeline() throws Exception {
+        LoadPipeline<String> pipeline = new LoadPipeline<>(2, 2, 5);
+        try {
+            pipeline.run(input(100), 1L, (line, lineNumber) -> {
+                if (lineNumber == 42) {
+                    throw new CLILoaderRuntimeException("bad line " + lineNumber);
+                }
+                return line;
+            }, line -> { });
+            fail("Expected the mapping failure to surface");
+        } catch (CLILoaderRuntimeException e) {
+            assertThat(e.getMessage()).isEqualTo("bad line 42");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package loader.util;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.base.Ticker;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private AdaptiveConcurrencyLimit limit(int initial) {
+        return new AdaptiveConcurrencyLimit(initial, 2, 20, 10, 0.05, 0.5, 100, TimeUnit.MILLISECONDS, ticker);
+    }
+
+    private void interval(AdaptiveConcurrencyLimit limit, boolean saturated, long latencyNanos) {
+        if (saturated) {
+            limit.onLimitReached();
+        }
+        for (int i = 0; i < 99; i++) {
+            limit.onSuccess(latencyNanos);
+        }
+        nanos.addAndGet(100 * MS);
+        limit.onSuccess(latencyNanos);
+    }
+
+    @Test
+    public void testGrowsAdditivelyOnlyWhileHealthyAndSaturated() {
+        AdaptiveConcurrencyLimit limit = limit(8);
+        interval(limit, true, 2 * MS);
+        interval(limit, true, 2 * MS);
+        assertThat(limit.getLimit()).isEqualTo(10);
+        assertThat(limit.getLatencyP99Millis()).isEqualTo(2.0);
+
+        // nothing waited on the limit, so a higher one would not be used
+        interval(limit, false, 2 * MS);
+        assertThat(limit.getLimit()).isEqualTo(10);
+
+        for (int i = 0; i < 20; i++) {
+            interval(limit, true, 2 * MS);
+        }
+        assertThat(limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void testBacksOffMultiplicativelyOnceAnInterval() {
+        AdaptiveConcurrencyLimit limit = limit(16);
+        WriteTimeoutException timeout = new WriteTimeoutException(ConsistencyLevel.LOCAL_QUORUM, WriteType.UNLOGGED_BATCH, 1, 2);
+        limit.onFailure(20 * MS, timeout);
+        assertThat(limit.getLimit()).isEqualTo(8);
+        // the rest of the writes issued at the old limit time out too, but only one cut per interval
+        limit.onFailure(20 * MS, timeout);
+        limit.onFailure(20 * MS, timeout);
+        assertThat(limit.getLimit()).isEqualTo(8);
+
+        // latency over target
+        interval(limit, true, 2 * MS);
+        interval(limit, true, 50 * MS);
+        assertThat(limit.getLimit()).isEqualTo(4);
+
+        // failures that are not congestion still count toward the error rate
+        for (int i = 0; i < 10; i++) {
+            limit.onFailure(MS, new InvalidQueryException("bad"));
+        }
+        interval(limit, true, MS);
+        assertThat(limit.getLimit()).isEqualTo(2);
+        interval(limit, true, 50 * MS);
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,115 @@
+package loader.util;
+
+import com.datastax.driver.core.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compiled column converters with the general {@link CQLTypeUtil#convertObjectType} switch on
+ * typical cell values, in microseconds for the {@value #VALUES} values of an operation. Not part of the unit tests;
+ * its benchmark code is only generated in the benchmark profile, so run it with
+ * <pre>
+ * mvn -pl loader -Pbenchmark test-compile exec:java -Dexec.mainClass=loader.util.ColumnConverterBenchmark -Dexec.classpathScope=test
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnConverterBenchmark {
+    private static final int VALUES = 1024;
+
+    @Param({"bigint", "int", "double", "decimal", "timestamp", "list<bigint>"})
+    public String type;
+
+    private DataType dataType;
+    private ColumnConverter converter;
+    private String[] values;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        values = new String[VALUES];
+        switch (type) {
+            case "bigint":
+                dataType = DataType.bigint();
+                for (int i = 0; i < VALUES; i++) {
+                    values[i] = Long.toString(random.nextInt(Integer.MAX_VALUE) * 1000L);
+                }
+                break;
+            case "int":
+                dataType = DataType.cint();
+                for (int i = 0; i < VALUES; i++) {
+                    values[i] = Integer.toString(random.nextInt(100000) - 50000);
+                }
+                break;
+            case "double":
+                dataType = DataType.cdouble();
+                for (int i = 0; i < VALUES; i++) {
+                    values[i] = (random.nextInt(100000) - 50000) + "." + random.nextInt(100);
+                }
+                break;
+            case "decimal":
+                dataType = DataType.decimal();
+                for (int i = 0; i < VALUES; i++) {
+                    values[i] = random.nextInt(1000000) + "." + random.nextInt(100);
+                }
+                break;
+            case "timestamp":
+                // the last format in the search order, the worst case for the general conversion
+                dataType = DataType.timestamp();
+                for (int i = 0; i < VALUES; i++) {
+                    values[i] = String.format("2015-%02d-%02dT%02d:%02d:%02d", random.nextInt(12) + 1,
+                       random.nextInt(28) + 1, random.nextInt(24), random.nextInt(60), random.nextInt(60));
+                }
+                break;
+            case "list<bigint>":
+                dataType = DataType.list(DataType.bigint());
+                for (int i = 0; i < VALUES; i++) {
+                    values[i] = random.nextInt(1000) + "," + random.nextInt(1000) + "," + random.nextInt(1000);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type " + type);
+        }
+        converter = ColumnConverters.compile(dataType);
+    }
+
+    @Benchmark
+    public void general(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(CQLTypeUtil.convertObjectType(value, dataType));
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(converter.convert(value));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+           .include(ColumnConverterBenchmark.class.getSimpleName())
+           .build()).run();
+    }
+}
@@ -0,0 +1,122 @@
+package loader.util;
+
+import com.datastax.driver.core.DataType;
+import loader.cli.CLILoaderRuntimeException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ColumnConvertersTest {
+
+    private static final List<String> EDGE_CASES = Arrays.asList(
+       null, "", "0", "-0", "+0", "1", "-1", "+7", "-", "+", ".", "-.", "1.", ".5", "-.5", "+.25", "007",
+       "2147483647", "2147483648", "-2147483648", "-2147483649", "999999999", "-999999999",
+       "9223372036854775807", "9223372036854775808", "-9223372036854775808", "999999999999999999",
+       "123456789012345678901234567890", "0.1", "0.3", "-1.5", "3.141592653589793", "123456789012345",
+       "1234567890123456", "0.000000000000001", "1.00000000000000000001", "1e10", "1E-5", "NaN", "Infinity",
+       " 12", "12 ", "1_0", "12a", "1.2.3", "--1", "0x10", "١٢", "1d", "2f");
+
+    private static void assertSameAsGeneral(DataType type, String value) {
+        assertSameAsGeneral(type, value, converter -> converter.convert(value));
+        if (value != null) {
+            // the same characters as a cell in the middle of a line
+            String line = "a\t" + value + "\tb";
+            assertSameAsGeneral(type, value, converter -> converter.convert(line, 2, 2 + value.length()));
+        }
+    }
+
+    private static void assertSameAsGeneral(DataType type, String value, Function<ColumnConverter, Object> conversion) {
+        Object expected;
+        try {
+            expected = CQLTypeUtil.convertObjectType(value, type);
+        } catch (CLILoaderRuntimeException e) {
+            try {
+                conversion.apply(ColumnConverters.compile(type));
+                fail("Expected " + type + " conversion of '" + value + "' to fail with: " + e.getMessage());
+            } catch (CLILoaderRuntimeException compiled) {
+                assertThat(compiled.getMessage()).isEqualTo(e.getMessage());
+            }
+            return;
+        }
+        Object actual = conversion.apply(ColumnConverters.compile(type));
+        assertThat(actual).as(type + " '" + value + "'").isEqualTo(expected);
+        if (expected instanceof Double) {
+            // equals() does not tell 0.0 from -0.0 apart by value, but the bits must match too
+            assertThat(Double.doubleToRawLongBits((Double) actual))
+               .isEqualTo(Double.doubleToRawLongBits((Double) expected));
+        }
+    }
+
+    @Test
+    public void testNumbersMatchGeneralConversion() {
+        List<String> values = new ArrayList<>(EDGE_CASES);
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            values.add(Long.toString(random.nextLong() >> random.nextInt(64)));
+            values.add(Integer.toString(random.nextInt() >> random.nextInt(32)));
+            values.add(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(20) - 10)));
+            long whole = random.nextInt(1000000);
+            values.add((random.nextBoolean() ? "-" : "") + whole + "." + Math.abs(random.nextLong() % 100000000L));
+        }
+        for (DataType type : Arrays.asList(DataType.bigint(), DataType.counter(), DataType.cint(), DataType.varint(),
+           DataType.cdouble(), DataType.decimal(), DataType.cfloat())) {
+            for (String value : values) {
+                assertSameAsGeneral(type, value);
+            }
+        }
+    }
+
+    @Test
+    public void testOtherTypesMatchGeneralConversion() {
+        for (String value : Arrays.asList(null, "", "abc", "T", "no", "true", "x",
+           "123e4567-e89b-12d3-a456-426655440000", "not-a-uuid")) {
+            for (DataType type : Arrays.asList(DataType.text(), DataType.ascii(), DataType.varchar(),
+               DataType.cboolean(), DataType.blob(), DataType.uuid(), DataType.timeuuid())) {
+                assertSameAsGeneral(type, value);
+            }
+        }
+        assertSameAsGeneral(DataType.inet(), "");
+        assertSameAsGeneral(DataType.inet(), "127.0.0.1");
+    }
+
+    @Test
+    public void testDatesInChangingFormats() {
+        // the same converter sees every format, so the remembered format keeps changing
+        ColumnConverter converter = ColumnConverters.compile(DataType.timestamp());
+        for (String value : Arrays.asList("2015-07-04 10:11:12", "2015-07-04 10:11:12", "2015-07-04",
+           "07/04/2015 10:11:12", "07/04/2015", "07-04-2015 10:11:12", "07-04-2015", "2015-07-04T10:11:12",
+           "2015-07-04", "2015-07-04 10:11:12", "not a date", "")) {
+            Object expected;
+            try {
+                expected = CQLTypeUtil.convertObjectType(value, DataType.timestamp());
+            } catch (CLILoaderRuntimeException e) {
+                try {
+                    converter.convert(value);
+                    fail("Expected '" + value + "' to fail");
+                } catch (CLILoaderRuntimeException compiled) {
+                    assertThat(compiled.getMessage()).isEqualTo(e.getMessage());
+                }
+                continue;
+            }
+            assertThat(converter.convert(value)).as(value).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testCollectionsMatchGeneralConversion() {
+        for (String value : Arrays.asList("1,2,3", "1,,3", "1,x", "", "a=1,b=2", "a=1,b", "a=x")) {
+            assertSameAsGeneral(DataType.list(DataType.bigint()), value);
+            assertSameAsGeneral(DataType.set(DataType.cint()), value);
+            assertSameAsGeneral(DataType.list(DataType.text()), value);
+            assertSameAsGeneral(DataType.map(DataType.text(), DataType.cint()), value);
+            assertSameAsGeneral(DataType.map(DataType.text(), DataType.cdouble()), value);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package loader.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ColumnProfilerTest {
+
+    @Test
+    public void testProfilesEveryColumn() {
+        ColumnProfiler profiler = new ColumnProfiler(Arrays.asList("id", "state", "created"), 2);
+        String[] states = {"CA", "CA", "CA", "NY", "NY", "TX", null};
+        for (int i = 0; i < 700; i++) {
+            // the extra value is not a profiled column
+            profiler.profile(new Object[]{(long) i, states[i % states.length], new Date(1000L * (i % 10)), "extra"});
+        }
+
+        JSONObject json = profiler.toJSON();
+        JSONObject id = json.getJSONObject("id");
+        assertThat(id.getLong("values")).isEqualTo(700);
+        assertThat(id.getLong("nulls")).isEqualTo(0);
+        assertThat(id.getLong("min")).isEqualTo(0);
+        assertThat(id.getLong("max")).isEqualTo(699);
+        assertThat(id.getLong("distinct")).isBetween(690L, 710L);
+
+        JSONObject state = json.getJSONObject("state");
+        assertThat(state.getLong("values")).isEqualTo(600);
+        assertThat(state.getLong("nulls")).isEqualTo(100);
+        assertThat(state.getString("min")).isEqualTo("CA");
+        assertThat(state.getString("max")).isEqualTo("TX");
+        assertThat(state.getLong("distinct")).isEqualTo(3);
+        JSONArray top = state.getJSONArray("top");
+        assertThat(top.length()).isEqualTo(2);
+        assertThat(top.getJSONObject(0).getString("value")).isEqualTo("CA");
+        assertThat(top.getJSONObject(0).getLong("count")).isEqualTo(300);
+        assertThat(top.getJSONObject(1).getString("value")).isEqualTo("NY");
+        assertThat(top.getJSONObject(1).getLong("count")).isEqualTo(200);
+
+        JSONObject created = json.getJSONObject("created");
+        assertThat(created.getString("min")).isEqualTo("1970-01-01T00:00:00Z");
+        assertThat(created.getString("max")).isEqualTo("1970-01-01T00:00:09Z");
+
+        assertThat(profiler.summary()).contains("state: 600 values, 100 nulls, ~3 distinct, min CA, max TX, top CA (300) NY (200)");
+    }
+
+    @Test
+    public void testCollectionsHaveNoMinOrMaxAndNaNIsText() {
+        ColumnProfiler profiler = new ColumnProfiler(Arrays.asList("tags", "score"), 5);
+        profiler.profile(new Object[]{Arrays.asList("a", "b"), Double.NaN});
+        profiler.profile(new Object[]{Arrays.asList("c"), 1.5d});
+
+        JSONObject tags = profiler.toJSON().getJSONObject("tags");
+        assertThat(tags.getLong("values")).isEqualTo(2);
+        assertThat(tags.has("min")).isFalse();
+        assertThat(tags.getJSONArray("top").length()).isEqualTo(2);
+
+        JSONObject score = profiler.toJSON().getJSONObject("score");
+        assertThat(score.getDouble("min")).isEqualTo(1.5d);
+        assertThat(score.getString("max")).isEqualTo("NaN");
+    }
+}
@@ -0,0 +1,50 @@
+package loader.util;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentBloomFilterTest {
+
+    @Test
+    public void testFalsePositiveRateIsNearTheTarget() {
+        ConcurrentBloomFilter filter = new ConcurrentBloomFilter(100000, 0.01, 64L * 1024 * 1024);
+        Random random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            filter.add(random.nextLong(), random.nextLong());
+        }
+        random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            assertThat(filter.mightContain(random.nextLong(), random.nextLong())).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(filter.getHashes()).isEqualTo(7);
+        assertThat(falsePositives / 100000.0).isBetween(0.005, 0.015);
+        assertThat(filter.getFalsePositiveRate()).isBetween(0.005, 0.015);
+    }
+
+    @Test
+    public void testAddTellsWhetherTheKeyWasNew() {
+        ConcurrentBloomFilter filter = new ConcurrentBloomFilter(1000, 0.001, 1024 * 1024);
+
+        assertThat(filter.add(42, 43)).isTrue();
+        assertThat(filter.add(42, 43)).isFalse();
+        assertThat(filter.mightContain(42, 43)).isTrue();
+    }
+
+    @Test
+    public void testMemoryBoundCapsTheSize() {
+        ConcurrentBloomFilter filter = new ConcurrentBloomFilter(10000000, 0.001, 1024 * 1024);
+
+        assertThat(filter.getBits()).isEqualTo(8L * 1024 * 1024);
+        assertThat(filter.getHashes()).isEqualTo(1);
+    }
+}
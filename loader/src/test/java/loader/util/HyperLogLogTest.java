@@ -0,0 +1,58 @@
+package loader.util;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCountsAreNearExact() {
+        HyperLogLog hll = new HyperLogLog();
+        assertThat(hll.cardinality()).isEqualTo(0);
+        for (int round = 0; round < 3; round++) {
+            for (long i = 0; i < 1000; i++) {
+                hll.offerHash(HyperLogLog.mix(i));
+            }
+        }
+        assertThat((double) hll.cardinality()).isCloseTo(1000, within(10d));
+    }
+
+    @Test
+    public void testLargeCountsWithinStandardError() {
+        HyperLogLog hll = new HyperLogLog();
+        for (long i = 0; i < 2000000; i++) {
+            hll.offerHash(ColumnProfiler.hash("value-" + (i % 1000000)));
+        }
+        // 0.8% standard error; 3% is well past three of them
+        assertThat((double) hll.cardinality()).isCloseTo(1000000, within(30000d));
+    }
+
+    @Test
+    public void testConcurrentOffers() throws Exception {
+        HyperLogLog hll = new HyperLogLog(12);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 25000;
+            futures.add(executor.submit(() -> {
+                for (long i = offset; i < offset + 25000; i++) {
+                    hll.offerHash(HyperLogLog.mix(i));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        // 1.6% standard error at precision 12
+        assertThat((double) hll.cardinality()).isCloseTo(100000, within(5000d));
+    }
+}
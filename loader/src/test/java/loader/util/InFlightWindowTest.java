@@ -0,0 +1,218 @@
+package loader.util;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.SyntaxError;
+import com.google.common.util.concurrent.AbstractFuture;
+import loader.cli.CLILoaderRuntimeException;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InFlightWindowTest {
+
+    private static class TestFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+        void succeed() {
+            set(mock(ResultSet.class));
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static Session session(List<TestFuture> futures) {
+        Session session = mock(Session.class);
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            TestFuture future = new TestFuture();
+            futures.add(future);
+            return future;
+        });
+        return session;
+    }
+
+    @Test
+    public void testCongestionFailuresAreRetriedBeforeNewWrites() {
+        List<TestFuture> futures = new CopyOnWriteArrayList<>();
+        Session session = session(futures);
+        InFlightWindow window = new InFlightWindow(2, 1);
+        Statement first = mock(Statement.class);
+        Statement second = mock(Statement.class);
+
+        window.execute(session, first, 3);
+        futures.get(0).fail(new OverloadedException(new InetSocketAddress(9042), "busy"));
+        assertThat(window.getFailed()).isEqualTo(0);
+
+        window.execute(session, second, 1);
+        verify(session, times(2)).executeAsync(first);
+        assertThat(window.getRetried()).isEqualTo(1);
+
+        futures.get(1).succeed();
+        futures.get(2).succeed();
+        window.drain();
+        assertThat(window.getCompleted()).isEqualTo(4);
+    }
+
+    @Test
+    public void testRetriesRunOutOrDoNotApply() {
+        List<TestFuture> futures = new CopyOnWriteArrayList<>();
+        Session session = session(futures);
+        InFlightWindow window = new InFlightWindow(2, 1);
+
+        window.execute(session, mock(Statement.class), 1);
+        futures.get(0).fail(new OverloadedException(new InetSocketAddress(9042), "busy"));
+        // drain executes the retry itself, which fails again
+        Thread failer = new Thread(() -> {
+            while (futures.size() < 2) {
+                Thread.yield();
+            }
+            futures.get(1).fail(new OverloadedException(new InetSocketAddress(9042), "still busy"));
+        });
+        failer.start();
+        try {
+            window.drain();
+            fail("Expected the retried write to fail the load");
+        } catch (CLILoaderRuntimeException e) {
+            assertThat(e.getCause()).hasMessageContaining("still busy");
+        }
+        assertThat(window.getFailed()).isEqualTo(1);
+
+        InFlightWindow other = new InFlightWindow(2, 3);
+        futures.clear();
+        other.execute(session, mock(Statement.class), 1);
+        futures.get(0).fail(new SyntaxError("not a congestion failure"));
+        try {
+            other.drain();
+            fail("Expected the write to fail the load");
+        } catch (CLILoaderRuntimeException e) {
+            assertThat(other.getRetried()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testRetriesWaitForTheirBackoff() {
+        List<TestFuture> futures = new CopyOnWriteArrayList<>();
+        Session session = session(futures);
+        InFlightWindow window = new InFlightWindow(2, 2);
+        window.setRetryBackoff(200, 400, TimeUnit.MILLISECONDS);
+
+        window.execute(session, mock(Statement.class), 1);
+        long failed = System.nanoTime();
+        futures.get(0).fail(new OverloadedException(new InetSocketAddress(9042), "busy"));
+        window.execute(session, mock(Statement.class), 1);
+
+        // at least half of the first backoff passed before the retry went out
+        assertThat(futures).hasSize(3);
+        assertThat(System.nanoTime() - failed).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        futures.get(1).succeed();
+        futures.get(2).succeed();
+        window.drain();
+        assertThat(window.getRetried()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNoHostAvailableFailsTheLoad() {
+        List<TestFuture> futures = new CopyOnWriteArrayList<>();
+        Session session = session(futures);
+        InFlightWindow window = new InFlightWindow(2, 3);
+        List<Object> setAside = new CopyOnWriteArrayList<>();
+        window.setFailureHandler((context, failure) -> setAside.add(context));
+
+        window.execute(session, mock(Statement.class), 1, "row");
+        futures.get(0).fail(new NoHostAvailableException(Collections.emptyMap()));
+        try {
+            window.drain();
+            fail("Expected the load to fail without a host to write to");
+        } catch (CLILoaderRuntimeException e) {
+            assertThat(e.getCause()).isInstanceOf(NoHostAvailableException.class);
+        }
+        assertThat(window.getRetried()).isEqualTo(0);
+        assertThat(setAside).isEmpty();
+    }
+
+    @Test
+    public void testFailuresSetAsideByTheHandler() {
+        List<TestFuture> futures = new CopyOnWriteArrayList<>();
+        Session session = session(futures);
+        InFlightWindow window = new InFlightWindow(2, 0);
+        List<Object> setAside = new CopyOnWriteArrayList<>();
+        window.setFailureHandler((context, failure) -> "keep going".equals(context) && setAside.add(context));
+
+        window.execute(session, mock(Statement.class), 2, "keep going");
+        futures.get(0).fail(new SyntaxError("bad row"));
+        window.execute(session, mock(Statement.class), 1, null);
+        futures.get(1).succeed();
+        window.drain();
+        assertThat(setAside).containsExactly("keep going");
+        assertThat(window.getFailed()).isEqualTo(2);
+        assertThat(window.getCompleted()).isEqualTo(1);
+
+        window.execute(session, mock(Statement.class), 1, "stop");
+        futures.get(2).fail(new SyntaxError("bad row"));
+        try {
+            window.drain();
+            fail("Expected the write the handler refused to fail the load");
+        } catch (CLILoaderRuntimeException e) {
+            assertThat(e.getCause()).hasMessageContaining("bad row");
+        }
+    }
+
+    @Test
+    public void testWindowsShareTheBudget() throws Exception {
+        List<TestFuture> futures = new CopyOnWriteArrayList<>();
+        Session session = session(futures);
+        WriteBudget budget = new WriteBudget(2);
+        InFlightWindow first = new InFlightWindow(2);
+        InFlightWindow second = new InFlightWindow(2);
+        first.setBudget(budget);
+        second.setBudget(budget);
+
+        first.execute(session, mock(Statement.class), 1);
+        first.execute(session, mock(Statement.class), 1);
+        assertThat(budget.getInFlight()).isEqualTo(2);
+
+        // the second window has room of its own, but the budget is spent
+        Thread writer = new Thread(() -> second.execute(session, mock(Statement.class), 1));
+        writer.start();
+        writer.join(200);
+        assertThat(writer.isAlive()).isTrue();
+        assertThat(futures).hasSize(2);
+
+        futures.get(0).succeed();
+        writer.join(5000);
+        assertThat(writer.isAlive()).isFalse();
+        assertThat(futures).hasSize(3);
+
+        futures.get(1).succeed();
+        futures.get(2).succeed();
+        first.drain();
+        second.drain();
+        assertThat(budget.getInFlight()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,50 @@
+package loader.util;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValueOnce() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf(1L << 30); bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertThat(LatencyHistogram.bucketOf(previousHighest + 1)).isEqualTo(bucket);
+            assertThat(LatencyHistogram.bucketOf(highest)).isEqualTo(bucket);
+            // about 3% wide at most
+            assertThat(highest - previousHighest - 1).isLessThanOrEqualTo(Math.max(0, highest / 32));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(3);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // mostly fast, with a slow tail
+            values[i] = random.nextInt(100) < 98 ? 500 + random.nextInt(2000) : 50000 + random.nextInt(500000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(values.length);
+        for (double quantile : new double[]{0.5, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            assertThat((double) snapshot.getValueAt(quantile)).isBetween((double) exact, exact * 1.04);
+        }
+        assertThat(snapshot.getMax()).isGreaterThanOrEqualTo(values[values.length - 1]);
+
+        histogram.record(7);
+        LatencyHistogram.Snapshot later = histogram.snapshot().since(snapshot);
+        assertThat(later.getCount()).isEqualTo(1);
+        assertThat(later.getValueAt(0.5)).isEqualTo(7);
+        assertThat(new LatencyHistogram().snapshot().getValueAt(0.99)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,55 @@
+package loader.util;
+
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoaderMetricsTest {
+
+    @Test
+    public void testConcurrentUpdatesAreAllCounted() throws Exception {
+        LoaderMetrics metrics = LoaderMetrics.startMetrics();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    metrics.bytesProcessed(10);
+                    metrics.writeCompleted(TimeUnit.MILLISECONDS.toNanos(2), 2, i % 100 != 0);
+                    if (i % 1000 == 0) {
+                        metrics.rowRejected();
+                        metrics.duplicateSkipped();
+                        metrics.duplicateSkipped();
+                        metrics.rowUnchanged();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        LoaderMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getBytesProcessed()).isEqualTo(400000);
+        assertThat(snapshot.getWrites()).isEqualTo(40000);
+        assertThat(snapshot.getWriteFailures()).isEqualTo(400);
+        assertThat(snapshot.getRowsInserted()).isEqualTo(2 * 39600);
+        assertThat(snapshot.getRowsRejected()).isEqualTo(40);
+        assertThat(snapshot.getRowsSkipped()).isEqualTo(80);
+        assertThat(snapshot.getRowsUnchanged()).isEqualTo(40);
+        assertThat(snapshot.getWriteLatencyMillis(0.99)).isBetween(2.0, 2.1);
+
+        metrics.writeCompleted(TimeUnit.MILLISECONDS.toNanos(40), 1, true);
+        LoaderMetrics.Snapshot interval = metrics.snapshot().since(snapshot);
+        assertThat(interval.getWrites()).isEqualTo(1);
+        assertThat(interval.getRowsInserted()).isEqualTo(1);
+
+        JSONObject json = interval.toJSON();
+        assertThat(json.getLong("writes")).isEqualTo(1);
+        assertThat(json.getLong("rowsSkipped")).isEqualTo(0);
+        assertThat(json.getJSONObject("writeLatencyMs").getDouble("p99")).isBetween(40.0, 41.3);
+    }
+}
@@ -0,0 +1,89 @@
+package loader.util;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapKeySetTest {
+
+    @Test
+    public void testTellsNewKeysFromKnownOnes() {
+        OffHeapKeySet keys = new OffHeapKeySet(64L * 1024 * 1024, false);
+        Random random = new Random(7);
+        long[] highs = new long[200000];
+        long[] lows = new long[highs.length];
+        for (int i = 0; i < highs.length; i++) {
+            highs[i] = random.nextLong();
+            lows[i] = random.nextLong();
+            assertThat(keys.add(highs[i], lows[i])).isTrue();
+        }
+        for (int i = 0; i < highs.length; i++) {
+            assertThat(keys.add(highs[i], lows[i])).isFalse();
+        }
+        assertThat(keys.add(0, 0)).isTrue();
+        assertThat(keys.add(0, 0)).isFalse();
+
+        assertThat(keys.size()).isEqualTo(highs.length + 1);
+        assertThat(keys.getUntracked()).isZero();
+        assertThat(keys.getAllocatedBytes()).isLessThanOrEqualTo(64L * 1024 * 1024);
+    }
+
+    @Test
+    public void testKeepsTheHighestValue() {
+        OffHeapKeySet keys = new OffHeapKeySet(2 * 1024 * 1024, true);
+        keys.putMax(1, 2, 10);
+        keys.putMax(1, 2, 30);
+        keys.putMax(1, 2, 20);
+
+        assertThat(keys.get(1, 2)).isEqualTo(30);
+        assertThat(keys.get(2, 1)).isEqualTo(-1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testValuesMustBeAskedFor() {
+        new OffHeapKeySet(1024 * 1024, false).get(1, 2);
+    }
+
+    @Test
+    public void testStopsRecordingAtTheMemoryBound() {
+        // room for the initial tables only
+        OffHeapKeySet keys = new OffHeapKeySet(64 * 1024 * 16, false);
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            keys.add(random.nextLong(), random.nextLong());
+        }
+
+        assertThat(keys.getAllocatedBytes()).isEqualTo(64 * 1024 * 16);
+        assertThat(keys.size() + keys.getUntracked()).isEqualTo(100000);
+        assertThat(keys.size()).isLessThanOrEqualTo(64 * 768);
+    }
+
+    @Test
+    public void testConcurrentAddsAdmitEveryKeyOnce() throws Exception {
+        OffHeapKeySet keys = new OffHeapKeySet(16L * 1024 * 1024, false);
+        AtomicInteger added = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            pool.execute(() -> {
+                // every thread adds the same keys
+                Random random = new Random(3);
+                for (int i = 0; i < 50000; i++) {
+                    if (keys.add(random.nextLong(), random.nextLong())) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(added.get()).isEqualTo(50000);
+        assertThat(keys.size()).isEqualTo(50000);
+    }
+}
@@ -0,0 +1,122 @@
+package loader.util;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StatusChunksTest {
+
+    @Test
+    public void testWritesOneRecordPerChunkOfRows() {
+        List<Statement> written = new ArrayList<>();
+        StatusChunkRecorder recorder = new StatusChunkRecorder("ks", 7L, "loader", "people.csv", 8, written::add);
+
+        for (long row = 1; row <= 20; row++) {
+            recorder.record(row, row != 3 && row != 10 && row != 11);
+        }
+        assertThat(written).isEmpty();
+        recorder.writeCompleted();
+        assertThat(written).hasSize(2);
+        recorder.flush();
+        recorder.flush();
+
+        assertThat(recorder.getChunksWritten()).isEqualTo(3);
+        assertThat(written).hasSize(3);
+        // rows 1-8 with row 3 failed, rows 9-16 with rows 10 and 11 failed, rows 17-20
+        assertThat(written.get(0).toString())
+           .contains("(7,'loader','people.csv',1,8,7,1,0x04,'FALSE',");
+        assertThat(written.get(1).toString())
+           .contains("(7,'loader','people.csv',9,16,6,2,0x06,'FALSE',");
+        assertThat(written.get(2).toString())
+           .contains("(7,'loader','people.csv',17,20,4,0,0x,'FALSE',");
+    }
+
+    @Test
+    public void testStartsAChunkAtTheFirstRowAfterAGap() {
+        List<Statement> written = new ArrayList<>();
+        StatusChunkRecorder recorder = new StatusChunkRecorder("ks", 7L, "loader", "people.csv", 8, written::add);
+
+        recorder.record(1, true);
+        recorder.record(100, false);
+        recorder.flush();
+
+        assertThat(written.get(0).toString()).contains("1,1,1,0,0x,");
+        assertThat(written.get(1).toString()).contains("100,100,0,1,0x01,");
+    }
+
+    @Test
+    public void testQueuesAChunkOnceRowsRecordedInAnyOrderFillIt() {
+        List<Statement> written = new ArrayList<>();
+        StatusChunkRecorder recorder = new StatusChunkRecorder("ks", 7L, "loader", "people.csv", 4, written::add);
+
+        recorder.record(6, true);
+        recorder.record(4, false);
+        recorder.record(2, true);
+        recorder.record(1, true);
+        recorder.writeCompleted();
+        assertThat(written).isEmpty();
+
+        recorder.record(3, true);
+        recorder.writeCompleted();
+        assertThat(written).hasSize(1);
+        assertThat(written.get(0).toString()).contains("1,4,3,1,0x08,");
+        recorder.flush();
+        assertThat(written.get(1).toString()).contains("6,6,1,0,0x,");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsARowRecordedTwice() {
+        StatusChunkRecorder recorder = new StatusChunkRecorder("ks", 7L, "loader", "people.csv", 8, statement -> { });
+        recorder.record(5, true);
+        recorder.record(5, true);
+    }
+
+    private static Row chunk(long firstRow, long lastRow, int... failedOffsets) {
+        BitSet failed = new BitSet();
+        for (int offset : failedOffsets) {
+            failed.set(offset);
+        }
+        Row row = mock(Row.class);
+        when(row.getLong(StatusChunks.FIRST_ROW)).thenReturn(firstRow);
+        when(row.getLong(StatusChunks.LAST_ROW)).thenReturn(lastRow);
+        when(row.getInt(StatusChunks.FAILED)).thenReturn(failedOffsets.length);
+        when(row.getBytes(StatusChunks.FAILED_ROWS)).thenReturn(ByteBuffer.wrap(failed.toByteArray()));
+        return row;
+    }
+
+    private static Session sessionAnswering(Row... chunks) {
+        ResultSet result = mock(ResultSet.class);
+        when(result.one()).thenReturn(chunks.length == 0 ? null : chunks[0]);
+        when(result.iterator()).thenAnswer(invocation -> Arrays.asList(chunks).iterator());
+        Session session = mock(Session.class);
+        when(session.execute(any(Statement.class))).thenReturn(result);
+        return session;
+    }
+
+    @Test
+    public void testExpandsRecordsBackToRows() {
+        Session session = sessionAnswering(chunk(9, 16, 1, 2));
+
+        assertThat(StatusChunks.rowSucceeded(session, "ks", 7L, "loader", "people.csv", 10)).isFalse();
+        assertThat(StatusChunks.rowSucceeded(session, "ks", 7L, "loader", "people.csv", 12)).isTrue();
+        // the chunk starting at or before the row ends before it
+        assertThat(StatusChunks.rowSucceeded(session, "ks", 7L, "loader", "people.csv", 17)).isNull();
+        assertThat(StatusChunks.rowSucceeded(sessionAnswering(), "ks", 7L, "loader", "people.csv", 1)).isNull();
+
+        assertThat(StatusChunks.failedRows(sessionAnswering(chunk(1, 8, 2), chunk(9, 16, 1, 2), chunk(17, 20)),
+           "ks", 7L, "loader", "people.csv")).containsExactly(3L, 10L, 11L);
+    }
+}
@@ -0,0 +1,118 @@
+package loader.util;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamSummaryTest {
+
+    @Test
+    public void testExactBelowCapacity() {
+        StreamSummary<String> summary = new StreamSummary<>(10);
+        assertThat(summary.offer("a")).isTrue();
+        assertThat(summary.offer("b", 5)).isTrue();
+        assertThat(summary.offer("a")).isFalse();
+        assertThat(summary.offer("c", 3)).isTrue();
+        assertThat(summary.offer("a", 2)).isFalse();
+
+        assertThat(summary.peek(10)).containsExactly("b", "a", "c");
+        List<ScoredItem<String>> scores = summary.peekWithScores(2);
+        assertThat(scores).hasSize(2);
+        assertThat(scores.get(0).getItem()).isEqualTo("b");
+        assertThat(scores.get(0).getCount()).isEqualTo(5);
+        assertThat(scores.get(1).getItem()).isEqualTo("a");
+        assertThat(scores.get(1).getCount()).isEqualTo(4);
+        assertThat(scores.get(1).getError()).isEqualTo(0);
+        assertThat(summary.getMinCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testEvictsLowestCount() {
+        StreamSummary<String> summary = new StreamSummary<>(2);
+        summary.offer("a", 3);
+        summary.offer("b", 1);
+        assertThat(summary.getMinCount()).isEqualTo(1);
+
+        assertThat(summary.offer("c")).isTrue();
+        List<ScoredItem<String>> scores = summary.peekWithScores(2);
+        assertThat(scores.get(0).getItem()).isEqualTo("a");
+        assertThat(scores.get(1).getItem()).isEqualTo("c");
+        assertThat(scores.get(1).getCount()).isEqualTo(2);
+        assertThat(scores.get(1).getError()).isEqualTo(1);
+        assertThat(summary.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCountsWithinErrorOnSkewedStream() {
+        StreamSummary<Integer> summary = new StreamSummary<>(50);
+        Map<Integer, Long> exact = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            int element = skewed(random);
+            summary.offer(element);
+            exact.merge(element, 1L, Long::sum);
+        }
+
+        assertWithinError(summary.peekWithScores(50), exact);
+        assertThat(summary.peek(3)).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void testConcurrentOffersMergeWithinError() throws Exception {
+        ConcurrentStreamSummary<Integer> summary = new ConcurrentStreamSummary<>(50, 4);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Map<Integer, Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                Map<Integer, Long> counted = new HashMap<>();
+                Random random = new Random(seed);
+                for (int i = 0; i < 50000; i++) {
+                    int element = skewed(random);
+                    summary.offer(element);
+                    counted.merge(element, 1L, Long::sum);
+                }
+                return counted;
+            }));
+        }
+        Map<Integer, Long> exact = new HashMap<>();
+        for (Future<Map<Integer, Long>> future : futures) {
+            future.get().forEach((element, count) -> exact.merge(element, count, Long::sum));
+        }
+        executor.shutdown();
+
+        List<ScoredItem<Integer>> scores = summary.peekWithScores(50);
+        assertThat(scores).hasSize(50);
+        assertWithinError(scores, exact);
+        assertThat(summary.peek(3)).containsExactly(0, 1, 2);
+        assertThat(ConcurrentStreamSummary.formatSummary(new ConcurrentStreamSummary<>(5))).contains("item");
+    }
+
+    private static void assertWithinError(List<ScoredItem<Integer>> scores, Map<Integer, Long> exact) {
+        long previous = Long.MAX_VALUE;
+        for (ScoredItem<Integer> score : scores) {
+            long count = exact.getOrDefault(score.getItem(), 0L);
+            assertThat(score.getCount()).isGreaterThanOrEqualTo(count);
+            assertThat(score.getCount() - score.getError()).isLessThanOrEqualTo(count);
+            assertThat(score.getCount()).isLessThanOrEqualTo(previous);
+            previous = score.getCount();
+        }
+    }
+
+    /**
+     * Roughly Zipf distributed over 10000 elements, 0 the most frequent.
+     */
+    private static int skewed(Random random) {
+        return (int) Math.floor(Math.pow(10000, Math.pow(random.nextDouble(), 2.5))) - 1;
+    }
+}
@@ -0,0 +1,54 @@
+package loader.util;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThreadUsageSamplerTest {
+
+    @Test
+    public void testGroupsUsageByThreadName() throws Exception {
+        ThreadUsageSampler sampler = new ThreadUsageSampler(10, TimeUnit.MILLISECONDS);
+        List<Thread> busy = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            Thread thread = new Thread(() -> {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+                List<byte[]> garbage = new ArrayList<>();
+                while (System.nanoTime() < deadline) {
+                    garbage.add(new byte[1024]);
+                    if (garbage.size() > 1000) {
+                        garbage.clear();
+                    }
+                }
+            }, "usage-test-" + i);
+            thread.start();
+            busy.add(thread);
+        }
+        // the samples of the running threads are all there is once they end
+        Thread.sleep(50);
+        for (Thread thread : busy) {
+            thread.join();
+        }
+
+        ThreadUsageSampler.Usage usage = sampler.stop();
+
+        ThreadUsageSampler.Group group = null;
+        for (ThreadUsageSampler.Group candidate : usage.getGroups()) {
+            if (candidate.getName().equals("usage-test")) {
+                group = candidate;
+            }
+        }
+        assertThat(group).isNotNull();
+        assertThat(group.getThreads()).isEqualTo(2);
+        assertThat(group.getCpuNanos()).isGreaterThan(0);
+        if (usage.getAllocatedBytes() >= 0) {
+            assertThat(group.getAllocatedBytes()).isGreaterThan(1024 * 1024);
+        }
+        assertThat(usage.getWallNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(usage.summary()).contains("usage-test");
+    }
+}
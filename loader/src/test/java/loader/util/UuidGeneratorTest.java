@@ -0,0 +1,87 @@
+package loader.util;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.utils.UUIDs;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UuidGeneratorTest {
+
+    @Test
+    public void testMakesRandomVersionFourUuids() {
+        Set<UUID> seen = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            UUID uuid = UuidGenerator.RANDOM.next();
+            assertThat(uuid.version()).isEqualTo(4);
+            assertThat(uuid.variant()).isEqualTo(2);
+            seen.add(uuid);
+        }
+        assertThat(seen).hasSize(10000);
+    }
+
+    @Test
+    public void testMakesTimeUuidsInOrderFromTheClock() {
+        long before = System.currentTimeMillis();
+        UUID previous = UuidGenerator.TIME.next();
+        for (int i = 0; i < 100000; i++) {
+            UUID uuid = UuidGenerator.TIME.next();
+            assertThat(uuid.version()).isEqualTo(1);
+            assertThat(uuid.variant()).isEqualTo(2);
+            assertThat(uuid.timestamp()).isGreaterThan(previous.timestamp());
+            assertThat(uuid.clockSequence()).isEqualTo(previous.clockSequence());
+            previous = uuid;
+        }
+        // the driver reads the time of a uuid as Cassandra does; a burst may run ahead of the clock by a little
+        assertThat(UUIDs.unixTimestamp(previous)).isBetween(before, System.currentTimeMillis() + 1000);
+    }
+
+    @Test
+    public void testThreadsMakeDistinctTimeUuids() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<List<UUID>>> batches = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            batches.add(pool.submit(() -> {
+                List<UUID> uuids = new ArrayList<>();
+                for (int i = 0; i < 50000; i++) {
+                    uuids.add(UuidGenerator.TIME.next());
+                }
+                return uuids;
+            }));
+        }
+        Set<UUID> seen = new HashSet<>();
+        for (Future<List<UUID>> batch : batches) {
+            seen.addAll(batch.get());
+        }
+        pool.shutdown();
+
+        assertThat(seen).hasSize(200000);
+    }
+
+    @Test
+    public void testPicksTheModeOfAColumn() {
+        assertThat(UuidGenerator.forColumn(null, DataType.uuid())).isEqualTo(UuidGenerator.RANDOM);
+        assertThat(UuidGenerator.forColumn("", DataType.timeuuid())).isEqualTo(UuidGenerator.TIME);
+        assertThat(UuidGenerator.forColumn("Time", DataType.uuid())).isEqualTo(UuidGenerator.TIME);
+        assertThat(UuidGenerator.forColumn("random", DataType.text())).isEqualTo(UuidGenerator.RANDOM);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsRandomUuidsForATimeuuidColumn() {
+        UuidGenerator.forColumn("random", DataType.timeuuid());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsAnUnknownMode() {
+        UuidGenerator.forColumn("sequential", DataType.uuid());
+    }
+}